@@ -9,11 +9,46 @@ repositories {
     mavenCentral()
 }
 
+// JMH benchmarks of the hot paths, in src/jmh/java; they see the classes of the engine, but are not part of its jar
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets["main"].output
+        runtimeClasspath += sourceSets["main"].output
+    }
+}
+
+val jmhVersion = "1.37"
+
 dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.8.1")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.8.1")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher:1.8.1")
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
 }
 
 tasks.getByName<Test>("test") {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// The benchmarks are compiled by every build, so a change of the engine that breaks them fails the build
+tasks.named("check") {
+    dependsOn("compileJmhJava")
+}
+
+// Runs the benchmarks and writes their results as JSON to build/reports/jmh/results.json, so that they can be
+// compared from one release to the next. The benchmarks to run are chosen with a regular expression, such as
+// -Pjmh.include=LogManagerBenchmark, and other JMH options can be given with -Pjmh.args="-f 2 -wi 5"
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks and writes their results to build/reports/jmh/results.json."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val results = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+    val include = project.findProperty("jmh.include")?.toString()
+    val options = project.findProperty("jmh.args")?.toString()?.split(" ")?.filter { it.isNotEmpty() } ?: emptyList()
+    args = listOf("-rf", "json", "-rff", results.absolutePath) + options + listOfNotNull(include)
+    doFirst {
+        results.parentFile.mkdirs()
+    }
+}
@@ -0,0 +1,148 @@
+package AhmedDB.buffer;
+
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.log.LogManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a pin followed by an unpin of a block chosen at random, by one thread and by {@link #THREADS} threads
+ * at once. In the "hit" workload the file is half the size of the pool, so every block could stay in a buffer,
+ * and the result shows how close the replacement strategy comes to it; in the "miss" workload the file is
+ * {@link #MISS_FILE_FACTOR} times the size of the pool, so most pins have to read their block. The
+ * blocks are chosen uniformly or with a Zipfian distribution, where a few blocks get most of the pins.
+ * The blocks are never modified, so no pin has to write a buffer before reading into it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BufferManagerBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFERS = 256;
+    private static final int MISS_FILE_FACTOR = 32;
+    private static final int THREADS = 4;
+    private static final String FILE = "jmh-buffer.tbl";
+    private static final String LOG = "jmh-buffer.log";
+    /**
+     * The number of keys drawn by each thread in advance, which are then used in a loop.
+     */
+    private static final int KEYS = 1 << 16;
+    /**
+     * The exponent of the Zipfian distribution, the value used by YCSB.
+     */
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    @Param({"hit", "miss"})
+    public String workload;
+
+    @Param({"uniform", "zipfian"})
+    public String distribution;
+
+    private File directory;
+    private FileManager fileManager;
+    private BufferManager bufferManager;
+    private LogicalBlock[] blocks;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, LOG);
+        bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+        blocks = new LogicalBlock[workload.equals("hit") ? BUFFERS / 2 : BUFFERS * MISS_FILE_FACTOR];
+        fileManager.write(new LogicalBlock(FILE, 0), blocks.length, new Page(new byte[blocks.length * BLOCK_SIZE]));
+        for (int i = 0; i < blocks.length; i++) blocks[i] = new LogicalBlock(FILE, i);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (String file : new String[]{FILE, LOG, LOG + ".files"}) fileManager.delete(file);
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    /**
+     * The blocks pinned by a thread, drawn before the measurement so that drawing them is not measured.
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+        private final int[] keys = new int[KEYS];
+        private int next = 0;
+
+        @Setup
+        public void setup(BufferManagerBenchmark benchmark) {
+            Random random = new Random(Thread.currentThread().getId());
+            int blocks = benchmark.blocks.length;
+            if (benchmark.distribution.equals("uniform")) {
+                for (int i = 0; i < KEYS; i++) keys[i] = random.nextInt(blocks);
+            }
+            else {
+                //the cumulative distribution of the ranks, and a shuffle of the blocks so that the popular ones are not neighbours
+                double[] cumulative = new double[blocks];
+                double total = 0;
+                for (int rank = 0; rank < blocks; rank++) {
+                    total += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+                    cumulative[rank] = total;
+                }
+                int[] blockOfRank = new int[blocks];
+                for (int i = 0; i < blocks; i++) blockOfRank[i] = i;
+                Random shuffle = new Random(42);
+                for (int i = blocks - 1; i > 0; i--) {
+                    int j = shuffle.nextInt(i + 1), block = blockOfRank[i];
+                    blockOfRank[i] = blockOfRank[j];
+                    blockOfRank[j] = block;
+                }
+                for (int i = 0; i < KEYS; i++) {
+                    double target = random.nextDouble() * total;
+                    int low = 0, high = blocks - 1;
+                    while (low < high) {
+                        int middle = (low + high) >>> 1;
+                        if (cumulative[middle] < target) low = middle + 1;
+                        else high = middle;
+                    }
+                    keys[i] = blockOfRank[low];
+                }
+            }
+        }
+
+        private int next() {
+            int key = keys[next];
+            next = (next + 1) & (KEYS - 1);
+            return key;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void pinUnpin(Keys keys) {
+        bufferManager.unpin(bufferManager.pin(blocks[keys.next()]));
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void pinUnpinContended(Keys keys) {
+        bufferManager.unpin(bufferManager.pin(blocks[keys.next()]));
+    }
+}
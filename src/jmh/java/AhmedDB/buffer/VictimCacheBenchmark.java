@@ -0,0 +1,109 @@
+package AhmedDB.buffer;
+
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.log.LogManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a pin followed by an unpin of a random block of a file, with a skew towards the first blocks, through a
+ * buffer pool much smaller than the file, alone and with a victim cache. The blocks hold records of small ints and
+ * short strings, like the ones of a table, and each pin checks the value it reads. The file is written just before
+ * it is read, so its blocks are likely to be in the cache of the operating system, where a read costs less than a
+ * decompression; the victim cache saves more on a host whose memory cannot hold the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VictimCacheBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BLOCKS = 20_000;
+    private static final int BUFFERS = 512;
+    private static final int RECORD_SIZE = 32;
+    private static final String TABLE = "jmh-victim-cache.tbl";
+    private static final String LOG = "jmh-victim-cache.log";
+    /**
+     * The number of keys drawn in advance, which are then used in a loop.
+     */
+    private static final int KEYS = 1 << 19;
+
+    /**
+     * The size of the victim cache, in megabytes; 0 is the buffer pool alone.
+     */
+    @Param({"0", "32"})
+    public int cacheMegabytes;
+
+    private File directory;
+    private FileManager fileManager;
+    private BufferManager bufferManager;
+    private final LogicalBlock[] blocks = new LogicalBlock[BLOCKS];
+    private final int[] values = new int[BLOCKS];
+    private final int[] keys = new int[KEYS];
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, LOG);
+        Random random = new Random(42);
+        Page page = new Page(BLOCK_SIZE);
+        for (int block = 0; block < BLOCKS; block++) {
+            for (int offset = Buffer.PAGE_HEADER_SIZE; offset + RECORD_SIZE <= BLOCK_SIZE; offset += RECORD_SIZE) {
+                page.setInt(offset, block * 1000 + offset);
+                page.setInt(offset + 4, random.nextInt(100));
+                page.setInt(offset + 8, random.nextInt(1 << 16));
+                page.setString(offset + 12, "name-" + random.nextInt(10_000));
+            }
+            blocks[block] = new LogicalBlock(TABLE, block);
+            values[block] = page.getInt(Buffer.PAGE_HEADER_SIZE + 4);
+            fileManager.write(blocks[block], page);
+        }
+        //the first blocks are much more likely than the last ones
+        for (int i = 0; i < KEYS; i++) {
+            double x = random.nextDouble();
+            keys[i] = (int) (BLOCKS * x * x * x);
+        }
+        bufferManager = cacheMegabytes == 0 ? new BufferManager(fileManager, logManager, BUFFERS)
+                : new BufferManager(fileManager, logManager, BUFFERS, cacheMegabytes << 20);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (String file : new String[]{TABLE, LOG, LOG + ".files"}) fileManager.delete(file);
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    @Benchmark
+    public int pinUnpin() {
+        int key = keys[next];
+        next = (next + 1) & (KEYS - 1);
+        Buffer buffer = bufferManager.pin(blocks[key]);
+        int value = buffer.getAssociatedPage().getInt(Buffer.PAGE_HEADER_SIZE + 4);
+        bufferManager.unpin(buffer);
+        if (value != values[key]) throw new RuntimeException("block " + key + " holds " + value + " instead of " + values[key]);
+        return value;
+    }
+}
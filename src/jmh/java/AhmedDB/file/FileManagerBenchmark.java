@@ -0,0 +1,82 @@
+package AhmedDB.file;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the block transfers of a {@link FileManager} on a file of {@link #FILE_BLOCKS} blocks: the read and the
+ * write of a random block, and the read of a random run of {@link #RUN_BLOCKS} blocks with one I/O. The data files
+ * are written synchronously, so a write includes the time the disk takes to make it durable, while the reads are
+ * usually served by the cache of the operating system.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileManagerBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int FILE_BLOCKS = 4096;
+    private static final int RUN_BLOCKS = 16;
+    private static final String FILE = "jmh-file.tbl";
+
+    private File directory;
+    private FileManager fileManager;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        Page extent = new Page(new byte[RUN_BLOCKS * BLOCK_SIZE]);
+        for (int block = 0; block < FILE_BLOCKS; block += RUN_BLOCKS)
+            fileManager.write(new LogicalBlock(FILE, block), RUN_BLOCKS, extent);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fileManager.delete(FILE);
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    /**
+     * The pages and the random numbers of a thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final Page page = new Page(BLOCK_SIZE);
+        private final Page run = new Page(RUN_BLOCKS * BLOCK_SIZE);
+        private final Random random = new Random();
+    }
+
+    @Benchmark
+    public void readBlock(ThreadState state) {
+        fileManager.read(new LogicalBlock(FILE, state.random.nextInt(FILE_BLOCKS)), state.page);
+    }
+
+    @Benchmark
+    public void writeBlock(ThreadState state) {
+        fileManager.write(new LogicalBlock(FILE, state.random.nextInt(FILE_BLOCKS)), state.page);
+    }
+
+    @Benchmark
+    public void readRun(ThreadState state) {
+        fileManager.read(new LogicalBlock(FILE, state.random.nextInt(FILE_BLOCKS - RUN_BLOCKS + 1)), RUN_BLOCKS, state.run);
+    }
+}
@@ -0,0 +1,84 @@
+package AhmedDB.file;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the accessors of a {@link Page}, on the direct memory of a buffer page and on the array of a log page.
+ * Each invocation reads or writes {@link #VALUES} values spread over half of the page, and the results are given
+ * per value. The ints are kept in the first half of the page and the strings in the second half.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PageBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int VALUES = 64;
+    private static final int SPACING = BLOCK_SIZE / 2 / VALUES;
+    private static final String VALUE = "a value of 24 chars....";
+
+    /**
+     * "direct" for a page of the buffer pool, "heap" for a page that wraps an array, like the log page.
+     */
+    @Param({"direct", "heap"})
+    public String memory;
+
+    private Page page;
+    private final int[] intOffsets = new int[VALUES];
+    private final int[] stringOffsets = new int[VALUES];
+
+    @Setup
+    public void setup() {
+        page = memory.equals("direct") ? new Page(BLOCK_SIZE) : new Page(new byte[BLOCK_SIZE]);
+        for (int i = 0; i < VALUES; i++) {
+            //the offsets do not follow each other, so the accesses are not a sequential loop
+            int slot = i * 37 % VALUES;
+            intOffsets[i] = slot * SPACING;
+            stringOffsets[i] = BLOCK_SIZE / 2 + slot * SPACING;
+            page.setInt(intOffsets[i], i);
+            page.setString(stringOffsets[i], VALUE);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int getInt() {
+        int sum = 0;
+        for (int offset : intOffsets) sum += page.getInt(offset);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void setInt() {
+        for (int i = 0; i < VALUES; i++) page.setInt(intOffsets[i], i);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void getString(Blackhole blackhole) {
+        for (int offset : stringOffsets) blackhole.consume(page.getString(offset));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void setString() {
+        for (int offset : stringOffsets) page.setString(offset, VALUE);
+    }
+}
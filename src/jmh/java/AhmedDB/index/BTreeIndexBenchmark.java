@@ -0,0 +1,118 @@
+package AhmedDB.index;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.record.RecordId;
+import AhmedDB.transaction.TransactionExecutor;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures a {@link BTreeIndex} of int keys, used by {@link #THREADS} threads at once. The index is bulk loaded
+ * with the even keys from zero, one entry per key, then the threads run point lookups of random loaded keys,
+ * range scans that read {@link #SCAN_LENGTH} entries from a random key, or inserts of random odd keys, which split
+ * nodes while the other threads keep using the index. Each insert runs in a transaction of its own, whose commit
+ * forces the log. The sample time mode gives the percentiles of the latency as well as the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BTreeIndexBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFERS = 4096;
+    private static final int THREADS = 8;
+    private static final int SCAN_LENGTH = 100;
+    private static final String INDEX = "jmh-btree.idx";
+
+    @Param({"1000000"})
+    public int keys;
+
+    private final AtomicLong inserted = new AtomicLong();
+    private File directory;
+    private BTreeIndex index;
+    private TransactionExecutor executor;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, "jmh-btree.log");
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        index = new BTreeIndex(fileManager, logManager, bufferManager, checkpointManager, INDEX);
+        executor = new TransactionExecutor(fileManager, logManager, bufferManager, new LockTable(), checkpointManager);
+        BTreeBulkLoader loader = index.bulkLoader();
+        for (int i = 0; i < keys; i++) loader.add(BTreeIndex.intKey(2 * i), recordId(i));
+        loader.finish();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+        for (File file : directory.listFiles()) file.delete();
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void lookup() {
+        int i = ThreadLocalRandom.current().nextInt(keys);
+        if (index.search(BTreeIndex.intKey(2 * i)).isEmpty()) throw new RuntimeException("key " + 2 * i + " not found");
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public int rangeScan() {
+        BTreeScan scan = index.scan(BTreeIndex.intKey(2 * ThreadLocalRandom.current().nextInt(keys)), null);
+        int read = 0;
+        while (read < SCAN_LENGTH && scan.next()) {
+            scan.getRecordId();
+            read++;
+        }
+        scan.close();
+        return read;
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void insert() {
+        long i = inserted.getAndIncrement();
+        byte[] key = BTreeIndex.intKey(2 * ThreadLocalRandom.current().nextInt(keys) + 1);
+        executor.run(transaction -> {
+            index.insert(transaction, key, recordId(keys + i));
+            return null;
+        });
+    }
+
+    /**
+     * The record id stored with the i-th entry, as if the records were packed a hundred per block.
+     */
+    private static RecordId recordId(long i) {
+        return new RecordId((int) (i / 100), (int) (i % 100));
+    }
+}
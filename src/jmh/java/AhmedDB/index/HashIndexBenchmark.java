@@ -0,0 +1,122 @@
+package AhmedDB.index;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.record.FreeSpaceMap;
+import AhmedDB.record.RecordFile;
+import AhmedDB.record.RecordId;
+import AhmedDB.transaction.TransactionExecutor;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lookup of a key through a {@link HashIndex} with a scan of the whole table, which is what a lookup
+ * costs without an index, at increasing sizes. A table of records with a distinct int key is filled through
+ * transactions, and each record is inserted into a hash index; the benchmark then looks up random keys through the
+ * index and through a scan of the table. The pool is smaller than the largest table, so the scans read from the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashIndexBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFERS = 1024;
+    private static final int RECORD_SIZE = 2 * Integer.BYTES;
+    private static final int RECORDS_PER_TRANSACTION = 10_000;
+    private static final String TABLE = "jmh-hash.tbl";
+
+    @Param({"10000", "100000", "1000000"})
+    public int records;
+
+    private File directory;
+    private FreeSpaceMap freeSpaceMap;
+    private TransactionExecutor executor;
+    private HashIndex index;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, "jmh-hash.log");
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        freeSpaceMap = new FreeSpaceMap(fileManager);
+        executor = new TransactionExecutor(fileManager, logManager, bufferManager, new LockTable(), checkpointManager);
+        index = new HashIndex(fileManager, logManager, bufferManager, checkpointManager, "jmh-hash.idx");
+        for (int first = 0; first < records; first += RECORDS_PER_TRANSACTION) {
+            int from = first, to = Math.min(records, first + RECORDS_PER_TRANSACTION);
+            executor.run(transaction -> {
+                RecordFile recordFile = new RecordFile(transaction, TABLE, freeSpaceMap);
+                for (int key = from; key < to; key++) {
+                    recordFile.insert(RECORD_SIZE);
+                    recordFile.setInt(0, key);
+                    recordFile.setInt(Integer.BYTES, -key);
+                    index.insert(transaction, BTreeIndex.intKey(key), recordFile.getRecordId());
+                }
+                recordFile.close();
+                return null;
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+        for (File file : directory.listFiles()) file.delete();
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    @Benchmark
+    public RecordId indexLookup() {
+        int key = ThreadLocalRandom.current().nextInt(records);
+        List<RecordId> found = index.search(BTreeIndex.intKey(key));
+        if (found.size() != 1) throw new RuntimeException("key " + key + " not found");
+        return found.get(0);
+    }
+
+    @Benchmark
+    public RecordId tableScan() {
+        int key = ThreadLocalRandom.current().nextInt(records);
+        RecordId found = executor.run(transaction -> scan(new RecordFile(transaction, TABLE, freeSpaceMap), key));
+        if (found == null) throw new RuntimeException("key " + key + " not found");
+        return found;
+    }
+
+    /**
+     * @return the id of the first record with the specified key, or null if there is none
+     */
+    private static RecordId scan(RecordFile recordFile, int key) {
+        try {
+            while (recordFile.next())
+                if (recordFile.getInt(0) == key) return recordFile.getRecordId();
+            return null;
+        }
+        finally {
+            recordFile.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package AhmedDB.log;
+
+import AhmedDB.file.FileManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the appends to the log, by one thread and by {@link #THREADS} threads at once, and the appends that
+ * are forced to the disk like a commit record. An append only copies the record into the log page, unless the page
+ * is full, while a forced append waits for the write of the page, which the other threads wait for too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogManagerBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int THREADS = 8;
+    private static final String LOG = "jmh-log.log";
+
+    /**
+     * The size of the appended records, in bytes.
+     */
+    @Param({"32", "256"})
+    public int recordSize;
+
+    private File directory;
+    private FileManager fileManager;
+    private LogManager logManager;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        logManager = new LogManager(fileManager, LOG);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fileManager.delete(LOG);
+        fileManager.delete(LOG + ".files");
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    /**
+     * The record appended by a thread, which is never read back, so its bytes do not matter.
+     */
+    @State(Scope.Thread)
+    public static class Record {
+        private byte[] bytes;
+
+        @Setup
+        public void setup(LogManagerBenchmark benchmark) {
+            bytes = new byte[benchmark.recordSize];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long append(Record record) {
+        return logManager.append(record.bytes);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public long appendContended(Record record) {
+        return logManager.append(record.bytes);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void appendAndFlush(Record record) {
+        logManager.flush(logManager.append(record.bytes));
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public void appendAndFlushContended(Record record) {
+        logManager.flush(logManager.append(record.bytes));
+    }
+}
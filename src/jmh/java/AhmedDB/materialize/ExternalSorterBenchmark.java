@@ -0,0 +1,93 @@
+package AhmedDB.materialize;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures an {@link ExternalSorter} on records with random keys, whose total size is many times the size of its
+ * workspace: the run phase with replacement selection, the merges, and the scan of the sorted records, which are
+ * checked to come out in order. The keys are drawn before the measurement, so drawing them is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExternalSorterBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int VALUE_SIZE = 16;
+
+    @Param({"1000000"})
+    public int records;
+
+    @Param({"16"})
+    public int keySize;
+
+    /**
+     * The number of buffers of the workspace of the sorter.
+     */
+    @Param({"256"})
+    public int workspace;
+
+    private File directory;
+    private FileManager fileManager;
+    private BufferManager bufferManager;
+    private byte[] keys;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, "jmh-sort.log");
+        bufferManager = new BufferManager(fileManager, logManager, workspace + 16);
+        keys = new byte[records * keySize];
+        new Random(42).nextBytes(keys);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : directory.listFiles()) file.delete();
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    @Benchmark
+    public long sort() {
+        ExternalSorter sorter = new ExternalSorter(fileManager, bufferManager, workspace);
+        byte[] value = new byte[VALUE_SIZE];
+        for (int i = 0; i < records; i++) sorter.add(Arrays.copyOfRange(keys, i * keySize, (i + 1) * keySize), value);
+        SortScan scan = sorter.sort();
+        long count = 0;
+        byte[] previous = null;
+        while (scan.next()) {
+            byte[] current = scan.getKey();
+            if (previous != null && Arrays.compareUnsigned(previous, current) > 0) throw new RuntimeException("the records are not sorted");
+            previous = current;
+            count++;
+        }
+        scan.close();
+        if (count != records) throw new RuntimeException(count + " records were returned instead of " + records);
+        return count;
+    }
+}
@@ -0,0 +1,159 @@
+package AhmedDB.record;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.TransactionExecutor;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a {@link BatchScan} with a {@link RecordFile} scan, which reads one value at a time, on two analytical
+ * queries over a table that fits in the buffer pool: the sum of a column over a range of keys, and the count of
+ * the records whose string column equals a value. Each record holds an int key, an int value and a short string.
+ * Each query runs in its own transaction, and the batch scans check that they return the result of the record scans.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchScanBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFERS = 8192;
+    private static final String TABLE = "jmh-batch.tbl";
+    private static final int KEY = 0;
+    private static final int VALUE = Integer.BYTES;
+    private static final int CATEGORY = 2 * Integer.BYTES;
+    private static final int CATEGORIES = 16;
+    private static final int RECORD_SIZE = CATEGORY + Integer.BYTES + 8;
+    private static final int RECORDS_PER_TRANSACTION = 10_000;
+
+    @Param({"1000000"})
+    public int records;
+
+    private File directory;
+    private FreeSpaceMap freeSpaceMap;
+    private TransactionExecutor executor;
+    private int low;
+    private int high;
+    private long expectedSum;
+    private long expectedCount;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, "jmh-batch.log");
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        freeSpaceMap = new FreeSpaceMap(fileManager);
+        executor = new TransactionExecutor(fileManager, logManager, bufferManager, new LockTable(), checkpointManager);
+        Random random = new Random(42);
+        for (int first = 0; first < records; first += RECORDS_PER_TRANSACTION) {
+            int from = first, to = Math.min(records, first + RECORDS_PER_TRANSACTION);
+            executor.run(transaction -> {
+                RecordFile recordFile = new RecordFile(transaction, TABLE, freeSpaceMap);
+                for (int key = from; key < to; key++) {
+                    recordFile.insert(RECORD_SIZE);
+                    recordFile.setInt(KEY, key);
+                    recordFile.setInt(VALUE, random.nextInt(1000));
+                    recordFile.setString(CATEGORY, "cat-" + random.nextInt(CATEGORIES));
+                }
+                recordFile.close();
+                return null;
+            });
+        }
+        low = records / 4;
+        high = low + records / 10;
+        expectedSum = rangeSumRecordAtATime();
+        expectedCount = stringCountRecordAtATime();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+        for (File file : directory.listFiles()) file.delete();
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    @Benchmark
+    public long rangeSumRecordAtATime() {
+        return executor.run(transaction -> {
+            RecordFile recordFile = new RecordFile(transaction, TABLE, freeSpaceMap);
+            long sum = 0;
+            while (recordFile.next()) {
+                int key = recordFile.getInt(KEY);
+                if (key >= low && key <= high) sum += recordFile.getInt(VALUE);
+            }
+            recordFile.close();
+            return sum;
+        });
+    }
+
+    @Benchmark
+    public long rangeSumBatchAtATime() {
+        long sum = executor.run(transaction -> {
+            BatchScan scan = new BatchScan(transaction, TABLE);
+            int key = scan.addIntColumn(KEY), value = scan.addIntColumn(VALUE);
+            long total = 0;
+            while (scan.next()) {
+                RecordBatch batch = scan.getBatch();
+                batch.filterInt(key, low, high);
+                total += batch.sumInts(value);
+            }
+            return total;
+        });
+        if (sum != expectedSum) throw new RuntimeException("the batch scan returned " + sum + " instead of " + expectedSum);
+        return sum;
+    }
+
+    @Benchmark
+    public long stringCountRecordAtATime() {
+        return executor.run(transaction -> {
+            RecordFile recordFile = new RecordFile(transaction, TABLE, freeSpaceMap);
+            long count = 0;
+            while (recordFile.next())
+                if (recordFile.getString(CATEGORY).equals("cat-3")) count++;
+            recordFile.close();
+            return count;
+        });
+    }
+
+    @Benchmark
+    public long stringCountBatchAtATime() {
+        long count = executor.run(transaction -> {
+            BatchScan scan = new BatchScan(transaction, TABLE);
+            int category = scan.addStringColumn(CATEGORY);
+            long total = 0;
+            while (scan.next()) {
+                RecordBatch batch = scan.getBatch();
+                batch.filterString(category, "cat-3");
+                total += batch.getSelectedCount();
+            }
+            return total;
+        });
+        if (count != expectedCount) throw new RuntimeException("the batch scan counted " + count + " instead of " + expectedCount);
+        return count;
+    }
+}
@@ -0,0 +1,164 @@
+package AhmedDB.record;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.TransactionExecutor;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how much a {@link FileSummary} speeds up the scans of a table much larger than the buffer pool, by
+ * letting them skip blocks. Each record holds a timestamp, which grows with the inserts and has a zone map, an id
+ * drawn at random, which has a Bloom filter, and a padding string. The benchmark runs range queries over 1% of the
+ * timestamps and lookups of existing ids, with and without the summary, cycling through {@link #QUERIES} queries
+ * drawn in advance; the queries that use the summary check that they find the records of the full scans.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileSummaryBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFERS = 256;
+    private static final int QUERIES = 16;
+    private static final String TABLE = "jmh-zone.tbl";
+    private static final int TIMESTAMP = 0;
+    private static final int ID = Integer.BYTES;
+    private static final int PADDING = 2 * Integer.BYTES;
+    private static final String PADDING_VALUE = "x".repeat(40);
+    private static final int RECORD_SIZE = PADDING + Integer.BYTES + PADDING_VALUE.length();
+    private static final int RECORDS_PER_TRANSACTION = 10_000;
+
+    @Param({"1000000"})
+    public int records;
+
+    private File directory;
+    private FileSummary summary;
+    private TransactionExecutor executor;
+    private final int[][] ranges = new int[QUERIES][];
+    private final int[][] lookups = new int[QUERIES][];
+    private final long[] rangeCounts = new long[QUERIES];
+    private final long[] lookupCounts = new long[QUERIES];
+    private int nextRange;
+    private int nextLookup;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, "jmh-zone.log");
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        FreeSpaceMap freeSpaceMap = new FreeSpaceMap(fileManager);
+        FileSummaries summaries = new FileSummaries(fileManager, bufferManager);
+        summary = summaries.open(TABLE, new int[]{TIMESTAMP}, new int[]{ID});
+        executor = new TransactionExecutor(fileManager, logManager, bufferManager, new LockTable(), checkpointManager);
+
+        Random random = new Random(42);
+        int[] ids = new int[records];
+        for (int first = 0; first < records; first += RECORDS_PER_TRANSACTION) {
+            int from = first, to = Math.min(records, first + RECORDS_PER_TRANSACTION);
+            executor.run(transaction -> {
+                RecordFile recordFile = new RecordFile(transaction, TABLE, freeSpaceMap, summaries);
+                for (int i = from; i < to; i++) {
+                    ids[i] = random.nextInt(Integer.MAX_VALUE);
+                    recordFile.insert(RECORD_SIZE);
+                    recordFile.setInt(TIMESTAMP, i + 1);
+                    recordFile.setInt(ID, ids[i]);
+                    recordFile.setString(PADDING, PADDING_VALUE);
+                }
+                recordFile.close();
+                return null;
+            });
+        }
+        summaries.flush();
+
+        int width = Math.max(1, records / 100);
+        for (int i = 0; i < QUERIES; i++) {
+            int low = 1 + random.nextInt(records - width + 1);
+            ranges[i] = new int[]{TIMESTAMP, low, low + width - 1};
+            rangeCounts[i] = count(ranges[i], false);
+            int id = ids[random.nextInt(records)];
+            lookups[i] = new int[]{ID, id, id};
+            lookupCounts[i] = count(lookups[i], false);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+        for (File file : directory.listFiles()) file.delete();
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    @Benchmark
+    public long rangeFullScan() {
+        return count(ranges[nextRange++ % QUERIES], false);
+    }
+
+    @Benchmark
+    public long rangeZoneMap() {
+        int query = nextRange++ % QUERIES;
+        return check(count(ranges[query], true), rangeCounts[query]);
+    }
+
+    @Benchmark
+    public long lookupFullScan() {
+        return count(lookups[nextLookup++ % QUERIES], false);
+    }
+
+    @Benchmark
+    public long lookupBloomFilter() {
+        int query = nextLookup++ % QUERIES;
+        return check(count(lookups[query], true), lookupCounts[query]);
+    }
+
+    /**
+     * Runs a query in a transaction.
+     * @param query the offset of the column, and the lowest and the highest value of the range
+     * @param skip true if the scan skips the blocks excluded by the summary
+     * @return the number of records found
+     */
+    private long count(int[] query, boolean skip) {
+        int offset = query[0], low = query[1], high = query[2];
+        return executor.run(transaction -> {
+            BatchScan scan = new BatchScan(transaction, TABLE);
+            int column = scan.addIntColumn(offset);
+            if (skip) scan.skipBlocks(summary, offset, low, high);
+            long count = 0;
+            while (scan.next()) {
+                RecordBatch batch = scan.getBatch();
+                batch.filterInt(column, low, high);
+                count += batch.getSelectedCount();
+            }
+            return count;
+        });
+    }
+
+    private static long check(long count, long expected) {
+        if (count != expected) throw new RuntimeException("the query found " + count + " records instead of " + expected);
+        return count;
+    }
+}
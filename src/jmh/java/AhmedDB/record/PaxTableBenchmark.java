@@ -0,0 +1,155 @@
+package AhmedDB.record;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.TransactionExecutor;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a wide table stored in slotted pages with the same table stored in a {@link PaxTable}, on an aggregate
+ * that reads two of its columns: the sum of one column over the rows whose other column is in a range. The table
+ * has sixteen int columns of various kinds (a sequence, a date, small counts, codes, random values), and the buffer
+ * pool is much smaller than the tables. The PAX scan checks that it returns the sum of the scan of the slotted pages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaxTableBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFERS = 512;
+    private static final String ROW_TABLE = "jmh-pax-rows.tbl";
+    private static final String PAX_TABLE = "jmh-pax-columns.tbl";
+    private static final int COLUMNS = 16;
+    private static final int RECORDS_PER_TRANSACTION = 10_000;
+    /**
+     * The column of the range, a day number, and the column that is summed, a quantity.
+     */
+    private static final int DAY = 1, QUANTITY = 2;
+
+    @Param({"500000"})
+    public int rows;
+
+    private File directory;
+    private TransactionExecutor executor;
+    private PaxTable paxTable;
+    private int low;
+    private int high;
+    private long expected;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, "jmh-pax.log");
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        FreeSpaceMap freeSpaceMap = new FreeSpaceMap(fileManager);
+        executor = new TransactionExecutor(fileManager, logManager, bufferManager, new LockTable(), checkpointManager);
+        int[] types = new int[COLUMNS];
+        Arrays.fill(types, Types.INTEGER);
+        paxTable = new PaxTable(fileManager, logManager, bufferManager, checkpointManager, PAX_TABLE, types);
+
+        Random random = new Random(42);
+        int[][] values = new int[RECORDS_PER_TRANSACTION][COLUMNS];
+        PaxWriter writer = new PaxWriter(paxTable);
+        for (int first = 0; first < rows; first += RECORDS_PER_TRANSACTION) {
+            int count = Math.min(rows - first, RECORDS_PER_TRANSACTION);
+            for (int i = 0; i < count; i++) fill(values[i], first + i, random);
+            executor.run(transaction -> {
+                RecordFile recordFile = new RecordFile(transaction, ROW_TABLE, freeSpaceMap);
+                for (int i = 0; i < count; i++) {
+                    recordFile.insert(COLUMNS * Integer.BYTES);
+                    for (int column = 0; column < COLUMNS; column++) recordFile.setInt(column * Integer.BYTES, values[i][column]);
+                }
+                recordFile.close();
+                return null;
+            });
+            for (int i = 0; i < count; i++) {
+                writer.insert();
+                for (int column = 0; column < COLUMNS; column++) writer.setInt(column, values[i][column]);
+            }
+        }
+        writer.close();
+        low = rows / 1000 / 4;
+        high = low + rows / 1000 / 2;
+        expected = sumSlottedPages();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+        for (File file : directory.listFiles()) file.delete();
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    @Benchmark
+    public long sumSlottedPages() {
+        return executor.run(transaction -> {
+            BatchScan scan = new BatchScan(transaction, ROW_TABLE);
+            int day = scan.addIntColumn(DAY * Integer.BYTES), quantity = scan.addIntColumn(QUANTITY * Integer.BYTES);
+            long sum = 0;
+            while (scan.next()) {
+                RecordBatch batch = scan.getBatch();
+                batch.filterInt(day, low, high);
+                sum += batch.sumInts(quantity);
+            }
+            return sum;
+        });
+    }
+
+    @Benchmark
+    public long sumPax() {
+        PaxScan scan = new PaxScan(paxTable);
+        int day = scan.addIntColumn(DAY), quantity = scan.addIntColumn(QUANTITY);
+        long sum = 0;
+        while (scan.next()) {
+            RecordBatch batch = scan.getBatch();
+            batch.filterInt(day, low, high);
+            sum += batch.sumInts(quantity);
+        }
+        if (sum != expected) throw new RuntimeException("the PAX scan returned " + sum + " instead of " + expected);
+        return sum;
+    }
+
+    /**
+     * The values of a row: a sequence number, a day (a thousand rows per day), small quantities, a few codes,
+     * values that repeat in runs, and random values.
+     */
+    private static void fill(int[] row, int number, Random random) {
+        row[0] = number;
+        row[DAY] = number / 1000;
+        row[QUANTITY] = 1 + random.nextInt(50);
+        for (int column = 3; column < COLUMNS; column++) {
+            if (column % 4 == 0) row[column] = random.nextInt(8) * 1_000_003;
+            else if (column % 4 == 1) row[column] = number / 5000 * 17;
+            else if (column % 4 == 2) row[column] = random.nextInt(1 << 12);
+            else row[column] = random.nextInt();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package AhmedDB.record;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.TransactionExecutor;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads records into a new record file with logged inserts ({@link RecordFile}), in transactions of
+ * {@link #RECORDS_PER_TRANSACTION} records, and with a {@link RecordFileLoader} in one transaction. Each record holds
+ * four ints and a short string. A load ends once its blocks are on the disk: the logged inserts flush the buffer
+ * pool, and the loader writes its extents itself. After each load, the benchmark checks that the table holds the
+ * loaded records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecordFileLoaderBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFERS = 256;
+    private static final int NAME = 4 * Integer.BYTES;
+    private static final int RECORD_SIZE = NAME + Integer.BYTES + 12;
+    private static final int RECORDS_PER_TRANSACTION = 10_000;
+
+    @Param({"1000000"})
+    public int records;
+
+    private File directory;
+    private BufferManager bufferManager;
+    private FreeSpaceMap freeSpaceMap;
+    private TransactionExecutor executor;
+    private int tables;
+    private String table;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, "jmh-load.log");
+        bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        freeSpaceMap = new FreeSpaceMap(fileManager);
+        executor = new TransactionExecutor(fileManager, logManager, bufferManager, new LockTable(), checkpointManager);
+    }
+
+    /**
+     * Each load fills a table of its own, since the loader only appends to a file.
+     */
+    @Setup(Level.Iteration)
+    public void newTable() {
+        table = "jmh-load-" + tables++ + ".tbl";
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkTable() {
+        long[] summary = executor.run(transaction -> {
+            BatchScan scan = new BatchScan(transaction, table);
+            int column = scan.addIntColumn(3 * Integer.BYTES);
+            long count = 0, sum = 0;
+            while (scan.next()) {
+                RecordBatch batch = scan.getBatch();
+                count += batch.getRowCount();
+                sum += batch.sumInts(column);
+            }
+            return new long[]{count, sum};
+        });
+        long expectedSum = 0;
+        for (int i = 0; i < records; i++) expectedSum += value(i, 3);
+        if (summary[0] != records || summary[1] != expectedSum)
+            throw new RuntimeException(table + " holds " + summary[0] + " records instead of " + records);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.close();
+        for (File file : directory.listFiles()) file.delete();
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    @Benchmark
+    public void loggedInserts() {
+        for (int first = 0; first < records; first += RECORDS_PER_TRANSACTION) {
+            int from = first, to = Math.min(records, first + RECORDS_PER_TRANSACTION);
+            executor.run(transaction -> {
+                RecordFile recordFile = new RecordFile(transaction, table, freeSpaceMap);
+                for (int i = from; i < to; i++) {
+                    recordFile.insert(RECORD_SIZE);
+                    for (int column = 0; column < 4; column++) recordFile.setInt(column * Integer.BYTES, value(i, column));
+                    recordFile.setString(NAME, name(i));
+                }
+                recordFile.close();
+                return null;
+            });
+        }
+        bufferManager.flushAll();
+    }
+
+    @Benchmark
+    public void bulkLoad() {
+        executor.run(transaction -> {
+            RecordFileLoader loader = new RecordFileLoader(transaction, table, freeSpaceMap);
+            for (int i = 0; i < records; i++) {
+                loader.insert(RECORD_SIZE);
+                for (int column = 0; column < 4; column++) loader.setInt(column * Integer.BYTES, value(i, column));
+                loader.setString(NAME, name(i));
+            }
+            loader.close();
+            return null;
+        });
+    }
+
+    private static int value(int record, int column) {
+        return record * (column + 1);
+    }
+
+    private static String name(int record) {
+        return "name-" + record % 100_000;
+    }
+}
@@ -0,0 +1,145 @@
+package AhmedDB.server;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.record.FreeSpaceMap;
+import AhmedDB.record.RecordFileLoader;
+import AhmedDB.record.RecordId;
+import AhmedDB.transaction.TransactionExecutor;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link DatabaseServer} over localhost. A table of records, each holding an int and a string, is
+ * loaded first; then each of {@link #CONNECTIONS} threads has a connection of its own, and sends batches of
+ * {@link #statements} reads of random records. An operation sends {@link #depth} batches before it reads their
+ * responses, so a depth of 1 is one round trip per request and more is pipelining; the sample time mode gives the
+ * percentiles of the time of an operation. The values read are checked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseServerBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFERS = 1024;
+    private static final int CONNECTIONS = 16;
+    private static final String TABLE = "jmh-server.tbl";
+    private static final int RECORD_SIZE = 2 * Integer.BYTES + 12;
+
+    @Param({"100000"})
+    public int records;
+
+    /**
+     * The number of requests in flight on a connection.
+     */
+    @Param({"1", "4"})
+    public int depth;
+
+    /**
+     * The number of reads of a request.
+     */
+    @Param({"4"})
+    public int statements;
+
+    private File directory;
+    private TransactionExecutor executor;
+    private DatabaseServer server;
+    private RecordId[] recordIds;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, "jmh-server.log");
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        FreeSpaceMap freeSpaceMap = new FreeSpaceMap(fileManager);
+        executor = new TransactionExecutor(fileManager, logManager, bufferManager, new LockTable(), checkpointManager);
+        recordIds = executor.run(transaction -> {
+            RecordFileLoader loader = new RecordFileLoader(transaction, TABLE, freeSpaceMap);
+            RecordId[] ids = new RecordId[records];
+            for (int i = 0; i < records; i++) {
+                loader.insert(RECORD_SIZE);
+                loader.setInt(0, i);
+                loader.setString(Integer.BYTES, "record-" + i);
+                ids[i] = loader.getRecordId();
+            }
+            loader.close();
+            return ids;
+        });
+        server = new DatabaseServer(executor, freeSpaceMap, new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+        executor.close();
+        for (File file : directory.listFiles()) file.delete();
+        directory.delete();
+        directory.getParentFile().delete();
+    }
+
+    /**
+     * The connection of a thread, and the records read by the requests in flight.
+     */
+    @State(Scope.Thread)
+    public static class Connection {
+        private DatabaseClient client;
+        private int[][] expected;
+
+        @Setup
+        public void connect(DatabaseServerBenchmark benchmark) throws IOException {
+            client = new DatabaseClient("127.0.0.1", benchmark.server.getPort());
+            expected = new int[benchmark.depth][];
+        }
+
+        @TearDown
+        public void close() {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(CONNECTIONS)
+    public void readBatches(Connection connection) {
+        for (int request = 0; request < depth; request++) {
+            Batch batch = new Batch();
+            int[] records = new int[statements];
+            for (int i = 0; i < statements; i++) {
+                records[i] = ThreadLocalRandom.current().nextInt(this.records);
+                batch.read(TABLE, recordIds[records[i]]).getInt(0);
+            }
+            connection.expected[connection.client.send(batch) % depth] = records;
+        }
+        for (int request = 0; request < depth; request++) {
+            Response response = connection.client.receive();
+            int slot = response.getRequestId() % depth;
+            for (int i = 0; i < statements; i++)
+                if (response.nextInt() != connection.expected[slot][i]) throw new RuntimeException("a read returned a wrong value");
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package AhmedDB.transaction;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.concurrency.DeadlockDetector;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A TPC-B style load, which measures the engine end to end: transactions, locks, buffers and the log.
+ * The database has branches, ten tellers per branch and accounts, each one with an int balance.
+ * A transaction adds a random amount to the balance of an account, of a teller and of its branch, and appends
+ * a history record. The account belongs to the branch of the teller 85% of the time, as in TPC-B.
+ * Each branch and each teller has a block of its own, the balances of the accounts are packed in blocks,
+ * and the history is a ring of blocks.<br>
+ * The transactions are submitted to a {@link TransactionExecutor}, which runs each one on a virtual thread
+ * (a platform thread before Java 21) and retries the ones aborted by the {@link DeadlockDetector}.
+ * Each of the {@link #clients} clients submits a transaction, waits for its commit, and submits the next one;
+ * the clients are threads of their own, so there can be thousands of them. An invocation runs {@link #transactions}
+ * transactions, and its time is the score. The latency of each transaction is measured by its client, from the
+ * submission to the commit, and after each iteration the benchmark prints the throughput and the p50, p99 and
+ * p99.9 latencies of the iteration. After the measurement, it checks that the sums of the balances of the
+ * branches, of the tellers and of the accounts are equal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TpcbBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BUFFERS = 1024;
+    private static final int TELLERS_PER_BRANCH = 10;
+    private static final int HISTORY_BLOCKS = 64;
+    private static final int HISTORY_RECORD_SIZE = 4 * Integer.BYTES;
+    private static final int BALANCE_OFFSET = Buffer.PAGE_HEADER_SIZE;
+    private static final int ACCOUNTS_PER_BLOCK = (BLOCK_SIZE - Buffer.PAGE_HEADER_SIZE) / Integer.BYTES;
+    private static final int HISTORY_PER_BLOCK = (BLOCK_SIZE - Buffer.PAGE_HEADER_SIZE) / HISTORY_RECORD_SIZE;
+    private static final String BRANCHES = "tpcb-branch.tbl";
+    private static final String TELLERS = "tpcb-teller.tbl";
+    private static final String ACCOUNTS = "tpcb-account.tbl";
+    private static final String HISTORY = "tpcb-history.tbl";
+
+    @Param({"1", "4"})
+    public int branches;
+
+    @Param({"100000"})
+    public int accountsPerBranch;
+
+    @Param({"1", "16", "1000", "4000"})
+    public int clients;
+
+    @Param({"10000"})
+    public int transactions;
+
+    private final AtomicLong historySlots = new AtomicLong();
+    private File directory;
+    private DeadlockDetector deadlockDetector;
+    private TransactionExecutor executor;
+    private ExecutorService clientThreads;
+    /**
+     * The latencies of the transactions of the current iteration, in nanoseconds, one array per client.
+     */
+    private long[][] latencies;
+    private long iterationStart;
+    private long iterationEnd;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = new File(Files.createTempDirectory("ahmeddb-jmh").toFile(), "db");
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, "tpcb.log");
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        LockTable lockTable = new LockTable();
+        deadlockDetector = new DeadlockDetector(lockTable, bufferManager);
+        deadlockDetector.start(100);
+        createFiles(fileManager);
+        executor = new TransactionExecutor(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+        clientThreads = TransactionExecutor.newThreadPerTaskExecutor("tpcb-client");
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() {
+        latencies = new long[clients][];
+        //the transactions are shared out among the clients, the first ones run one more if they do not divide evenly
+        for (int client = 0; client < clients; client++)
+            latencies[client] = new long[transactions / clients + (client < transactions % clients ? 1 : 0)];
+    }
+
+    @TearDown(Level.Iteration)
+    public void printLatencies() {
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        double seconds = (iterationEnd - iterationStart) / 1e9;
+        System.out.printf("%n%,d clients: %,.0f tps, latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, %,d retries%n",
+                clients, all.length / seconds, percentile(all, 50) / 1e6, percentile(all, 99) / 1e6,
+                percentile(all, 99.9) / 1e6, executor.getRetryCount());
+    }
+
+    @TearDown
+    public void tearDown() {
+        boolean consistent = executor.run(this::balancesAreConsistent);
+        deadlockDetector.stop();
+        clientThreads.shutdown();
+        executor.close();
+        for (File file : directory.listFiles()) file.delete();
+        directory.delete();
+        directory.getParentFile().delete();
+        if (!consistent) throw new RuntimeException("the sums of the balances differ");
+    }
+
+    @Benchmark
+    public void transfers() {
+        CompletableFuture<?>[] clientRuns = new CompletableFuture<?>[clients];
+        iterationStart = System.nanoTime();
+        for (int client = 0; client < clients; client++) {
+            long[] clientLatencies = latencies[client];
+            clientRuns[client] = CompletableFuture.runAsync(() -> runClient(clientLatencies), clientThreads);
+        }
+        CompletableFuture.allOf(clientRuns).join();
+        iterationEnd = System.nanoTime();
+    }
+
+    /**
+     * Runs the transactions of a client one after the other, through the executor.
+     * @param clientLatencies the array that receives the latency of each transaction, its length is their number
+     */
+    private void runClient(long[] clientLatencies) {
+        for (int i = 0; i < clientLatencies.length; i++) {
+            long start = System.nanoTime();
+            executor.submit(this::transfer).join();
+            clientLatencies[i] = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @param sorted the latencies, in ascending order
+     * @param percentile a percentile, between 0 and 100
+     * @return the latency below which the percentile of the latencies fall, or 0 if there is none
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(sorted.length * percentile / 100);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * Appends the blocks of the tables, whose balances start at zero.
+     */
+    private void createFiles(FileManager fileManager) {
+        for (int i = 0; i < branches; i++) fileManager.append(BRANCHES);
+        for (int i = 0; i < branches * TELLERS_PER_BRANCH; i++) fileManager.append(TELLERS);
+        int accountBlocks = (branches * accountsPerBranch + ACCOUNTS_PER_BLOCK - 1) / ACCOUNTS_PER_BLOCK;
+        for (int i = 0; i < accountBlocks; i++) fileManager.append(ACCOUNTS);
+        for (int i = 0; i < HISTORY_BLOCKS; i++) fileManager.append(HISTORY);
+    }
+
+    /**
+     * The TPC-B transaction. All the blocks are locked before any is pinned, always in the same order
+     * (account, teller, branch, history), so that a transaction waiting for a lock pins no buffer,
+     * and the waits never form a cycle.
+     */
+    private Void transfer(Transaction transaction) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int teller = random.nextInt(branches * TELLERS_PER_BRANCH);
+        int branch = teller / TELLERS_PER_BRANCH;
+        int accountBranch = branches > 1 && random.nextInt(100) >= 85 ? random.nextInt(branches) : branch;
+        int account = accountBranch * accountsPerBranch + random.nextInt(accountsPerBranch);
+        int delta = random.nextInt(-99999, 100000);
+        long historySlot = historySlots.getAndIncrement();
+
+        LogicalBlock accountBlock = new LogicalBlock(ACCOUNTS, account / ACCOUNTS_PER_BLOCK);
+        int accountOffset = BALANCE_OFFSET + account % ACCOUNTS_PER_BLOCK * Integer.BYTES;
+        LogicalBlock tellerBlock = new LogicalBlock(TELLERS, teller);
+        LogicalBlock branchBlock = new LogicalBlock(BRANCHES, branch);
+        //consecutive history records go to different blocks, so that concurrent transactions do not wait for each other
+        LogicalBlock historyBlock = new LogicalBlock(HISTORY, (int) (historySlot % HISTORY_BLOCKS));
+        int historyOffset = BALANCE_OFFSET + (int) (historySlot / HISTORY_BLOCKS % HISTORY_PER_BLOCK) * HISTORY_RECORD_SIZE;
+
+        LogicalBlock[] blocks = {accountBlock, tellerBlock, branchBlock, historyBlock};
+        for (LogicalBlock block : blocks) transaction.lockForUpdate(block);
+        for (LogicalBlock block : blocks) transaction.pin(block);
+        add(transaction, accountBlock, accountOffset, delta);
+        add(transaction, tellerBlock, BALANCE_OFFSET, delta);
+        add(transaction, branchBlock, BALANCE_OFFSET, delta);
+        transaction.setInt(historyBlock, historyOffset, account, true);
+        transaction.setInt(historyBlock, historyOffset + Integer.BYTES, teller, true);
+        transaction.setInt(historyBlock, historyOffset + 2 * Integer.BYTES, branch, true);
+        transaction.setInt(historyBlock, historyOffset + 3 * Integer.BYTES, delta, true);
+        return null;
+    }
+
+    private static void add(Transaction transaction, LogicalBlock block, int offset, int delta) {
+        transaction.setInt(block, offset, transaction.getInt(block, offset) + delta, true);
+    }
+
+    /**
+     * @return true if the sums of the balances of the branches, of the tellers and of the accounts are equal,
+     * modulo 2<sup>32</sup> since the balances are ints that may overflow
+     */
+    private boolean balancesAreConsistent(Transaction transaction) {
+        long branchTotal = 0, tellerTotal = 0, accountTotal = 0;
+        for (int branch = 0; branch < branches; branch++)
+            branchTotal += balance(transaction, new LogicalBlock(BRANCHES, branch), BALANCE_OFFSET);
+        for (int teller = 0; teller < branches * TELLERS_PER_BRANCH; teller++)
+            tellerTotal += balance(transaction, new LogicalBlock(TELLERS, teller), BALANCE_OFFSET);
+        for (int account = 0; account < branches * accountsPerBranch; account++)
+            accountTotal += balance(transaction, new LogicalBlock(ACCOUNTS, account / ACCOUNTS_PER_BLOCK),
+                    BALANCE_OFFSET + account % ACCOUNTS_PER_BLOCK * Integer.BYTES);
+        return (int) branchTotal == (int) tellerTotal && (int) tellerTotal == (int) accountTotal;
+    }
+
+    private static int balance(Transaction transaction, LogicalBlock block, int offset) {
+        transaction.pin(block);
+        int balance = transaction.getInt(block, offset);
+        transaction.unpin(block);
+        return balance;
+    }
+}
@@ -0,0 +1,133 @@
+package AhmedDB.transaction.recovery;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.log.CommitRecord;
+import AhmedDB.log.LogManager;
+import AhmedDB.log.SetIntRecord;
+import AhmedDB.log.StartRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures crash recovery over a synthetic log, written directly with the log record classes: small transactions,
+ * {@link #CONCURRENT_TRANSACTIONS} at a time, set ints of a small data file, and one transaction in
+ * {@link #LOSER_EVERY} never finishes, as if the system crashed while it was running. There is no checkpoint, so
+ * recovery analyzes and redoes the whole log, then undoes the unfinished transactions. The log is written once,
+ * and each measured recovery runs on a fresh copy of it, since a recovery appends the rollback of the unfinished
+ * transactions. The blocks of the data file are pinned
+ * before the recovery, so the time is spent on the log rather than on data page I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RecoveryManagerBenchmark {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int DATA_BLOCKS = 64;
+    private static final int CONCURRENT_TRANSACTIONS = 8;
+    private static final int LOSER_EVERY = 100;
+    private static final String LOG = "jmh-recovery.log";
+    private static final String[] FILES = {LOG, LOG + ".files", "jmh-recovery.tbl"};
+
+    @Param({"100000"})
+    public int transactions;
+
+    @Param({"2"})
+    public int updatesPerTransaction;
+
+    @Param({"1", "4"})
+    public int redoWorkers;
+
+    private File root;
+    private File logDirectory;
+    private FileManager logFileManager;
+    private final LogicalBlock[] blocks = new LogicalBlock[DATA_BLOCKS];
+    private File directory;
+    private FileManager fileManager;
+    private RecoveryManager recoveryManager;
+
+    @Setup(Level.Trial)
+    public void writeLog() throws IOException {
+        root = Files.createTempDirectory("ahmeddb-jmh").toFile();
+        logDirectory = new File(root, "log");
+        logFileManager = new FileManager(logDirectory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(logFileManager, LOG);
+        for (int i = 0; i < DATA_BLOCKS; i++) blocks[i] = logFileManager.append(FILES[2]);
+        long[] lastLSNs = new long[CONCURRENT_TRANSACTIONS];
+        int[] values = new int[DATA_BLOCKS];
+        for (int first = 0; first < transactions; first += CONCURRENT_TRANSACTIONS) {
+            int count = Math.min(CONCURRENT_TRANSACTIONS, transactions - first);
+            for (int i = 0; i < count; i++) lastLSNs[i] = StartRecord.writeToLog(logManager, first + i);
+            for (int update = 0; update < updatesPerTransaction; update++) {
+                for (int i = 0; i < count; i++) {
+                    int transaction = first + i;
+                    //the unfinished transactions set values that no other transaction sets, as if they kept their locks
+                    int block = (transaction * 31 + update * CONCURRENT_TRANSACTIONS) % DATA_BLOCKS;
+                    int offset = 8 + Integer.BYTES * (update % 64 + (isLoser(transaction) ? 64 : 0));
+                    lastLSNs[i] = SetIntRecord.writeToLog(logManager, transaction, lastLSNs[i], blocks[block], offset, values[block], transaction);
+                    values[block] = transaction;
+                }
+            }
+            for (int i = 0; i < count; i++)
+                if (!isLoser(first + i)) CommitRecord.writeToLog(logManager, first + i, lastLSNs[i]);
+        }
+        logManager.flush(Long.MAX_VALUE);
+    }
+
+    @Setup(Level.Iteration)
+    public void restart() throws IOException {
+        directory = new File(root, "restart");
+        directory.mkdirs();
+        for (String file : FILES)
+            Files.copy(new File(logDirectory, file).toPath(), new File(directory, file).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, LOG);
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, 2 * DATA_BLOCKS);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        for (LogicalBlock block : blocks) bufferManager.pin(block);
+        recoveryManager = new RecoveryManager(null, transactions, logManager, bufferManager, checkpointManager);
+    }
+
+    @Benchmark
+    public void recover() {
+        recoveryManager.recover(redoWorkers);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteRestart() {
+        for (String file : FILES) fileManager.delete(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLog() {
+        for (String file : FILES) logFileManager.delete(file);
+        logDirectory.delete();
+        directory.delete();
+        root.delete();
+    }
+
+    private static boolean isLoser(int transaction) {
+        return transaction % LOSER_EVERY == LOSER_EVERY - 1;
+    }
+}
@@ -13,8 +13,21 @@ import AhmedDB.log.LogManager;
  * the number of times the buffer has been pinned,
  * whether its contents have been modified,
  * and if so, the id and lsn of the modifying transaction.
+ * The first bytes of every data page form a header that holds the page LSN, which is the LSN of the
+ * most recent log record whose update is reflected in the page. It is written with the page, so recovery
+ * can tell whether a logged update reached the disk before the crash. Clients store their values after
+ * {@link #PAGE_HEADER_SIZE}.
  */
 public class Buffer {
+    /**
+     * The position of the page LSN in a data page.
+     */
+    public static final int PAGE_LSN_OFFSET = 0;
+    /**
+     * The number of bytes reserved at the start of a data page.
+     */
+    public static final int PAGE_HEADER_SIZE = Long.BYTES;
+
     private final FileManager fileManager;
     private final LogManager logManager;
     private final Page associatedPage;
@@ -37,10 +50,25 @@ public class Buffer {
     /**
      * Log information. If the page has been modified, then the buffer holds the (log sequence number) LSN of
      * the most recent log record. LSN values are never negative. If a client calls
-     * {@link Buffer#setModified(int txNum, int lsn)} method with a negative LSN,
+     * {@link Buffer#setModified(int txNum, long lsn)} method with a negative LSN,
      * t indicates that a log record was not generated for that update.
      */
-    private int lsn = -1;
+    private long lsn = -1;
+    /**
+     * The LSN of the first log record that modified the page since it was last written to disk,
+     * or -1 if the page is clean. Recovery has to redo the updates of the page from that record on.
+     */
+    private long recoveryLSN = -1;
+    /**
+     * The pins of the block since it was read into the buffer. A block taken from the victim cache starts at one,
+     * since it was already pinned again after it left the pool.
+     */
+    private int references = 0;
+    /**
+     * True while the page of the block is being restored from the victim cache, by the thread that pinned it
+     * first, without the monitor of the buffer manager. The page cannot be read until then.
+     */
+    private boolean loading = false;
 
     public Buffer(FileManager fileManager, LogManager logManager) {
         this.fileManager = fileManager;
@@ -63,14 +91,34 @@ public class Buffer {
 
     /**
      * If the client modifies the page, then it is also responsible for
-     * generating an appropriate log record and calling the buffer’s setModified method
+     * generating an appropriate log record and calling the buffer’s setModified method.
+     * The LSN is also stored as the page LSN in the header of the page.
      * @param txNum the modifying transaction
      * @param lsn log sequence number (the generated log record)
      */
-    public void setModified(int txNum, int lsn) {
+    public void setModified(int txNum, long lsn) {
         this.txnum = txNum;
-        if (lsn >= 0)
+        if (lsn < 0) return;
+        if (recoveryLSN < 0) recoveryLSN = lsn;
+        if (lsn > this.lsn) {
             this.lsn = lsn;
+            associatedPage.setLong(PAGE_LSN_OFFSET, lsn);
+        }
+    }
+
+    /**
+     * @return the LSN of the most recent log record whose update is reflected in the page
+     */
+    public long getPageLSN() {
+        return associatedPage.getLong(PAGE_LSN_OFFSET);
+    }
+
+    /**
+     * @return the LSN of the first log record that modified the page since it was last written to disk,
+     * or -1 if the page is clean
+     */
+    public long getRecoveryLSN() {
+        return recoveryLSN;
     }
 
     /**
@@ -86,20 +134,69 @@ public class Buffer {
         return txnum;
     }
 
+    /**
+     * @return true if the block was pinned more than once since it was read into the buffer
+     */
+    boolean isReReferenced() {
+        return references > 1;
+    }
+
+    /**
+     * @return true while the page is being restored from the victim cache
+     */
+    boolean isLoading() {
+        return loading;
+    }
+
     /**
      * Reads the contents of the specified block into
      * the contents of the buffer.
      * If the buffer was dirty, then its previous contents
      * are first written to disk.
+     * If the pool has a victim cache, the previous contents are kept there if they were clean and pinned more
+     * than once, and the block is taken from the cache instead of the disk if it is cached. The page then stays
+     * loading until {@link #finishLoading()}, since the cache restores it once the buffer manager released its monitor.
      * @param b a reference to the data block
+     * @param victimCache the second tier of the pool, or null if it has none
      */
-    void assignToBlock(LogicalBlock b) {
+    void assignToBlock(LogicalBlock b, VictimCache victimCache) {
+        boolean clean = txnum < 0;
         flush();
+        if (victimCache != null && associatedLogicalBlock != null && clean && isReReferenced())
+            victimCache.evict(associatedLogicalBlock, associatedPage);
         associatedLogicalBlock = b;
-        fileManager.read(associatedLogicalBlock, associatedPage);
+        loading = victimCache != null && victimCache.take(associatedLogicalBlock, this);
+        references = loading ? 1 : 0;
+        if (!loading) {
+            fileManager.read(associatedLogicalBlock, associatedPage);
+            lsn = getPageLSN();
+        }
         pins = 0;
     }
 
+    /**
+     * Detaches the buffer from its block, whose page is written first if it was modified, and clears the page,
+     * so that the buffer serves as memory that belongs to no block (see {@link BufferManager#reserve(int)}).
+     * The page of the block is dropped rather than moved to the victim cache, whose transfers hold one page
+     * per thread, while a reservation detaches several buffers at once.
+     */
+    void assignToNoBlock() {
+        flush();
+        associatedLogicalBlock = null;
+        associatedPage.writeBytes(0, new byte[fileManager.blockSize()], 0, fileManager.blockSize());
+        lsn = -1;
+        references = 0;
+        pins = 0;
+    }
+
+    /**
+     * Ends the loading of a page restored from the victim cache.
+     */
+    void finishLoading() {
+        loading = false;
+        lsn = getPageLSN();
+    }
+
     /**
      * Write the buffer to its disk block if it is dirty.
      * Ensures that the buffer’s assigned disk block has the same values as its page.
@@ -112,6 +209,7 @@ public class Buffer {
             logManager.flush(lsn);
             fileManager.write(associatedLogicalBlock, associatedPage);
             txnum = -1;
+            recoveryLSN = -1;
         }
     }
 
@@ -120,6 +218,7 @@ public class Buffer {
      */
     void pin() {
         pins++;
+        references++;
     }
 
     /**
@@ -4,16 +4,56 @@ package AhmedDB.buffer;
 import AhmedDB.file.FileManager;
 import AhmedDB.file.LogicalBlock;
 import AhmedDB.log.LogManager;
+import AhmedDB.metrics.BufferMetrics;
+import AhmedDB.metrics.PinWaitEvent;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Manages the pinning and unpinning of buffers to blocks.
  * Each database system has one {@link BufferManager} object, which is created during
  * system startup.
+ * Pins may be made on behalf of a transaction, in which case the manager remembers which transactions
+ * pin buffers and which ones wait for a buffer, so that a deadlock detector can tell whether a waiting
+ * transaction will ever get one (see {@link #waitState()}).
  */
 public class BufferManager {
     private final Buffer[] bufferPool;
     private int numAvailable;
-    private static final long MAX_TIME = 10000; // 10 seconds
+    /**
+     * The default time limit of a wait for a buffer, in milliseconds.
+     */
+    public static final long MAX_TIME = 10000; // 10 seconds
+    private long maxWaitTime = MAX_TIME;
+    /**
+     * The number of pins held by each transaction.
+     */
+    private final Map<Integer, Integer> transactionPins = new HashMap<>();
+    /**
+     * The number of pins that were not made on behalf of a transaction.
+     */
+    private int untrackedPins = 0;
+    /**
+     * The transactions waiting for a buffer, mapped to the time when they started waiting (see {@link System#nanoTime()}).
+     */
+    private final Map<Integer, Long> waiting = new HashMap<>();
+    /**
+     * The waiting transactions chosen as deadlock victims.
+     */
+    private final Set<Integer> victims = new HashSet<>();
+    /**
+     * The hits, misses, evictions and waits of the pins
+     */
+    private final BufferMetrics metrics;
+    /**
+     * The compressed copies of the pages that left the pool, or null if the pool has no second tier
+     */
+    private final VictimCache victimCache;
+    private final FileManager fileManager;
 
     /**
      * Creates a buffer manager having the specified number
@@ -23,10 +63,25 @@ public class BufferManager {
      * @param numBuffs the number of buffer slots to allocate (size of buffer pool)
      */
     public BufferManager(FileManager fileManager, LogManager logManager, int numBuffs) {
+        this(fileManager, logManager, numBuffs, 0);
+    }
+
+    /**
+     * Creates a buffer manager whose pool has a second tier: a {@link VictimCache} that keeps the pages leaving
+     * the pool compressed outside the Java heap, so that a pin that misses the pool looks there before reading
+     * the disk. Pages compress to a fraction of their size, so the same memory caches several times more blocks
+     * than buffers would.
+     * @param numBuffs the number of buffer slots to allocate (size of buffer pool)
+     * @param victimCacheBytes the size of the victim cache, in bytes, or 0 for no victim cache
+     */
+    public BufferManager(FileManager fileManager, LogManager logManager, int numBuffs, int victimCacheBytes) {
+        this.fileManager = fileManager;
         bufferPool = new Buffer[numBuffs];
         numAvailable = numBuffs;
         for (int i=0; i < numBuffs; i++)
             bufferPool[i] = new Buffer(fileManager, logManager);
+        metrics = new BufferMetrics(numBuffs, this::dirtyBuffers, victimCacheBytes, this::victimCacheUsedBytes);
+        victimCache = victimCacheBytes > 0 ? new VictimCache(victimCacheBytes, fileManager.blockSize(), metrics) : null;
     }
 
     /**
@@ -47,6 +102,58 @@ public class BufferManager {
                 buff.flush();
     }
 
+    /**
+     * Flushes every dirty buffer, whichever transaction modified it.
+     */
+    public synchronized void flushAll() {
+        for (Buffer buff : bufferPool)
+            buff.flush();
+    }
+
+    /**
+     * @return the number of buffers that hold modifications that are not on disk yet
+     */
+    public synchronized int dirtyBuffers() {
+        int dirty = 0;
+        for (Buffer buff : bufferPool)
+            if (buff.modifyingTx() >= 0) dirty++;
+        return dirty;
+    }
+
+    /**
+     * @return the number of bytes of the victim cache that hold pages, or 0 if the pool has no victim cache
+     */
+    public long victimCacheUsedBytes() {
+        return victimCache == null ? 0 : victimCache.usedBytes();
+    }
+
+    /**
+     * @return the file manager that reads and writes the blocks of the buffers
+     */
+    public FileManager getFileManager() {
+        return fileManager;
+    }
+
+    /**
+     * @return the metrics of the pins, which {@link AhmedDB.metrics.Metrics} can publish through JMX
+     */
+    public BufferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the dirty page table: the blocks whose buffers hold modifications that are not on disk yet,
+     * each mapped to the LSN of the first log record that modified it since it was last written.
+     * Recovery starts redoing the updates of a block from that LSN.
+     * @return a snapshot of the dirty page table
+     */
+    public synchronized Map<LogicalBlock, Long> dirtyPages() {
+        Map<LogicalBlock, Long> dirtyPages = new LinkedHashMap<>();
+        for (Buffer buff : bufferPool)
+            if (buff.modifyingTx() >= 0 && buff.getRecoveryLSN() >= 0)
+                dirtyPages.put(buff.getAssociatedLogicalBlock(), buff.getRecoveryLSN());
+        return dirtyPages;
+    }
 
     /**
      * Unpins the specified data buffer. If its pin count
@@ -54,11 +161,18 @@ public class BufferManager {
      * @param buff the buffer to be unpinned
      */
     public synchronized void unpin(Buffer buff) {
-        buff.unpin();
-        if (!buff.isPinned()) {
-            numAvailable++;
-            notifyAll();
-        }
+        unpin(buff, -1);
+    }
+
+    /**
+     * Unpins the specified data buffer, which was pinned on behalf of the specified transaction.
+     * @param buff the buffer to be unpinned
+     * @param txNum the id of the transaction, or -1 if the buffer was not pinned on behalf of a transaction
+     */
+    public synchronized void unpin(Buffer buff, int txNum) {
+        if (txNum < 0) untrackedPins--;
+        else if (transactionPins.merge(txNum, -1, Integer::sum) == 0) transactionPins.remove(txNum);
+        unpinBuffer(buff);
     }
 
     /**
@@ -75,28 +189,175 @@ public class BufferManager {
      * @param logicalBlock a reference to a disk block
      * @return the buffer pinned to that block
      */
-    public synchronized Buffer pin(LogicalBlock logicalBlock) {
+    public Buffer pin(LogicalBlock logicalBlock) {
+        return pin(logicalBlock, -1);
+    }
+
+    /**
+     * Pins a buffer to the specified block on behalf of the specified transaction, the same way as
+     * {@link #pin(LogicalBlock)}. While the transaction waits for a buffer, it can be chosen as
+     * a deadlock victim (see {@link #abortWaiter(int)}), then a {@link BufferAbortException} is thrown.
+     * The pages that move between the pool and its victim cache are compressed and decompressed once the
+     * monitor of the manager is released, so that the other pins do not wait for them.
+     * @param logicalBlock a reference to a disk block
+     * @param txNum the id of the transaction, or -1 if the pin is not made on behalf of a transaction
+     * @return the buffer pinned to that block
+     */
+    public Buffer pin(LogicalBlock logicalBlock, int txNum) {
         try {
-            long timestamp = System.currentTimeMillis();
-            Buffer buff = tryToPin(logicalBlock);
-            while (buff == null && !waitingTooLong(timestamp)) {
-                wait(MAX_TIME);
-                //When a waiting thread resumes, it continues in its loop:
-                //it will call tryToPin again after some time to check if it's possible to
-                // pin or not, then returns buffer if it can be pined or null if can't.
-                buff = tryToPin(logicalBlock);
+            return pinBuffer(logicalBlock, txNum);
+        }
+        finally {
+            if (victimCache != null) completeTransfers();
+        }
+    }
+
+    /**
+     * Pins a buffer while the manager holds its monitor. The page of the block may still have to be restored
+     * from the victim cache.
+     */
+    private synchronized Buffer pinBuffer(LogicalBlock logicalBlock, int txNum) {
+        Buffer buff = tryToPin(logicalBlock);
+        if (buff == null) {
+            PinWaitEvent event = new PinWaitEvent();
+            event.begin();
+            long start = System.nanoTime();
+            if (txNum >= 0) waiting.put(txNum, start);
+            try {
+                long timestamp = System.currentTimeMillis();
+                while (buff == null && !waitingTooLong(timestamp) && !victims.contains(txNum)) {
+                    wait(maxWaitTime);
+                    //When a waiting thread resumes, it continues in its loop:
+                    //it will call tryToPin again after some time to check if it's possible to
+                    // pin or not, then returns buffer if it can be pined or null if can't.
+                    buff = tryToPin(logicalBlock);
+                }
             }
+            catch(InterruptedException e) {
+                buff = null;
+            }
+            finally {
+                waiting.remove(txNum);
+            }
+            if (victims.remove(txNum) && buff != null) {
+                unpinBuffer(buff);
+                buff = null;
+            }
+            metrics.recordPinWait(event, logicalBlock.getFileName(), logicalBlock.getNumber(), System.nanoTime() - start, buff != null);
             //cannot pin a buffer to a given block
             if (buff == null) throw new BufferAbortException();
-            return buff;
         }
-        catch(InterruptedException e) {
-            throw new BufferAbortException();
+        if (txNum < 0) untrackedPins++;
+        else transactionPins.merge(txNum, 1, Integer::sum);
+        return buff;
+    }
+
+    /**
+     * Reserves buffers that are assigned to no block, as memory for an operator that needs a workspace of pages,
+     * such as an external sort, without reading or creating any block. Each buffer is taken from the unpinned
+     * ones: the page of its block is written if it was modified, then its page is cleared.
+     * The buffers stay pinned until {@link #release(Buffer[])}, so the pool does not use them meanwhile.
+     * If fewer buffers are unpinned, the method waits like {@link #pin(LogicalBlock)}, until all of them can be
+     * reserved at once, and throws a {@link BufferAbortException} if that does not happen in time.
+     * @param count the number of buffers
+     * @return the reserved buffers, whose pages are filled with zeros
+     */
+    public synchronized Buffer[] reserve(int count) {
+        if (count > bufferPool.length)
+            throw new RuntimeException("cannot reserve " + count + " buffers in a pool of " + bufferPool.length);
+        Buffer[] reserved = tryToReserve(count);
+        try {
+            long timestamp = System.currentTimeMillis();
+            while (reserved == null && !waitingTooLong(timestamp)) {
+                wait(maxWaitTime);
+                reserved = tryToReserve(count);
+            }
+        }
+        catch (InterruptedException e) {
+            reserved = null;
         }
+        if (reserved == null) throw new BufferAbortException();
+        untrackedPins += count;
+        return reserved;
+    }
+
+    /**
+     * Unpins the buffers of a reservation, which the pool can then assign to blocks.
+     * @param reserved the buffers returned by {@link #reserve(int)}
+     */
+    public synchronized void release(Buffer[] reserved) {
+        for (Buffer buff : reserved) {
+            untrackedPins--;
+            unpinBuffer(buff);
+        }
+    }
+
+    /**
+     * Sets the time limit of the waits for a buffer.
+     * @param millis the time after which a waiting pin fails, in milliseconds, or 0 to wait without limit
+     */
+    public synchronized void setMaxWaitTime(long millis) {
+        maxWaitTime = millis;
+    }
+
+    /**
+     * @return the time limit of the waits for a buffer, in milliseconds, or 0 if waits have no limit
+     */
+    public synchronized long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * Aborts the wait of the specified transaction for a buffer, which throws a {@link BufferAbortException}.
+     * @param txNum the id of a transaction
+     * @return true if the transaction was waiting for a buffer
+     */
+    public synchronized boolean abortWaiter(int txNum) {
+        if (!waiting.containsKey(txNum)) return false;
+        victims.add(txNum);
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Returns the transactions that wait for a buffer, and the transactions that could unpin one.
+     * A waiting transaction gets a buffer as soon as any pinned buffer is unpinned.
+     * @return a snapshot of the waits for buffers
+     */
+    public synchronized WaitState waitState() {
+        return new WaitState(new HashMap<>(waiting), new HashSet<>(transactionPins.keySet()), untrackedPins > 0);
+    }
+
+    /**
+     * Restores the page that the calling thread took from the victim cache, and stores the page it evicted.
+     * A restored page stays loading until it is complete, and the pins of its block wait for it meanwhile.
+     */
+    private void completeTransfers() {
+        Buffer restored = null;
+        try {
+            restored = victimCache.restoreTaken();
+        }
+        finally {
+            if (restored != null) finishLoading(restored);
+            victimCache.storeEvicted();
+        }
+    }
+
+    private synchronized void finishLoading(Buffer buff) {
+        buff.finishLoading();
+        notifyAll();
     }
 
     private boolean waitingTooLong(long startTime) {
-        return System.currentTimeMillis() - startTime > MAX_TIME;
+        return maxWaitTime > 0 && System.currentTimeMillis() - startTime > maxWaitTime;
+    }
+
+    private void unpinBuffer(Buffer buff) {
+        buff.unpin();
+        if (!buff.isPinned()) {
+            numAvailable++;
+            notifyAll();
+        }
     }
 
     /**
@@ -109,20 +370,47 @@ public class BufferManager {
      * @return the pinned buffer
      */
     private Buffer tryToPin(LogicalBlock logicalBlock) {
-        Buffer buff = findExistingBuffer(logicalBlock);
+        Buffer buff = findLoadedBuffer(logicalBlock);
         //if there is no block associated with the Buffer buff variable
         if (buff == null) {
             buff = chooseUnpinnedBuffer();
             //all buffer are pinned
             if (buff == null) return null;
-            else buff.assignToBlock(logicalBlock);
+            else {
+                //the block of the buffer, if it has one, is evicted and written first if it was modified,
+                //then it moves to the victim cache, where the new block is looked for before the disk
+                metrics.recordMiss(buff.getAssociatedLogicalBlock() != null, buff.modifyingTx() >= 0);
+                buff.assignToBlock(logicalBlock, victimCache);
+            }
         }
+        else metrics.recordHit();
 
         if (!buff.isPinned()) numAvailable--;
         buff.pin();
         return buff;
     }
 
+    /**
+     * Detaches and pins the specified number of unpinned buffers, if the pool has that many.
+     * @return the buffers, or null if too few are unpinned
+     */
+    private Buffer[] tryToReserve(int count) {
+        if (numAvailable < count) return null;
+        Buffer[] reserved = new Buffer[count];
+        int found = 0;
+        //a loading buffer is unpinned if its pin was aborted, but its page is not complete yet
+        for (Buffer buff : bufferPool)
+            if (found < count && !buff.isPinned() && !buff.isLoading())
+                reserved[found++] = buff;
+        if (found < count) return null;
+        for (Buffer buff : reserved) {
+            buff.assignToNoBlock();
+            buff.pin();
+            numAvailable--;
+        }
+        return reserved;
+    }
+
     /**
      * Loop through a buffer poo to check if there is a buffer contains
      * a block equals to the searching block parameter
@@ -138,14 +426,71 @@ public class BufferManager {
         return null;
     }
 
+    /**
+     * Finds the buffer of a block like {@link #findExistingBuffer(LogicalBlock)}, but waits until its page is
+     * complete if it is being restored from the victim cache, which takes a few microseconds.
+     */
+    private Buffer findLoadedBuffer(LogicalBlock logicalBlock) {
+        Buffer buff = findExistingBuffer(logicalBlock);
+        boolean interrupted = false;
+        while (buff != null && buff.isLoading()) {
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+            buff = findExistingBuffer(logicalBlock);
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return buff;
+    }
+
     /**
      * Loop through a buffer pool to return a buffer that is not pinned
      * @return unpinned buffer
      */
     private Buffer chooseUnpinnedBuffer() {
+        //a loading buffer is unpinned if its pin was aborted, but its page is not complete yet
         for (Buffer buff : bufferPool)
-            if (!buff.isPinned())
+            if (!buff.isPinned() && !buff.isLoading())
                 return buff;
         return null;
     }
+
+    /**
+     * The waits for buffers at one point in time.
+     */
+    public static class WaitState {
+        private final Map<Integer, Long> waiting;
+        private final Set<Integer> pinningTransactions;
+        private final boolean untrackedPins;
+
+        private WaitState(Map<Integer, Long> waiting, Set<Integer> pinningTransactions, boolean untrackedPins) {
+            this.waiting = waiting;
+            this.pinningTransactions = pinningTransactions;
+            this.untrackedPins = untrackedPins;
+        }
+
+        /**
+         * @return the transactions that wait for a buffer, mapped to the time when they started waiting
+         */
+        public Map<Integer, Long> getWaiting() {
+            return waiting;
+        }
+
+        /**
+         * @return the transactions that hold at least one pin
+         */
+        public Set<Integer> getPinningTransactions() {
+            return pinningTransactions;
+        }
+
+        /**
+         * @return true if some buffers are pinned without a transaction, so they may be unpinned by anyone
+         */
+        public boolean hasUntrackedPins() {
+            return untrackedPins;
+        }
+    }
 }
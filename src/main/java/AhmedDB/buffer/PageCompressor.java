@@ -0,0 +1,135 @@
+package AhmedDB.buffer;
+
+import AhmedDB.file.Page;
+
+import java.util.Arrays;
+
+/**
+ * A fast LZ77 compressor for pages, in the spirit of LZ4: it gives up some compression for speed, since a page of
+ * the victim cache is compressed each time it leaves the pool and it has to come back much faster than a disk read.
+ * Pages compress well this way, because of their empty space, their headers and slot directories, and the values
+ * that repeat from record to record.<br>
+ * The compressed form is a sequence of literal runs, each followed by a copy of earlier bytes. A sequence starts with
+ * a token whose high four bits are the length of the literals and whose low four bits are the length of the copy
+ * minus {@link #MIN_MATCH}; a length of 15 goes on in the following bytes, each one adding up to 255. The literals
+ * come next, then the distance of the copy, in two bytes. The last sequence only has literals.<br>
+ * Matches are found through a hash table of the positions of the last four-byte values seen. The table is reused
+ * from one page to the next, so an instance must not be used by several threads at once.
+ */
+class PageCompressor {
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 12;
+    private static final int MAX_DISTANCE = 0xFFFF;
+
+    /**
+     * The last position of each hashed four-byte value, or -1.
+     */
+    private final int[] table = new int[1 << HASH_BITS];
+
+    /**
+     * Compresses bytes into an array, unless the compressed form does not fit in it.
+     * @param src the bytes to compress
+     * @param length the number of bytes to compress, from the start of src
+     * @param dst the array that receives the compressed form
+     * @return the size of the compressed form, or -1 if it is longer than dst
+     */
+    int compress(byte[] src, int length, byte[] dst) {
+        Arrays.fill(table, -1);
+        int pos = 0, anchor = 0, out = 0;
+        while (pos + MIN_MATCH <= length) {
+            int value = Page.readInt(src, pos);
+            int hash = (value * 0x9E3779B1) >>> (Integer.SIZE - HASH_BITS);
+            int candidate = table[hash];
+            table[hash] = pos;
+            if (candidate < 0 || pos - candidate > MAX_DISTANCE || Page.readInt(src, candidate) != value) {
+                pos++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (pos + matchLength < length && src[candidate + matchLength] == src[pos + matchLength]) matchLength++;
+            out = writeSequence(src, anchor, pos - anchor, pos - candidate, matchLength, dst, out);
+            if (out < 0) return -1;
+            pos += matchLength;
+            anchor = pos;
+        }
+        return writeSequence(src, anchor, length - anchor, 0, 0, dst, out);
+    }
+
+    /**
+     * Restores compressed bytes.
+     * @param src the compressed form
+     * @param length the size of the compressed form
+     * @param dst the array that receives the bytes
+     * @param expected the number of bytes that the compressed form holds
+     */
+    void decompress(byte[] src, int length, byte[] dst, int expected) {
+        int in = 0, out = 0;
+        try {
+            while (true) {
+                int token = src[in++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int more;
+                    do literals += more = src[in++] & 0xFF; while (more == 255);
+                }
+                System.arraycopy(src, in, dst, out, literals);
+                in += literals;
+                out += literals;
+                if (in == length) break;
+                int distance = (src[in++] & 0xFF) | (src[in++] & 0xFF) << 8;
+                int matchLength = token & 15;
+                if (matchLength == 15) {
+                    int more;
+                    do matchLength += more = src[in++] & 0xFF; while (more == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (distance == 0 || distance > out || out + matchLength > expected)
+                    throw new RuntimeException("a compressed page is corrupted");
+                //a copy may overlap the bytes it produces, which then repeat with the period of the distance
+                if (distance >= matchLength) System.arraycopy(dst, out - distance, dst, out, matchLength);
+                else for (int i = 0; i < matchLength; i++) dst[out + i] = dst[out - distance + i];
+                out += matchLength;
+            }
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new RuntimeException("a compressed page is corrupted");
+        }
+        if (out != expected) throw new RuntimeException("a compressed page holds " + out + " bytes instead of " + expected);
+    }
+
+    /**
+     * Writes a run of literals, followed by a copy unless the length of the copy is 0.
+     * @return the position after the sequence in dst, or -1 if the sequence does not fit
+     */
+    private static int writeSequence(byte[] src, int start, int literals, int distance, int matchLength, byte[] dst, int out) {
+        int extra = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        int size = 1 + lengthBytes(literals) + literals + (matchLength == 0 ? 0 : 2 + lengthBytes(extra));
+        if (out + size > dst.length) return -1;
+        dst[out++] = (byte) (Math.min(literals, 15) << 4 | Math.min(extra, 15));
+        out = writeLength(literals, dst, out);
+        System.arraycopy(src, start, dst, out, literals);
+        out += literals;
+        if (matchLength == 0) return out;
+        dst[out++] = (byte) distance;
+        dst[out++] = (byte) (distance >>> 8);
+        return writeLength(extra, dst, out);
+    }
+
+    /**
+     * @return the number of bytes that follow the token for a length
+     */
+    private static int lengthBytes(int length) {
+        return length < 15 ? 0 : (length - 15) / 255 + 1;
+    }
+
+    private static int writeLength(int length, byte[] dst, int out) {
+        if (length < 15) return out;
+        length -= 15;
+        while (length >= 255) {
+            dst[out++] = (byte) 255;
+            length -= 255;
+        }
+        dst[out++] = (byte) length;
+        return out;
+    }
+}
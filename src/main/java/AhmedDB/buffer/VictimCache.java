@@ -0,0 +1,234 @@
+package AhmedDB.buffer;
+
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.metrics.BufferMetrics;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A second tier of the buffer pool, which keeps the pages that leave the pool in compressed form, so that pinning
+ * one of them again costs a decompression instead of a disk read. The pages are compressed by a {@link PageCompressor},
+ * which is several times faster than Deflate.<br>
+ * Only the pages worth keeping are admitted: a page that was modified costs a write when it leaves the pool, and a
+ * page that was pinned once, such as a block of a scan, is unlikely to be pinned again, so the cache only keeps the
+ * clean pages that were pinned more than once while they were in the pool (see {@link Buffer#isReReferenced()}).<br>
+ * The compressed pages are stored outside the Java heap, in one direct byte buffer cut into chunks of
+ * {@link #CHUNK_SIZE} bytes; a page takes as many chunks as its compressed size needs, wherever they are, so the
+ * region never has to be compacted. A page that does not compress is stored as it is.<br>
+ * The cache is exclusive: a page that is pinned again leaves the cache for the pool, so a block is never in both,
+ * and the pool keeps writing its modified blocks without invalidating anything here. The cache evicts the pages
+ * that left the pool the longest time ago, which is the order of their last use since a page that comes back
+ * to the pool starts again at the end of the queue.<br>
+ * The compression and the decompression do not run under the monitor of the buffer manager, which every pin
+ * takes. While the manager holds it, a page that leaves the pool is only copied and its block reserved
+ * ({@link #evict(LogicalBlock, Page)}), and the compressed form of a page that comes back is only copied out of
+ * the region ({@link #take(LogicalBlock, Buffer)}); the pinning thread decompresses and compresses them once it
+ * has released the monitor ({@link #restoreTaken()} and {@link #storeEvicted()}). A pin of a reserved block cancels
+ * the reservation and reads the block from the disk, which holds the same values, so a block still never ends up
+ * in both tiers.
+ * The cache has a lock of its own, which it only holds to update its map and copy bytes in and out of the region.
+ * The copies and the compressor of each thread are kept in a {@link ThreadLocal}.<br>
+ * Temporary files are not cached, since their blocks are written without the pool and the files are deleted once
+ * used. The only other blocks written without the pool are the ones of a bulk load, which lie past the end of
+ * their file, where no page of the pool, nor of the cache, comes from.
+ */
+class VictimCache {
+    /**
+     * The unit of allocation in the region, in bytes.
+     */
+    static final int CHUNK_SIZE = 256;
+
+    private final int blockSize;
+    private final ByteBuffer region;
+    /**
+     * The chunks that hold no page, as a stack of chunk numbers.
+     */
+    private final int[] freeChunks;
+    private int freeCount;
+    /**
+     * The cached blocks, the oldest first.
+     */
+    private final LinkedHashMap<LogicalBlock, Entry> entries = new LinkedHashMap<>();
+    /**
+     * The blocks that left the pool and are being compressed, mapped to the transfer that will store them.
+     */
+    private final Map<LogicalBlock, Transfer> reserved = new HashMap<>();
+    private final ThreadLocal<Transfer> transfers;
+    private final BufferMetrics metrics;
+
+    /**
+     * Allocates the region of the cache.
+     * @param capacity the size of the region, in bytes
+     * @param blockSize the size of a page
+     * @param metrics the metrics of the pool, which also count the hits and evictions of the cache
+     */
+    VictimCache(int capacity, int blockSize, BufferMetrics metrics) {
+        if (capacity < blockSize) throw new RuntimeException("a victim cache of " + capacity + " bytes cannot hold a page of " + blockSize + " bytes");
+        this.blockSize = blockSize;
+        this.metrics = metrics;
+        int chunks = capacity / CHUNK_SIZE;
+        region = ByteBuffer.allocateDirect(chunks * CHUNK_SIZE);
+        freeChunks = new int[chunks];
+        for (int i = 0; i < chunks; i++) freeChunks[i] = chunks - 1 - i;
+        freeCount = chunks;
+        transfers = ThreadLocal.withInitial(() -> new Transfer(blockSize));
+    }
+
+    /**
+     * Copies a page that is leaving the pool and reserves its block, so that the page is stored by
+     * {@link #storeEvicted()}. Called while the buffer manager holds its monitor.
+     * @param block the block of the page
+     * @param page a page that holds the same values as the block on the disk
+     */
+    void evict(LogicalBlock block, Page page) {
+        if (block.getFileName().startsWith("temp")) return;
+        Transfer transfer = transfers.get();
+        page.readBytes(0, transfer.evictedBytes, 0, blockSize);
+        transfer.evictedBlock = block;
+        synchronized (this) {
+            reserved.put(block, transfer);
+        }
+    }
+
+    /**
+     * Takes a cached block out of the cache for a buffer of the pool, whose page is restored by
+     * {@link #restoreTaken()}. Called while the buffer manager holds its monitor.
+     * @param block the block to read
+     * @param buffer the buffer that receives the block
+     * @return false if the block is not cached, so it has to be read from the disk
+     */
+    boolean take(LogicalBlock block, Buffer buffer) {
+        if (block.getFileName().startsWith("temp")) return false;
+        Transfer transfer = transfers.get();
+        synchronized (this) {
+            //the page of a reserved block is not stored yet, but the disk holds the same values
+            if (reserved.remove(block) != null || !entries.containsKey(block)) {
+                metrics.recordVictimCacheMiss();
+                return false;
+            }
+            Entry entry = entries.remove(block);
+            for (int i = 0; i < entry.chunks.length; i++) {
+                int start = i * CHUNK_SIZE;
+                region.get(entry.chunks[i] * CHUNK_SIZE, transfer.takenBytes, start, Math.min(CHUNK_SIZE, entry.length - start));
+            }
+            release(entry);
+            transfer.taken = entry;
+        }
+        transfer.takingBuffer = buffer;
+        metrics.recordVictimCacheHit();
+        return true;
+    }
+
+    /**
+     * Compresses the page that the calling thread copied by {@link #evict(LogicalBlock, Page)}, and stores it unless
+     * its block was pinned again meanwhile. Called once the buffer manager released its monitor.
+     */
+    void storeEvicted() {
+        Transfer transfer = transfers.get();
+        LogicalBlock block = transfer.evictedBlock;
+        if (block == null) return;
+        transfer.evictedBlock = null;
+        int length = transfer.compressor.compress(transfer.evictedBytes, blockSize, transfer.compressedBytes);
+        //a page that does not compress into fewer chunks is stored as it is
+        boolean compressed = length >= 0 && chunksFor(length) < chunksFor(blockSize);
+        byte[] bytes = compressed ? transfer.compressedBytes : transfer.evictedBytes;
+        if (!compressed) length = blockSize;
+        int needed = chunksFor(length);
+        synchronized (this) {
+            if (reserved.get(block) != transfer) return;
+            reserved.remove(block);
+            Iterator<Entry> oldest = entries.values().iterator();
+            while (freeCount < needed) {
+                release(oldest.next());
+                oldest.remove();
+                metrics.recordVictimCacheEviction();
+            }
+            int[] chunks = new int[needed];
+            for (int i = 0; i < needed; i++) {
+                chunks[i] = freeChunks[--freeCount];
+                int start = i * CHUNK_SIZE;
+                region.put(chunks[i] * CHUNK_SIZE, bytes, start, Math.min(CHUNK_SIZE, length - start));
+            }
+            entries.put(block, new Entry(chunks, length, compressed));
+        }
+        metrics.recordVictimCacheStore(blockSize, length);
+    }
+
+    /**
+     * Decompresses the page that the calling thread took by {@link #take(LogicalBlock, Buffer)} into its buffer.
+     * Called once the buffer manager released its monitor.
+     * @return the buffer whose page was restored, or null if the thread took no page
+     */
+    Buffer restoreTaken() {
+        Transfer transfer = transfers.get();
+        Buffer buffer = transfer.takingBuffer;
+        if (buffer == null) return null;
+        Entry entry = transfer.taken;
+        transfer.takingBuffer = null;
+        transfer.taken = null;
+        byte[] bytes = transfer.takenBytes;
+        if (entry.compressed) {
+            transfer.compressor.decompress(transfer.takenBytes, entry.length, transfer.restoredBytes, blockSize);
+            bytes = transfer.restoredBytes;
+        }
+        buffer.getAssociatedPage().writeBytes(0, bytes, 0, blockSize);
+        return buffer;
+    }
+
+    /**
+     * @return the number of bytes of the region that hold pages
+     */
+    synchronized long usedBytes() {
+        return (long) (freeChunks.length - freeCount) * CHUNK_SIZE;
+    }
+
+    private void release(Entry entry) {
+        for (int chunk : entry.chunks) freeChunks[freeCount++] = chunk;
+    }
+
+    private static int chunksFor(int length) {
+        return (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * Where a cached page is stored.
+     */
+    private static class Entry {
+        private final int[] chunks;
+        private final int length;
+        private final boolean compressed;
+
+        private Entry(int[] chunks, int length, boolean compressed) {
+            this.chunks = chunks;
+            this.length = length;
+            this.compressed = compressed;
+        }
+    }
+
+    /**
+     * The pages that a thread moves between the pool and the cache during one pin: at most one page that leaves
+     * the pool, and one that comes back. The arrays are reused from one pin to the next.
+     */
+    private static class Transfer {
+        private final PageCompressor compressor = new PageCompressor();
+        private final byte[] evictedBytes;
+        private final byte[] compressedBytes;
+        private final byte[] takenBytes;
+        private final byte[] restoredBytes;
+        private LogicalBlock evictedBlock;
+        private Buffer takingBuffer;
+        private Entry taken;
+
+        private Transfer(int blockSize) {
+            evictedBytes = new byte[blockSize];
+            compressedBytes = new byte[blockSize];
+            takenBytes = new byte[blockSize];
+            restoredBytes = new byte[blockSize];
+        }
+    }
+}
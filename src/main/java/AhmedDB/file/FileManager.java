@@ -1,8 +1,12 @@
 package AhmedDB.file;
 
+import AhmedDB.metrics.BlockIoEvent;
+import AhmedDB.metrics.FileMetrics;
+
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,8 +18,10 @@ public class FileManager {
     private final int blockSize;
     private final boolean isNew;
 
-    private int blocksRead = 0;
-    private int blocksWritten = 0;
+    /**
+     * The blocks and bytes read and written, and the latency of the transfers, in total and per file
+     */
+    private final FileMetrics metrics = new FileMetrics();
 
     /**
      * Each RandomAccessFile object in the map openFiles corresponds to an
@@ -60,6 +66,9 @@ public class FileManager {
      * @param page the memory page (a byteBuffer in memory) that hold block contents
      */
     public synchronized void read(LogicalBlock block, Page page) {
+        BlockIoEvent event = new BlockIoEvent();
+        event.begin();
+        long start = System.nanoTime();
         try {
             RandomAccessFile randomAccessFile = getRandomAccessFile(block.getFileName());
             //move the pointer (cursor) to the given starting block position
@@ -67,32 +76,99 @@ public class FileManager {
             //transferring the reading of sequence of bytes of block into byteBuffer (memory allocated buffer)
             randomAccessFile.getChannel().read(page.getByteBufferContentsPosition());
             //track the number of reading blocks
-            blocksRead++;
+            metrics.recordRead(event, block.getFileName(), block.getNumber(), 1, blockSize, System.nanoTime() - start);
         }
         catch (IOException e) {
             throw new RuntimeException("cannot read block " + block);
         }
     }
 
+    /**
+     * The method transfers the contents of a run of consecutive blocks of a file into the specified
+     * memory page with a single I/O, instead of one read per block. The blocks are stored one after
+     * the other in the page, so block {@code firstBlock.getNumber() + i} starts at position
+     * {@code i * blockSize} of the page. Blocks that lie past the end of the file are left untouched.
+     * @param firstBlock the logical block reference of the first block of the run
+     * @param numBlocks the number of blocks to read, the page must be able to hold them
+     * @param page the memory page that will hold the blocks contents
+     */
+    public synchronized void read(LogicalBlock firstBlock, int numBlocks, Page page) {
+        ByteBuffer byteBuffer = page.getByteBufferContentsPosition();
+        BlockIoEvent event = new BlockIoEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            RandomAccessFile randomAccessFile = getRandomAccessFile(firstBlock.getFileName());
+            randomAccessFile.seek((long) firstBlock.getNumber() * blockSize);
+            //limit the transfer to the requested blocks, a single read may return fewer bytes
+            byteBuffer.limit(numBlocks * blockSize);
+            while (byteBuffer.hasRemaining())
+                if (randomAccessFile.getChannel().read(byteBuffer) < 0) break;
+            metrics.recordRead(event, firstBlock.getFileName(), firstBlock.getNumber(), numBlocks, (long) numBlocks * blockSize,
+                    System.nanoTime() - start);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("cannot read " + numBlocks + " blocks from " + firstBlock);
+        }
+        finally {
+            byteBuffer.clear();
+        }
+    }
+
     /**
      * The method transfer the contents of the specified memory page into the specified block in file
      * @param block the logical block reference
      * @param page the memory page (a byteBuffer in memory) that hold block contents
      */
     public synchronized void write(LogicalBlock block, Page page) {
+        BlockIoEvent event = new BlockIoEvent();
+        event.begin();
+        long start = System.nanoTime();
         try {
             RandomAccessFile randomAccessFile = getRandomAccessFile(block.getFileName());
             randomAccessFile.seek((long) block.getNumber() * blockSize);
             randomAccessFile.getChannel().write(page.getByteBufferContentsPosition());
 
             //track the number of written block
-            blocksWritten++;
+            metrics.recordWrite(event, block.getFileName(), block.getNumber(), 1, blockSize, System.nanoTime() - start);
         }
         catch (IOException e) {
             throw new RuntimeException("cannot write block" + block);
         }
     }
 
+    /**
+     * The method transfers the contents of the specified memory page into a run of consecutive blocks of a file
+     * with a single I/O, the counterpart of {@link #read(LogicalBlock, int, Page)}: block
+     * {@code firstBlock.getNumber() + i} is taken from position {@code i * blockSize} of the page.
+     * The file is extended if the blocks lie past its end.
+     * @param firstBlock the logical block reference of the first block of the run
+     * @param numBlocks the number of blocks to write, the page must hold them
+     * @param page the memory page that holds the blocks contents
+     */
+    public synchronized void write(LogicalBlock firstBlock, int numBlocks, Page page) {
+        ByteBuffer byteBuffer = page.getByteBufferContentsPosition();
+        BlockIoEvent event = new BlockIoEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            RandomAccessFile randomAccessFile = getRandomAccessFile(firstBlock.getFileName());
+            randomAccessFile.seek((long) firstBlock.getNumber() * blockSize);
+            byteBuffer.limit(numBlocks * blockSize);
+            //a single write may transfer fewer bytes
+            while (byteBuffer.hasRemaining())
+                randomAccessFile.getChannel().write(byteBuffer);
+            metrics.recordWrite(event, firstBlock.getFileName(), firstBlock.getNumber(), numBlocks, (long) numBlocks * blockSize,
+                    System.nanoTime() - start);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("cannot write " + numBlocks + " blocks from " + firstBlock);
+        }
+        finally {
+            byteBuffer.clear();
+        }
+    }
+
     /**
      * The method seeks to the end of the file and writes an empty array of bytes to it, which
      * causes the OS to automatically extend the file.
@@ -103,10 +179,14 @@ public class FileManager {
         int newBlockNum = length(filename);
         LogicalBlock blk = new LogicalBlock(filename, newBlockNum);
         byte[] emptyBytesArray = new byte[blockSize];
+        BlockIoEvent event = new BlockIoEvent();
+        event.begin();
+        long start = System.nanoTime();
         try {
             RandomAccessFile randomAccessFile = getRandomAccessFile(blk.getFileName());
             randomAccessFile.seek((long) blk.getNumber() * blockSize);
             randomAccessFile.write(emptyBytesArray);
+            metrics.recordWrite(event, blk.getFileName(), blk.getNumber(), 1, blockSize, System.nanoTime() - start);
         }
         catch (IOException e) {
             throw new RuntimeException("cannot append block" + blk);
@@ -124,6 +204,22 @@ public class FileManager {
         }
     }
 
+    /**
+     * Closes and removes a file, such as a temporary file that is no longer needed.
+     * @param filename the name of the file
+     */
+    public synchronized void delete(String filename) {
+        RandomAccessFile randomAccessFile = openFiles.remove(filename);
+        try {
+            if (randomAccessFile != null) randomAccessFile.close();
+        }
+        catch (IOException e) {
+            throw new RuntimeException("cannot close " + filename);
+        }
+        new File(dbDirectory, filename).delete();
+        metrics.remove(filename);
+    }
+
     public boolean isNew() {
         return isNew;
     }
@@ -144,17 +240,28 @@ public class FileManager {
             ensures that the database engine knows exactly when disk writes occur, which will
             be especially important for implementing the data recovery algorithms.
              */
-            randomAccessFile = new RandomAccessFile(dbTableFile, "rws");
+            //temporary files do not outlive a crash, so their writes do not have to reach the disk at once
+            randomAccessFile = new RandomAccessFile(dbTableFile, filename.startsWith("temp") ? "rw" : "rws");
             openFiles.put(filename, randomAccessFile);
         }
         return randomAccessFile;
     }
 
-    public synchronized int blocksRead() {
-        return blocksRead;
+    /**
+     * @return the number of blocks read from all the files; the counters are read without waiting for the I/O in progress
+     */
+    public long blocksRead() {
+        return metrics.getBlocksRead();
     }
-    public synchronized int blocksWritten() {
-        return blocksWritten;
+    public long blocksWritten() {
+        return metrics.getBlocksWritten();
+    }
+
+    /**
+     * @return the I/O metrics of the files, which {@link AhmedDB.metrics.Metrics} can publish through JMX
+     */
+    public FileMetrics getMetrics() {
+        return metrics;
     }
 
 }
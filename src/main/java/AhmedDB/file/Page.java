@@ -1,6 +1,9 @@
 package AhmedDB.file;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
@@ -19,6 +22,10 @@ import java.util.Date;
 public class Page {
     private final ByteBuffer byteBuffer;
     public static final Charset CHARSET = StandardCharsets.US_ASCII;
+    /**
+     * Reads the ints of a byte array in the byte order of the pages, which the JIT compiles to a single load.
+     */
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
 
     /**
      * The constructor responsible for creating byte buffer in a given size in memory
@@ -50,11 +57,31 @@ public class Page {
         return byteBuffer.getInt(offset);
     }
 
+    /**
+     * Reads an int from a copy of a page, in the same byte order as {@link #getInt(int)}.
+     * It lets a scan decode a whole block in a loop over a plain array, without a call through the byte buffer per value.
+     * @param bytes the contents of a page
+     * @param offset the index (offset) from which the bytes will be read
+     * @return the int value at the given index
+     */
+    public static int readInt(byte[] bytes, int offset) {
+        return (int) INT_VIEW.get(bytes, offset);
+    }
+
     public void setInt(int offset, int number) {
         if (byteBuffer.capacity() - offset < Integer.BYTES) throw new RuntimeException("Value does not fit in page");
         byteBuffer.putInt(offset, number);
     }
 
+    public long getLong(int offset) {
+        return byteBuffer.getLong(offset);
+    }
+
+    public void setLong(int offset, long number) {
+        if (byteBuffer.capacity() - offset < Long.BYTES) throw new RuntimeException("Value does not fit in page");
+        byteBuffer.putLong(offset, number);
+    }
+
     public void setShort(int offset, short number) {
         if (byteBuffer.capacity() - offset < Short.BYTES) throw new RuntimeException("Value does not fit in page");
         byteBuffer.putShort(offset, number);
@@ -64,6 +91,15 @@ public class Page {
         return byteBuffer.getShort(offset);
     }
 
+    public byte getByte(int offset) {
+        return byteBuffer.get(offset);
+    }
+
+    public void setByte(int offset, byte b) {
+        if (byteBuffer.capacity() - offset < Byte.BYTES) throw new RuntimeException("Value does not fit in page");
+        byteBuffer.put(offset, b);
+    }
+
     public void setBoolean(int offset, boolean bool) {
         byte b = bool ? (byte) 1 : 0;
         byteBuffer.put(offset, b);
@@ -111,6 +147,31 @@ public class Page {
         byteBuffer.put(bytes);
     }
 
+    /**
+     * Copies bytes of the page into an array, without a length prefix.
+     * Unlike {@link #getBytes(int)}, it does not move the position of the byte buffer,
+     * so several threads may read the same page at once.
+     * @param offset the position of the first byte in the page
+     * @param bytes the array that receives the bytes
+     * @param start the position of the first byte in the array
+     * @param length the number of bytes to copy
+     */
+    public void readBytes(int offset, byte[] bytes, int start, int length) {
+        byteBuffer.get(offset, bytes, start, length);
+    }
+
+    /**
+     * Copies bytes of an array into the page, without a length prefix (see {@link #readBytes(int, byte[], int, int)}).
+     * @param offset the position of the first byte in the page
+     * @param bytes the array that holds the bytes
+     * @param start the position of the first byte in the array
+     * @param length the number of bytes to copy
+     */
+    public void writeBytes(int offset, byte[] bytes, int start, int length) {
+        if (byteBuffer.capacity() - offset < length) throw new RuntimeException("Value does not fit in page");
+        byteBuffer.put(offset, bytes, start, length);
+    }
+
     public String getString(int offset) {
         byte[] bytes = getBytes(offset);
         return new String(bytes, CHARSET);
@@ -142,6 +203,14 @@ public class Page {
         return Integer.BYTES + (strlen * (int) bytesPerChar);
     }
 
+    /**
+     * Copies the contents of another page into this page.
+     * @param other a page that has the same size as this one
+     */
+    public void copyFrom(Page other) {
+        byteBuffer.put(0, other.byteBuffer, 0, byteBuffer.capacity());
+    }
+
     /**
      * a package private method, needed by {@link FileManager }
      */
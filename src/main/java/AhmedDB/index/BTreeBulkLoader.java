@@ -0,0 +1,211 @@
+package AhmedDB.index;
+
+import AhmedDB.index.BTreeNode.Entry;
+import AhmedDB.record.RecordId;
+import AhmedDB.transaction.SystemTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills an empty {@link BTreeIndex} from entries given in ascending order of key and record id, building the tree
+ * from the bottom up instead of inserting the entries one by one: the leaves are filled from left to right, and each
+ * full node adds a separator to the node being filled on the level above it, so every node is written once.
+ * The leaves are appended to the index file one after the other, so a range scan of a bulk-loaded index reads
+ * neighbouring blocks. Nodes are filled up to {@link #FILL_FACTOR} of their block, which leaves room for later inserts.<br>
+ * The separators are as short as possible (suffix truncation), and each node stores the common prefix of its two
+ * bounding separators once (see {@link BTreeNode}).
+ * The loader latches the root exclusively until {@link #finish()} is called, so the index is not used in the
+ * meantime, and the whole load is one {@link SystemTransaction}.
+ */
+public class BTreeBulkLoader {
+    /**
+     * The part of a block that the loader fills.
+     */
+    public static final double FILL_FACTOR = 0.9;
+
+    private final BTreeIndex index;
+    private final BTreeNode root;
+    private final SystemTransaction systemTransaction;
+    private final int blockSize;
+    private final int fillSize;
+    private final List<Level> levels = new ArrayList<>();
+    private Entry last;
+    private boolean finished = false;
+
+    BTreeBulkLoader(BTreeIndex index) {
+        this.index = index;
+        blockSize = index.blockSize();
+        fillSize = (int) (blockSize * FILL_FACTOR);
+        root = index.latch(BTreeIndex.ROOT, true);
+        if (!root.isLeaf() || root.count() != 0 || index.blockCount() > 1) {
+            index.release(root, true);
+            throw new RuntimeException("only an empty index can be bulk loaded: " + index.getFileName());
+        }
+        systemTransaction = index.beginSystemTransaction();
+        levels.add(new Level(0));
+    }
+
+    /**
+     * Adds an entry, which must come after the previous one in the order of the index.
+     * @param key the key, whose length must not exceed {@link BTreeIndex#getMaxKeySize()}
+     * @param recordId the id of the record that holds the key
+     */
+    public void add(byte[] key, RecordId recordId) {
+        if (finished) throw new RuntimeException("the bulk load of " + index.getFileName() + " is finished");
+        Entry entry = new Entry(key, recordId.getBlockNumber(), recordId.getSlot(), 0);
+        try {
+            index.checkKey(key);
+            if (last != null && BTreeIndex.compare(last, entry) >= 0)
+                throw new RuntimeException("the entries of a bulk load must be sorted by key and record id");
+            add(levels.get(0), entry);
+            last = entry;
+        }
+        catch (RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the nodes that are still being filled, up to the root, commits the load and releases the index.
+     */
+    public void finish() {
+        if (finished) return;
+        try {
+            //the loop also visits the levels that the last nodes of the lower levels create
+            for (int i = 0; i < levels.size(); i++) {
+                Level level = levels.get(i);
+                while (!level.items.isEmpty()) close(level, null);
+            }
+        }
+        catch (RuntimeException e) {
+            abort();
+            throw e;
+        }
+        systemTransaction.commit();
+        finished = true;
+        index.release(root, true);
+    }
+
+    private void abort() {
+        finished = true;
+        systemTransaction.rollback();
+        index.release(root, true);
+    }
+
+    /**
+     * Adds an entry to the node being filled on a level, after writing that node if the entry would not fit in it.
+     */
+    private void add(Level level, Entry item) {
+        if (!level.items.isEmpty() && (level.leaf || level.items.size() > 1)) {
+            //the prefix of the node is not known until it is written, it is estimated from the keys seen so far
+            int prefixLength = BTreeNode.commonPrefixLength(level.lowKey(), item.key);
+            if (level.size(prefixLength) + BTreeNode.entrySize(item.key.length, prefixLength, level.leaf) > fillSize)
+                close(level, item);
+        }
+        level.add(item);
+    }
+
+    /**
+     * Writes the node being filled on a level, and adds it to the level above, unless it is the root.
+     * If the entries do not fit with the prefix of the node, which may be shorter than the estimated one, the last
+     * ones move to the next node.
+     * @param next the first entry of the next node, or null if the node is the last one of its level
+     */
+    private void close(Level level, Entry next) {
+        List<Entry> moved = new ArrayList<>();
+        Entry high;
+        int prefixLength;
+        while (true) {
+            high = next == null ? null : level.leaf ? next.separatorAfter(level.items.get(level.items.size() - 1), 0) : next;
+            prefixLength = BTreeNode.commonPrefixLength(level.lowKey(), high == null ? null : high.key);
+            if (BTreeNode.fits(level.entries(), prefixLength, level.leaf, blockSize)) break;
+            next = level.items.remove(level.items.size() - 1);
+            moved.add(0, next);
+        }
+
+        boolean isRoot = next == null && level.nodes == 0;
+        int block = isRoot ? BTreeIndex.ROOT : level.nextBlock >= 0 ? level.nextBlock : index.appendBlock();
+        int nextLeaf = 0;
+        level.nextBlock = -1;
+        if (level.leaf && next != null) {
+            nextLeaf = index.appendBlock();
+            level.nextBlock = nextLeaf;
+        }
+        byte[] prefix = high == null ? new byte[0] : high.key;
+        int firstChild = level.leaf ? 0 : level.items.get(0).child;
+        if (isRoot) root.format(systemTransaction, level.number, prefix, prefixLength, level.entries(), firstChild, nextLeaf);
+        else index.writeNode(systemTransaction, block, level.number, prefix, prefixLength, level.entries(), firstChild, nextLeaf);
+        level.nodes++;
+
+        if (!isRoot) {
+            if (level.number + 1 == levels.size()) levels.add(new Level(level.number + 1));
+            add(levels.get(level.number + 1), level.low().withChild(block));
+        }
+        level.clear(high);
+        for (Entry entry : moved) level.add(entry);
+    }
+
+    /**
+     * The node being filled on a level of the tree. The items of a leaf are its entries; the first item of an inner
+     * node holds its first child, with the separator that bounds the node from below, and the others are its entries.
+     */
+    private static class Level {
+        private final int number;
+        private final boolean leaf;
+        private final List<Entry> items = new ArrayList<>();
+        /**
+         * The separator that bounds the leaf being filled from below; its key is null for the first leaf.
+         */
+        private Entry leafLow = new Entry(null, Integer.MIN_VALUE, Integer.MIN_VALUE, 0);
+        private int keyBytes = 0;
+        private int nodes = 0;
+        /**
+         * The block of the leaf being filled, chosen when the previous leaf was written so that it could link to it,
+         * or -1 if none was chosen.
+         */
+        private int nextBlock = -1;
+
+        private Level(int number) {
+            this.number = number;
+            leaf = number == 0;
+        }
+
+        private Entry low() {
+            return leaf ? leafLow : items.get(0);
+        }
+
+        private byte[] lowKey() {
+            return leaf ? leafLow.key : items.isEmpty() ? null : items.get(0).key;
+        }
+
+        private void add(Entry item) {
+            if (leaf || !items.isEmpty()) keyBytes += item.key.length;
+            items.add(item);
+        }
+
+        private List<Entry> entries() {
+            return leaf ? items : items.subList(1, items.size());
+        }
+
+        /**
+         * @return the number of bytes that the entries take in a node with the specified prefix
+         */
+        private int size(int prefixLength) {
+            int count = entries().size();
+            return BTreeNode.DIRECTORY + prefixLength + keyBytes
+                    + count * (BTreeNode.entrySize(0, prefixLength, leaf));
+        }
+
+        /**
+         * Starts a new node.
+         * @param low the separator that bounds the new node from below
+         */
+        private void clear(Entry low) {
+            items.clear();
+            keyBytes = 0;
+            if (leaf) leafLow = low;
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package AhmedDB.index;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.index.BTreeNode.Entry;
+import AhmedDB.log.LogManager;
+import AhmedDB.record.RecordId;
+import AhmedDB.transaction.SystemTransaction;
+import AhmedDB.transaction.Transaction;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import AhmedDB.transaction.recovery.IndexLogger;
+import AhmedDB.transaction.recovery.UndoableIndex;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * A B+tree index stored in a file of its own, whose nodes are pages pinned through the {@link BufferManager}
+ * (see {@link BTreeNode}). It maps keys, compared as unsigned bytes, to the ids of the records that hold them;
+ * a key may be mapped to several records. The root is always block 0: when it splits, its entries move to two
+ * new nodes and it becomes their parent, so a thread never has to find out where the root is.<br>
+ * Threads use the index at the same time, and latch the nodes they use, with a read-write lock per block.
+ * Latches are held only while a node is used, unlike the locks of a transaction, and are taken from the root
+ * down the tree, one level at a time (latch crabbing): the latch of a child is taken before the latch of its parent
+ * is released. A reader keeps shared latches on two nodes at most. An insert first goes down with shared latches
+ * and only latches the leaf exclusively, since most inserts do not split it; when the leaf is full, the insert starts
+ * over with exclusive latches, and releases the latches of the ancestors as soon as it reaches a node that has room
+ * for one more entry, so that a split never goes above it. Range scans follow the leaves from left to right, which
+ * is the only order in which two nodes of the same level are latched, so latches never deadlock.<br>
+ * Every change is logged. The insert and the delete of an entry are logged under the {@link Transaction} that asked
+ * for them, as one record per change of a leaf, and are undone with that transaction: the index deletes the entry,
+ * or inserts it again, in whatever leaf holds its key by then, since other transactions may have split the leaf since
+ * (see {@link UndoableIndex}). The changes of the structure, which are the splits and the compaction of a node, run
+ * in a {@link SystemTransaction} that commits before the latches are released, so a crash never leaves a split
+ * halfway; they only move entries, so they stay when the transaction rolls back. A full leaf splits without the new
+ * entry, which is then inserted under the transaction, into the half that holds its key.
+ * Deleted entries free their space in the leaf, but nodes are never merged.
+ * The database engine has one {@link BTreeIndex} object per index file, shared by all the threads. The index
+ * registers in the {@link CheckpointManager}, so it must be opened before recovery, which undoes the changes of the
+ * transactions that did not finish.
+ */
+public class BTreeIndex implements UndoableIndex {
+    static final int ROOT = 0;
+
+    private final FileManager fileManager;
+    private final LogManager logManager;
+    private final BufferManager bufferManager;
+    private final CheckpointManager checkpointManager;
+    private final String fileName;
+    private final int blockSize;
+    private final int maxKeySize;
+    private final Map<Integer, ReentrantReadWriteLock> latches = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the index file, which is created with an empty root leaf if it does not exist, and registers the index
+     * in the checkpoint manager.
+     * @param fileName the name of the index file
+     */
+    public BTreeIndex(FileManager fileManager, LogManager logManager, BufferManager bufferManager, CheckpointManager checkpointManager, String fileName) {
+        this.fileManager = fileManager;
+        this.logManager = logManager;
+        this.bufferManager = bufferManager;
+        this.checkpointManager = checkpointManager;
+        this.fileName = fileName;
+        blockSize = fileManager.blockSize();
+        maxKeySize = BTreeNode.maxKeySize(blockSize);
+        if (fileManager.length(fileName) == 0) fileManager.append(fileName);
+        checkpointManager.registerIndex(fileName, this);
+    }
+
+    /**
+     * Encodes an int key, so that the byte order of the keys is the order of the ints.
+     */
+    public static byte[] intKey(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(value ^ Integer.MIN_VALUE).array();
+    }
+
+    /**
+     * Encodes a string key, whose byte order is the order of its characters.
+     */
+    public static byte[] stringKey(String value) {
+        return value.getBytes(Page.CHARSET);
+    }
+
+    /**
+     * @return the ids of the records whose key is equal to the specified one, in the order of the ids
+     */
+    public List<RecordId> search(byte[] key) {
+        List<RecordId> recordIds = new ArrayList<>();
+        BTreeNode node = descend(key, Integer.MIN_VALUE, Integer.MIN_VALUE, false);
+        try {
+            int position = node.search(key, Integer.MIN_VALUE, Integer.MIN_VALUE, false);
+            while (true) {
+                for (int count = node.count(); position < count; position++) {
+                    if (!node.keyEquals(position, key)) return recordIds;
+                    recordIds.add(new RecordId(node.ridBlock(position), node.ridSlot(position)));
+                }
+                if (node.next() == 0) return recordIds;
+                BTreeNode next = latch(node.next(), false);
+                release(node, false);
+                node = next;
+                position = 0;
+            }
+        }
+        finally {
+            release(node, false);
+        }
+    }
+
+    /**
+     * Opens a scan of the entries whose keys are in a range.
+     * @param low the smallest key of the range, or null to start at the first entry
+     * @param high the key that ends the range, which is not part of it, or null to scan up to the last entry
+     * @return a scan positioned before the first entry of the range
+     */
+    public BTreeScan scan(byte[] low, byte[] high) {
+        return new BTreeScan(this, low == null ? new byte[0] : low, high);
+    }
+
+    /**
+     * Adds an entry to the index, which is removed if the transaction rolls back.
+     * @param transaction the transaction that logs the insert
+     * @param key the key, whose length must not exceed {@link #getMaxKeySize()}
+     * @param recordId the id of the record that holds the key
+     */
+    public void insert(Transaction transaction, byte[] key, RecordId recordId) {
+        insert(transaction, key, recordId.getBlockNumber(), recordId.getSlot());
+    }
+
+    /**
+     * Removes an entry from the index, which is inserted again if the transaction rolls back.
+     * @param transaction the transaction that logs the delete
+     * @return false if the index has no such entry
+     */
+    public boolean delete(Transaction transaction, byte[] key, RecordId recordId) {
+        return delete(transaction, key, recordId.getBlockNumber(), recordId.getSlot());
+    }
+
+    @Override
+    public void undoInsert(byte[] key, int ridBlock, int ridSlot, IndexLogger logger) {
+        delete(logger, key, ridBlock, ridSlot);
+    }
+
+    @Override
+    public void undoDelete(byte[] key, int ridBlock, int ridSlot, IndexLogger logger) {
+        insert(logger, key, ridBlock, ridSlot);
+    }
+
+    /**
+     * The index keeps nothing of its file in memory.
+     */
+    @Override
+    public void reload() {
+    }
+
+    /**
+     * Returns a loader that fills the empty index from entries sorted by key, much faster than inserting them one
+     * by one (see {@link BTreeBulkLoader}).
+     */
+    public BTreeBulkLoader bulkLoader() {
+        return new BTreeBulkLoader(this);
+    }
+
+    /**
+     * @return the number of levels of the tree, 1 when the root is a leaf
+     */
+    public int getHeight() {
+        BTreeNode root = latch(ROOT, false);
+        try {
+            return root.level() + 1;
+        }
+        finally {
+            release(root, false);
+        }
+    }
+
+    /**
+     * @return the size of the largest key that the index accepts
+     */
+    public int getMaxKeySize() {
+        return maxKeySize;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Goes down from the root to the leaf that holds the specified key and record id, with shared latches.
+     * @param exclusiveLeaf true to latch the leaf exclusively
+     * @return the latched leaf
+     */
+    private BTreeNode descend(byte[] key, int ridBlock, int ridSlot, boolean exclusiveLeaf) {
+        BTreeNode node = latch(ROOT, false);
+        if (exclusiveLeaf && node.isLeaf()) {
+            release(node, false);
+            node = latch(ROOT, true);
+            if (node.isLeaf()) return node;
+            //the root split in between; it never becomes a leaf again
+            release(node, true);
+            node = latch(ROOT, false);
+        }
+        while (!node.isLeaf()) {
+            boolean exclusive = exclusiveLeaf && node.level() == 1;
+            BTreeNode child;
+            try {
+                child = latch(node.childFor(key, ridBlock, ridSlot), exclusive);
+            }
+            finally {
+                release(node, false);
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Inserts an entry into the leaf of its key, which splits first if it has no room.
+     * @param logger logs the insert into the leaf
+     */
+    private void insert(IndexLogger logger, byte[] key, int ridBlock, int ridSlot) {
+        checkKey(key);
+        Entry entry = new Entry(key, ridBlock, ridSlot, 0);
+        //a split makes room in the leaf of the key, unless other inserts fill it again before the insert latches it
+        while (true) {
+            BTreeNode leaf = descend(key, ridBlock, ridSlot, true);
+            try {
+                if (insertWithoutSplit(logger, leaf, entry)) return;
+            }
+            finally {
+                release(leaf, true);
+            }
+            splitLeaf(entry);
+        }
+    }
+
+    /**
+     * Removes an entry from the leaf of its key.
+     * @param logger logs the delete
+     * @return false if the index has no such entry
+     */
+    private boolean delete(IndexLogger logger, byte[] key, int ridBlock, int ridSlot) {
+        BTreeNode leaf = descend(key, ridBlock, ridSlot, true);
+        try {
+            int position = leaf.search(key, ridBlock, ridSlot, false);
+            if (position == leaf.count() || !leaf.keyEquals(position, key)
+                    || leaf.ridBlock(position) != ridBlock || leaf.ridSlot(position) != ridSlot) return false;
+            leaf.delete(logger, position);
+            return true;
+        }
+        finally {
+            release(leaf, true);
+        }
+    }
+
+    /**
+     * Inserts an entry into a latched leaf if it has room. If its free space is not contiguous, the leaf is first
+     * compacted by a system transaction, which rewrites it with the same entries.
+     * @return false if the leaf has to split
+     */
+    private boolean insertWithoutSplit(IndexLogger logger, BTreeNode node, Entry entry) {
+        int position = node.search(entry.key, entry.ridBlock, entry.ridSlot, false);
+        if (node.entrySize(entry.key.length) > node.freeSpace()) {
+            if (!fitsWith(node, position, entry)) return false;
+            List<Entry> entries = node.entries();
+            change(systemTransaction -> node.format(systemTransaction, node.level(), node.prefix(), node.prefixLength(),
+                    entries, node.firstChild(), node.next()));
+        }
+        node.insert(logger, position, entry);
+        return true;
+    }
+
+    /**
+     * @return true if the entries of a node, with one more entry at a position, fit in the node once compacted
+     */
+    private boolean fitsWith(BTreeNode node, int position, Entry entry) {
+        List<Entry> entries = node.entries();
+        entries.add(position, entry);
+        return BTreeNode.fits(entries, node.prefixLength(), node.isLeaf(), blockSize);
+    }
+
+    /**
+     * Splits the full leaf of an entry, without inserting the entry. The tree is latched exclusively from the root
+     * down; the latches above a node that has room for one more entry are released, since a split stops at that
+     * node. The leaf then splits, and each split inserts a separator into the parent, which may split in turn.
+     */
+    private void splitLeaf(Entry entry) {
+        List<Frame> path = new ArrayList<>();
+        try {
+            BTreeNode node = latch(ROOT, true);
+            path.add(new Frame(node, null, null));
+            byte[] low = null, high = null;
+            while (!node.isLeaf()) {
+                int position = node.search(entry.key, entry.ridBlock, entry.ridSlot, true) - 1;
+                int child = position < 0 ? node.firstChild() : node.child(position);
+                if (position >= 0) low = node.key(position);
+                if (position + 1 < node.count()) high = node.key(position + 1);
+                node = latch(child, true);
+                if (node.freeSpace() >= node.entrySize(maxKeySize)) {
+                    for (Frame frame : path) release(frame.node, true);
+                    path.clear();
+                }
+                path.add(new Frame(node, low, high));
+            }
+            //another thread may have made room in the leaf in the meantime
+            Frame leaf = path.get(path.size() - 1);
+            if (fitsWith(leaf.node, leaf.node.search(entry.key, entry.ridBlock, entry.ridSlot, false), entry)) return;
+            change(systemTransaction -> {
+                Entry separator = split(systemTransaction, leaf, leaf.node.entries());
+                for (int i = path.size() - 2; i >= 0 && separator != null; i--)
+                    separator = insertOrSplit(systemTransaction, path.get(i), separator);
+            });
+        }
+        finally {
+            for (Frame frame : path) release(frame.node, true);
+        }
+    }
+
+    /**
+     * Inserts a separator into an inner node, which splits if it has no room.
+     * @return the separator to insert into the parent, whose child is the new node, or null if the node did not split
+     */
+    private Entry insertOrSplit(SystemTransaction systemTransaction, Frame frame, Entry entry) {
+        BTreeNode node = frame.node;
+        int position = node.search(entry.key, entry.ridBlock, entry.ridSlot, false);
+        if (node.entrySize(entry.key.length) <= node.freeSpace()) {
+            node.insert(systemTransaction, position, entry);
+            return null;
+        }
+        List<Entry> entries = node.entries();
+        entries.add(position, entry);
+        if (BTreeNode.fits(entries, node.prefixLength(), false, blockSize)) {
+            node.format(systemTransaction, node.level(), node.prefix(), node.prefixLength(), entries, node.firstChild(), node.next());
+            return null;
+        }
+        return split(systemTransaction, frame, entries);
+    }
+
+    /**
+     * Rewrites a node with entries that do not fit in it: the lower half of the entries stays in the node and the
+     * upper half moves to a new node, at the right of it; the root moves both halves to new nodes.
+     * @param entries the entries of the node, in order
+     * @return the separator to insert into the parent, whose child is the new node, or null if the root split
+     */
+    private Entry split(SystemTransaction systemTransaction, Frame frame, List<Entry> entries) {
+        BTreeNode node = frame.node;
+        boolean leaf = node.isLeaf();
+        int level = node.level();
+
+        //the entries are split in two halves of about the same number of bytes
+        int total = 0;
+        for (Entry e : entries) total += BTreeNode.entrySize(e.key.length, node.prefixLength(), leaf);
+        int split = 1, half = BTreeNode.entrySize(entries.get(0).key.length, node.prefixLength(), leaf);
+        while (split < entries.size() - 2 && half < total / 2)
+            half += BTreeNode.entrySize(entries.get(split++).key.length, node.prefixLength(), leaf);
+        List<Entry> left = new ArrayList<>(entries.subList(0, split));
+        List<Entry> right;
+        Entry separator;
+        int rightFirstChild = 0;
+        if (leaf) {
+            right = new ArrayList<>(entries.subList(split, entries.size()));
+            separator = right.get(0).separatorAfter(left.get(left.size() - 1), 0);
+        }
+        else {
+            //the middle separator moves up, and its child becomes the first child of the new node
+            separator = entries.get(split);
+            rightFirstChild = separator.child;
+            right = new ArrayList<>(entries.subList(split + 1, entries.size()));
+        }
+
+        if (node.getBlockNumber() == ROOT) {
+            int leftBlock = appendBlock();
+            int rightBlock = appendBlock();
+            writeNode(systemTransaction, rightBlock, level, separator.key, 0, right, rightFirstChild, 0);
+            writeNode(systemTransaction, leftBlock, level, separator.key, 0, left, node.firstChild(), leaf ? rightBlock : 0);
+            List<Entry> rootEntries = new ArrayList<>();
+            rootEntries.add(separator.withChild(rightBlock));
+            node.format(systemTransaction, level + 1, separator.key, 0, rootEntries, leftBlock, 0);
+            return null;
+        }
+        int rightBlock = appendBlock();
+        writeNode(systemTransaction, rightBlock, level, separator.key,
+                BTreeNode.commonPrefixLength(separator.key, frame.high), right, rightFirstChild, leaf ? node.next() : 0);
+        node.format(systemTransaction, level, separator.key, BTreeNode.commonPrefixLength(frame.low, separator.key),
+                left, node.firstChild(), leaf ? rightBlock : 0);
+        return separator.withChild(rightBlock);
+    }
+
+    /**
+     * Formats a node that no other thread can reach yet.
+     */
+    void writeNode(SystemTransaction systemTransaction, int block, int level, byte[] prefix, int prefixLength, List<Entry> entries, int firstChild, int next) {
+        BTreeNode node = latch(block, true);
+        try {
+            node.format(systemTransaction, level, prefix, prefixLength, entries, firstChild, next);
+        }
+        finally {
+            release(node, true);
+        }
+    }
+
+    /**
+     * Runs a change of latched nodes in a system transaction, which is rolled back if the change fails.
+     */
+    void change(Consumer<SystemTransaction> action) {
+        SystemTransaction systemTransaction = beginSystemTransaction();
+        try {
+            action.accept(systemTransaction);
+        }
+        catch (RuntimeException e) {
+            systemTransaction.rollback();
+            throw e;
+        }
+        systemTransaction.commit();
+    }
+
+    SystemTransaction beginSystemTransaction() {
+        return new SystemTransaction(logManager, bufferManager, checkpointManager);
+    }
+
+    int appendBlock() {
+        return fileManager.append(fileName).getNumber();
+    }
+
+    int blockCount() {
+        return fileManager.length(fileName);
+    }
+
+    int blockSize() {
+        return blockSize;
+    }
+
+    void checkKey(byte[] key) {
+        if (key.length > maxKeySize)
+            throw new RuntimeException("a key of " + key.length + " bytes is longer than the " + maxKeySize + " bytes allowed in " + fileName);
+    }
+
+    /**
+     * Latches a block, then pins it.
+     */
+    BTreeNode latch(int block, boolean exclusive) {
+        ReentrantReadWriteLock latch = latches.computeIfAbsent(block, b -> new ReentrantReadWriteLock());
+        if (exclusive) latch.writeLock().lock();
+        else latch.readLock().lock();
+        try {
+            return new BTreeNode(bufferManager.pin(new LogicalBlock(fileName, block)), blockSize);
+        }
+        catch (RuntimeException e) {
+            if (exclusive) latch.writeLock().unlock();
+            else latch.readLock().unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Unpins a node, then releases its latch.
+     */
+    void release(BTreeNode node, boolean exclusive) {
+        int block = node.getBlockNumber();
+        bufferManager.unpin(node.getBuffer());
+        ReentrantReadWriteLock latch = latches.get(block);
+        if (exclusive) latch.writeLock().unlock();
+        else latch.readLock().unlock();
+    }
+
+    /**
+     * Copies the entries of the leaf that holds the first entry not smaller than the key (see {@link BTreeScan}).
+     * @return the next leaf, or 0 if there is none
+     */
+    int readFirstLeaf(byte[] key, List<Entry> entries) {
+        BTreeNode leaf = descend(key, Integer.MIN_VALUE, Integer.MIN_VALUE, false);
+        try {
+            return copyLeaf(leaf, leaf.search(key, Integer.MIN_VALUE, Integer.MIN_VALUE, false), entries);
+        }
+        finally {
+            release(leaf, false);
+        }
+    }
+
+    /**
+     * Copies the entries of a leaf (see {@link BTreeScan}).
+     * @return the next leaf, or 0 if there is none
+     */
+    int readLeaf(int block, List<Entry> entries) {
+        BTreeNode leaf = latch(block, false);
+        try {
+            return copyLeaf(leaf, 0, entries);
+        }
+        finally {
+            release(leaf, false);
+        }
+    }
+
+    private static int copyLeaf(BTreeNode leaf, int from, List<Entry> entries) {
+        for (int position = from, count = leaf.count(); position < count; position++) entries.add(leaf.entry(position));
+        return leaf.next();
+    }
+
+    /**
+     * Compares two entries by key, then by record id.
+     */
+    static int compare(Entry a, Entry b) {
+        int comparison = Arrays.compareUnsigned(a.key, b.key);
+        if (comparison != 0) return comparison;
+        comparison = Integer.compare(a.ridBlock, b.ridBlock);
+        return comparison != 0 ? comparison : Integer.compare(a.ridSlot, b.ridSlot);
+    }
+
+    /**
+     * A node latched by an insert, with the keys of the separators that bound it in its parent,
+     * which are null at the ends of the tree.
+     */
+    private static final class Frame {
+        private final BTreeNode node;
+        private final byte[] low;
+        private final byte[] high;
+
+        private Frame(BTreeNode node, byte[] low, byte[] high) {
+            this.node = node;
+            this.low = low;
+            this.high = high;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package AhmedDB.index;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.file.Page;
+import AhmedDB.transaction.SystemTransaction;
+import AhmedDB.transaction.recovery.IndexChange;
+import AhmedDB.transaction.recovery.IndexLogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A node of a {@link BTreeIndex}, stored in a pinned buffer. The caller latches the node while it uses it.
+ * After the page header of the buffer, the block starts with a header of six ints: the level of the node
+ * (0 for a leaf), the number of entries, the start of the entry area, the next leaf (0 if there is none,
+ * since block 0 is the root), the child that holds the keys below the first entry of an inner node, and the
+ * length of the prefix. A directory of shorts follows, with the offset of each entry in key order.
+ * The entries are stored at the end of the block, and the area grows down toward the directory, which grows up.
+ * A block whose ints are all zero is an empty leaf.<br>
+ * Entries are ordered by key, then by record id, so that equal keys are told apart. An entry is the length
+ * of the key suffix as a short, the suffix, and the record id; the entry of an inner node is a separator,
+ * followed by the child that holds the entries from the separator up to the next one.<br>
+ * The keys are prefix-compressed: every key that may ever go to the node starts with the common prefix of
+ * the two separators that bound the node in its parent, so that prefix is stored once, at the end of the block,
+ * and each entry only stores the rest of its key. Splits only narrow the range of a node, so its prefix stays valid.
+ * The insert and the delete of an entry are logged as one {@link IndexChange}, by the {@link IndexLogger} of the
+ * transaction that asked for them, or of the system transaction of a split; the rewrites of the whole node are
+ * logged through a {@link SystemTransaction}, as ranges of bytes.
+ */
+class BTreeNode {
+    private static final int LEVEL = Buffer.PAGE_HEADER_SIZE;
+    private static final int COUNT = LEVEL + Integer.BYTES;
+    private static final int ENTRIES_START = COUNT + Integer.BYTES;
+    private static final int NEXT = ENTRIES_START + Integer.BYTES;
+    private static final int FIRST_CHILD = NEXT + Integer.BYTES;
+    private static final int PREFIX_LENGTH = FIRST_CHILD + Integer.BYTES;
+    static final int DIRECTORY = PREFIX_LENGTH + Integer.BYTES;
+    static final int SLOT_SIZE = Short.BYTES;
+    /**
+     * The size of an entry besides its key suffix: the suffix length and the record id.
+     */
+    private static final int LEAF_ENTRY_OVERHEAD = Short.BYTES + 2 * Integer.BYTES;
+    private static final int INNER_ENTRY_OVERHEAD = LEAF_ENTRY_OVERHEAD + Integer.BYTES;
+
+    private final Buffer buffer;
+    private final Page page;
+    private final int blockSize;
+
+    BTreeNode(Buffer buffer, int blockSize) {
+        this.buffer = buffer;
+        page = buffer.getAssociatedPage();
+        this.blockSize = blockSize;
+    }
+
+    Buffer getBuffer() {
+        return buffer;
+    }
+
+    int getBlockNumber() {
+        return buffer.getAssociatedLogicalBlock().getNumber();
+    }
+
+    int level() {
+        return page.getInt(LEVEL);
+    }
+
+    boolean isLeaf() {
+        return level() == 0;
+    }
+
+    int count() {
+        return page.getInt(COUNT);
+    }
+
+    /**
+     * @return the next leaf, or 0 if the leaf is the last one
+     */
+    int next() {
+        return page.getInt(NEXT);
+    }
+
+    int firstChild() {
+        return page.getInt(FIRST_CHILD);
+    }
+
+    int prefixLength() {
+        return page.getInt(PREFIX_LENGTH);
+    }
+
+    /**
+     * @return the number of bytes between the directory and the entry area
+     */
+    int freeSpace() {
+        return entriesStart() - DIRECTORY - count() * SLOT_SIZE;
+    }
+
+    /**
+     * @return the number of bytes of the block that an entry with a key of the specified length takes in the node,
+     * its directory slot included
+     */
+    int entrySize(int keyLength) {
+        return entrySize(keyLength, prefixLength(), isLeaf());
+    }
+
+    static int entrySize(int keyLength, int prefixLength, boolean leaf) {
+        return (leaf ? LEAF_ENTRY_OVERHEAD : INNER_ENTRY_OVERHEAD) + keyLength - prefixLength + SLOT_SIZE;
+    }
+
+    /**
+     * @return the largest key that the node may ever have to hold, so that it splits into two nodes with room
+     */
+    static int maxKeySize(int blockSize) {
+        return (blockSize - DIRECTORY) / 8 - INNER_ENTRY_OVERHEAD - SLOT_SIZE;
+    }
+
+    /**
+     * Returns the first position whose entry is not smaller than the key and record id
+     * (or greater than them, if upper is true), which is where they would be inserted.
+     * @param key a full key
+     * @param upper true to skip the entries equal to the key and record id
+     * @return a position between 0 and the number of entries
+     */
+    int search(byte[] key, int ridBlock, int ridSlot, boolean upper) {
+        int count = count();
+        int prefixComparison = comparePrefix(key);
+        if (prefixComparison != 0) return prefixComparison < 0 ? 0 : count;
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, key, ridBlock, ridSlot);
+            if (comparison < 0 || (upper && comparison == 0)) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return the child of an inner node that holds the specified key and record id
+     */
+    int childFor(byte[] key, int ridBlock, int ridSlot) {
+        int position = search(key, ridBlock, ridSlot, true) - 1;
+        return position < 0 ? firstChild() : child(position);
+    }
+
+    /**
+     * Compares the entry at a position with a key and a record id.
+     * The key must start with the prefix of the node.
+     * @return a negative value, zero or a positive value if the entry is smaller, equal or greater
+     */
+    int compare(int position, byte[] key, int ridBlock, int ridSlot) {
+        int entry = entryOffset(position);
+        int suffixLength = page.getShort(entry) & 0xFFFF;
+        int prefixLength = prefixLength();
+        int keyRest = key.length - prefixLength;
+        int length = Math.min(suffixLength, keyRest);
+        for (int i = 0; i < length; i++) {
+            int comparison = (page.getByte(entry + Short.BYTES + i) & 0xFF) - (key[prefixLength + i] & 0xFF);
+            if (comparison != 0) return comparison;
+        }
+        if (suffixLength != keyRest) return suffixLength - keyRest;
+        int ridPosition = entry + Short.BYTES + suffixLength;
+        int comparison = Integer.compare(page.getInt(ridPosition), ridBlock);
+        return comparison != 0 ? comparison : Integer.compare(page.getInt(ridPosition + Integer.BYTES), ridSlot);
+    }
+
+    /**
+     * @return true if the key of the entry at the position is equal to the specified key
+     */
+    boolean keyEquals(int position, byte[] key) {
+        int prefixLength = prefixLength();
+        if (comparePrefix(key) != 0) return false;
+        int entry = entryOffset(position);
+        int suffixLength = page.getShort(entry) & 0xFFFF;
+        if (suffixLength != key.length - prefixLength) return false;
+        for (int i = 0; i < suffixLength; i++)
+            if (page.getByte(entry + Short.BYTES + i) != key[prefixLength + i]) return false;
+        return true;
+    }
+
+    /**
+     * @return the full key of the entry at the position, its prefix included
+     */
+    byte[] key(int position) {
+        int entry = entryOffset(position);
+        int suffixLength = page.getShort(entry) & 0xFFFF;
+        int prefixLength = prefixLength();
+        byte[] key = new byte[prefixLength + suffixLength];
+        page.readBytes(prefixOffset(), key, 0, prefixLength);
+        page.readBytes(entry + Short.BYTES, key, prefixLength, suffixLength);
+        return key;
+    }
+
+    int ridBlock(int position) {
+        int entry = entryOffset(position);
+        return page.getInt(entry + Short.BYTES + (page.getShort(entry) & 0xFFFF));
+    }
+
+    int ridSlot(int position) {
+        int entry = entryOffset(position);
+        return page.getInt(entry + Short.BYTES + (page.getShort(entry) & 0xFFFF) + Integer.BYTES);
+    }
+
+    int child(int position) {
+        int entry = entryOffset(position);
+        return page.getInt(entry + Short.BYTES + (page.getShort(entry) & 0xFFFF) + 2 * Integer.BYTES);
+    }
+
+    /**
+     * @return a copy of the entry at the position
+     */
+    Entry entry(int position) {
+        return new Entry(key(position), ridBlock(position), ridSlot(position), isLeaf() ? 0 : child(position));
+    }
+
+    /**
+     * @return a copy of all the entries of the node, in order
+     */
+    List<Entry> entries() {
+        int count = count();
+        List<Entry> entries = new ArrayList<>(count + 1);
+        for (int position = 0; position < count; position++) entries.add(entry(position));
+        return entries;
+    }
+
+    /**
+     * @return a copy of the prefix of the node
+     */
+    byte[] prefix() {
+        byte[] prefix = new byte[prefixLength()];
+        page.readBytes(prefixOffset(), prefix, 0, prefix.length);
+        return prefix;
+    }
+
+    /**
+     * Inserts an entry at a position. The entry must fit in the free space of the node.
+     * The change is the entry, a move of the directory from the position on, its new slot and the header.
+     * @param logger logs the change
+     * @param position the position returned by {@link #search(byte[], int, int, boolean)}
+     * @param entry the new entry, whose key starts with the prefix of the node
+     */
+    void insert(IndexLogger logger, int position, Entry entry) {
+        int count = count();
+        int prefixLength = prefixLength();
+        IndexChange change = new IndexChange(buffer, true, entry.key, entry.ridBlock, entry.ridSlot);
+        byte[] bytes = new byte[entrySize(entry.key.length) - SLOT_SIZE];
+        writeEntry(new Page(bytes), 0, entry, prefixLength, isLeaf());
+        int entryOffset = entriesStart() - bytes.length;
+        change.setBytes(entryOffset, bytes);
+
+        change.moveBytes(slotPosition(position), slotPosition(position + 1), (count - position) * SLOT_SIZE);
+        byte[] slot = new byte[SLOT_SIZE];
+        new Page(slot).setShort(0, (short) entryOffset);
+        change.setBytes(slotPosition(position), slot);
+
+        byte[] header = new byte[2 * Integer.BYTES];
+        Page headerPage = new Page(header);
+        headerPage.setInt(0, count + 1);
+        headerPage.setInt(Integer.BYTES, entryOffset);
+        change.setBytes(COUNT, header);
+        logger.changeIndex(change);
+    }
+
+    /**
+     * Removes the entry at a position from the directory. Its bytes are not reclaimed until the node is rewritten.
+     * The change is a move of the directory after the position, and the header.
+     * @param logger logs the change
+     */
+    void delete(IndexLogger logger, int position) {
+        int count = count();
+        IndexChange change = new IndexChange(buffer, false, key(position), ridBlock(position), ridSlot(position));
+        change.moveBytes(slotPosition(position + 1), slotPosition(position), (count - position - 1) * SLOT_SIZE);
+        byte[] header = new byte[Integer.BYTES];
+        new Page(header).setInt(0, count - 1);
+        change.setBytes(COUNT, header);
+        logger.changeIndex(change);
+    }
+
+    /**
+     * @return true if the entries fit in a node with the specified prefix
+     */
+    static boolean fits(List<Entry> entries, int prefixLength, boolean leaf, int blockSize) {
+        int size = DIRECTORY + prefixLength;
+        for (Entry entry : entries) size += entrySize(entry.key.length, prefixLength, leaf);
+        return size <= blockSize;
+    }
+
+    /**
+     * Rewrites the whole node, which is the way a node is created, split or compacted.
+     * Only the used part of the block is logged: the header with the directory, and the entry area.
+     * @param level the level of the node, 0 for a leaf
+     * @param prefix a key that starts with the prefix of the node
+     * @param prefixLength the length of the prefix
+     * @param entries the entries of the node, in order, which must fit in the block
+     * @param firstChild the child of an inner node that holds the keys below the first entry
+     * @param next the next leaf, or 0
+     */
+    void format(SystemTransaction systemTransaction, int level, byte[] prefix, int prefixLength, List<Entry> entries, int firstChild, int next) {
+        if (!fits(entries, prefixLength, level == 0, blockSize))
+            throw new RuntimeException("the entries do not fit in block " + buffer.getAssociatedLogicalBlock());
+        byte[] image = new byte[blockSize];
+        Page imagePage = new Page(image);
+        int entryOffset = blockSize - prefixLength;
+        imagePage.writeBytes(entryOffset, prefix, 0, prefixLength);
+        for (int position = 0; position < entries.size(); position++) {
+            Entry entry = entries.get(position);
+            entryOffset -= entrySize(entry.key.length, prefixLength, level == 0) - SLOT_SIZE;
+            writeEntry(imagePage, entryOffset, entry, prefixLength, level == 0);
+            imagePage.setShort(slotPosition(position), (short) entryOffset);
+        }
+        imagePage.setInt(LEVEL, level);
+        imagePage.setInt(COUNT, entries.size());
+        imagePage.setInt(ENTRIES_START, entryOffset);
+        imagePage.setInt(NEXT, next);
+        imagePage.setInt(FIRST_CHILD, firstChild);
+        imagePage.setInt(PREFIX_LENGTH, prefixLength);
+        systemTransaction.setBytes(buffer, LEVEL, image, LEVEL, slotPosition(entries.size()) - LEVEL);
+        systemTransaction.setBytes(buffer, entryOffset, image, entryOffset, blockSize - entryOffset);
+    }
+
+    private static void writeEntry(Page target, int offset, Entry entry, int prefixLength, boolean leaf) {
+        int suffixLength = entry.key.length - prefixLength;
+        target.setShort(offset, (short) suffixLength);
+        target.writeBytes(offset + Short.BYTES, entry.key, prefixLength, suffixLength);
+        int ridPosition = offset + Short.BYTES + suffixLength;
+        target.setInt(ridPosition, entry.ridBlock);
+        target.setInt(ridPosition + Integer.BYTES, entry.ridSlot);
+        if (!leaf) target.setInt(ridPosition + 2 * Integer.BYTES, entry.child);
+    }
+
+    /**
+     * @return -1, 0 or 1 if the key is below the prefix, starts with it, or is above it
+     */
+    private int comparePrefix(byte[] key) {
+        int prefixLength = prefixLength();
+        if (prefixLength == 0) return 0;
+        int prefixOffset = prefixOffset();
+        int length = Math.min(prefixLength, key.length);
+        for (int i = 0; i < length; i++) {
+            int comparison = (key[i] & 0xFF) - (page.getByte(prefixOffset + i) & 0xFF);
+            if (comparison != 0) return comparison < 0 ? -1 : 1;
+        }
+        return key.length < prefixLength ? -1 : 0;
+    }
+
+    /**
+     * The prefix is stored at the very end of the block.
+     */
+    private int prefixOffset() {
+        return blockSize - prefixLength();
+    }
+
+    private int entriesStart() {
+        int entriesStart = page.getInt(ENTRIES_START);
+        return entriesStart == 0 ? blockSize : entriesStart;
+    }
+
+    private int entryOffset(int position) {
+        return page.getShort(slotPosition(position)) & 0xFFFF;
+    }
+
+    private static int slotPosition(int position) {
+        return DIRECTORY + position * SLOT_SIZE;
+    }
+
+    /**
+     * @return the length of the common prefix of two keys, or 0 if one of them is missing
+     */
+    static int commonPrefixLength(byte[] a, byte[] b) {
+        if (a == null || b == null) return 0;
+        int length = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < length && a[i] == b[i]) i++;
+        return i;
+    }
+
+    /**
+     * A copy of an entry: a full key with its record id, and the child of an inner entry.
+     */
+    static final class Entry {
+        final byte[] key;
+        final int ridBlock;
+        final int ridSlot;
+        final int child;
+
+        Entry(byte[] key, int ridBlock, int ridSlot, int child) {
+            this.key = key;
+            this.ridBlock = ridBlock;
+            this.ridSlot = ridSlot;
+            this.child = child;
+        }
+
+        /**
+         * @return the shortest separator between a smaller entry and this one: a separator is not smaller than
+         * this entry's key and record id, and greater than the other entry's, so it only needs the key bytes up
+         * to the first one that differs (suffix truncation)
+         */
+        Entry separatorAfter(Entry smaller, int child) {
+            int common = commonPrefixLength(smaller.key, key);
+            if (common == key.length && smaller.key.length == key.length)
+                return new Entry(key, ridBlock, ridSlot, child);
+            byte[] separator = Arrays.copyOf(key, common + 1);
+            return new Entry(separator, Integer.MIN_VALUE, Integer.MIN_VALUE, child);
+        }
+
+        Entry withChild(int child) {
+            return new Entry(key, ridBlock, ridSlot, child);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package AhmedDB.index;
+
+import AhmedDB.index.BTreeNode.Entry;
+import AhmedDB.record.RecordId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A scan of the entries of a {@link BTreeIndex} whose keys are in a range, in key order.
+ * The scan copies the entries of one leaf at a time, and holds no latch between two calls, so the client may
+ * use the index while it scans. It remembers the next leaf when it copies one: the entries that a split moves
+ * out of a copied leaf were already copied, and the entries inserted in a leaf after it was copied are not seen.
+ */
+public class BTreeScan {
+    private final BTreeIndex index;
+    private final byte[] high;
+    private final List<Entry> entries = new ArrayList<>();
+    private int position;
+    private int nextLeaf;
+    private boolean started = false;
+    private Entry current;
+
+    BTreeScan(BTreeIndex index, byte[] low, byte[] high) {
+        this.index = index;
+        this.high = high;
+        nextLeaf = index.readFirstLeaf(low, entries);
+    }
+
+    /**
+     * Moves to the next entry of the range.
+     * @return false if there is no next entry
+     */
+    public boolean next() {
+        started = true;
+        while (position == entries.size()) {
+            if (nextLeaf == 0) return done();
+            entries.clear();
+            position = 0;
+            nextLeaf = index.readLeaf(nextLeaf, entries);
+        }
+        current = entries.get(position++);
+        if (high != null && Arrays.compareUnsigned(current.key, high) >= 0) return done();
+        return true;
+    }
+
+    /**
+     * @return the key of the current entry
+     */
+    public byte[] getKey() {
+        checkCurrent();
+        return current.key;
+    }
+
+    /**
+     * @return the id of the record of the current entry
+     */
+    public RecordId getRecordId() {
+        checkCurrent();
+        return new RecordId(current.ridBlock, current.ridSlot);
+    }
+
+    /**
+     * Ends the scan.
+     */
+    public void close() {
+        done();
+    }
+
+    private boolean done() {
+        entries.clear();
+        position = 0;
+        nextLeaf = 0;
+        current = null;
+        return false;
+    }
+
+    private void checkCurrent() {
+        if (current == null)
+            throw new RuntimeException(started ? "the scan has no more entries" : "next() must be called before reading an entry");
+    }
+}
@@ -0,0 +1,265 @@
+package AhmedDB.index;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.file.Page;
+import AhmedDB.transaction.SystemTransaction;
+import AhmedDB.transaction.recovery.IndexChange;
+import AhmedDB.transaction.recovery.IndexLogger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bucket of a {@link HashIndex}, or an overflow block of a bucket, stored in a pinned buffer.
+ * After the page header of the buffer, the block starts with a header of five ints: the local depth of the bucket,
+ * its pattern (the low bits that the hashes of all its keys share, as many as the local depth), the number of
+ * entries, the number of bytes they take, and the next overflow block (0 if there is none, since block 0 is
+ * always a bucket). The entries follow the header one after the other, in the order they were inserted,
+ * and a deleted entry is filled by moving the following ones down, so the free space is always at the end
+ * of the block. A block whose ints are all zero is an empty bucket of depth 0.<br>
+ * An entry is the hash of the key, the length of the key as a short, the key and the record id.
+ * Storing the hash lets a lookup skip the other keys without comparing them, and lets a split divide the
+ * entries without hashing the keys again.
+ * The insert and the delete of an entry are logged as one {@link IndexChange}, by the {@link IndexLogger} of the
+ * transaction that asked for them; the other changes are logged through a {@link SystemTransaction}, as ranges of bytes.
+ */
+class HashBucket {
+    private static final int LOCAL_DEPTH = Buffer.PAGE_HEADER_SIZE;
+    private static final int PATTERN = LOCAL_DEPTH + Integer.BYTES;
+    private static final int COUNT = PATTERN + Integer.BYTES;
+    private static final int USED = COUNT + Integer.BYTES;
+    private static final int NEXT = USED + Integer.BYTES;
+    static final int ENTRIES = NEXT + Integer.BYTES;
+    /**
+     * The size of an entry besides its key: the hash, the key length and the record id.
+     */
+    private static final int ENTRY_OVERHEAD = Integer.BYTES + Short.BYTES + 2 * Integer.BYTES;
+
+    private final Buffer buffer;
+    private final Page page;
+    private final int blockSize;
+
+    HashBucket(Buffer buffer, int blockSize) {
+        this.buffer = buffer;
+        page = buffer.getAssociatedPage();
+        this.blockSize = blockSize;
+    }
+
+    Buffer getBuffer() {
+        return buffer;
+    }
+
+    int getBlockNumber() {
+        return buffer.getAssociatedLogicalBlock().getNumber();
+    }
+
+    int localDepth() {
+        return page.getInt(LOCAL_DEPTH);
+    }
+
+    int pattern() {
+        return page.getInt(PATTERN);
+    }
+
+    int count() {
+        return page.getInt(COUNT);
+    }
+
+    private int used() {
+        return page.getInt(USED);
+    }
+
+    /**
+     * @return the next overflow block, or 0 if the block is the last one of its bucket
+     */
+    int next() {
+        return page.getInt(NEXT);
+    }
+
+    int freeSpace() {
+        return blockSize - ENTRIES - used();
+    }
+
+    /**
+     * @return true if a key with the specified hash belongs to the bucket
+     */
+    boolean owns(int hash) {
+        return (hash & mask(localDepth())) == pattern();
+    }
+
+    /**
+     * @return an int whose low bits are set, as many as the depth
+     */
+    static int mask(int depth) {
+        return depth == 0 ? 0 : -1 >>> (Integer.SIZE - depth);
+    }
+
+    /**
+     * @return the number of bytes that an entry with a key of the specified length takes in a block
+     */
+    static int entrySize(int keyLength) {
+        return ENTRY_OVERHEAD + keyLength;
+    }
+
+    /**
+     * @return the largest key that the index accepts, so that a block holds at least four entries
+     */
+    static int maxKeySize(int blockSize) {
+        return (blockSize - ENTRIES) / 4 - ENTRY_OVERHEAD;
+    }
+
+    /**
+     * @return the offset of the first entry, which is {@link #end()} if the block has no entries
+     */
+    int first() {
+        return ENTRIES;
+    }
+
+    /**
+     * @return the offset that follows the last entry
+     */
+    int end() {
+        return ENTRIES + used();
+    }
+
+    /**
+     * @return the offset of the entry that follows the one at the specified offset
+     */
+    int next(int offset) {
+        return offset + entrySize(keyLength(offset));
+    }
+
+    int hash(int offset) {
+        return page.getInt(offset);
+    }
+
+    private int keyLength(int offset) {
+        return page.getShort(offset + Integer.BYTES);
+    }
+
+    int ridBlock(int offset) {
+        return page.getInt(offset + Integer.BYTES + Short.BYTES + keyLength(offset));
+    }
+
+    int ridSlot(int offset) {
+        return page.getInt(offset + 2 * Integer.BYTES + Short.BYTES + keyLength(offset));
+    }
+
+    byte[] key(int offset) {
+        byte[] key = new byte[keyLength(offset)];
+        page.readBytes(offset + Integer.BYTES + Short.BYTES, key, 0, key.length);
+        return key;
+    }
+
+    /**
+     * @return true if the entry at the specified offset has the specified hash and key
+     */
+    boolean matches(int offset, int hash, byte[] key) {
+        return hash(offset) == hash && keyLength(offset) == key.length && Arrays.equals(key(offset), key);
+    }
+
+    /**
+     * @return the offset of the entry with the specified key and record id, or -1 if the block has none
+     */
+    int find(int hash, byte[] key, int ridBlock, int ridSlot) {
+        for (int offset = first(), end = end(); offset < end; offset = next(offset))
+            if (matches(offset, hash, key) && ridBlock(offset) == ridBlock && ridSlot(offset) == ridSlot) return offset;
+        return -1;
+    }
+
+    /**
+     * @return true if a hash of the block differs from the specified one in the bits of the mask
+     */
+    boolean hasOtherHash(int hash, int mask) {
+        for (int offset = first(), end = end(); offset < end; offset = next(offset))
+            if (((hash(offset) ^ hash) & mask) != 0) return true;
+        return false;
+    }
+
+    Entry entry(int offset) {
+        return new Entry(hash(offset), key(offset), ridBlock(offset), ridSlot(offset));
+    }
+
+    List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(count());
+        for (int offset = first(), end = end(); offset < end; offset = next(offset)) entries.add(entry(offset));
+        return entries;
+    }
+
+    /**
+     * Appends an entry, which must fit in the free space of the block.
+     * The change is the entry and the counts of the header.
+     * @param logger logs the change
+     */
+    void insert(IndexLogger logger, Entry entry) {
+        IndexChange change = new IndexChange(buffer, true, entry.key, entry.ridBlock, entry.ridSlot);
+        ByteBuffer bytes = ByteBuffer.allocate(entrySize(entry.key.length));
+        entry.write(bytes);
+        change.setBytes(end(), bytes.array());
+        change.setBytes(COUNT, counts(count() + 1, used() + bytes.capacity()));
+        logger.changeIndex(change);
+    }
+
+    /**
+     * Removes the entry at the specified offset, and moves the following entries down.
+     * The change is the move of the following entries, the clearing of the bytes they left, and the counts.
+     * @param logger logs the change
+     */
+    void delete(IndexLogger logger, int offset) {
+        int size = entrySize(keyLength(offset));
+        int end = end();
+        IndexChange change = new IndexChange(buffer, false, key(offset), ridBlock(offset), ridSlot(offset));
+        change.moveBytes(offset + size, offset, end - offset - size);
+        change.setBytes(end - size, new byte[size]);
+        change.setBytes(COUNT, counts(count() - 1, used() - size));
+        logger.changeIndex(change);
+    }
+
+    private static byte[] counts(int count, int used) {
+        return ByteBuffer.allocate(2 * Integer.BYTES).putInt(count).putInt(used).array();
+    }
+
+    /**
+     * Links the block to an overflow block.
+     */
+    void setNext(SystemTransaction systemTransaction, int next) {
+        systemTransaction.setBytes(buffer, NEXT, ByteBuffer.allocate(Integer.BYTES).putInt(next).array());
+    }
+
+    /**
+     * Rewrites the whole block. The header and the entries are logged as one range of bytes, which also
+     * clears the bytes of the old entries that are not overwritten.
+     * @param entries entries that fit in the block
+     */
+    void format(SystemTransaction systemTransaction, int localDepth, int pattern, List<Entry> entries, int next) {
+        int used = 0;
+        for (Entry entry : entries) used += entrySize(entry.key.length);
+        ByteBuffer bytes = ByteBuffer.allocate(ENTRIES - LOCAL_DEPTH + Math.max(used, used()));
+        bytes.putInt(localDepth).putInt(pattern).putInt(entries.size()).putInt(used).putInt(next);
+        for (Entry entry : entries) entry.write(bytes);
+        systemTransaction.setBytes(buffer, LOCAL_DEPTH, bytes.array());
+    }
+
+    /**
+     * An entry of a bucket, copied out of its block.
+     */
+    static final class Entry {
+        final int hash;
+        final byte[] key;
+        final int ridBlock;
+        final int ridSlot;
+
+        Entry(int hash, byte[] key, int ridBlock, int ridSlot) {
+            this.hash = hash;
+            this.key = key;
+            this.ridBlock = ridBlock;
+            this.ridSlot = ridSlot;
+        }
+
+        private void write(ByteBuffer bytes) {
+            bytes.putInt(hash).putShort((short) key.length).put(key).putInt(ridBlock).putInt(ridSlot);
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package AhmedDB.index;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.index.HashBucket.Entry;
+import AhmedDB.log.LogManager;
+import AhmedDB.record.RecordId;
+import AhmedDB.transaction.SystemTransaction;
+import AhmedDB.transaction.Transaction;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import AhmedDB.transaction.recovery.IndexLogger;
+import AhmedDB.transaction.recovery.UndoableIndex;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * An extendible hash index, for lookups of keys by equality. It maps keys, compared as bytes, to the ids of the
+ * records that hold them; a key may be mapped to several records. The buckets are blocks of the index file,
+ * pinned through the {@link BufferManager} (see {@link HashBucket}), and the directory, which maps the low bits of
+ * the hash of a key to its bucket, is stored in a second file, named after the first one with a ".dir" suffix.<br>
+ * A bucket holds the keys whose hashes end with its pattern, a number of bits called its local depth.
+ * When a bucket is full, it splits alone: the keys whose next bit is 1 move to a new bucket, and the local depth of
+ * both grows by one. The directory is sparse: it only has an entry at the pattern of each bucket, and a hash is
+ * looked up by dropping its high bits one at a time, from the largest local depth (the global depth) down, until the
+ * directory has an entry for it; block 0 is the bucket of pattern 0, which has no entry. So a split writes one entry
+ * of the directory, even when it grows the global depth, and no operation ever rebuilds the directory or moves
+ * the keys of other buckets. The directory is read into memory when the index is opened, so a lookup pins one block,
+ * unless its bucket has overflow blocks: when all the keys of a full bucket have the same hash, which happens
+ * when a key is mapped to many records, a split would not separate them, and the bucket grows a chain of overflow
+ * blocks instead.<br>
+ * Threads use the index at the same time, and latch the buckets they use, with a read-write lock per bucket; the
+ * latch of a bucket also covers its overflow blocks. A thread reads the directory without a latch, then checks that
+ * the bucket it latched still owns the key; if the bucket split in between, it reads the directory again.
+ * Every change is logged, as in {@link BTreeIndex}. The insert and the delete of an entry are logged under the
+ * {@link Transaction} that asked for them, and are undone with it, in whatever block holds the entry by then. The
+ * changes of the structure, which are the bucket splits with the growth of the directory, and the overflow blocks
+ * added to a bucket, run in a {@link SystemTransaction} that commits before the latches are released, and stay when
+ * the transaction rolls back. A split, or a new overflow block, only makes room: the entry is then inserted under
+ * the transaction. Deleted entries free their space, but buckets are never merged.
+ * The database engine has one {@link HashIndex} object per index file, shared by all the threads. The index
+ * registers in the {@link CheckpointManager}, so it must be opened before recovery; recovery reads the directory
+ * again once it has redone the splits (see {@link #reload()}).
+ */
+public class HashIndex implements UndoableIndex {
+    /**
+     * The largest local depth of a bucket, which bounds the size of the directory to 2<sup>24</sup> entries.
+     */
+    public static final int MAX_DEPTH = 24;
+
+    private final FileManager fileManager;
+    private final LogManager logManager;
+    private final BufferManager bufferManager;
+    private final CheckpointManager checkpointManager;
+    private final String fileName;
+    private final String directoryFileName;
+    private final int blockSize;
+    private final int maxKeySize;
+    private final int entriesPerDirectoryBlock;
+    private final Map<Integer, ReentrantReadWriteLock> latches = new ConcurrentHashMap<>();
+    /**
+     * Serializes the changes of the directory, in the file and in memory.
+     */
+    private final Object directoryLock = new Object();
+    private volatile Directory directory;
+
+    /**
+     * Opens the index, whose files are created with an empty bucket if they do not exist, and registers it in the
+     * checkpoint manager.
+     * @param fileName the name of the file of the buckets
+     */
+    public HashIndex(FileManager fileManager, LogManager logManager, BufferManager bufferManager, CheckpointManager checkpointManager, String fileName) {
+        this.fileManager = fileManager;
+        this.logManager = logManager;
+        this.bufferManager = bufferManager;
+        this.checkpointManager = checkpointManager;
+        this.fileName = fileName;
+        directoryFileName = fileName + ".dir";
+        blockSize = fileManager.blockSize();
+        maxKeySize = HashBucket.maxKeySize(blockSize);
+        entriesPerDirectoryBlock = (blockSize - Buffer.PAGE_HEADER_SIZE) / Integer.BYTES;
+        if (fileManager.length(fileName) == 0) fileManager.append(fileName);
+        directory = readDirectory();
+        checkpointManager.registerIndex(fileName, this);
+    }
+
+    /**
+     * The hash of a key. The directory uses its low bits, so all the bits of the key are mixed into them,
+     * with the finalizer of MurmurHash3.
+     */
+    static int hash(byte[] key) {
+        int hash = Arrays.hashCode(key);
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /**
+     * @return the ids of the records whose key is equal to the specified one, in no particular order
+     */
+    public List<RecordId> search(byte[] key) {
+        int hash = hash(key);
+        List<RecordId> recordIds = new ArrayList<>();
+        HashBucket bucket = latchBucket(hash, false);
+        try {
+            HashBucket block = bucket;
+            while (true) {
+                for (int offset = block.first(), end = block.end(); offset < end; offset = block.next(offset))
+                    if (block.matches(offset, hash, key)) recordIds.add(new RecordId(block.ridBlock(offset), block.ridSlot(offset)));
+                int next = block.next();
+                if (block != bucket) unpin(block);
+                if (next == 0) return recordIds;
+                block = pin(next);
+            }
+        }
+        finally {
+            release(bucket, false);
+        }
+    }
+
+    /**
+     * Adds an entry to the index, which is removed if the transaction rolls back.
+     * @param transaction the transaction that logs the insert
+     * @param key the key, whose length must not exceed {@link #getMaxKeySize()}
+     * @param recordId the id of the record that holds the key
+     */
+    public void insert(Transaction transaction, byte[] key, RecordId recordId) {
+        insert(transaction, key, recordId.getBlockNumber(), recordId.getSlot());
+    }
+
+    /**
+     * Removes an entry from the index, which is inserted again if the transaction rolls back.
+     * @param transaction the transaction that logs the delete
+     * @return false if the index has no such entry
+     */
+    public boolean delete(Transaction transaction, byte[] key, RecordId recordId) {
+        return delete(transaction, key, recordId.getBlockNumber(), recordId.getSlot());
+    }
+
+    @Override
+    public void undoInsert(byte[] key, int ridBlock, int ridSlot, IndexLogger logger) {
+        delete(logger, key, ridBlock, ridSlot);
+    }
+
+    @Override
+    public void undoDelete(byte[] key, int ridBlock, int ridSlot, IndexLogger logger) {
+        insert(logger, key, ridBlock, ridSlot);
+    }
+
+    /**
+     * Reads the directory file again, which recovery may have changed by redoing or undoing splits.
+     */
+    @Override
+    public void reload() {
+        synchronized (directoryLock) {
+            directory = readDirectory();
+        }
+    }
+
+    /**
+     * Inserts an entry into the bucket of its key, which splits first if it has no room.
+     * @param logger logs the insert into the block
+     */
+    private void insert(IndexLogger logger, byte[] key, int ridBlock, int ridSlot) {
+        if (key.length > maxKeySize)
+            throw new RuntimeException("a key of " + key.length + " bytes is longer than the " + maxKeySize + " bytes allowed in " + fileName);
+        Entry entry = new Entry(hash(key), key, ridBlock, ridSlot);
+        //each split makes room in the bucket of the key, unless all its keys moved to the same half
+        while (true) {
+            HashBucket bucket = latchBucket(entry.hash, true);
+            try {
+                if (insertIntoChain(logger, bucket, entry)) return;
+                split(bucket);
+            }
+            finally {
+                release(bucket, true);
+            }
+        }
+    }
+
+    /**
+     * Removes an entry from the bucket of its key.
+     * @param logger logs the delete
+     * @return false if the index has no such entry
+     */
+    private boolean delete(IndexLogger logger, byte[] key, int ridBlock, int ridSlot) {
+        int hash = hash(key);
+        HashBucket bucket = latchBucket(hash, true);
+        try {
+            HashBucket block = bucket;
+            while (true) {
+                int offset = block.find(hash, key, ridBlock, ridSlot);
+                if (offset >= 0) block.delete(logger, offset);
+                int next = block.next();
+                if (block != bucket) unpin(block);
+                if (offset >= 0) return true;
+                if (next == 0) return false;
+                block = pin(next);
+            }
+        }
+        finally {
+            release(bucket, true);
+        }
+    }
+
+    /**
+     * @return the largest local depth of the buckets
+     */
+    public int getGlobalDepth() {
+        return directory.depth;
+    }
+
+    /**
+     * @return the number of buckets, without their overflow blocks
+     */
+    public int getBucketCount() {
+        return directory.buckets;
+    }
+
+    /**
+     * @return the size of the largest key that the index accepts
+     */
+    public int getMaxKeySize() {
+        return maxKeySize;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Inserts an entry into the first block of a bucket that has room for it. When no block has room, and a split
+     * would not separate the keys of the bucket, an empty overflow block is added at the end of the bucket by a
+     * system transaction, and the entry is inserted into it.
+     * @param logger logs the insert into the block
+     * @return false if the bucket has to split
+     */
+    private boolean insertIntoChain(IndexLogger logger, HashBucket bucket, Entry entry) {
+        int size = HashBucket.entrySize(entry.key.length);
+        boolean splittable = bucket.localDepth() < MAX_DEPTH;
+        int mask = HashBucket.mask(MAX_DEPTH);
+        HashBucket block = bucket;
+        try {
+            while (block.freeSpace() < size) {
+                splittable = splittable && block.hasOtherHash(entry.hash, mask);
+                int next = block.next();
+                if (next == 0) break;
+                if (block != bucket) unpin(block);
+                block = pin(next);
+            }
+            if (block.freeSpace() >= size) {
+                block.insert(logger, entry);
+                return true;
+            }
+            if (splittable) return false;
+            HashBucket last = block;
+            int overflow = appendBlock();
+            HashBucket overflowBlock = pin(overflow);
+            try {
+                change(systemTransaction -> {
+                    overflowBlock.format(systemTransaction, bucket.localDepth(), bucket.pattern(), List.of(), 0);
+                    last.setNext(systemTransaction, overflow);
+                });
+                overflowBlock.insert(logger, entry);
+            }
+            finally {
+                unpin(overflowBlock);
+            }
+            return true;
+        }
+        finally {
+            if (block != bucket) unpin(block);
+        }
+    }
+
+    /**
+     * Splits a latched bucket: the entries whose hash has a 1 at the bit of the local depth move to a new bucket,
+     * the others are compacted into the blocks of the bucket, and the directory gets an entry for the new bucket.
+     * The new bucket is not latched, since no other thread can reach it before the directory is updated.
+     */
+    private void split(HashBucket bucket) {
+        int depth = bucket.localDepth();
+        int pattern = bucket.pattern();
+        int highPattern = pattern | 1 << depth;
+        List<Entry> low = new ArrayList<>(), high = new ArrayList<>();
+        HashBucket block = bucket;
+        while (true) {
+            for (Entry entry : block.entries()) (((entry.hash >>> depth) & 1) == 0 ? low : high).add(entry);
+            int next = block.next();
+            if (block != bucket) unpin(block);
+            if (next == 0) break;
+            block = pin(next);
+        }
+        int highBlock = appendBlock();
+        change(systemTransaction -> {
+            writeChain(systemTransaction, bucket, low, depth + 1, pattern);
+            HashBucket highBucket = pin(highBlock);
+            try {
+                writeChain(systemTransaction, highBucket, high, depth + 1, highPattern);
+            }
+            finally {
+                unpin(highBucket);
+            }
+            writeDirectoryEntry(systemTransaction, highPattern, highBlock);
+        });
+        publish(highPattern, highBlock, depth + 1);
+    }
+
+    /**
+     * Writes entries into a bucket and its overflow blocks, and adds overflow blocks if they do not fit.
+     * Overflow blocks that are not needed stay in the bucket, empty.
+     * @param first the first block of the bucket, pinned by the caller
+     */
+    private void writeChain(SystemTransaction systemTransaction, HashBucket first, List<Entry> entries, int depth, int pattern) {
+        HashBucket block = first;
+        int from = 0;
+        while (true) {
+            int to = from, size = 0;
+            while (to < entries.size() && size + HashBucket.entrySize(entries.get(to).key.length) <= blockSize - HashBucket.ENTRIES)
+                size += HashBucket.entrySize(entries.get(to++).key.length);
+            int next = block.next();
+            if (to < entries.size() && next == 0) next = appendBlock();
+            try {
+                block.format(systemTransaction, depth, pattern, entries.subList(from, to), next);
+            }
+            finally {
+                if (block != first) unpin(block);
+            }
+            if (next == 0) return;
+            block = pin(next);
+            from = to;
+        }
+    }
+
+    /**
+     * Runs a change of latched buckets in a system transaction, which is rolled back if the change fails.
+     */
+    private void change(Consumer<SystemTransaction> action) {
+        SystemTransaction systemTransaction = new SystemTransaction(logManager, bufferManager, checkpointManager);
+        try {
+            action.accept(systemTransaction);
+        }
+        catch (RuntimeException e) {
+            systemTransaction.rollback();
+            throw e;
+        }
+        systemTransaction.commit();
+    }
+
+    private int appendBlock() {
+        return fileManager.append(fileName).getNumber();
+    }
+
+    /**
+     * @return the bucket that holds the keys with the specified hash, according to the directory
+     */
+    private int bucketFor(int hash) {
+        Directory directory = this.directory;
+        for (int depth = directory.depth; depth > 0; depth--) {
+            //dropping a 0 bit gives the same pattern again
+            if ((hash >>> (depth - 1) & 1) == 0) continue;
+            int block = directory.blocks.get(hash & HashBucket.mask(depth));
+            if (block != 0) return block;
+        }
+        return 0;
+    }
+
+    /**
+     * Latches and pins the bucket of a hash. If the bucket split after the directory was read, and the key moved
+     * to the new bucket, the directory already has the new bucket once the latch is taken, so it is read again.
+     */
+    private HashBucket latchBucket(int hash, boolean exclusive) {
+        while (true) {
+            int block = bucketFor(hash);
+            ReentrantReadWriteLock latch = latches.computeIfAbsent(block, b -> new ReentrantReadWriteLock());
+            if (exclusive) latch.writeLock().lock();
+            else latch.readLock().lock();
+            HashBucket bucket;
+            try {
+                bucket = pin(block);
+            }
+            catch (RuntimeException e) {
+                if (exclusive) latch.writeLock().unlock();
+                else latch.readLock().unlock();
+                throw e;
+            }
+            if (bucket.owns(hash)) return bucket;
+            release(bucket, exclusive);
+        }
+    }
+
+    /**
+     * Unpins a bucket, then releases its latch.
+     */
+    private void release(HashBucket bucket, boolean exclusive) {
+        int block = bucket.getBlockNumber();
+        unpin(bucket);
+        ReentrantReadWriteLock latch = latches.get(block);
+        if (exclusive) latch.writeLock().unlock();
+        else latch.readLock().unlock();
+    }
+
+    private HashBucket pin(int block) {
+        return new HashBucket(bufferManager.pin(new LogicalBlock(fileName, block)), blockSize);
+    }
+
+    private void unpin(HashBucket block) {
+        bufferManager.unpin(block.getBuffer());
+    }
+
+    /**
+     * Logs and writes the block of a bucket into the directory file, which grows if needed.
+     * The directory file is only read when the index is opened, so its blocks are not latched.
+     */
+    private void writeDirectoryEntry(SystemTransaction systemTransaction, int pattern, int block) {
+        synchronized (directoryLock) {
+            int directoryBlock = pattern / entriesPerDirectoryBlock;
+            while (fileManager.length(directoryFileName) <= directoryBlock) fileManager.append(directoryFileName);
+            Buffer buffer = bufferManager.pin(new LogicalBlock(directoryFileName, directoryBlock));
+            try {
+                int offset = Buffer.PAGE_HEADER_SIZE + pattern % entriesPerDirectoryBlock * Integer.BYTES;
+                systemTransaction.setBytes(buffer, offset, ByteBuffer.allocate(Integer.BYTES).putInt(block).array());
+            }
+            finally {
+                bufferManager.unpin(buffer);
+            }
+        }
+    }
+
+    /**
+     * Adds a committed split to the directory in memory. When the global depth grows, the entries are copied into
+     * a larger array, which only takes memory: the directory file does not change.
+     */
+    private void publish(int pattern, int block, int depth) {
+        synchronized (directoryLock) {
+            Directory current = directory;
+            AtomicIntegerArray blocks = current.blocks;
+            if (depth > current.depth) {
+                blocks = new AtomicIntegerArray(1 << depth);
+                for (int i = 0; i < current.blocks.length(); i++) blocks.set(i, current.blocks.get(i));
+            }
+            blocks.set(pattern, block);
+            directory = new Directory(Math.max(depth, current.depth), blocks, current.buckets + 1);
+        }
+    }
+
+    /**
+     * Reads the directory file. The global depth is not stored: it is the number of bits of the largest pattern.
+     */
+    private Directory readDirectory() {
+        int directoryBlocks = fileManager.length(directoryFileName);
+        int[] entries = new int[directoryBlocks * entriesPerDirectoryBlock];
+        int largest = 0, buckets = 1;
+        for (int i = 0; i < directoryBlocks; i++) {
+            Buffer buffer = bufferManager.pin(new LogicalBlock(directoryFileName, i));
+            for (int j = 0; j < entriesPerDirectoryBlock; j++) {
+                int pattern = i * entriesPerDirectoryBlock + j;
+                entries[pattern] = buffer.getAssociatedPage().getInt(Buffer.PAGE_HEADER_SIZE + j * Integer.BYTES);
+                if (entries[pattern] != 0) {
+                    largest = pattern;
+                    buckets++;
+                }
+            }
+            bufferManager.unpin(buffer);
+        }
+        int depth = Integer.SIZE - Integer.numberOfLeadingZeros(largest);
+        AtomicIntegerArray blocks = new AtomicIntegerArray(1 << depth);
+        for (int pattern = 1; pattern <= largest; pattern++) blocks.set(pattern, entries[pattern]);
+        return new Directory(depth, blocks, buckets);
+    }
+
+    /**
+     * The directory in memory, which maps the pattern of each bucket, except block 0, to its block.
+     * Its array is replaced when the global depth grows, and a lookup that still reads the old one finds a bucket
+     * that no longer owns its key, so it reads the directory again (see {@link #latchBucket(int, boolean)}).
+     */
+    private static final class Directory {
+        private final int depth;
+        private final AtomicIntegerArray blocks;
+        private final int buckets;
+
+        private Directory(int depth, AtomicIntegerArray blocks, int buckets) {
+            this.depth = depth;
+            this.blocks = blocks;
+            this.buckets = buckets;
+        }
+    }
+}
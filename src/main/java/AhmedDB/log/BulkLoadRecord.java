@@ -0,0 +1,114 @@
+package AhmedDB.log;
+
+import AhmedDB.file.Page;
+
+/**
+ * The record of a bulk load, which writes a run of new blocks at the end of a file directly to the disk
+ * instead of logging their values (see {@link AhmedDB.transaction.Transaction#appendBlocks(String, byte[], int)}).
+ * It names the file and the blocks, and it is forced before the blocks are written, so a load that did not
+ * commit is undone by emptying its blocks. The blocks themselves reach the disk before the commit record,
+ * so there is nothing to redo. BULK_LOAD records only exist in the compact layout.
+ */
+public class BulkLoadRecord extends LogRecord {
+    private final int transactionNumber;
+    private final long prevLSN;
+    private final String fileName;
+    private final int firstBlock;
+    private final int blockCount;
+
+    private BulkLoadRecord(int transactionNumber, long prevLSN, String fileName, int firstBlock, int blockCount) {
+        this.transactionNumber = transactionNumber;
+        this.prevLSN = prevLSN;
+        this.fileName = fileName;
+        this.firstBlock = firstBlock;
+        this.blockCount = blockCount;
+    }
+
+    /**
+     * Reads a record written in the compact layout
+     * <code>[header, txId, prevLSN, fileId, firstBlock, blockCount]</code>, all values except the header being
+     * variable length integers.
+     * @param page the memory page that contains the record data
+     * @param logManager it resolves the file id into a file name
+     * @return the decoded record
+     */
+    static BulkLoadRecord readCompact(Page page, LogManager logManager) {
+        int transactionPosition = LogRecordFormat.HEADER_SIZE;
+        int transactionNumber = LogRecordFormat.readVarInt(page, transactionPosition);
+        int prevLSNPosition = transactionPosition + LogRecordFormat.varIntSize(transactionNumber);
+        long prevLSN = LogRecordFormat.readPrevLSN(page, 0, prevLSNPosition);
+        int fileIdPosition = prevLSNPosition + LogRecordFormat.prevLSNSize(prevLSN);
+        int fileId = LogRecordFormat.readVarInt(page, fileIdPosition);
+        int firstBlockPosition = fileIdPosition + LogRecordFormat.varIntSize(fileId);
+        int firstBlock = LogRecordFormat.readVarInt(page, firstBlockPosition);
+        int blockCount = LogRecordFormat.readVarInt(page, firstBlockPosition + LogRecordFormat.varIntSize(firstBlock));
+        return new BulkLoadRecord(transactionNumber, prevLSN, logManager.fileName(fileId), firstBlock, blockCount);
+    }
+
+    /**
+     * Writes a BULK_LOAD record to the log. The caller must force the log up to the record before it writes the blocks.
+     * @param logManager the log manager
+     * @param transactionNumber the transaction id number
+     * @param prevLSN the LSN of the previous record written by the transaction, or -1 if there is none
+     * @param fileName the name of the loaded file
+     * @param firstBlock the number of the first loaded block
+     * @param blockCount the number of loaded blocks
+     * @return the LSN of the record
+     */
+    public static long writeToLog(LogManager logManager, int transactionNumber, long prevLSN, String fileName, int firstBlock, int blockCount) {
+        //<header, txId, prevLSN, fileId, firstBlock, blockCount>
+        int fileId = logManager.fileId(fileName);
+        int prevLSNPosition = LogRecordFormat.HEADER_SIZE + LogRecordFormat.varIntSize(transactionNumber);
+        int fileIdPosition = prevLSNPosition + LogRecordFormat.prevLSNSize(prevLSN);
+        int firstBlockPosition = fileIdPosition + LogRecordFormat.varIntSize(fileId);
+        int blockCountPosition = firstBlockPosition + LogRecordFormat.varIntSize(firstBlock);
+
+        byte[] recordBytes = new byte[blockCountPosition + LogRecordFormat.varIntSize(blockCount)];
+        Page page = new Page(recordBytes);
+        page.setByte(0, LogRecordFormat.header(LogOperator.BULK_LOAD, prevLSN));
+        LogRecordFormat.writeVarInt(page, LogRecordFormat.HEADER_SIZE, transactionNumber);
+        LogRecordFormat.writePrevLSN(page, prevLSNPosition, prevLSN);
+        LogRecordFormat.writeVarInt(page, fileIdPosition, fileId);
+        LogRecordFormat.writeVarInt(page, firstBlockPosition, firstBlock);
+        LogRecordFormat.writeVarInt(page, blockCountPosition, blockCount);
+        return logManager.append(recordBytes);
+    }
+
+    @Override
+    public int getRecordOperatorNumber() {
+        return LogOperator.BULK_LOAD.value;
+    }
+
+    @Override
+    public int getTransactionNumber() {
+        return transactionNumber;
+    }
+
+    @Override
+    public long getPrevLSN() {
+        return prevLSN;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the number of the first loaded block
+     */
+    public int getFirstBlock() {
+        return firstBlock;
+    }
+
+    /**
+     * @return the number of loaded blocks
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    @Override
+    public String toString() {
+        return "<BULK_LOAD " + transactionNumber + " " + fileName + " " + firstBlock + " " + blockCount + ">";
+    }
+}
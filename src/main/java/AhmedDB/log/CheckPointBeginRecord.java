@@ -0,0 +1,36 @@
+package AhmedDB.log;
+
+import AhmedDB.file.Page;
+
+/**
+ * The first record of a fuzzy checkpoint, which is followed by the {@link FuzzyCheckPointRecord} chunks that
+ * hold the tables of the checkpoint and by a {@link CheckPointEndRecord}. It has no value: recovery finds it
+ * through the end record, which holds its LSN, and ignores it when the end record is missing.
+ */
+public class CheckPointBeginRecord extends LogRecord {
+
+    @Override
+    public int getRecordOperatorNumber() {
+        return LogOperator.CHECKPOINT_BEGIN.value;
+    }
+
+    /**
+     * checkpoint records has no transactions
+     */
+    @Override
+    public int getTransactionNumber() {
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "<CHECKPOINT_BEGIN>";
+    }
+
+    public static long writeToLog(LogManager logManager) {
+        byte[] recordBytes = new byte[LogRecordFormat.HEADER_SIZE];
+        Page p = new Page(recordBytes);
+        p.setByte(0, LogRecordFormat.header(LogOperator.CHECKPOINT_BEGIN));
+        return logManager.append(recordBytes);
+    }
+}
@@ -0,0 +1,68 @@
+package AhmedDB.log;
+
+import AhmedDB.file.Page;
+
+/**
+ * The last record of a fuzzy checkpoint. It holds the LSN of the {@link CheckPointBeginRecord} of the checkpoint,
+ * so recovery, which reads the log backwards, can jump to the begin record and read the chunks of the checkpoint
+ * forward from there. A checkpoint is complete only once its end record is written: the chunks of a checkpoint
+ * interrupted by a crash are ignored.<br>
+ * <strong>Record Example:</strong><br>
+ * <code>[header, beginLSN]</code><br>
+ * the begin LSN is a variable length integer.
+ */
+public class CheckPointEndRecord extends LogRecord {
+    private final long beginLSN;
+
+    private CheckPointEndRecord(long beginLSN) {
+        this.beginLSN = beginLSN;
+    }
+
+    /**
+     * Reads a record written in the compact layout, the only layout of this record.
+     * @param page the memory page that contains the record data
+     * @return the decoded record
+     */
+    static CheckPointEndRecord readCompact(Page page) {
+        return new CheckPointEndRecord(LogRecordFormat.readVarLong(page, LogRecordFormat.HEADER_SIZE));
+    }
+
+    /**
+     * Writes the end record of a fuzzy checkpoint.
+     * @param logManager the log manager
+     * @param beginLSN the LSN of the begin record of the checkpoint
+     * @return the LSN of the new record
+     */
+    public static long writeToLog(LogManager logManager, long beginLSN) {
+        byte[] recordBytes = new byte[LogRecordFormat.HEADER_SIZE + LogRecordFormat.varLongSize(beginLSN)];
+        Page page = new Page(recordBytes);
+        page.setByte(0, LogRecordFormat.header(LogOperator.CHECKPOINT_END));
+        LogRecordFormat.writeVarLong(page, LogRecordFormat.HEADER_SIZE, beginLSN);
+        return logManager.append(recordBytes);
+    }
+
+    @Override
+    public int getRecordOperatorNumber() {
+        return LogOperator.CHECKPOINT_END.value;
+    }
+
+    /**
+     * checkpoint records has no transactions
+     */
+    @Override
+    public int getTransactionNumber() {
+        return -1;
+    }
+
+    /**
+     * @return the LSN of the begin record of the checkpoint
+     */
+    public long getBeginLSN() {
+        return beginLSN;
+    }
+
+    @Override
+    public String toString() {
+        return "<CHECKPOINT_END " + beginLSN + ">";
+    }
+}
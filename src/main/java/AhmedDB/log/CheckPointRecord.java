@@ -23,10 +23,10 @@ public class CheckPointRecord extends LogRecord {
         return "<CHECKPOINT>";
     }
 
-    public static int writeToLog(LogManager logManager) {
-        byte[] recordBytes = new byte[Integer.BYTES];
+    public static long writeToLog(LogManager logManager) {
+        byte[] recordBytes = new byte[LogRecordFormat.HEADER_SIZE];
         Page p = new Page(recordBytes);
-        p.setInt(0, LogOperator.CHECKPOINT.value);
+        p.setByte(0, LogRecordFormat.header(LogOperator.CHECKPOINT));
         return logManager.append(recordBytes);
     }
 
@@ -4,16 +4,50 @@ import AhmedDB.file.Page;
 
 public class CommitRecord extends LogRecord {
     private final int transactionNumber;
+    private final long prevLSN;
+
+    /**
+     * Reads a record written in the legacy layout <code>[operator, txId]</code>.
+     * @param page the memory page that contains the record data
+     */
     public CommitRecord(Page page) {
         int transactionNumberPosition = Integer.BYTES; // passing the first value of record that belongs to LogOperator integer value.
         transactionNumber = page.getInt(transactionNumberPosition);
+        prevLSN = -1;
+    }
+
+    private CommitRecord(int transactionNumber, long prevLSN) {
+        this.transactionNumber = transactionNumber;
+        this.prevLSN = prevLSN;
+    }
+
+    /**
+     * Reads a record written in the compact layout <code>[header, txId(varint), prevLSN(varlong)]</code>.
+     * @param page the memory page that contains the record data
+     * @return the decoded record
+     */
+    static CommitRecord readCompact(Page page) {
+        int transactionNumber = LogRecordFormat.readVarInt(page, LogRecordFormat.HEADER_SIZE);
+        int prevLSNPosition = LogRecordFormat.HEADER_SIZE + LogRecordFormat.varIntSize(transactionNumber);
+        return new CommitRecord(transactionNumber, LogRecordFormat.readPrevLSN(page, 0, prevLSNPosition));
     }
 
-    public static int writeToLog(LogManager logManager, int transactionNumber) {
-        byte[] recordBytes = new byte[2*Integer.BYTES]; // 1 for LogOperator and 1 for transactionId
+    /**
+     * Writes a COMMIT record, which holds the transaction number and the LSN of
+     * the previous record of the transaction.
+     * @param logManager the log manager
+     * @param transactionNumber the transaction id number
+     * @param prevLSN the LSN of the previous record written by the transaction, or -1 if there is none
+     * @return the LSN of the new record
+     */
+    public static long writeToLog(LogManager logManager, int transactionNumber, long prevLSN) {
+        // 1 byte for the header, 1 to 5 bytes for transactionId and 1 to 9 bytes for prevLSN
+        int prevLSNPosition = LogRecordFormat.HEADER_SIZE + LogRecordFormat.varIntSize(transactionNumber);
+        byte[] recordBytes = new byte[prevLSNPosition + LogRecordFormat.prevLSNSize(prevLSN)];
         Page page = new Page(recordBytes);
-        page.setInt(0,LogOperator.COMMIT.value);
-        page.setInt(Integer.BYTES,transactionNumber);
+        page.setByte(0, LogRecordFormat.header(LogOperator.COMMIT, prevLSN));
+        LogRecordFormat.writeVarInt(page, LogRecordFormat.HEADER_SIZE, transactionNumber);
+        LogRecordFormat.writePrevLSN(page, prevLSNPosition, prevLSN);
         return logManager.append(recordBytes);
     }
 
@@ -27,6 +61,11 @@ public class CommitRecord extends LogRecord {
         return transactionNumber;
     }
 
+    @Override
+    public long getPrevLSN() {
+        return prevLSN;
+    }
+
     @Override
     public String toString(){
         return "<COMMIT " + transactionNumber + ">";
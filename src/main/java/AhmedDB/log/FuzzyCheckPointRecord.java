@@ -0,0 +1,231 @@
+package AhmedDB.log;
+
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A chunk of a non-quiescent (fuzzy) checkpoint. A checkpoint is written while transactions keep running, and holds
+ * the transaction table and the dirty page table at that time: the active transactions together with the
+ * LSN of their start records, and the blocks whose modified pages were not on disk yet, together with the
+ * LSN of the first record that modified each of them since it was written. The tables are written as a
+ * {@link CheckPointBeginRecord}, as many chunks as they need, each one holding part of the entries, and a
+ * {@link CheckPointEndRecord}.
+ * Recovery starts its analysis at the oldest start record of the active transactions instead of the
+ * beginning of the log, and it only redoes updates from the smallest of the recovery LSNs on.<br>
+ * <strong>Record Example:</strong><br>
+ * <code>[header, txCount, txId1, startLSN1, ..., pageCount, fileId1, blockNumber1, recoveryLSN1, ...]</code><br>
+ * all values are variable length integers.
+ */
+public class FuzzyCheckPointRecord extends LogRecord {
+    private final int[] transactionNumbers;
+    private final long[] startLSNs;
+    private final LogicalBlock[] dirtyBlocks;
+    private final long[] recoveryLSNs;
+
+    private FuzzyCheckPointRecord(int[] transactionNumbers, long[] startLSNs, LogicalBlock[] dirtyBlocks, long[] recoveryLSNs) {
+        this.transactionNumbers = transactionNumbers;
+        this.startLSNs = startLSNs;
+        this.dirtyBlocks = dirtyBlocks;
+        this.recoveryLSNs = recoveryLSNs;
+    }
+
+    /**
+     * Reads a record written in the compact layout, the only layout of this record.
+     * @param page the memory page that contains the record data
+     * @param logManager it resolves the file ids of the dirty blocks into file names
+     * @return the decoded record
+     */
+    static FuzzyCheckPointRecord readCompact(Page page, LogManager logManager) {
+        int position = LogRecordFormat.HEADER_SIZE;
+        int count = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(count);
+        int[] transactionNumbers = new int[count];
+        long[] startLSNs = new long[count];
+        for (int i = 0; i < count; i++) {
+            transactionNumbers[i] = LogRecordFormat.readVarInt(page, position);
+            position += LogRecordFormat.varIntSize(transactionNumbers[i]);
+            startLSNs[i] = LogRecordFormat.readVarLong(page, position);
+            position += LogRecordFormat.varLongSize(startLSNs[i]);
+        }
+        int pageCount = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(pageCount);
+        LogicalBlock[] dirtyBlocks = new LogicalBlock[pageCount];
+        long[] recoveryLSNs = new long[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            int fileId = LogRecordFormat.readVarInt(page, position);
+            position += LogRecordFormat.varIntSize(fileId);
+            int blockNumber = LogRecordFormat.readVarInt(page, position);
+            position += LogRecordFormat.varIntSize(blockNumber);
+            dirtyBlocks[i] = new LogicalBlock(logManager.fileName(fileId), blockNumber);
+            recoveryLSNs[i] = LogRecordFormat.readVarLong(page, position);
+            position += LogRecordFormat.varLongSize(recoveryLSNs[i]);
+        }
+        return new FuzzyCheckPointRecord(transactionNumbers, startLSNs, dirtyBlocks, recoveryLSNs);
+    }
+
+    /**
+     * Writes a fuzzy checkpoint: a {@link CheckPointBeginRecord}, the tables of the checkpoint cut into chunks,
+     * and a {@link CheckPointEndRecord}. A record cannot be longer than {@link LogManager#maxRecordSize()}, and a
+     * busy pool has many more dirty pages than a block of the log can describe, so each chunk holds as many
+     * entries as fit in one record; recovery merges them back (see {@link #merge(List)}).
+     * @param logManager the log manager
+     * @param transactionNumbers the transactions that are active
+     * @param startLSNs the LSN of the start record of each active transaction, in the same order
+     * @param dirtyBlocks the blocks whose modified pages are not on disk
+     * @param recoveryLSNs the LSN of the first record that modified each dirty block since it was written
+     * @return the LSN of the end record
+     */
+    public static long writeToLog(LogManager logManager, int[] transactionNumbers, long[] startLSNs, LogicalBlock[] dirtyBlocks, long[] recoveryLSNs) {
+        long beginLSN = CheckPointBeginRecord.writeToLog(logManager);
+        int count = transactionNumbers.length;
+        int pageCount = dirtyBlocks.length;
+        int[] fileIds = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) fileIds[i] = logManager.fileId(dirtyBlocks[i].getFileName());
+        //the header and the two counts of a chunk, with the counts at their largest size
+        int chunkOverhead = LogRecordFormat.HEADER_SIZE + 2 * LogRecordFormat.varIntSize(Integer.MAX_VALUE);
+        int maxLength = logManager.maxRecordSize();
+
+        int transaction = 0, block = 0;
+        while (transaction < count || block < pageCount) {
+            int length = chunkOverhead;
+            int firstTransaction = transaction, firstBlock = block;
+            while (transaction < count) {
+                int entryLength = LogRecordFormat.varIntSize(transactionNumbers[transaction]) + LogRecordFormat.varLongSize(startLSNs[transaction]);
+                if (length + entryLength > maxLength) break;
+                length += entryLength;
+                transaction++;
+            }
+            while (transaction == count && block < pageCount) {
+                int entryLength = LogRecordFormat.varIntSize(fileIds[block]) + LogRecordFormat.varIntSize(dirtyBlocks[block].getNumber())
+                        + LogRecordFormat.varLongSize(recoveryLSNs[block]);
+                if (length + entryLength > maxLength) break;
+                length += entryLength;
+                block++;
+            }
+            writeChunk(logManager, transactionNumbers, startLSNs, firstTransaction, transaction,
+                    fileIds, dirtyBlocks, recoveryLSNs, firstBlock, block);
+        }
+        return CheckPointEndRecord.writeToLog(logManager, beginLSN);
+    }
+
+    /**
+     * Writes a chunk of a fuzzy checkpoint, with a range of the active transactions and a range of the dirty blocks.
+     * @return the LSN of the chunk
+     */
+    private static long writeChunk(LogManager logManager, int[] transactionNumbers, long[] startLSNs, int firstTransaction, int endTransaction,
+                                   int[] fileIds, LogicalBlock[] dirtyBlocks, long[] recoveryLSNs, int firstBlock, int endBlock) {
+        int count = endTransaction - firstTransaction;
+        int pageCount = endBlock - firstBlock;
+        int recordLength = LogRecordFormat.HEADER_SIZE + LogRecordFormat.varIntSize(count) + LogRecordFormat.varIntSize(pageCount);
+        for (int i = firstTransaction; i < endTransaction; i++)
+            recordLength += LogRecordFormat.varIntSize(transactionNumbers[i])
+                    + LogRecordFormat.varLongSize(startLSNs[i]);
+        for (int i = firstBlock; i < endBlock; i++)
+            recordLength += LogRecordFormat.varIntSize(fileIds[i]) + LogRecordFormat.varIntSize(dirtyBlocks[i].getNumber())
+                    + LogRecordFormat.varLongSize(recoveryLSNs[i]);
+
+        byte[] recordBytes = new byte[recordLength];
+        Page page = new Page(recordBytes);
+        page.setByte(0, LogRecordFormat.header(LogOperator.FUZZY_CHECKPOINT));
+        int position = LogRecordFormat.writeVarInt(page, LogRecordFormat.HEADER_SIZE, count);
+        for (int i = firstTransaction; i < endTransaction; i++) {
+            position = LogRecordFormat.writeVarInt(page, position, transactionNumbers[i]);
+            position = LogRecordFormat.writeVarLong(page, position, startLSNs[i]);
+        }
+        position = LogRecordFormat.writeVarInt(page, position, pageCount);
+        for (int i = firstBlock; i < endBlock; i++) {
+            position = LogRecordFormat.writeVarInt(page, position, fileIds[i]);
+            position = LogRecordFormat.writeVarInt(page, position, dirtyBlocks[i].getNumber());
+            position = LogRecordFormat.writeVarLong(page, position, recoveryLSNs[i]);
+        }
+        return logManager.append(recordBytes);
+    }
+
+    /**
+     * Puts the chunks of a checkpoint back together.
+     * @param chunks the chunks written between the begin and the end record of the checkpoint
+     * @return a record that holds all the transactions and dirty blocks of the chunks
+     */
+    public static FuzzyCheckPointRecord merge(List<FuzzyCheckPointRecord> chunks) {
+        int count = 0, pageCount = 0;
+        for (FuzzyCheckPointRecord chunk : chunks) {
+            count += chunk.transactionNumbers.length;
+            pageCount += chunk.dirtyBlocks.length;
+        }
+        int[] transactionNumbers = new int[count];
+        long[] startLSNs = new long[count];
+        LogicalBlock[] dirtyBlocks = new LogicalBlock[pageCount];
+        long[] recoveryLSNs = new long[pageCount];
+        int transaction = 0, block = 0;
+        for (FuzzyCheckPointRecord chunk : chunks) {
+            System.arraycopy(chunk.transactionNumbers, 0, transactionNumbers, transaction, chunk.transactionNumbers.length);
+            System.arraycopy(chunk.startLSNs, 0, startLSNs, transaction, chunk.startLSNs.length);
+            transaction += chunk.transactionNumbers.length;
+            System.arraycopy(chunk.dirtyBlocks, 0, dirtyBlocks, block, chunk.dirtyBlocks.length);
+            System.arraycopy(chunk.recoveryLSNs, 0, recoveryLSNs, block, chunk.recoveryLSNs.length);
+            block += chunk.dirtyBlocks.length;
+        }
+        return new FuzzyCheckPointRecord(transactionNumbers, startLSNs, dirtyBlocks, recoveryLSNs);
+    }
+
+    @Override
+    public int getRecordOperatorNumber() {
+        return LogOperator.FUZZY_CHECKPOINT.value;
+    }
+
+    /**
+     * checkpoint records has no transactions
+     */
+    @Override
+    public int getTransactionNumber() {
+        return -1;
+    }
+
+    /**
+     * @return the transactions that were active when the checkpoint was taken
+     */
+    public int[] getActiveTransactions() {
+        return transactionNumbers;
+    }
+
+    /**
+     * @return the LSN of the start record of each active transaction
+     */
+    public long[] getStartLSNs() {
+        return startLSNs;
+    }
+
+    /**
+     * @return the blocks whose modified pages were not on disk when the checkpoint was taken
+     */
+    public LogicalBlock[] getDirtyBlocks() {
+        return dirtyBlocks;
+    }
+
+    /**
+     * @return the recovery LSN of each dirty block, in the same order
+     */
+    public long[] getRecoveryLSNs() {
+        return recoveryLSNs;
+    }
+
+    /**
+     * @return the smallest LSN that recovery may need, among the start records of the active transactions
+     * and the recovery LSNs of the dirty blocks, or -1 if there is none, in which case nothing
+     * before the checkpoint is needed
+     */
+    public long getOldestLSN() {
+        long oldestLSN = Long.MAX_VALUE;
+        for (long lsn : startLSNs) oldestLSN = Math.min(oldestLSN, lsn);
+        for (long lsn : recoveryLSNs) oldestLSN = Math.min(oldestLSN, lsn);
+        return oldestLSN == Long.MAX_VALUE ? -1 : oldestLSN;
+    }
+
+    @Override
+    public String toString() {
+        return "<FUZZY_CHECKPOINT " + Arrays.toString(transactionNumbers) + " " + Arrays.toString(dirtyBlocks) + ">";
+    }
+}
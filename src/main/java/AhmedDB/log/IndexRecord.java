@@ -0,0 +1,203 @@
+package AhmedDB.log;
+
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
+/**
+ * The record of the insert or the delete of an entry of an index, written by the transaction that changed the
+ * entry. It holds the change of the block of the entry physically, as the ranges of bytes it wrote, so recovery
+ * redoes it like any update, and it holds the entry itself, the key and the record id, so the change is undone
+ * logically: the index deletes the entry, or inserts it again, wherever it is by then, since other transactions
+ * may have split the block since (see {@link AhmedDB.transaction.recovery.UndoableIndex}).
+ * The undo is logged as a compensation record of the opposite operator, which holds the ranges of bytes of the undo.<br>
+ * A range is either bytes written at an offset, or bytes of the block moved to another offset, which removes an
+ * entry from the middle of a block without logging the entries that follow it; the moves are applied first.
+ * INDEX_INSERT and INDEX_DELETE records only exist in the compact layout.
+ */
+public class IndexRecord extends LogRecord {
+    private final int operator;
+    private final int transactionNumber;
+    private final long prevLSN;
+    private final boolean compensation;
+    private final long undoNextLSN;
+    private final LogicalBlock logicalBlock;
+    private final byte[] key;
+    private final int ridBlock;
+    private final int ridSlot;
+
+    /**
+     * It reads an INDEX_INSERT or INDEX_DELETE record.<br>
+     * <strong>Record Example:</strong><br>
+     * <code>[header, txId, prevLSN, undoNextLSN, fileId, blockNumber, moveCount, (to, from, length)*,
+     * writeCount, (offset, length, bytes)*, keyLength, key, ridBlock, ridSlot]</code><br>
+     * all values except the bytes and the key are variable length integers, and the undo next LSN is only
+     * present in compensation records.
+     * @param page the memory page that contains the record data
+     * @param logManager it resolves the file id into a file name
+     */
+    IndexRecord(Page page, LogManager logManager) {
+        operator = LogRecordFormat.operator(page, 0);
+        int position = LogRecordFormat.HEADER_SIZE;
+        transactionNumber = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(transactionNumber);
+        prevLSN = LogRecordFormat.readPrevLSN(page, 0, position);
+        position += LogRecordFormat.prevLSNSize(prevLSN);
+        compensation = LogRecordFormat.isCompensation(page, 0);
+        undoNextLSN = compensation ? LogRecordFormat.readVarLong(page, position) : -1;
+        if (compensation) position += LogRecordFormat.varLongSize(undoNextLSN);
+        int fileId = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(fileId);
+        int blockNumber = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(blockNumber);
+        logicalBlock = new LogicalBlock(logManager.fileName(fileId), blockNumber);
+        position = skipRanges(page, position);
+        int keyLength = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(keyLength);
+        key = new byte[keyLength];
+        page.readBytes(position, key, 0, keyLength);
+        position += keyLength;
+        ridBlock = LogRecordFormat.readVarInt(page, position);
+        ridSlot = LogRecordFormat.readVarInt(page, position + LogRecordFormat.varIntSize(ridBlock));
+    }
+
+    /**
+     * @param position the position of the number of moves of a record
+     * @return the position of the length of its key
+     */
+    static int skipRanges(Page page, int position) {
+        int moveCount = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(moveCount);
+        for (int i = 0; i < 3 * moveCount; i++) position += LogRecordFormat.varIntSize(LogRecordFormat.readVarInt(page, position));
+        int writeCount = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(writeCount);
+        for (int i = 0; i < writeCount; i++) {
+            position += LogRecordFormat.varIntSize(LogRecordFormat.readVarInt(page, position));
+            int length = LogRecordFormat.readVarInt(page, position);
+            position += LogRecordFormat.varIntSize(length) + length;
+        }
+        return position;
+    }
+
+    /**
+     * Writes an INDEX_INSERT or INDEX_DELETE record to the log.
+     * @param logManager the log manager
+     * @param transactionNumber the transaction id number
+     * @param prevLSN the LSN of the previous record written by the transaction, or -1 if there is none
+     * @param insert true for an insert, false for a delete
+     * @param logicalBlock the changed block of the index
+     * @param moves the moves of bytes within the block, as triples of the target offset, the source offset and the length
+     * @param offsets the offsets of the written ranges
+     * @param ranges the bytes of the written ranges
+     * @param key the key of the entry
+     * @param ridBlock the block of the record id of the entry
+     * @param ridSlot the slot of the record id of the entry
+     * @return the LSN of the record
+     */
+    public static long writeToLog(LogManager logManager, int transactionNumber, long prevLSN, boolean insert, LogicalBlock logicalBlock,
+                                  int[] moves, int[] offsets, byte[][] ranges, byte[] key, int ridBlock, int ridSlot) {
+        return write(logManager, transactionNumber, prevLSN, false, -1, insert, logicalBlock, moves, offsets, ranges, key, ridBlock, ridSlot);
+    }
+
+    /**
+     * Writes a compensation record, which logs the undo of the change of an entry as a redo-only change
+     * (see {@link SetIntRecord#writeCompensationToLog}).
+     * @param undoNextLSN the LSN of the record that precedes the undone change in the transaction
+     * @param insert true if the undo inserts the entry again, false if it deletes it
+     */
+    public static long writeCompensationToLog(LogManager logManager, int transactionNumber, long prevLSN, long undoNextLSN, boolean insert, LogicalBlock logicalBlock,
+                                              int[] moves, int[] offsets, byte[][] ranges, byte[] key, int ridBlock, int ridSlot) {
+        return write(logManager, transactionNumber, prevLSN, true, undoNextLSN, insert, logicalBlock, moves, offsets, ranges, key, ridBlock, ridSlot);
+    }
+
+    private static long write(LogManager logManager, int transactionNumber, long prevLSN, boolean compensation, long undoNextLSN, boolean insert,
+                              LogicalBlock logicalBlock, int[] moves, int[] offsets, byte[][] ranges, byte[] key, int ridBlock, int ridSlot) {
+        int fileId = logManager.fileId(logicalBlock.getFileName());
+        int size = LogRecordFormat.HEADER_SIZE + LogRecordFormat.varIntSize(transactionNumber) + LogRecordFormat.prevLSNSize(prevLSN)
+                + (compensation ? LogRecordFormat.varLongSize(undoNextLSN) : 0)
+                + LogRecordFormat.varIntSize(fileId) + LogRecordFormat.varIntSize(logicalBlock.getNumber())
+                + LogRecordFormat.varIntSize(moves.length / 3) + LogRecordFormat.varIntSize(offsets.length)
+                + LogRecordFormat.varIntSize(key.length) + key.length
+                + LogRecordFormat.varIntSize(ridBlock) + LogRecordFormat.varIntSize(ridSlot);
+        for (int value : moves) size += LogRecordFormat.varIntSize(value);
+        for (int i = 0; i < offsets.length; i++)
+            size += LogRecordFormat.varIntSize(offsets[i]) + LogRecordFormat.varIntSize(ranges[i].length) + ranges[i].length;
+
+        byte[] recordBytes = new byte[size];
+        Page page = new Page(recordBytes);
+        page.setByte(0, LogRecordFormat.updateHeader(insert ? LogOperator.INDEX_INSERT : LogOperator.INDEX_DELETE, prevLSN, compensation));
+        int position = LogRecordFormat.writeVarInt(page, LogRecordFormat.HEADER_SIZE, transactionNumber);
+        position = LogRecordFormat.writePrevLSN(page, position, prevLSN);
+        if (compensation) position = LogRecordFormat.writeVarLong(page, position, undoNextLSN);
+        position = LogRecordFormat.writeVarInt(page, position, fileId);
+        position = LogRecordFormat.writeVarInt(page, position, logicalBlock.getNumber());
+        position = LogRecordFormat.writeVarInt(page, position, moves.length / 3);
+        for (int value : moves) position = LogRecordFormat.writeVarInt(page, position, value);
+        position = LogRecordFormat.writeVarInt(page, position, offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            position = LogRecordFormat.writeVarInt(page, position, offsets[i]);
+            position = LogRecordFormat.writeVarInt(page, position, ranges[i].length);
+            page.writeBytes(position, ranges[i], 0, ranges[i].length);
+            position += ranges[i].length;
+        }
+        position = LogRecordFormat.writeVarInt(page, position, key.length);
+        page.writeBytes(position, key, 0, key.length);
+        position = LogRecordFormat.writeVarInt(page, position + key.length, ridBlock);
+        LogRecordFormat.writeVarInt(page, position, ridSlot);
+
+        return logManager.append(recordBytes);
+    }
+
+    @Override
+    public int getRecordOperatorNumber() {
+        return operator;
+    }
+
+    @Override
+    public int getTransactionNumber() {
+        return transactionNumber;
+    }
+
+    @Override
+    public long getPrevLSN() {
+        return prevLSN;
+    }
+
+    /**
+     * @return the changed block of the index
+     */
+    public LogicalBlock getLogicalBlock() {
+        return logicalBlock;
+    }
+
+    /**
+     * @return true if the record logs the undo of another change
+     */
+    public boolean isCompensation() {
+        return compensation;
+    }
+
+    /**
+     * @return the LSN of the next record to undo, for a compensation record, or -1 if there is none
+     */
+    public long getUndoNextLSN() {
+        return undoNextLSN;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public int getRidBlock() {
+        return ridBlock;
+    }
+
+    public int getRidSlot() {
+        return ridSlot;
+    }
+
+    @Override
+    public String toString() {
+        String name = operator == LogOperator.INDEX_INSERT.value ? "INDEX_INSERT " : "INDEX_DELETE ";
+        return "<" + (compensation ? "CLR " : "") + name + transactionNumber + " " + logicalBlock.getNumber() + " " + ridBlock + " " + ridSlot + ">";
+    }
+}
@@ -0,0 +1,63 @@
+package AhmedDB.log;
+
+import AhmedDB.file.Page;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A class that moves backwards through the records of a single transaction by following
+ * the previous LSN stored in each record, instead of reading every record of the log.
+ * Each step reads the log block that holds the next record, unless it is the block already
+ * loaded, and points the same {@link LogRecordReader} at the record.
+ * The iteration ends after a record that has no previous LSN, which is the start record of the transaction.
+ * After a compensation record, the iteration goes on at its undo next LSN instead of its previous LSN,
+ * so the updates that were already undone (and their compensation records) are skipped: a transaction whose
+ * rollback was interrupted only visits the records that still need to be undone.
+ */
+class LogChainIterator implements Iterator<LogRecordReader> {
+    private final LogManager logManager;
+    private final int blockSize;
+    private final Page page;
+    private final LogRecordReader reader;
+    private int loadedBlock = -1;
+    private long nextLSN;
+
+    /**
+     * @param logManager the log manager that wrote the records
+     * @param blockSize the size of the log blocks
+     * @param lsn the LSN of the most recent record of the transaction, or -1 if there is none
+     */
+    public LogChainIterator(LogManager logManager, int blockSize, long lsn) {
+        this.logManager = logManager;
+        this.blockSize = blockSize;
+        page = new Page(new byte[blockSize]);
+        reader = new LogRecordReader(logManager);
+        nextLSN = lsn;
+    }
+
+    /**
+     * @return true if the transaction has an earlier record
+     */
+    @Override
+    public boolean hasNext() {
+        return nextLSN >= 0;
+    }
+
+    /**
+     * Moves to the previous record of the transaction.
+     * @return the reader, pointed at the previous record of the transaction
+     */
+    @Override
+    public LogRecordReader next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        int blockNumber = LogManager.blockNumberOf(nextLSN, blockSize);
+        if (blockNumber != loadedBlock) {
+            logManager.readBlock(blockNumber, page);
+            loadedBlock = blockNumber;
+        }
+        reader.wrap(page, LogManager.positionOf(nextLSN, blockSize), nextLSN);
+        nextLSN = reader.isCompensation() ? reader.getUndoNextLSN() : reader.getPrevLSN();
+        return reader;
+    }
+}
@@ -0,0 +1,97 @@
+package AhmedDB.log;
+
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the names of the files that appear in log records into small integer ids, so that
+ * an update record stores a one or two bytes file id instead of the whole file name.
+ * The mapping is kept in its own file next to the log file. Each block of that file starts with
+ * an integer that holds the number of names stored in the block, followed by the names themselves;
+ * the id of a name is its position in the file.
+ * A new name is written to disk before its id is returned, so a log record can never
+ * reach the disk before the name it refers to.
+ */
+class LogFileRegistry {
+    private final FileManager fileManager;
+    private final String registryFile;
+    private final Page page;
+    private final List<String> fileNames = new ArrayList<>();
+    private final Map<String, Integer> fileIds = new HashMap<>();
+    private LogicalBlock currentBlock;
+    /**
+     * The position in the current block at which the next name will be written.
+     */
+    private int currentPos;
+
+    /**
+     * Loads the registry stored in the specified file, or creates it if it does not exist.
+     * @param fileManager the file manager
+     * @param registryFile the name of the registry file
+     */
+    LogFileRegistry(FileManager fileManager, String registryFile) {
+        this.fileManager = fileManager;
+        this.registryFile = registryFile;
+        page = new Page(new byte[fileManager.blockSize()]);
+        int size = fileManager.length(registryFile);
+        if (size == 0) {
+            currentBlock = fileManager.append(registryFile);
+            page.setInt(0, 0);
+            currentPos = Integer.BYTES;
+            return;
+        }
+        for (int blockNumber = 0; blockNumber < size; blockNumber++) {
+            currentBlock = new LogicalBlock(registryFile, blockNumber);
+            fileManager.read(currentBlock, page);
+            int count = page.getInt(0);
+            currentPos = Integer.BYTES;
+            for (int i = 0; i < count; i++) {
+                String fileName = page.getString(currentPos);
+                fileIds.put(fileName, fileNames.size());
+                fileNames.add(fileName);
+                currentPos += Page.maxLength(fileName.length());
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the specified file, registering it if it has not been seen before.
+     * @param fileName the name of the file
+     * @return the id of the file
+     */
+    synchronized int fileId(String fileName) {
+        Integer id = fileIds.get(fileName);
+        if (id != null) return id;
+
+        int needed = Page.maxLength(fileName.length());
+        if (currentPos + needed > fileManager.blockSize()) {
+            currentBlock = fileManager.append(registryFile);
+            page.setInt(0, 0);
+            currentPos = Integer.BYTES;
+        }
+        page.setString(currentPos, fileName);
+        page.setInt(0, page.getInt(0) + 1);
+        currentPos += needed;
+        fileManager.write(currentBlock, page);
+
+        id = fileNames.size();
+        fileIds.put(fileName, id);
+        fileNames.add(fileName);
+        return id;
+    }
+
+    /**
+     * @param fileId the id of a registered file
+     * @return the name of the file
+     */
+    synchronized String fileName(int fileId) {
+        if (fileId < 0 || fileId >= fileNames.size()) throw new RuntimeException("unknown log file id " + fileId);
+        return fileNames.get(fileId);
+    }
+}
@@ -5,75 +5,164 @@ import AhmedDB.file.LogicalBlock;
 import AhmedDB.file.Page;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * A class that provides the ability to move through the
- * records of the log file in reverse order.
+ * records of the log file, in reverse order (from the most recent record backwards)
+ * or in forward order (from a given LSN up to the most recent record).
+ * The log blocks are not read one at a time; a {@link LogReadAhead} reads several consecutive
+ * blocks per I/O in the scan direction, and reads the next ones while the current ones are processed.
  */
 class LogIterator implements Iterator<byte[]> {
-    private final FileManager fileManager;
-    private LogicalBlock logicalBlock;
-    private final Page page;
-    private int currentPos;
+    private final int blockSize;
+    private final boolean forward;
+    private final LogReadAhead readAhead;
+    /**
+     * The block of the log tail, which is the last block visited by a forward scan.
+     */
+    private final int lastBlock;
+    private int blockNumber;
+    private Page page;
     /**
+     * The position at which the current block starts in the page.
+     */
+    private int base;
+    /**
+     * The position (relative to the block) of the next record of a backward scan.
      * It contains the offset of the most recently added record
      * This strategy enables the log iterator to read records in reverse order by reading from left
      * to right. The boundary value is written to the first four bytes of the page so that the
      * iterator will know where the records begin
      */
-    private int boundary;
+    private int currentPos;
+    /**
+     * The positions of the records of the current block, used by a forward scan. Records are written
+     * right to left, so they are collected left to right and then visited from the last one.
+     */
+    private final int[] recordPositions;
+    private int recordIndex;
 
     /**
      * Creates an iterator for the records in the log file,
      * positioned after the last log record.
-     * A LogIterator object allocates a page to hold the contents of a log block. The
-     * constructor positions the iterator at the first record in the last block of the log (which
+     * The constructor positions the iterator at the first record in the last block of the log (which
      * is, remember, where the last log record was written)
      */
     public LogIterator(FileManager fileManager, LogicalBlock logicalBlock) {
-        this.fileManager = fileManager;
-        this.logicalBlock = logicalBlock;
-        byte[] b = new byte[fileManager.blockSize()];
-        page = new Page(b);
-        moveToBlock(logicalBlock);
+        this.blockSize = fileManager.blockSize();
+        this.forward = false;
+        this.lastBlock = logicalBlock.getNumber();
+        readAhead = new LogReadAhead(fileManager, logicalBlock.getFileName(), LogReadAhead.DEFAULT_CHUNK_BLOCKS, false, 0, lastBlock);
+        recordPositions = null;
+        moveToBlock(lastBlock);
+        currentPos = page.getInt(base);
     }
 
     /**
-     * Determines if the current log record
-     * is the earliest record in the log file.
-     * @return true if there is an earlier record
+     * Creates an iterator that moves forward through the records of the log file,
+     * starting at the record that has the specified LSN, and ending at the last record
+     * of the specified tail block.
+     * @param fileManager the file manager
+     * @param tailBlock the last block of the log
+     * @param startLSN the LSN of the first record to be returned,
+     *                 or 0 to start at the beginning of the log
+     */
+    public LogIterator(FileManager fileManager, LogicalBlock tailBlock, long startLSN) {
+        this.blockSize = fileManager.blockSize();
+        this.forward = true;
+        this.lastBlock = tailBlock.getNumber();
+        int startBlock = LogManager.blockNumberOf(startLSN, blockSize);
+        readAhead = new LogReadAhead(fileManager, tailBlock.getFileName(), LogReadAhead.DEFAULT_CHUNK_BLOCKS, true, startBlock, lastBlock);
+        recordPositions = new int[blockSize / Integer.BYTES];
+        if (startBlock > lastBlock) {
+            blockNumber = startBlock;
+            recordIndex = -1;
+            return;
+        }
+        moveToBlock(startBlock);
+        collectRecordPositions(LogManager.positionOf(startLSN, blockSize));
+    }
+
+    /**
+     * Determines if there is another record in the scan direction: an earlier record for a
+     * backward scan, or a later record for a forward one.
+     * Blocks that hold no records are skipped.
+     * @return true if there is another record
      */
     @Override
     public boolean hasNext() {
-        return currentPos < fileManager.blockSize() || logicalBlock.getNumber() > 0;
+        if (forward) {
+            while (recordIndex < 0) {
+                if (blockNumber >= lastBlock) return false;
+                moveToBlock(blockNumber + 1);
+                collectRecordPositions(blockSize);
+            }
+            return true;
+        }
+        while (currentPos >= blockSize) {
+            if (blockNumber <= 0) return false;
+            moveToBlock(blockNumber - 1);
+            currentPos = page.getInt(base);
+        }
+        return true;
     }
 
     /**
-     * Moves to the next log record in the block.
+     * Moves to the next log record in the scan direction.
      * If there are no more log records in the block,
-     * then move to the previous block
+     * then move to the previous (or following) block
      * and return the log record from there.
-     * @return the next earliest log record
+     * @return the next log record
      */
     @Override
     public byte[] next() {
-        if (currentPos == fileManager.blockSize()) {
-            logicalBlock = new LogicalBlock(logicalBlock.getFileName(), logicalBlock.getNumber()-1);
-            moveToBlock(logicalBlock);
+        int recordPos = moveToNextRecord();
+        return page.getBytes(base + recordPos);
+    }
+
+    /**
+     * Moves to the next log record, like {@link #next()}, but points the specified reader
+     * at the record inside the log page instead of copying the record bytes.
+     * @param reader the reader that will view the next log record
+     */
+    void next(LogRecordReader reader) {
+        int recordPos = moveToNextRecord();
+        reader.wrap(page, base + recordPos, LogManager.lsnOf(blockNumber, recordPos, blockSize));
+    }
+
+    /**
+     * Moves past the next log record, reading another block if needed.
+     * @return the position of the record (its length, followed by its bytes) in the current block
+     */
+    private int moveToNextRecord() {
+        if (!hasNext()) throw new NoSuchElementException();
+        if (forward) return recordPositions[recordIndex--];
+        int recordPos = currentPos;
+        currentPos += Integer.BYTES + page.getInt(base + recordPos);
+        return recordPos;
+    }
+
+    /**
+     * Collects the positions of the records of the current block that are not older than
+     * the record at the specified position, that is the records from the boundary up to it.
+     */
+    private void collectRecordPositions(int lastPos) {
+        int count = 0;
+        int pos = page.getInt(base);
+        while (pos < blockSize && pos <= lastPos) {
+            recordPositions[count++] = pos;
+            pos += Integer.BYTES + page.getInt(base + pos);
         }
-        byte[] rec = page.getBytes(currentPos);
-        currentPos += Integer.BYTES + rec.length;
-        return rec;
+        recordIndex = count - 1;
     }
 
     /**
-     * Moves to the specified log block
-     * and positions it at the first record in that block
-     * (i.e., the most recent one).
+     * Moves to the specified log block, reading its chunk of blocks if it is not loaded yet.
      */
-    private void moveToBlock(LogicalBlock logicalBlock) {
-        fileManager.read(logicalBlock, page);
-        boundary = page.getInt(0);
-        currentPos = boundary;
+    private void moveToBlock(int blockNumber) {
+        this.blockNumber = blockNumber;
+        page = readAhead.pageOf(blockNumber);
+        base = readAhead.positionOf(blockNumber);
     }
 }
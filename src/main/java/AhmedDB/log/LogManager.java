@@ -3,6 +3,8 @@ package AhmedDB.log;
 import AhmedDB.file.FileManager;
 import AhmedDB.file.LogicalBlock;
 import AhmedDB.file.Page;
+import AhmedDB.metrics.LogFlushEvent;
+import AhmedDB.metrics.LogMetrics;
 
 import java.util.Iterator;
 
@@ -13,11 +15,18 @@ import java.util.Iterator;
  * to disk when needed.
  * The {@link LogManager} sees each log record as a byte array. Each
  * kind of log record has its own class, which is responsible for embedding the
- * appropriate values in the byte array. The first value in each array will be an integer
- * that denotes the operator of the record; the operator can be one of the constants in {@link LogOperator}
+ * appropriate values in the byte array. The first value in each array is a one byte header
+ * that denotes the operator of the record (see {@link LogRecordFormat}); the operator can be one of
+ * the constants in {@link LogOperator}. Records written by older versions start with a four bytes
+ * operator integer instead, and they can still be read.
  * The remaining values depend on the operator — a quiescent checkpoint record has no
  * other values, an update record has five other values, and the other records have one
  * other value.
+ * Update records refer to files by the ids given by {@link #fileId(String)} rather than by name.
+ * A log sequence number (LSN) is the address of a record in the log file: the number of bytes that
+ * precede the block of the record, plus the distance of the record from the end of its block (records
+ * are written right to left). LSNs therefore grow with every appended record, survive restarts, and
+ * a record can be located directly from its LSN.
  * The database engine has one {@link LogManager} object, which is created during system
  * startup.
  */
@@ -26,12 +35,25 @@ public class LogManager {
     private final FileManager fileManager;
     private final String logFile;
     private final Page logPage;
+    private final LogFileRegistry fileRegistry;
     private LogicalBlock currentBlock;
     /**
      * log sequence number, it identifies the new log record.
      */
-    private int latestLSN = 0;
-    private int lastSavedLSN = 0;
+    private long latestLSN = 0;
+    /**
+     * The LSN of the last record written to the disk. It is read without the lock, so that a record
+     * that is already on the disk is forced without waiting for the writers of the log.
+     */
+    private volatile long lastSavedLSN = 0;
+    /**
+     * The bytes appended since the last flush, with the lengths of the records
+     */
+    private long unflushedBytes = 0;
+    /**
+     * The appends, flushes and commits, and their latencies
+     */
+    private final LogMetrics metrics = new LogMetrics();
 
     /**
      * Creates the manager for the specified log file.
@@ -45,6 +67,7 @@ public class LogManager {
     public LogManager(FileManager fileManager, String logFile) {
         this.fileManager = fileManager;
         this.logFile = logFile;
+        fileRegistry = new LogFileRegistry(fileManager, logFile + ".files");
         byte[] logRecordBytes = new byte[fileManager.blockSize()];
         logPage = new Page(logRecordBytes);
         int logSize = fileManager.length(logFile);
@@ -54,6 +77,8 @@ public class LogManager {
             currentBlock = new LogicalBlock(logFile, logSize-1);
             fileManager.read(currentBlock, logPage);
         }
+        latestLSN = lsnOf(currentBlock.getNumber(), logPage.getInt(0), fileManager.blockSize());
+        lastSavedLSN = latestLSN;
     }
 
     /**
@@ -63,11 +88,14 @@ public class LogManager {
      * A client can force a specific log record to disk by calling the
      * method flush. The argument to flush is the LSN of a log record; the method
      * ensures that this log record (and all previous log records) is written to disk.
+     * The transactions that commit at the same time wait for the lock of the log while one of them writes it;
+     * that write usually saves their records too, so they check again once they hold the lock, and return
+     * without a write of their own (group commit).
      * @param lsn the LSN of a log record
      */
-    public void flush(int lsn) {
-        if (lsn >= lastSavedLSN)
-            flush();
+    public void flush(long lsn) {
+        if (lsn > lastSavedLSN)
+            flushTo(lsn);
     }
 
     /**
@@ -86,6 +114,69 @@ public class LogManager {
         return new LogIterator(fileManager, currentBlock);
     }
 
+    /**
+     * It flushes the log and returns an iterator that moves forward through the log records,
+     * from the record that has the specified LSN up to the most recent record, which is the order
+     * needed by a redo pass or by a consumer that ships the log elsewhere.
+     * Several log blocks are read per I/O, and the following blocks are read in the background.
+     * @param lsn the LSN of the first record to be returned, or 0 to start at the beginning of the log
+     * @return a Java iterator for the log records
+     */
+    public Iterator<byte[]> iterator(long lsn) {
+        flush();
+        return new LogIterator(fileManager, currentBlock, lsn);
+    }
+
+    /**
+     * Like {@link #iterator()}, it flushes the log and returns an iterator over the log records
+     * in reverse order. Instead of a new byte array for every record, the iterator returns the same
+     * {@link LogRecordReader} each time, which decodes the current record in place, so scanning the
+     * log (during rollback and recovery) does not allocate anything per record.
+     * The returned reader is only valid until the next call to the iterator's next method.
+     * @return a Java iterator that views the log records
+     */
+    public Iterator<LogRecordReader> recordIterator() {
+        flush();
+        return new LogRecordIterator(new LogIterator(fileManager, currentBlock), this);
+    }
+
+    /**
+     * Like {@link #iterator(long)}, it returns a forward iterator starting at the specified LSN,
+     * but the iterator returns the same {@link LogRecordReader} view for every record.
+     * @param lsn the LSN of the first record to be returned, or 0 to start at the beginning of the log
+     * @return a Java iterator that views the log records
+     */
+    public Iterator<LogRecordReader> recordIterator(long lsn) {
+        flush();
+        return new LogRecordIterator(new LogIterator(fileManager, currentBlock, lsn), this);
+    }
+
+    /**
+     * Returns an iterator that visits the records of one transaction backwards, starting at the record
+     * that has the specified LSN and following the previous LSN stored in each record, until the start
+     * record of the transaction. The records of the other transactions are never read, so the cost of
+     * the visit depends only on the number of records written by the transaction.
+     * Compensation records are followed by their undo next LSN (see {@link LogChainIterator}).
+     * The log is not flushed; records that are still in the log buffer are read from it.
+     * Like {@link #recordIterator()}, the iterator returns the same {@link LogRecordReader} for every record.
+     * @param lsn the LSN of the most recent record of the transaction
+     * @return a Java iterator that views the records of the transaction
+     */
+    public Iterator<LogRecordReader> transactionIterator(long lsn) {
+        return new LogChainIterator(this, fileManager.blockSize(), lsn);
+    }
+
+    /**
+     * Reads the specified block of the log into the page. The block at the tail of the log is
+     * copied from the log buffer instead, so that it includes the records not flushed yet.
+     * @param blockNumber the number of a log block
+     * @param page the page that will hold the block
+     */
+    synchronized void readBlock(int blockNumber, Page page) {
+        if (blockNumber == currentBlock.getNumber()) page.copyFrom(logPage);
+        else fileManager.read(new LogicalBlock(logFile, blockNumber), page);
+    }
+
     /**
      * Appends a log record to the log buffer.
      * The record consists of an arbitrary array of bytes.
@@ -100,7 +191,22 @@ public class LogManager {
      * @param logRecord a byte buffer containing the bytes, The only constraint is that the array must fit inside a page
      * @return the log sequence number (LSN) of the final value, it identifies the new log record.
      */
-    public synchronized int append(byte[] logRecord) {
+    public long append(byte[] logRecord) {
+        //the time includes the wait for the other appends, and is recorded after the log is released
+        long start = System.nanoTime();
+        long lsn = appendRecord(logRecord);
+        metrics.recordAppend(logRecord.length + Integer.BYTES, System.nanoTime() - start);
+        return lsn;
+    }
+
+    /**
+     * @return the metrics of the log, which {@link AhmedDB.metrics.Metrics} can publish through JMX
+     */
+    public LogMetrics getMetrics() {
+        return metrics;
+    }
+
+    private synchronized long appendRecord(byte[] logRecord) {
         //The beginning of the buffer contains the location of the last-written record
         //In first creation, the first position of logPage will contain the number of block size.
         //Generally, it contains the offset of the most recently added record
@@ -118,10 +224,81 @@ public class LogManager {
 
         logPage.setBytes(recordPosition, logRecord);
         logPage.setInt(0, recordPosition); // the new boundary
-        latestLSN += 1;
+        unflushedBytes += numOfBytesNeeded;
+        latestLSN = lsnOf(currentBlock.getNumber(), recordPosition, fileManager.blockSize());
         return latestLSN;
     }
 
+    /**
+     * @return the size of the largest record that fits in a log page, with its length and the boundary of the page
+     */
+    public int maxRecordSize() {
+        return fileManager.blockSize() - 2 * Integer.BYTES;
+    }
+
+    /**
+     * Returns the id that log records use to refer to the specified file.
+     * The first time a file is seen, its name is registered and saved to disk.
+     * @param fileName the name of a database file
+     * @return the id of the file
+     */
+    int fileId(String fileName) {
+        return fileRegistry.fileId(fileName);
+    }
+
+    /**
+     * Returns the name of the file that has the specified id.
+     * @param fileId an id returned by {@link #fileId(String)}
+     * @return the name of the file
+     */
+    String fileName(int fileId) {
+        return fileRegistry.fileName(fileId);
+    }
+
+    /**
+     * Returns a number that identifies the specified block among all the blocks referred to by the log:
+     * the id of its file in the high half, and its block number in the low half.
+     * Recovery uses it as a key that is cheaper to hash and compare than a {@link LogicalBlock}.
+     * @param logicalBlock a block of a database file
+     * @return the id of the block
+     */
+    public long blockId(LogicalBlock logicalBlock) {
+        return blockId(fileId(logicalBlock.getFileName()), logicalBlock.getNumber());
+    }
+
+    static long blockId(int fileId, int blockNumber) {
+        return ((long) fileId << 32) | (blockNumber & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Builds the LSN of the record stored at the specified position of a log block.
+     * @param blockNumber the number of the log block
+     * @param position the position of the record (its length) in the block
+     * @param blockSize the size of the log blocks
+     * @return the LSN of the record
+     */
+    static long lsnOf(int blockNumber, int position, int blockSize) {
+        return (long) blockNumber * blockSize + (blockSize - position);
+    }
+
+    /**
+     * @param lsn a log sequence number
+     * @param blockSize the size of the log blocks
+     * @return the number of the log block that holds the record
+     */
+    static int blockNumberOf(long lsn, int blockSize) {
+        return (int) (lsn / blockSize);
+    }
+
+    /**
+     * @param lsn a log sequence number
+     * @param blockSize the size of the log blocks
+     * @return the position of the record (its length) in its log block
+     */
+    static int positionOf(long lsn, int blockSize) {
+        return blockSize - (int) (lsn % blockSize);
+    }
+
     /**
      * Initialize the bytebuffer and append it to the log file.
      */
@@ -132,11 +309,21 @@ public class LogManager {
         return blk;
     }
 
+    private synchronized void flushTo(long lsn) {
+        if (lsn > lastSavedLSN)
+            flush();
+    }
+
     /**
      * Write the buffer to the log file.
      */
-    private void flush() {
+    private synchronized void flush() {
+        LogFlushEvent event = new LogFlushEvent();
+        event.begin();
+        long start = System.nanoTime();
         fileManager.write(currentBlock, logPage);
         lastSavedLSN = latestLSN;
+        metrics.recordFlush(event, latestLSN, unflushedBytes, System.nanoTime() - start);
+        unflushedBytes = 0;
     }
 }
@@ -3,8 +3,10 @@ package AhmedDB.log;
 /**
  * The {@link LogManager} sees each log record as a byte array. Each
  * kind of log record has its own class, which is responsible for embedding the
- * appropriate values in the byte array. The first value in each array will be an integer
- * that denotes the operator of the record, that integer is defined as a value of this {@link LogOperator} enum.
+ * appropriate values in the byte array. The first value in each array denotes the operator of the record,
+ * it is defined as a value of this {@link LogOperator} enum.
+ * Compact records keep the operator in the low four bits of their header byte, so a value
+ * must not exceed 15 (see {@link LogRecordFormat}).
  */
 public enum LogOperator {
     CHECKPOINT(0),
@@ -12,7 +14,14 @@ public enum LogOperator {
     COMMIT(2),
     ROLLBACK(3),
     SETINT(4),
-    SETSTRING(5);
+    SETSTRING(5),
+    FUZZY_CHECKPOINT(6),
+    SETBYTES(7),
+    BULK_LOAD(8),
+    CHECKPOINT_BEGIN(9),
+    CHECKPOINT_END(10),
+    INDEX_INSERT(11),
+    INDEX_DELETE(12);
 
     public final int value;
     LogOperator(int value){
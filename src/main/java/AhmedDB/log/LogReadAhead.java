@@ -0,0 +1,157 @@
+package AhmedDB.log;
+
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the blocks of the log file for a log iterator in chunks of several consecutive blocks,
+ * one I/O per chunk, and reads the next chunk in the scan direction in the background while
+ * the iterator is still processing the current one.
+ * Two pages are used in turns: the iterator reads records from the current page while the
+ * following chunk is read into the other one.
+ */
+class LogReadAhead {
+    /**
+     * The number of blocks read by one I/O, unless the caller asks for another number.
+     */
+    static final int DEFAULT_CHUNK_BLOCKS = 8;
+
+    /**
+     * The threads that read the next chunks, they are daemon threads
+     * so that an abandoned scan never keeps the engine alive.
+     */
+    private static final ExecutorService PREFETCHER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "log-read-ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FileManager fileManager;
+    private final String logFile;
+    private final int blockSize;
+    private final int chunkBlocks;
+    private final boolean forward;
+    /**
+     * The range of blocks that the scan may read.
+     */
+    private final int firstBlock;
+    private final int lastBlock;
+
+    private Page currentPage;
+    private int currentFirst = -1;
+    private int currentCount = 0;
+
+    private Page nextPage;
+    private int nextFirst = -1;
+    private int nextCount = 0;
+    private Future<?> pendingRead;
+
+    /**
+     * @param fileManager the file manager
+     * @param logFile the name of the log file
+     * @param chunkBlocks the number of blocks read by one I/O
+     * @param forward true if the blocks are visited in increasing order, false if in decreasing order
+     * @param firstBlock the lowest block number that the scan may read
+     * @param lastBlock the highest block number that the scan may read
+     */
+    LogReadAhead(FileManager fileManager, String logFile, int chunkBlocks, boolean forward, int firstBlock, int lastBlock) {
+        this.fileManager = fileManager;
+        this.logFile = logFile;
+        this.blockSize = fileManager.blockSize();
+        this.chunkBlocks = chunkBlocks;
+        this.forward = forward;
+        this.firstBlock = firstBlock;
+        this.lastBlock = lastBlock;
+        currentPage = new Page(new byte[chunkBlocks * blockSize]);
+        nextPage = new Page(new byte[chunkBlocks * blockSize]);
+    }
+
+    /**
+     * Returns the page that holds the specified block, reading its chunk if it is not loaded yet.
+     * The block starts at position {@link #positionOf(int)} of the returned page.
+     * @param blockNumber a block number between the first and last blocks of the scan
+     * @return the page that holds the block
+     */
+    Page pageOf(int blockNumber) {
+        if (blockNumber < currentFirst || blockNumber >= currentFirst + currentCount) load(blockNumber);
+        return currentPage;
+    }
+
+    /**
+     * @param blockNumber a block held by the page returned by {@link #pageOf(int)}
+     * @return the position at which the block starts in that page
+     */
+    int positionOf(int blockNumber) {
+        return (blockNumber - currentFirst) * blockSize;
+    }
+
+    private void load(int blockNumber) {
+        int first = chunkStart(blockNumber);
+        int count = chunkLength(blockNumber);
+        if (pendingRead != null) awaitPendingRead();
+        if (nextFirst == first && nextCount == count) {
+            //the chunk has already been read in the background, so use it
+            Page page = currentPage;
+            currentPage = nextPage;
+            nextPage = page;
+        }
+        else readChunk(currentPage, first, count);
+        currentFirst = first;
+        currentCount = count;
+        nextFirst = -1;
+        prefetch();
+    }
+
+    /**
+     * Starts reading the chunk that follows the current one in the scan direction.
+     */
+    private void prefetch() {
+        int following = forward ? currentFirst + currentCount : currentFirst - 1;
+        if (following < firstBlock || following > lastBlock) return;
+        int first = chunkStart(following);
+        int count = chunkLength(following);
+        Page page = nextPage;
+        nextFirst = first;
+        nextCount = count;
+        pendingRead = PREFETCHER.submit(() -> readChunk(page, first, count));
+    }
+
+    private void awaitPendingRead() {
+        try {
+            pendingRead.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while reading the log");
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("cannot read the log", e.getCause());
+        }
+        finally {
+            pendingRead = null;
+        }
+    }
+
+    private void readChunk(Page page, int first, int count) {
+        fileManager.read(new LogicalBlock(logFile, first), count, page);
+    }
+
+    /**
+     * A chunk is laid out in the scan direction starting from the requested block,
+     * so a backward chunk ends at that block, and a forward chunk starts at it.
+     */
+    private int chunkStart(int blockNumber) {
+        return forward ? blockNumber : Math.max(firstBlock, blockNumber - chunkBlocks + 1);
+    }
+
+    private int chunkLength(int blockNumber) {
+        if (forward) return Math.min(chunkBlocks, lastBlock - blockNumber + 1);
+        return blockNumber - chunkStart(blockNumber) + 1;
+    }
+}
@@ -5,8 +5,9 @@ import AhmedDB.file.Page;
 /**
  * The {@link LogManager} sees each log record as a byte array. Each
  * kind of log record has its own class, which is responsible for embedding the
- * appropriate values in the byte array. The first value in each array will be an integer
- * that denotes the operator of the record; the operator can be one of the constants in {@link LogOperator} enum.
+ * appropriate values in the byte array. The first value in each array denotes the operator of
+ * the record, a one byte header in the compact layout or an integer in the legacy one
+ * (see {@link LogRecordFormat}); the operator can be one of the constants in {@link LogOperator} enum.
  * The remaining values depend on the operator — a quiescent checkpoint record has no other values,
  * an update record has five other values, and the other records have one other value.
  */
@@ -26,8 +27,27 @@ public abstract class LogRecord {
      */
     public abstract int getTransactionNumber();
 
-    public static LogRecord createLogRecord (byte[] bytes){
+    /**
+     * It returns the LSN of the previous log record written by the same transaction. Following these
+     * back-pointers visits the records of one transaction without decoding the records of the others.
+     * Start and checkpoint records, and records in the legacy layout, do not have one.
+     * @return the LSN of the previous record of the transaction, or -1 if there is none
+     */
+    public long getPrevLSN() {
+        return -1;
+    }
+
+    /**
+     * Decodes the bytes of a log record into the appropriate {@link LogRecord} object.
+     * Both the compact layout and the legacy layout (whose first value is a four bytes
+     * operator integer) are understood, see {@link LogRecordFormat}.
+     * @param bytes the record bytes as returned by the log iterator
+     * @param logManager the log manager that wrote the record, it resolves the file ids of update records
+     * @return the decoded record, or null if the operator is unknown
+     */
+    public static LogRecord createLogRecord (byte[] bytes, LogManager logManager){
         Page page = new Page(bytes);
+        if (LogRecordFormat.isCompact(page, 0)) return createCompactLogRecord(page, logManager);
         int operatorNum = page.getInt(0);
 
         if (operatorNum == LogOperator.SETSTRING.value){
@@ -54,4 +74,47 @@ public abstract class LogRecord {
 
     }
 
+    private static LogRecord createCompactLogRecord(Page page, LogManager logManager) {
+        int operatorNum = LogRecordFormat.operator(page, 0);
+
+        if (operatorNum == LogOperator.SETSTRING.value){
+            return new SetStringRecord(page, logManager);
+        }
+        else if (operatorNum == LogOperator.SETINT.value){
+            return new SetIntRecord(page, logManager);
+        }
+        else if (operatorNum == LogOperator.SETBYTES.value){
+            return new SetBytesRecord(page, logManager);
+        }
+        else if (operatorNum == LogOperator.START.value){
+            return StartRecord.readCompact(page);
+        }
+        else if (operatorNum == LogOperator.COMMIT.value){
+            return CommitRecord.readCompact(page);
+        }
+        else if (operatorNum == LogOperator.ROLLBACK.value){
+            return RollBackRecord.readCompact(page);
+        }
+        else if (operatorNum == LogOperator.CHECKPOINT.value){
+            return new CheckPointRecord();
+        }
+        else if (operatorNum == LogOperator.FUZZY_CHECKPOINT.value){
+            return FuzzyCheckPointRecord.readCompact(page, logManager);
+        }
+        else if (operatorNum == LogOperator.BULK_LOAD.value){
+            return BulkLoadRecord.readCompact(page, logManager);
+        }
+        else if (operatorNum == LogOperator.CHECKPOINT_BEGIN.value){
+            return new CheckPointBeginRecord();
+        }
+        else if (operatorNum == LogOperator.CHECKPOINT_END.value){
+            return CheckPointEndRecord.readCompact(page);
+        }
+        else if (operatorNum == LogOperator.INDEX_INSERT.value || operatorNum == LogOperator.INDEX_DELETE.value){
+            return new IndexRecord(page, logManager);
+        }
+
+        return null;
+    }
+
 }
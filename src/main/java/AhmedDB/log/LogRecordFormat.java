@@ -0,0 +1,255 @@
+package AhmedDB.log;
+
+import AhmedDB.file.Page;
+
+/**
+ * The compact binary encoding used by the log records.
+ * A compact record starts with a one byte header instead of the four bytes operator integer
+ * of the original (legacy) layout. The high bit of the header marks the record as compact and the
+ * low four bits hold the {@link LogOperator} value. A legacy record always starts with a zero byte,
+ * because its operator is a small big-endian integer, so both layouts can be told apart by looking
+ * at the first byte only.<br>
+ * Transaction numbers, file ids, block numbers and offsets are written as variable length integers
+ * (7 bits per byte, the high bit tells whether another byte follows), so the small values that are
+ * common in the log take one or two bytes instead of four.<br>
+ * The records of a transaction (except its start record) also hold the LSN of the previous record
+ * of the same transaction, right after the transaction number; a header bit tells whether it is present.<br>
+ * Two more header bits describe update records: one tells that the record holds the new value (the
+ * after-image) following the old value (the before-image), the other marks a compensation record, which is
+ * written when an update is undone and holds, after the previous LSN, the LSN of the next record to undo.
+ */
+final class LogRecordFormat {
+
+    static final int HEADER_SIZE = 1;
+    private static final int COMPACT_FLAG = 0x80;
+    private static final int PREV_LSN_FLAG = 0x40;
+    private static final int COMPENSATION_FLAG = 0x20;
+    private static final int NEW_VALUE_FLAG = 0x10;
+    private static final int OPERATOR_MASK = 0x0F;
+
+    private LogRecordFormat() {}
+
+    /**
+     * Build the header byte of a compact record.
+     * @param operator the operator of the record
+     * @return the header byte
+     */
+    static byte header(LogOperator operator) {
+        return (byte) (COMPACT_FLAG | operator.value);
+    }
+
+    /**
+     * Build the header byte of a compact record that may hold the LSN of the previous record
+     * of its transaction.
+     * @param operator the operator of the record
+     * @param prevLSN the LSN of the previous record of the transaction, or a negative value if there is none
+     * @return the header byte
+     */
+    static byte header(LogOperator operator, long prevLSN) {
+        return (byte) (header(operator) | (prevLSN >= 0 ? PREV_LSN_FLAG : 0));
+    }
+
+    /**
+     * Build the header byte of an update record, which holds both the old and the new value.
+     * @param operator the operator of the record
+     * @param prevLSN the LSN of the previous record of the transaction, or a negative value if there is none
+     * @param compensation true if the record is a compensation record, written while undoing an update
+     * @return the header byte
+     */
+    static byte updateHeader(LogOperator operator, long prevLSN, boolean compensation) {
+        return (byte) (header(operator, prevLSN) | NEW_VALUE_FLAG | (compensation ? COMPENSATION_FLAG : 0));
+    }
+
+    /**
+     * @param page the page that holds the record bytes
+     * @param recordStart the position of the first byte of the record in the page
+     * @return true if the compact record is a compensation record
+     */
+    static boolean isCompensation(Page page, int recordStart) {
+        return (page.getByte(recordStart) & COMPENSATION_FLAG) != 0;
+    }
+
+    /**
+     * @param page the page that holds the record bytes
+     * @param recordStart the position of the first byte of the record in the page
+     * @return true if the compact update record holds the new value after the old one
+     */
+    static boolean hasNewValue(Page page, int recordStart) {
+        return (page.getByte(recordStart) & NEW_VALUE_FLAG) != 0;
+    }
+
+    /**
+     * @param prevLSN the LSN of the previous record of the transaction, or a negative value if there is none
+     * @return the number of bytes taken by the previous LSN in a record
+     */
+    static int prevLSNSize(long prevLSN) {
+        return prevLSN >= 0 ? varLongSize(prevLSN) : 0;
+    }
+
+    /**
+     * Write the previous LSN of a record, if there is one.
+     * @return the position that follows the written value
+     */
+    static int writePrevLSN(Page page, int offset, long prevLSN) {
+        return prevLSN >= 0 ? writeVarLong(page, offset, prevLSN) : offset;
+    }
+
+    /**
+     * Read the previous LSN of a compact record; its size can be calculated later by {@link #prevLSNSize(long)}.
+     * @param page the page that holds the record bytes
+     * @param recordStart the position of the first byte of the record in the page
+     * @param offset the position at which the previous LSN would be stored
+     * @return the LSN of the previous record of the transaction, or -1 if the record does not hold one
+     */
+    static long readPrevLSN(Page page, int recordStart, int offset) {
+        if ((page.getByte(recordStart) & PREV_LSN_FLAG) == 0) return -1;
+        return readVarLong(page, offset);
+    }
+
+    /**
+     * @param page the page that holds the record bytes
+     * @param recordStart the position of the first byte of the record in the page
+     * @return true if the record uses the compact layout, false if it uses the legacy one
+     */
+    static boolean isCompact(Page page, int recordStart) {
+        return (page.getByte(recordStart) & COMPACT_FLAG) != 0;
+    }
+
+    /**
+     * Read the operator of a record in either layout.
+     * @param page the page that holds the record bytes
+     * @param recordStart the position of the first byte of the record in the page
+     * @return the {@link LogOperator} value of the record
+     */
+    static int operator(Page page, int recordStart) {
+        if (isCompact(page, recordStart)) return page.getByte(recordStart) & OPERATOR_MASK;
+        return page.getInt(recordStart);
+    }
+
+    /**
+     * @param value the value to be encoded
+     * @return the number of bytes needed to write the value as a variable length integer
+     */
+    static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Write a variable length integer.
+     * @param page the page that the value will be written into
+     * @param offset the position of the first byte
+     * @param value the value to be written
+     * @return the position that follows the written value
+     */
+    static int writeVarInt(Page page, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            page.setByte(offset++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        page.setByte(offset++, (byte) value);
+        return offset;
+    }
+
+    /**
+     * Read a variable length integer, the number of bytes it takes can be
+     * calculated later by {@link #varIntSize(int)}.
+     * @param page the page that holds the value
+     * @param offset the position of the first byte
+     * @return the decoded value
+     */
+    static int readVarInt(Page page, int offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = page.getByte(offset++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * @param value the value to be encoded
+     * @return the number of bytes needed to write the value as a variable length long
+     */
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Write a variable length long, in the same way as {@link #writeVarInt(Page, int, int)}.
+     * @return the position that follows the written value
+     */
+    static int writeVarLong(Page page, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            page.setByte(offset++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        page.setByte(offset++, (byte) value);
+        return offset;
+    }
+
+    /**
+     * Read a variable length long, the number of bytes it takes can be
+     * calculated later by {@link #varLongSize(long)}.
+     */
+    static long readVarLong(Page page, int offset) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = page.getByte(offset++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * @param string the string to be encoded
+     * @return the number of bytes needed to write the string (length prefix included)
+     */
+    static int stringSize(String string) {
+        return varIntSize(string.length()) + string.length();
+    }
+
+    /**
+     * Write a string as a variable length size followed by its characters.
+     * @param page the page that the string will be written into
+     * @param offset the position of the first byte
+     * @param string the string to be written
+     * @return the position that follows the written string
+     */
+    static int writeString(Page page, int offset, String string) {
+        byte[] bytes = string.getBytes(Page.CHARSET);
+        offset = writeVarInt(page, offset, bytes.length);
+        for (byte b : bytes) page.setByte(offset++, b);
+        return offset;
+    }
+
+    /**
+     * Read a string written by {@link #writeString(Page, int, String)}, the number of bytes
+     * it takes can be calculated later by {@link #stringSize(String)}.
+     * @param page the page that holds the string
+     * @param offset the position of the first byte
+     * @return the decoded string
+     */
+    static String readString(Page page, int offset) {
+        int length = readVarInt(page, offset);
+        offset += varIntSize(length);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = page.getByte(offset + i);
+        return new String(bytes, Page.CHARSET);
+    }
+}
@@ -0,0 +1,42 @@
+package AhmedDB.log;
+
+import java.util.Iterator;
+
+/**
+ * A class that moves through the records of the log file, like {@link LogIterator},
+ * but hands out a view of each record instead of a copy of its bytes.
+ * Every call to {@link #next()} returns the same {@link LogRecordReader} object, pointed at the
+ * next record inside the log page, so scanning the log allocates nothing per record.
+ * The returned reader is only valid until the next call to {@link #next()}.
+ */
+class LogRecordIterator implements Iterator<LogRecordReader> {
+    private final LogIterator logIterator;
+    private final LogRecordReader reader;
+
+    /**
+     * Creates an iterator that views the records read by the specified log iterator.
+     */
+    public LogRecordIterator(LogIterator logIterator, LogManager logManager) {
+        this.logIterator = logIterator;
+        reader = new LogRecordReader(logManager);
+    }
+
+    /**
+     * Determines if there is another record in the scan direction.
+     * @return true if there is another record
+     */
+    @Override
+    public boolean hasNext() {
+        return logIterator.hasNext();
+    }
+
+    /**
+     * Moves to the next log record in the scan direction.
+     * @return the reader, pointed at the next log record
+     */
+    @Override
+    public LogRecordReader next() {
+        logIterator.next(reader);
+        return reader;
+    }
+}
@@ -0,0 +1,443 @@
+package AhmedDB.log;
+
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
+/**
+ * A reusable (flyweight) view over one log record that decodes the record fields in place,
+ * directly from the page that holds the record, without copying its bytes.
+ * Unlike {@link LogRecord#createLogRecord(byte[], LogManager)}, which allocates a page, a record object,
+ * a {@link LogicalBlock} and strings for every record, a reader is pointed at the next record by
+ * calling {@link #wrap(Page, int, long)}; only the integer fields are decoded at that time, and the
+ * string values are only built when they are asked for.
+ * A reader is valid until it is wrapped around another record, or until the page it reads from is
+ * reused, so a client that needs to keep a record must copy it by {@link #toBytes()} or {@link #toLogRecord()}.
+ * Records in both the compact and the legacy layout can be read (see {@link LogRecordFormat}).
+ */
+public class LogRecordReader {
+    private final LogManager logManager;
+    private Page page;
+    /**
+     * The position of the first byte of the record in the page.
+     */
+    private int recordStart;
+    private int recordLength;
+    private long lsn;
+    private boolean compact;
+    private int operator;
+    private int transactionNumber;
+    private long prevLSN;
+    private boolean compensation;
+    private long undoNextLSN;
+    /**
+     * The id of the modified file for compact update records,
+     * or the position of the file name for legacy ones.
+     */
+    private int fileId;
+    private int blockNumber;
+    private int offset;
+    /**
+     * The position of the old int or string value of an update record.
+     */
+    private int oldValuePosition;
+    /**
+     * The number of bytes of each value of a SETBYTES record.
+     */
+    private int bytesLength;
+    /**
+     * The position of the new value of an update record, or -1 if the record does not hold it.
+     */
+    private int newValuePosition;
+    /**
+     * The number of blocks of a BULK_LOAD record, whose first block is the block number.
+     */
+    private int blockCount;
+    /**
+     * The position of the length of the key of an INDEX_INSERT or INDEX_DELETE record, whose ranges start at the
+     * position of the new value.
+     */
+    private int keyPosition;
+
+    /**
+     * @param logManager the log manager that wrote the records, it resolves the file ids of update records
+     */
+    public LogRecordReader(LogManager logManager) {
+        this.logManager = logManager;
+    }
+
+    /**
+     * Points the reader at the record stored in the specified page. The record is stored the way
+     * the log manager stores it: its length as an integer followed by the record bytes.
+     * @param page the page that holds the record
+     * @param position the position of the length of the record in the page
+     * @param lsn the LSN of the record
+     * @return this reader
+     */
+    public LogRecordReader wrap(Page page, int position, long lsn) {
+        this.page = page;
+        this.lsn = lsn;
+        recordLength = page.getInt(position);
+        recordStart = position + Integer.BYTES;
+        compact = LogRecordFormat.isCompact(page, recordStart);
+        operator = LogRecordFormat.operator(page, recordStart);
+        transactionNumber = -1;
+        prevLSN = -1;
+        compensation = false;
+        undoNextLSN = -1;
+        newValuePosition = -1;
+        if (isCheckpoint()) return this;
+        if (compact) decodeCompact();
+        else decodeLegacy();
+        return this;
+    }
+
+    /**
+     * <code>[header, txId, prevLSN, undoNextLSN, fileId, blockNumber, blockOffset, oldValue, newValue]</code>
+     */
+    private void decodeCompact() {
+        int position = recordStart + LogRecordFormat.HEADER_SIZE;
+        transactionNumber = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(transactionNumber);
+        prevLSN = LogRecordFormat.readPrevLSN(page, recordStart, position);
+        if (operator == LogOperator.BULK_LOAD.value) {
+            decodeBulkLoad(position + LogRecordFormat.prevLSNSize(prevLSN));
+            return;
+        }
+        if (!isUpdate()) return;
+        position += LogRecordFormat.prevLSNSize(prevLSN);
+        if (LogRecordFormat.isCompensation(page, recordStart)) {
+            compensation = true;
+            undoNextLSN = LogRecordFormat.readVarLong(page, position);
+            position += LogRecordFormat.varLongSize(undoNextLSN);
+        }
+        fileId = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(fileId);
+        blockNumber = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(blockNumber);
+        if (isIndexChange()) {
+            newValuePosition = position;
+            keyPosition = IndexRecord.skipRanges(page, position);
+            return;
+        }
+        offset = LogRecordFormat.readVarInt(page, position);
+        oldValuePosition = position + LogRecordFormat.varIntSize(offset);
+        if (operator == LogOperator.SETBYTES.value) {
+            bytesLength = LogRecordFormat.readVarInt(page, oldValuePosition);
+            oldValuePosition += LogRecordFormat.varIntSize(bytesLength);
+            newValuePosition = oldValuePosition + bytesLength;
+            return;
+        }
+        if (!LogRecordFormat.hasNewValue(page, recordStart)) return;
+        if (operator == LogOperator.SETINT.value) newValuePosition = oldValuePosition + Integer.BYTES;
+        else {
+            int length = LogRecordFormat.readVarInt(page, oldValuePosition);
+            newValuePosition = oldValuePosition + LogRecordFormat.varIntSize(length) + length;
+        }
+    }
+
+    /**
+     * <code>[fileId, firstBlock, blockCount]</code>, after the previous LSN of a BULK_LOAD record
+     */
+    private void decodeBulkLoad(int position) {
+        fileId = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(fileId);
+        blockNumber = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(blockNumber);
+        blockCount = LogRecordFormat.readVarInt(page, position);
+    }
+
+    /**
+     * <code>[operator, txId, filename, blockNumber, blockOffset, oldValue]</code>
+     */
+    private void decodeLegacy() {
+        int position = recordStart + Integer.BYTES;
+        transactionNumber = page.getInt(position);
+        if (!isUpdate()) return;
+        position += Integer.BYTES;
+        fileId = position;
+        position += Page.maxLength(page.getInt(position));
+        blockNumber = page.getInt(position);
+        position += Integer.BYTES;
+        offset = page.getInt(position);
+        oldValuePosition = position + Integer.BYTES;
+    }
+
+    /**
+     * @return the log sequence number of the record
+     */
+    public long getLSN() {
+        return lsn;
+    }
+
+    /**
+     * @return the log operator number that is defined in {@link LogOperator} enum
+     */
+    public int getRecordOperatorNumber() {
+        return operator;
+    }
+
+    /**
+     * @return the ID of the transaction that wrote the record, or -1 for checkpoint records
+     */
+    public int getTransactionNumber() {
+        return transactionNumber;
+    }
+
+    /**
+     * @return the LSN of the previous record written by the same transaction, or -1 if there is none
+     */
+    public long getPrevLSN() {
+        return prevLSN;
+    }
+
+    /**
+     * @return true if the record is a compensation record, which logs the undo of an update and is never undone
+     */
+    public boolean isCompensation() {
+        return compensation;
+    }
+
+    /**
+     * @return the LSN of the next record to undo, for a compensation record, or -1 if there is none
+     */
+    public long getUndoNextLSN() {
+        return undoNextLSN;
+    }
+
+    /**
+     * @return true if the record is a quiescent checkpoint record or one of the records of a fuzzy checkpoint, which have no transaction
+     */
+    public boolean isCheckpoint() {
+        return operator == LogOperator.CHECKPOINT.value || operator == LogOperator.FUZZY_CHECKPOINT.value
+                || operator == LogOperator.CHECKPOINT_BEGIN.value || operator == LogOperator.CHECKPOINT_END.value;
+    }
+
+    /**
+     * @return true if the record is a SETINT, SETSTRING, SETBYTES, INDEX_INSERT or INDEX_DELETE record,
+     * including compensation records
+     */
+    public boolean isUpdate() {
+        return operator == LogOperator.SETINT.value || operator == LogOperator.SETSTRING.value
+                || operator == LogOperator.SETBYTES.value || isIndexChange();
+    }
+
+    /**
+     * @return true if the record is an INDEX_INSERT or INDEX_DELETE record, whose undo is logical (see {@link IndexRecord})
+     */
+    public boolean isIndexChange() {
+        return operator == LogOperator.INDEX_INSERT.value || operator == LogOperator.INDEX_DELETE.value;
+    }
+
+    /**
+     * The name of a compact record comes from the file registry of the log manager,
+     * so it is not allocated again for every record.
+     * @return the name of the file modified by an update record or written by a BULK_LOAD record
+     */
+    public String getFileName() {
+        return compact ? logManager.fileName(fileId) : page.getString(fileId);
+    }
+
+    /**
+     * @return the number of the block modified by an update record, or of the first block of a BULK_LOAD record
+     */
+    public int getBlockNumber() {
+        return blockNumber;
+    }
+
+    /**
+     * @return the number of blocks written by a BULK_LOAD record
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @return a new reference to the block modified by an update record
+     */
+    public LogicalBlock getLogicalBlock() {
+        return new LogicalBlock(getFileName(), blockNumber);
+    }
+
+    /**
+     * @return the id of the block modified by an update record, as built by {@link LogManager#blockId(LogicalBlock)};
+     * it is read from a compact record without looking up the file name
+     */
+    public long getBlockId() {
+        int id = compact ? fileId : logManager.fileId(page.getString(fileId));
+        return LogManager.blockId(id, blockNumber);
+    }
+
+    /**
+     * @return the offset within the block of the value of an update record
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return true if the update record holds the new value, so that it can be redone;
+     * records in the legacy layout only hold the old value
+     */
+    public boolean hasNewValue() {
+        return newValuePosition >= 0;
+    }
+
+    /**
+     * @return the value of a SETINT record before the update
+     */
+    public int getOldIntValue() {
+        return page.getInt(oldValuePosition);
+    }
+
+    /**
+     * @return the value written by a SETINT record
+     */
+    public int getNewIntValue() {
+        return page.getInt(newValuePosition);
+    }
+
+    /**
+     * @return the value of a SETSTRING record before the update
+     */
+    public String getOldStringValue() {
+        return compact ? LogRecordFormat.readString(page, oldValuePosition) : page.getString(oldValuePosition);
+    }
+
+    /**
+     * @return the value written by a SETSTRING record
+     */
+    public String getNewStringValue() {
+        return LogRecordFormat.readString(page, newValuePosition);
+    }
+
+    /**
+     * @return a copy of the bytes of a SETBYTES record before the update
+     */
+    public byte[] getOldBytesValue() {
+        byte[] bytes = new byte[bytesLength];
+        page.readBytes(oldValuePosition, bytes, 0, bytesLength);
+        return bytes;
+    }
+
+    /**
+     * @return a copy of the key of an INDEX_INSERT or INDEX_DELETE record
+     */
+    public byte[] getKey() {
+        int length = LogRecordFormat.readVarInt(page, keyPosition);
+        byte[] key = new byte[length];
+        page.readBytes(keyPosition + LogRecordFormat.varIntSize(length), key, 0, length);
+        return key;
+    }
+
+    /**
+     * @return the block of the record id of the entry of an INDEX_INSERT or INDEX_DELETE record
+     */
+    public int getRidBlock() {
+        int length = LogRecordFormat.readVarInt(page, keyPosition);
+        return LogRecordFormat.readVarInt(page, keyPosition + LogRecordFormat.varIntSize(length) + length);
+    }
+
+    /**
+     * @return the slot of the record id of the entry of an INDEX_INSERT or INDEX_DELETE record
+     */
+    public int getRidSlot() {
+        int length = LogRecordFormat.readVarInt(page, keyPosition);
+        int ridBlockPosition = keyPosition + LogRecordFormat.varIntSize(length) + length;
+        return LogRecordFormat.readVarInt(page, ridBlockPosition + LogRecordFormat.varIntSize(LogRecordFormat.readVarInt(page, ridBlockPosition)));
+    }
+
+    /**
+     * Writes the old value of an update record back into the specified page, at the offset
+     * where it was stored. A string is copied byte by byte, in the same layout as
+     * {@link Page#setString(int, String)}, without being decoded.
+     * The change of an index entry has no old value: it is undone by its index.
+     * @param target the page of the block modified by the record
+     */
+    public void undo(Page target) {
+        if (isIndexChange()) throw new RuntimeException("the change of an index entry is undone by its index");
+        copyValue(oldValuePosition, compact, target);
+    }
+
+    /**
+     * Writes the new value of an update record into the specified page again, at the offset
+     * where it was stored, the same way as {@link #undo(Page)}. The ranges of an index change are
+     * applied in the order they were logged, the moves first.
+     * @param target the page of the block modified by the record
+     */
+    public void redo(Page target) {
+        if (!hasNewValue()) throw new RuntimeException("the record does not hold the value of the update");
+        if (isIndexChange()) redoIndexChange(target);
+        else copyValue(newValuePosition, true, target);
+    }
+
+    /**
+     * <code>[moveCount, (to, from, length)*, writeCount, (offset, length, bytes)*]</code>
+     */
+    private void redoIndexChange(Page target) {
+        int position = newValuePosition;
+        int moveCount = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(moveCount);
+        for (int i = 0; i < moveCount; i++) {
+            int to = LogRecordFormat.readVarInt(page, position);
+            position += LogRecordFormat.varIntSize(to);
+            int from = LogRecordFormat.readVarInt(page, position);
+            position += LogRecordFormat.varIntSize(from);
+            int length = LogRecordFormat.readVarInt(page, position);
+            position += LogRecordFormat.varIntSize(length);
+            byte[] moved = new byte[length];
+            target.readBytes(from, moved, 0, length);
+            target.writeBytes(to, moved, 0, length);
+        }
+        int writeCount = LogRecordFormat.readVarInt(page, position);
+        position += LogRecordFormat.varIntSize(writeCount);
+        for (int i = 0; i < writeCount; i++) {
+            int offset = LogRecordFormat.readVarInt(page, position);
+            position += LogRecordFormat.varIntSize(offset);
+            int length = LogRecordFormat.readVarInt(page, position);
+            position += LogRecordFormat.varIntSize(length);
+            for (int j = 0; j < length; j++) target.setByte(offset + j, page.getByte(position + j));
+            position += length;
+        }
+    }
+
+    private void copyValue(int valuePosition, boolean varIntLength, Page target) {
+        if (operator == LogOperator.SETINT.value) {
+            target.setInt(offset, page.getInt(valuePosition));
+            return;
+        }
+        if (operator == LogOperator.SETBYTES.value) {
+            for (int i = 0; i < bytesLength; i++)
+                target.setByte(offset + i, page.getByte(valuePosition + i));
+            return;
+        }
+        int length;
+        int position;
+        if (varIntLength) {
+            length = LogRecordFormat.readVarInt(page, valuePosition);
+            position = valuePosition + LogRecordFormat.varIntSize(length);
+        }
+        else {
+            length = page.getInt(valuePosition);
+            position = valuePosition + Integer.BYTES;
+        }
+        target.setInt(offset, length);
+        for (int i = 0; i < length; i++)
+            target.setByte(offset + Integer.BYTES + i, page.getByte(position + i));
+    }
+
+    /**
+     * @return a copy of the record bytes, as they were passed to {@link LogManager#append(byte[])}
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[recordLength];
+        for (int i = 0; i < recordLength; i++) bytes[i] = page.getByte(recordStart + i);
+        return bytes;
+    }
+
+    /**
+     * @return a {@link LogRecord} object that holds a copy of the record
+     */
+    public LogRecord toLogRecord() {
+        return LogRecord.createLogRecord(toBytes(), logManager);
+    }
+}
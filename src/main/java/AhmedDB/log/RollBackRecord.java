@@ -5,9 +5,31 @@ import AhmedDB.file.Page;
 public class RollBackRecord extends LogRecord {
 
     private final int transactionNumber;
+    private final long prevLSN;
 
+    /**
+     * Reads a record written in the legacy layout <code>[operator, txId]</code>.
+     * @param page the memory page that contains the record data
+     */
     public RollBackRecord(Page page) {
         transactionNumber = page.getInt(Integer.BYTES);
+        prevLSN = -1;
+    }
+
+    private RollBackRecord(int transactionNumber, long prevLSN) {
+        this.transactionNumber = transactionNumber;
+        this.prevLSN = prevLSN;
+    }
+
+    /**
+     * Reads a record written in the compact layout <code>[header, txId(varint), prevLSN(varlong)]</code>.
+     * @param page the memory page that contains the record data
+     * @return the decoded record
+     */
+    static RollBackRecord readCompact(Page page) {
+        int transactionNumber = LogRecordFormat.readVarInt(page, LogRecordFormat.HEADER_SIZE);
+        int prevLSNPosition = LogRecordFormat.HEADER_SIZE + LogRecordFormat.varIntSize(transactionNumber);
+        return new RollBackRecord(transactionNumber, LogRecordFormat.readPrevLSN(page, 0, prevLSNPosition));
     }
 
     @Override
@@ -20,16 +42,32 @@ public class RollBackRecord extends LogRecord {
         return transactionNumber;
     }
 
+    @Override
+    public long getPrevLSN() {
+        return prevLSN;
+    }
+
     @Override
     public String toString() {
         return "<ROLLBACK " + transactionNumber + ">";
     }
 
-    public static int writeToLog(LogManager logManager, int transactionNumber) {
-        byte[] recordBytes = new byte[2*Integer.BYTES];
+    /**
+     * Writes a ROLLBACK record, which holds the transaction number and the LSN of
+     * the previous record of the transaction.
+     * @param logManager the log manager
+     * @param transactionNumber the transaction id number
+     * @param prevLSN the LSN of the previous record written by the transaction, or -1 if there is none
+     * @return the LSN of the new record
+     */
+    public static long writeToLog(LogManager logManager, int transactionNumber, long prevLSN) {
+        // 1 byte for the header, 1 to 5 bytes for transactionId and 1 to 9 bytes for prevLSN
+        int prevLSNPosition = LogRecordFormat.HEADER_SIZE + LogRecordFormat.varIntSize(transactionNumber);
+        byte[] recordBytes = new byte[prevLSNPosition + LogRecordFormat.prevLSNSize(prevLSN)];
         Page p = new Page(recordBytes);
-        p.setInt(0, LogOperator.ROLLBACK.value);
-        p.setInt(Integer.BYTES, transactionNumber);
+        p.setByte(0, LogRecordFormat.header(LogOperator.ROLLBACK, prevLSN));
+        LogRecordFormat.writeVarInt(p, LogRecordFormat.HEADER_SIZE, transactionNumber);
+        LogRecordFormat.writePrevLSN(p, prevLSNPosition, prevLSN);
         return logManager.append(recordBytes);
     }
 
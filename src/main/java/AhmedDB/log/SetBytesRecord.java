@@ -0,0 +1,186 @@
+package AhmedDB.log;
+
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
+/**
+ * An update record that replaces a range of bytes of a block, such as an entry and the directory
+ * of an index node. The old and the new bytes of the range have the same length, and are stored without
+ * any interpretation, so a record can log a change that spans several values of the page.
+ * SETBYTES records only exist in the compact layout.
+ */
+public class SetBytesRecord extends LogRecord implements Undoable {
+    private final int transactionNumber;
+    private final long prevLSN;
+    private final int offset;
+    private final byte[] oldValue;
+    private final byte[] newValue;
+    private final boolean compensation;
+    /**
+     * The LSN of the next record to undo, for a compensation record, or -1 for an ordinary update.
+     */
+    private final long undoNextLSN;
+    private final LogicalBlock logicalBlock;
+
+    /**
+     * It reads a SETBYTES record.<br>
+     * <strong>Record Example:</strong><br>
+     * <code>[header, txId, prevLSN, undoNextLSN, fileId, blockNumber, blockOffset, length, oldBytes, newBytes]</code><br>
+     * all values except the last two are variable length integers, and the undo next LSN is only present in
+     * compensation records.
+     * @param page the memory page that contains the record data
+     * @param logManager it resolves the file id into a file name
+     */
+    SetBytesRecord(Page page, LogManager logManager) {
+        int transactionPosition = LogRecordFormat.HEADER_SIZE;
+        transactionNumber = LogRecordFormat.readVarInt(page, transactionPosition);
+        int prevLSNPosition = transactionPosition + LogRecordFormat.varIntSize(transactionNumber);
+        prevLSN = LogRecordFormat.readPrevLSN(page, 0, prevLSNPosition);
+        int undoNextPosition = prevLSNPosition + LogRecordFormat.prevLSNSize(prevLSN);
+        compensation = LogRecordFormat.isCompensation(page, 0);
+        undoNextLSN = compensation ? LogRecordFormat.readVarLong(page, undoNextPosition) : -1;
+        int fileIdPosition = undoNextPosition + (compensation ? LogRecordFormat.varLongSize(undoNextLSN) : 0);
+        int fileId = LogRecordFormat.readVarInt(page, fileIdPosition);
+        int blockNumberPosition = fileIdPosition + LogRecordFormat.varIntSize(fileId);
+        int blockNumber = LogRecordFormat.readVarInt(page, blockNumberPosition);
+        logicalBlock = new LogicalBlock(logManager.fileName(fileId), blockNumber);
+        int offsetPosition = blockNumberPosition + LogRecordFormat.varIntSize(blockNumber);
+        offset = LogRecordFormat.readVarInt(page, offsetPosition);
+        int lengthPosition = offsetPosition + LogRecordFormat.varIntSize(offset);
+        int length = LogRecordFormat.readVarInt(page, lengthPosition);
+        int valuePosition = lengthPosition + LogRecordFormat.varIntSize(length);
+        oldValue = new byte[length];
+        newValue = new byte[length];
+        page.readBytes(valuePosition, oldValue, 0, length);
+        page.readBytes(valuePosition + length, newValue, 0, length);
+    }
+
+    /**
+     * The largest size of the values of a record besides the old and new bytes: the header and seven
+     * variable length integers.
+     */
+    private static final int MAX_OVERHEAD = LogRecordFormat.HEADER_SIZE + 7 * 10;
+
+    /**
+     * @param logManager the log manager that writes the records
+     * @return the largest number of bytes that one record can update, so that it fits in a log page
+     */
+    public static int maxLength(LogManager logManager) {
+        return (logManager.maxRecordSize() - MAX_OVERHEAD) / 2;
+    }
+
+    /**
+     * Writes a SETBYTES record to the log, in the same way as {@link SetIntRecord#writeToLog}.
+     * @param logManager the log manager
+     * @param transactionNumber the transaction id number
+     * @param prevLSN the LSN of the previous record written by the transaction, or -1 if there is none
+     * @param logicalBlock the modified block
+     * @param offset the position of the first modified byte in the block
+     * @param oldVal the bytes of the range before the update
+     * @param newVal the bytes written by the update, as many as the old ones
+     * @return the LSN of the record
+     */
+    public static long writeToLog(LogManager logManager, int transactionNumber, long prevLSN, LogicalBlock logicalBlock, int offset, byte[] oldVal, byte[] newVal) {
+        return write(logManager, transactionNumber, prevLSN, false, -1, logicalBlock, offset, oldVal, newVal);
+    }
+
+    /**
+     * Writes a compensation record, which logs the undo of an update as a redo-only update
+     * (see {@link SetIntRecord#writeCompensationToLog}).
+     * @param logManager the log manager
+     * @param transactionNumber the id of the transaction whose update is undone
+     * @param prevLSN the LSN of the previous record written by the transaction
+     * @param undoNextLSN the LSN of the record that precedes the undone update in the transaction
+     * @param logicalBlock the block of the undone update
+     * @param offset the offset of the undone update
+     * @param currentVal the bytes of the range before they are restored
+     * @param restoredVal the old bytes of the undone update
+     * @return the LSN of the compensation record
+     */
+    public static long writeCompensationToLog(LogManager logManager, int transactionNumber, long prevLSN, long undoNextLSN, LogicalBlock logicalBlock, int offset, byte[] currentVal, byte[] restoredVal) {
+        return write(logManager, transactionNumber, prevLSN, true, undoNextLSN, logicalBlock, offset, currentVal, restoredVal);
+    }
+
+    private static long write(LogManager logManager, int transactionNumber, long prevLSN, boolean compensation, long undoNextLSN, LogicalBlock logicalBlock, int offset, byte[] oldVal, byte[] newVal) {
+        if (oldVal.length != newVal.length) throw new RuntimeException("the old and the new bytes of an update must have the same length");
+        //<header, txId, prevLSN, undoNextLSN, fileId, blockNumber, blockOffset, length, oldValue, newValue>
+        int fileId = logManager.fileId(logicalBlock.getFileName());
+        int length = oldVal.length;
+        int transactionPosition = LogRecordFormat.HEADER_SIZE;
+        int prevLSNPosition = transactionPosition + LogRecordFormat.varIntSize(transactionNumber);
+        int undoNextPosition = prevLSNPosition + LogRecordFormat.prevLSNSize(prevLSN);
+        int fileIdPosition = undoNextPosition + (compensation ? LogRecordFormat.varLongSize(undoNextLSN) : 0);
+        int blockNumberPosition = fileIdPosition + LogRecordFormat.varIntSize(fileId);
+        int blockOffsetPosition = blockNumberPosition + LogRecordFormat.varIntSize(logicalBlock.getNumber());
+        int lengthPosition = blockOffsetPosition + LogRecordFormat.varIntSize(offset);
+        int valuePosition = lengthPosition + LogRecordFormat.varIntSize(length);
+
+        byte[] recordBytes = new byte[valuePosition + 2 * length];
+        Page page = new Page(recordBytes);
+
+        page.setByte(0, LogRecordFormat.updateHeader(LogOperator.SETBYTES, prevLSN, compensation));
+        LogRecordFormat.writeVarInt(page, transactionPosition, transactionNumber);
+        LogRecordFormat.writePrevLSN(page, prevLSNPosition, prevLSN);
+        if (compensation) LogRecordFormat.writeVarLong(page, undoNextPosition, undoNextLSN);
+        LogRecordFormat.writeVarInt(page, fileIdPosition, fileId);
+        LogRecordFormat.writeVarInt(page, blockNumberPosition, logicalBlock.getNumber());
+        LogRecordFormat.writeVarInt(page, blockOffsetPosition, offset);
+        LogRecordFormat.writeVarInt(page, lengthPosition, length);
+        page.writeBytes(valuePosition, oldVal, 0, length);
+        page.writeBytes(valuePosition + length, newVal, 0, length);
+
+        return logManager.append(recordBytes);
+    }
+
+    @Override
+    public int getRecordOperatorNumber() {
+        return LogOperator.SETBYTES.value;
+    }
+
+    @Override
+    public int getTransactionNumber() {
+        return transactionNumber;
+    }
+
+    @Override
+    public long getPrevLSN() {
+        return prevLSN;
+    }
+
+    @Override
+    public LogicalBlock getLogicalBlock() {
+        return logicalBlock;
+    }
+
+    /**
+     * @return true if the record logs the undo of another update
+     */
+    public boolean isCompensation() {
+        return compensation;
+    }
+
+    /**
+     * @return the LSN of the next record to undo, for a compensation record, or -1 if there is none
+     */
+    public long getUndoNextLSN() {
+        return undoNextLSN;
+    }
+
+    @Override
+    public void undo(Page page) {
+        page.writeBytes(offset, oldValue, 0, oldValue.length);
+    }
+
+    /**
+     * Writes the bytes of the update into the specified page again.
+     * @param page the page of the block modified by the logged update
+     */
+    public void redo(Page page) {
+        page.writeBytes(offset, newValue, 0, newValue.length);
+    }
+
+    @Override
+    public String toString() {
+        return "<" + (compensation ? "CLR " : "") + "SETBYTES " + transactionNumber + " " + logicalBlock.getNumber() + " " + offset + " " + oldValue.length + ">";
+    }
+}
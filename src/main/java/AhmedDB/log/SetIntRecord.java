@@ -6,19 +6,32 @@ import AhmedDB.file.Page;
 
 public class SetIntRecord extends LogRecord implements Undoable {
     private final int transactionNumber;
+    private final long prevLSN;
     private final int offset;
-    private final int value;
+    private final int oldValue;
+    /**
+     * The value written by the update, only known for records that hold the after-image.
+     */
+    private final int newValue;
+    private final boolean hasNewValue;
+    private final boolean compensation;
+    /**
+     * The LSN of the next record to undo, for a compensation record, or -1 for an ordinary update.
+     */
+    private final long undoNextLSN;
     private final LogicalBlock logicalBlock;
     /**
      * It determines the offset of each value within the page and extracts them,
-     * so that we can use that data to create a log record of type SETINT.<br>
+     * so that we can use that data to create a log record of type SETINT.
+     * This constructor reads records written in the legacy layout.<br>
      * <strong>Record Example:</strong><br>
-     * <code>[operator, txId, filename, blockNumber, blockOffset, newIntValue]</code><br>
+     * <code>[operator, txId, filename, blockNumber, blockOffset, oldIntValue]</code><br>
      * @param page the memory page that contains the record data
      */
     public SetIntRecord(Page page) {
         int transactionPosition = Integer.BYTES; // passing the log operator bytes length
         transactionNumber = page.getInt(transactionPosition);
+        prevLSN = -1;
         int fileNamePosition = transactionPosition + Integer.BYTES; // the Integer.BYTES refers to the transactionPosition bytes, so we pass them
         String fileName = page.getString(fileNamePosition);
         int blockNumberPosition = fileNamePosition + Page.maxLength(fileName.length());
@@ -27,7 +40,41 @@ public class SetIntRecord extends LogRecord implements Undoable {
         int offsetPosition = blockNumberPosition + Integer.BYTES;
         offset = page.getInt(offsetPosition);
         int valuePosition = offsetPosition + Integer.BYTES;
-        value = page.getInt(valuePosition);
+        oldValue = page.getInt(valuePosition);
+        newValue = 0;
+        hasNewValue = false;
+        compensation = false;
+        undoNextLSN = -1;
+    }
+
+    /**
+     * It reads a SETINT record written in the compact layout.<br>
+     * <strong>Record Example:</strong><br>
+     * <code>[header, txId, prevLSN, undoNextLSN, fileId, blockNumber, blockOffset, oldIntValue, newIntValue]</code><br>
+     * all values except the last two are variable length integers. The undo next LSN is only present in
+     * compensation records, and records written before the after-image was logged have no new value.
+     * @param page the memory page that contains the record data
+     * @param logManager it resolves the file id into a file name
+     */
+    SetIntRecord(Page page, LogManager logManager) {
+        int transactionPosition = LogRecordFormat.HEADER_SIZE;
+        transactionNumber = LogRecordFormat.readVarInt(page, transactionPosition);
+        int prevLSNPosition = transactionPosition + LogRecordFormat.varIntSize(transactionNumber);
+        prevLSN = LogRecordFormat.readPrevLSN(page, 0, prevLSNPosition);
+        int undoNextPosition = prevLSNPosition + LogRecordFormat.prevLSNSize(prevLSN);
+        compensation = LogRecordFormat.isCompensation(page, 0);
+        undoNextLSN = compensation ? LogRecordFormat.readVarLong(page, undoNextPosition) : -1;
+        int fileIdPosition = undoNextPosition + (compensation ? LogRecordFormat.varLongSize(undoNextLSN) : 0);
+        int fileId = LogRecordFormat.readVarInt(page, fileIdPosition);
+        int blockNumberPosition = fileIdPosition + LogRecordFormat.varIntSize(fileId);
+        int blockNumber = LogRecordFormat.readVarInt(page, blockNumberPosition);
+        logicalBlock = new LogicalBlock(logManager.fileName(fileId), blockNumber);
+        int offsetPosition = blockNumberPosition + LogRecordFormat.varIntSize(blockNumber);
+        offset = LogRecordFormat.readVarInt(page, offsetPosition);
+        int valuePosition = offsetPosition + LogRecordFormat.varIntSize(offset);
+        oldValue = page.getInt(valuePosition);
+        hasNewValue = LogRecordFormat.hasNewValue(page, 0);
+        newValue = hasNewValue ? page.getInt(valuePosition + Integer.BYTES) : 0;
     }
 
     @Override
@@ -41,56 +88,122 @@ public class SetIntRecord extends LogRecord implements Undoable {
     }
     /**
      * A static method to write a setInt record to the log.
-     * This log record contains the {@code LogOperator.SETINT} operator,
-     * followed by the transaction id, the filename, number,
-     * and offset of the modified block, and the previous
-     * integer value at that offset.<br>
+     * This log record contains the {@code LogOperator.SETINT} header,
+     * followed by the transaction id, the LSN of the previous record of the transaction, the file id, number,
+     * and offset of the modified block, the integer value at that offset before the update (used to undo it),
+     * and the value written by the update (used to redo it).<br>
      * It will be printed as the following:<br>
-     * < SETINT, transactionId, fileName, blockNumber, blockOffset, newIntValue ><br>
-     * < SETINT, 2, testFile, 1, 40, hello > <br>
+     * < SETINT, transactionId, blockNumber, blockOffset, oldValue, newValue ><br>
+     * < SETINT, 2, 1, 40, 9, 10 > <br>
      * It first calculates the size of the byte array and
      * the offset within that array of each value of the record to get the accurate position for each value.
+     * The transaction id, previous LSN, file id, block number and offset are variable length integers, so their sizes
+     * depend on their values (see {@link LogRecordFormat}).
      * It then creates a byte array of that size, wraps it in a Page object,
-     * and uses the page’s setInt and setString methods
-     * to write the values in the appropriate locations
+     * and writes the values in the appropriate locations
      * @param logManager it will be used for writing (appending) SETINT log record to the log file.
      * @param transactionNumber the transaction id number
-     * @param logicalBlock the block that will be modified by writing string value into it.
+     * @param prevLSN the LSN of the previous record written by the transaction, or -1 if there is none
+     * @param logicalBlock the block that will be modified by writing int value into it.
      * @param offset a specific offset of a block that the value will be written into.
-     * @param val the new int value that will be stored
+     * @param oldVal the int value stored at the offset before the update
+     * @param newVal the int value written by the update
      * @return the LSN (log sequence number) of the last log value
      */
-    public static int writeToLog(LogManager logManager, int transactionNumber, LogicalBlock logicalBlock, int offset, int val){
+    public static long writeToLog(LogManager logManager, int transactionNumber, long prevLSN, LogicalBlock logicalBlock, int offset, int oldVal, int newVal){
+        return write(logManager, transactionNumber, prevLSN, false, -1, logicalBlock, offset, oldVal, newVal);
+    }
+
+    /**
+     * Writes a compensation record, which logs the undo of an update as a redo-only update:
+     * its new value is the restored value. Recovery redoes it like any update and never undoes it;
+     * it rather continues undoing the transaction at the undo next LSN, so an update is never undone twice.
+     * @param logManager the log manager
+     * @param transactionNumber the id of the transaction whose update is undone
+     * @param prevLSN the LSN of the previous record written by the transaction
+     * @param undoNextLSN the LSN of the record that precedes the undone update in the transaction
+     * @param logicalBlock the block of the undone update
+     * @param offset the offset of the undone update
+     * @param currentVal the value at the offset before it is restored
+     * @param restoredVal the old value of the undone update
+     * @return the LSN of the compensation record
+     */
+    public static long writeCompensationToLog(LogManager logManager, int transactionNumber, long prevLSN, long undoNextLSN, LogicalBlock logicalBlock, int offset, int currentVal, int restoredVal) {
+        return write(logManager, transactionNumber, prevLSN, true, undoNextLSN, logicalBlock, offset, currentVal, restoredVal);
+    }
+
+    private static long write(LogManager logManager, int transactionNumber, long prevLSN, boolean compensation, long undoNextLSN, LogicalBlock logicalBlock, int offset, int oldVal, int newVal) {
         //To write a position for each value according to the following sequence:
-        //<operator, txId, filename, blockNumber, blockOffset, newStringValue>
-        int transactionPosition = Integer.BYTES; // LogOperator takes 1 integer, so we pass (exceed) its value bytes to put transaction num after it.
-        int fileNamePosition = transactionPosition + Integer.BYTES; //passing both tx and lopOp
-        int blockNumberPosition = fileNamePosition + Page.maxLength(logicalBlock.getFileName().length()); ////passing tx, lopOp, and filename length
-        int blockOffsetPosition = blockNumberPosition + Integer.BYTES; // passing the above 4 values
-        int valuePosition = blockOffsetPosition + Integer.BYTES; // passing the above 5 values
+        //<header, txId, prevLSN, undoNextLSN, fileId, blockNumber, blockOffset, oldValue, newValue>
+        int fileId = logManager.fileId(logicalBlock.getFileName());
+        int transactionPosition = LogRecordFormat.HEADER_SIZE; // the header takes 1 byte, so we pass it to put transaction num after it.
+        int prevLSNPosition = transactionPosition + LogRecordFormat.varIntSize(transactionNumber);
+        int undoNextPosition = prevLSNPosition + LogRecordFormat.prevLSNSize(prevLSN);
+        int fileIdPosition = undoNextPosition + (compensation ? LogRecordFormat.varLongSize(undoNextLSN) : 0);
+        int blockNumberPosition = fileIdPosition + LogRecordFormat.varIntSize(fileId);
+        int blockOffsetPosition = blockNumberPosition + LogRecordFormat.varIntSize(logicalBlock.getNumber());
+        int valuePosition = blockOffsetPosition + LogRecordFormat.varIntSize(offset);
 
-        byte[] recordBytes = new byte[valuePosition + Integer.BYTES];
+        byte[] recordBytes = new byte[valuePosition + 2 * Integer.BYTES];
 
         Page page = new Page(recordBytes);
 
         //Create a record with data filled into it, according to the sequence mentioned above
-        page.setInt(0,LogOperator.SETINT.value);
-        page.setInt(transactionPosition,transactionNumber);
-        page.setString(fileNamePosition,logicalBlock.getFileName());
-        page.setInt(blockNumberPosition,logicalBlock.getNumber());
-        page.setInt(blockOffsetPosition,offset);
-        page.setInt(blockOffsetPosition,val);
+        page.setByte(0, LogRecordFormat.updateHeader(LogOperator.SETINT, prevLSN, compensation));
+        LogRecordFormat.writeVarInt(page, transactionPosition, transactionNumber);
+        LogRecordFormat.writePrevLSN(page, prevLSNPosition, prevLSN);
+        if (compensation) LogRecordFormat.writeVarLong(page, undoNextPosition, undoNextLSN);
+        LogRecordFormat.writeVarInt(page, fileIdPosition, fileId);
+        LogRecordFormat.writeVarInt(page, blockNumberPosition, logicalBlock.getNumber());
+        LogRecordFormat.writeVarInt(page, blockOffsetPosition, offset);
+        page.setInt(valuePosition, oldVal);
+        page.setInt(valuePosition + Integer.BYTES, newVal);
 
         return logManager.append(recordBytes);
     }
 
     @Override
     public String toString() {
-        return "<SETINT " + transactionNumber + " " + logicalBlock.getNumber() + " " + offset + " " + value + ">";
+        String values = hasNewValue ? oldValue + " " + newValue : String.valueOf(oldValue);
+        return "<" + (compensation ? "CLR " : "") + "SETINT " + transactionNumber + " " + logicalBlock.getNumber() + " " + offset + " " + values + ">";
     }
 
     @Override
-    public void undo(int transactionNumber) {
+    public long getPrevLSN() {
+        return prevLSN;
+    }
 
+    @Override
+    public LogicalBlock getLogicalBlock() {
+        return logicalBlock;
+    }
+
+    /**
+     * @return true if the record logs the undo of another update
+     */
+    public boolean isCompensation() {
+        return compensation;
+    }
+
+    /**
+     * @return the LSN of the next record to undo, for a compensation record, or -1 if there is none
+     */
+    public long getUndoNextLSN() {
+        return undoNextLSN;
+    }
+
+    @Override
+    public void undo(Page page) {
+        page.setInt(offset, oldValue);
+    }
+
+    /**
+     * Writes the value of the update into its offset of the specified page again.
+     * Records in the legacy layout do not hold that value, so they cannot be redone.
+     * @param page the page of the block modified by the logged update
+     */
+    public void redo(Page page) {
+        if (!hasNewValue) throw new RuntimeException("the record does not hold the value of the update");
+        page.setInt(offset, newValue);
     }
 }
@@ -6,20 +6,32 @@ import AhmedDB.file.Page;
 public class SetStringRecord extends LogRecord implements Undoable {
 
     private final int transactionNumber;
+    private final long prevLSN;
     private final int offset;
-    private final String stringValue;
+    private final String oldValue;
+    /**
+     * The value written by the update, or null for records that do not hold the after-image.
+     */
+    private final String newValue;
+    private final boolean compensation;
+    /**
+     * The LSN of the next record to undo, for a compensation record, or -1 for an ordinary update.
+     */
+    private final long undoNextLSN;
     private final LogicalBlock logicalBlock;
 
     /**
      * It determines the offset of each value within the page and extracts them,
-     * so that we can use that data to create a log record of type SETSTRING.<br>
+     * so that we can use that data to create a log record of type SETSTRING.
+     * This constructor reads records written in the legacy layout.<br>
      * <strong>Record Example:</strong><br>
-     * <code>[operator, txId, filename, blockNumber, blockOffset, newStringValue]</code><br>
+     * <code>[operator, txId, filename, blockNumber, blockOffset, oldStringValue]</code><br>
      * @param page the memory page that contains the record data
      */
     public SetStringRecord(Page page){
         int transactionPosition = Integer.BYTES; // passing the log operator bytes length
         transactionNumber = page.getInt(transactionPosition);
+        prevLSN = -1;
         int fileNamePosition = transactionPosition + Integer.BYTES; // the Integer.BYTES refers to the transactionPosition bytes, so we pass them
         String fileName = page.getString(fileNamePosition);
         int blockNumberPosition = fileNamePosition + Page.maxLength(fileName.length());
@@ -28,57 +40,121 @@ public class SetStringRecord extends LogRecord implements Undoable {
         int offsetPosition = blockNumberPosition + Integer.BYTES;
         offset = page.getInt(offsetPosition);
         int valuePosition = offsetPosition + Integer.BYTES;
-        stringValue = page.getString(valuePosition);
+        oldValue = page.getString(valuePosition);
+        newValue = null;
+        compensation = false;
+        undoNextLSN = -1;
+    }
+
+    /**
+     * It reads a SETSTRING record written in the compact layout.<br>
+     * <strong>Record Example:</strong><br>
+     * <code>[header, txId, prevLSN, undoNextLSN, fileId, blockNumber, blockOffset, oldStringValue, newStringValue]</code><br>
+     * all values except the last two are variable length integers, and each string
+     * is prefixed by its variable length size. The undo next LSN is only present in
+     * compensation records, and records written before the after-image was logged have no new value.
+     * @param page the memory page that contains the record data
+     * @param logManager it resolves the file id into a file name
+     */
+    SetStringRecord(Page page, LogManager logManager) {
+        int transactionPosition = LogRecordFormat.HEADER_SIZE;
+        transactionNumber = LogRecordFormat.readVarInt(page, transactionPosition);
+        int prevLSNPosition = transactionPosition + LogRecordFormat.varIntSize(transactionNumber);
+        prevLSN = LogRecordFormat.readPrevLSN(page, 0, prevLSNPosition);
+        int undoNextPosition = prevLSNPosition + LogRecordFormat.prevLSNSize(prevLSN);
+        compensation = LogRecordFormat.isCompensation(page, 0);
+        undoNextLSN = compensation ? LogRecordFormat.readVarLong(page, undoNextPosition) : -1;
+        int fileIdPosition = undoNextPosition + (compensation ? LogRecordFormat.varLongSize(undoNextLSN) : 0);
+        int fileId = LogRecordFormat.readVarInt(page, fileIdPosition);
+        int blockNumberPosition = fileIdPosition + LogRecordFormat.varIntSize(fileId);
+        int blockNumber = LogRecordFormat.readVarInt(page, blockNumberPosition);
+        logicalBlock = new LogicalBlock(logManager.fileName(fileId), blockNumber);
+        int offsetPosition = blockNumberPosition + LogRecordFormat.varIntSize(blockNumber);
+        offset = LogRecordFormat.readVarInt(page, offsetPosition);
+        int valuePosition = offsetPosition + LogRecordFormat.varIntSize(offset);
+        oldValue = LogRecordFormat.readString(page, valuePosition);
+        newValue = LogRecordFormat.hasNewValue(page, 0)
+                ? LogRecordFormat.readString(page, valuePosition + LogRecordFormat.stringSize(oldValue))
+                : null;
     }
 
     /**
      * A static method to write a setString record to the log.
-     * This log record contains the {@code LogOperator.SETSTRING} operator,
-     * followed by the transaction id, the filename, number,
-     * and offset of the modified block, and the previous
-     * integer value at that offset.<br>
+     * This log record contains the {@code LogOperator.SETSTRING} header,
+     * followed by the transaction id, the LSN of the previous record of the transaction, the file id, number,
+     * and offset of the modified block, the string value at that offset before the update (used to undo it),
+     * and the value written by the update (used to redo it).<br>
      * It will be printed as the following:<br>
-     * < SETSTRING, transactionId, fileName, blockNumber, blockOffset, newStringValue ><br>
-     * < SETSTRING, 2, testFile, 1, 40, hello > <br>
+     * < SETSTRING, transactionId, blockNumber, blockOffset, oldValue, newValue ><br>
+     * < SETSTRING, 2, 1, 40, hello, world > <br>
      * It first calculates the size of the byte array and
      * the offset within that array of each value of the record to get the accurate position for each value.
+     * The transaction id, previous LSN, file id, block number and offset are variable length integers, so their sizes
+     * depend on their values (see {@link LogRecordFormat}).
      * It then creates a byte array of that size, wraps it in a Page object,
-     * and uses the page’s setInt and setString methods
-     * to write the values in the appropriate locations
+     * and writes the values in the appropriate locations
      * @param logManager it will be used for writing (appending) SETSTRING log record to the log file.
      * @param transactionNumber the transaction id number
+     * @param prevLSN the LSN of the previous record written by the transaction, or -1 if there is none
      * @param logicalBlock the block that will be modified by writing string value into it.
      * @param offset a specific offset of a block that the value will be written into.
-     * @param val the new string value that will be stored
+     * @param oldVal the string value stored at the offset before the update
+     * @param newVal the string value written by the update
      * @return the LSN (log sequence number) of the last log value
      */
-    public static int writeToLog(LogManager logManager, int transactionNumber, LogicalBlock logicalBlock, int offset, String val){
+    public static long writeToLog(LogManager logManager, int transactionNumber, long prevLSN, LogicalBlock logicalBlock, int offset, String oldVal, String newVal){
+        return write(logManager, transactionNumber, prevLSN, false, -1, logicalBlock, offset, oldVal, newVal);
+    }
+
+    /**
+     * Writes a compensation record, which logs the undo of an update as a redo-only update
+     * (see {@link SetIntRecord#writeCompensationToLog}).
+     * @param logManager the log manager
+     * @param transactionNumber the id of the transaction whose update is undone
+     * @param prevLSN the LSN of the previous record written by the transaction
+     * @param undoNextLSN the LSN of the record that precedes the undone update in the transaction
+     * @param logicalBlock the block of the undone update
+     * @param offset the offset of the undone update
+     * @param currentVal the value at the offset before it is restored
+     * @param restoredVal the old value of the undone update
+     * @return the LSN of the compensation record
+     */
+    public static long writeCompensationToLog(LogManager logManager, int transactionNumber, long prevLSN, long undoNextLSN, LogicalBlock logicalBlock, int offset, String currentVal, String restoredVal) {
+        return write(logManager, transactionNumber, prevLSN, true, undoNextLSN, logicalBlock, offset, currentVal, restoredVal);
+    }
+
+    private static long write(LogManager logManager, int transactionNumber, long prevLSN, boolean compensation, long undoNextLSN, LogicalBlock logicalBlock, int offset, String oldVal, String newVal) {
         //To write a position for each value according to the following sequence:
-        //<operator, txId, filename, blockNumber, blockOffset, newStringValue>
-        int transactionPosition = Integer.BYTES; // LogOperator takes 1 integer, so we pass (exceed) its value bytes to put transaction num after it.
-        int fileNamePosition = transactionPosition + Integer.BYTES; //passing both tx and lopOp
-        int blockNumberPosition = fileNamePosition + Page.maxLength(logicalBlock.getFileName().length()); ////passing tx, lopOp, and filename length
-        int blockOffsetPosition = blockNumberPosition + Integer.BYTES; // passing the above 4 values
-        int valuePosition = blockOffsetPosition + Integer.BYTES; // passing the above 5 values
-        int recordLength = valuePosition + Page.maxLength(val.length()); // passing the above 6 values
+        //<header, txId, prevLSN, undoNextLSN, fileId, blockNumber, blockOffset, oldValue, newValue>
+        int fileId = logManager.fileId(logicalBlock.getFileName());
+        int transactionPosition = LogRecordFormat.HEADER_SIZE; // the header takes 1 byte, so we pass it to put transaction num after it.
+        int prevLSNPosition = transactionPosition + LogRecordFormat.varIntSize(transactionNumber);
+        int undoNextPosition = prevLSNPosition + LogRecordFormat.prevLSNSize(prevLSN);
+        int fileIdPosition = undoNextPosition + (compensation ? LogRecordFormat.varLongSize(undoNextLSN) : 0);
+        int blockNumberPosition = fileIdPosition + LogRecordFormat.varIntSize(fileId);
+        int blockOffsetPosition = blockNumberPosition + LogRecordFormat.varIntSize(logicalBlock.getNumber());
+        int oldValuePosition = blockOffsetPosition + LogRecordFormat.varIntSize(offset);
+        int newValuePosition = oldValuePosition + LogRecordFormat.stringSize(oldVal);
+        int recordLength = newValuePosition + LogRecordFormat.stringSize(newVal);
 
         byte[] recordBytes = new byte[recordLength];
 
         Page page = new Page(recordBytes);
 
         //Create a record with data filled into it, according to the sequence mentioned above
-        page.setInt(0,LogOperator.SETSTRING.value);
-        page.setInt(transactionPosition,transactionNumber);
-        page.setString(fileNamePosition,logicalBlock.getFileName());
-        page.setInt(blockNumberPosition,logicalBlock.getNumber());
-        page.setInt(blockOffsetPosition,offset);
-        page.setString(blockOffsetPosition,val);
+        page.setByte(0, LogRecordFormat.updateHeader(LogOperator.SETSTRING, prevLSN, compensation));
+        LogRecordFormat.writeVarInt(page, transactionPosition, transactionNumber);
+        LogRecordFormat.writePrevLSN(page, prevLSNPosition, prevLSN);
+        if (compensation) LogRecordFormat.writeVarLong(page, undoNextPosition, undoNextLSN);
+        LogRecordFormat.writeVarInt(page, fileIdPosition, fileId);
+        LogRecordFormat.writeVarInt(page, blockNumberPosition, logicalBlock.getNumber());
+        LogRecordFormat.writeVarInt(page, blockOffsetPosition, offset);
+        LogRecordFormat.writeString(page, oldValuePosition, oldVal);
+        LogRecordFormat.writeString(page, newValuePosition, newVal);
 
         return logManager.append(recordBytes);
     }
 
-
-
     @Override
     public int getRecordOperatorNumber() {
         return LogOperator.SETSTRING.value;
@@ -90,12 +166,48 @@ public class SetStringRecord extends LogRecord implements Undoable {
     }
 
     @Override
-    public void undo(int transactionNumber) {
+    public long getPrevLSN() {
+        return prevLSN;
+    }
+
+    @Override
+    public LogicalBlock getLogicalBlock() {
+        return logicalBlock;
+    }
+
+    /**
+     * @return true if the record logs the undo of another update
+     */
+    public boolean isCompensation() {
+        return compensation;
+    }
+
+    /**
+     * @return the LSN of the next record to undo, for a compensation record, or -1 if there is none
+     */
+    public long getUndoNextLSN() {
+        return undoNextLSN;
+    }
+
+    @Override
+    public void undo(Page page) {
+        page.setString(offset, oldValue);
+    }
+
+    /**
+     * Writes the value of the update into its offset of the specified page again.
+     * Records in the legacy layout do not hold that value, so they cannot be redone.
+     * @param page the page of the block modified by the logged update
+     */
+    public void redo(Page page) {
+        if (newValue == null) throw new RuntimeException("the record does not hold the value of the update");
+        page.setString(offset, newValue);
     }
 
     @Override
     public String toString() {
-        return "<SETSTRING " + transactionNumber + " " + logicalBlock.getNumber() + " " + offset + " " + stringValue + ">";
+        String values = newValue != null ? oldValue + " " + newValue : oldValue;
+        return "<" + (compensation ? "CLR " : "") + "SETSTRING " + transactionNumber + " " + logicalBlock.getNumber() + " " + offset + " " + values + ">";
     }
 
 }
@@ -6,10 +6,27 @@ public class StartRecord extends LogRecord {
 
     private final int transactionNumber;
 
+    /**
+     * Reads a record written in the legacy layout <code>[operator, txId]</code>.
+     * @param page the memory page that contains the record data
+     */
     public StartRecord(Page page) {
         transactionNumber = page.getInt(Integer.BYTES);
     }
 
+    private StartRecord(int transactionNumber) {
+        this.transactionNumber = transactionNumber;
+    }
+
+    /**
+     * Reads a record written in the compact layout <code>[header, txId(varint)]</code>.
+     * @param page the memory page that contains the record data
+     * @return the decoded record
+     */
+    static StartRecord readCompact(Page page) {
+        return new StartRecord(LogRecordFormat.readVarInt(page, LogRecordFormat.HEADER_SIZE));
+    }
+
     @Override
     public int getRecordOperatorNumber() {
         return LogOperator.START.value;
@@ -25,11 +42,11 @@ public class StartRecord extends LogRecord {
         return "<START " + transactionNumber + ">";
     }
 
-    public static int writeToLog(LogManager logManager, int transactionNumber) {
-        byte[] recordBytes = new byte[2*Integer.BYTES];
+    public static long writeToLog(LogManager logManager, int transactionNumber) {
+        byte[] recordBytes = new byte[LogRecordFormat.HEADER_SIZE + LogRecordFormat.varIntSize(transactionNumber)];
         Page p = new Page(recordBytes);
-        p.setInt(0, LogOperator.START.value);
-        p.setInt(Integer.BYTES, transactionNumber);
+        p.setByte(0, LogRecordFormat.header(LogOperator.START));
+        LogRecordFormat.writeVarInt(p, LogRecordFormat.HEADER_SIZE, transactionNumber);
         return logManager.append(recordBytes);
     }
 
@@ -1,8 +1,21 @@
 package AhmedDB.log;
 
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
 /**
- * 
+ * An update log record that can be undone. It knows the block that it modified,
+ * and how to write the value it saved back into the page of that block.
  */
 public interface Undoable {
-    void undo(int transactionNumber);
+    /**
+     * @return the block modified by the logged update
+     */
+    LogicalBlock getLogicalBlock();
+
+    /**
+     * Writes the value saved in the record back into its offset of the specified page.
+     * @param page the page of the block modified by the logged update
+     */
+    void undo(Page page);
 }
@@ -0,0 +1,398 @@
+package AhmedDB.materialize;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.Page;
+import AhmedDB.materialize.RunWriter.Run;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sorts records by key, with a bounded amount of memory, so that the records may be many times larger than the
+ * buffer pool. A record is a key, compared as unsigned bytes (such as the keys of the indexes), and a value that the
+ * sorter carries along. The sorter reserves a fixed number of buffers for its whole life, its workspace, and never
+ * uses more memory for the records (see {@link BufferManager#reserve(int)}).<br>
+ * The records are first split into sorted runs by replacement selection: all the workspace buffers but one hold a
+ * heap of records, and when the heap is full, its smallest record is written to the current run through the last
+ * buffer, which frees room for the next input record. A record smaller than the last one written has to wait for the
+ * next run. With random input, the runs are about twice as large as the heap, and sorted input gives a single run.
+ * The runs are written to temporary files, which {@link FileManager} removes when the database starts,
+ * one block after the other, without the log (see {@link RunWriter}).<br>
+ * When the input ends, {@link #sort()} merges the runs with a k-way heap, each run read through one buffer. If there
+ * are more runs than buffers, some of them are first merged into longer runs, as few as needed for the last merge
+ * to read all the remaining runs at once; the last merge is the {@link SortScan} returned to the caller.
+ * The records with equal keys come out in no particular order. A sorter is used by one thread.
+ */
+public class ExternalSorter {
+    /**
+     * The size of a record besides its key and value: their lengths, as shorts.
+     */
+    static final int RECORD_OVERHEAD = 2 * Short.BYTES;
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final FileManager fileManager;
+    private final BufferManager bufferManager;
+    private final String filePrefix;
+    private final int blockSize;
+    private final Buffer[] buffers;
+    private final Page[] pages;
+    /**
+     * The number of pages that hold the heap while the runs are built, all the pages but the output one.
+     */
+    private final int heapPages;
+    private final List<Run> runs = new ArrayList<>();
+    private int initialRuns = 0;
+    private int merges = 0;
+    private int nextRun = 0;
+    private boolean sorted = false;
+    private boolean closed = false;
+
+    /*
+     * The heap of replacement selection. Each record in the heap pages has a slot, which gives its page, its offset,
+     * its length, the run it goes to, and the first bytes of its key as an unsigned int, which settle most comparisons
+     * without reading the page. The records are appended to the pages, and the space of the written ones is taken
+     * back by moving the records that are still in the heap to the start of the pages.
+     */
+    private int[] slotPage = new int[1024];
+    private int[] slotOffset = new int[1024];
+    private int[] slotLength = new int[1024];
+    private int[] slotRun = new int[1024];
+    private int[] slotPrefix = new int[1024];
+    private int[] freeSlots = new int[1024];
+    private int freeSlotCount = 0;
+    private int slotCount = 0;
+    private int[] heap = new int[1024];
+    private int heapSize = 0;
+    private int appendPage = 0;
+    private int appendOffset = 0;
+    /**
+     * The number of bytes of the pages whose records were written since the last compaction.
+     */
+    private long holeBytes = 0;
+
+    private RunWriter writer;
+    private int currentRun = 0;
+    private final byte[] lastKey;
+    private int lastKeyLength = -1;
+    private final byte[] keyA;
+    private final byte[] keyB;
+
+    /**
+     * Creates a sorter, and reserves its workspace.
+     * @param buffers the number of buffers of the workspace, at least 3; {@link BufferManager#available()} tells how
+     *                many the pool can spare
+     */
+    public ExternalSorter(FileManager fileManager, BufferManager bufferManager, int buffers) {
+        if (buffers < 3) throw new RuntimeException("an external sort needs at least 3 buffers, not " + buffers);
+        this.fileManager = fileManager;
+        this.bufferManager = bufferManager;
+        filePrefix = "temp-sort-" + nextId.getAndIncrement() + "-";
+        blockSize = fileManager.blockSize();
+        lastKey = new byte[blockSize];
+        keyA = new byte[blockSize];
+        keyB = new byte[blockSize];
+        //the workspace buffers belong to no block: they only provide memory
+        this.buffers = bufferManager.reserve(buffers);
+        pages = new Page[buffers];
+        for (int i = 0; i < buffers; i++) pages[i] = this.buffers[i].getAssociatedPage();
+        heapPages = buffers - 1;
+    }
+
+    /**
+     * @return the size of the largest record that the sorter accepts, key and value together
+     */
+    public int getMaxRecordSize() {
+        return blockSize - RunWriter.RECORDS_START - RECORD_OVERHEAD;
+    }
+
+    /**
+     * Adds a record to sort.
+     */
+    public void add(byte[] key, byte[] value) {
+        if (sorted) throw new RuntimeException("the records of a sorter cannot be added after it sorted them");
+        if (key.length + value.length > getMaxRecordSize())
+            throw new RuntimeException("a record of " + (key.length + value.length) + " bytes is larger than the " + getMaxRecordSize() + " bytes allowed in a sort");
+        int length = RECORD_OVERHEAD + key.length + value.length;
+        while (!allocate(length)) {
+            //the written records leave holes in the pages, which are taken back once they are a quarter of the pages
+            if (heapSize == 0 || holeBytes >= (long) heapPages * blockSize / 4) compact();
+            else writeSmallest();
+        }
+
+        int slot = newSlot();
+        slotPage[slot] = appendPage;
+        slotOffset[slot] = appendOffset;
+        slotLength[slot] = length;
+        slotPrefix[slot] = prefix(key, key.length);
+        //a key smaller than the last one written cannot go to the current run anymore
+        slotRun[slot] = lastKeyLength >= 0 && Arrays.compareUnsigned(key, 0, key.length, lastKey, 0, lastKeyLength) < 0
+                ? currentRun + 1 : currentRun;
+        Page page = pages[appendPage];
+        page.setShort(appendOffset, (short) key.length);
+        page.setShort(appendOffset + Short.BYTES, (short) value.length);
+        page.writeBytes(appendOffset + RECORD_OVERHEAD, key, 0, key.length);
+        page.writeBytes(appendOffset + RECORD_OVERHEAD + key.length, value, 0, value.length);
+        appendOffset += length;
+        push(slot);
+    }
+
+    /**
+     * Ends the input, merges the runs until the workspace can read all of them at once, and returns the scan that
+     * merges them. The scan releases the workspace when it is closed.
+     */
+    public SortScan sort() {
+        if (sorted) throw new RuntimeException("the records of a sorter are already sorted");
+        sorted = true;
+        try {
+            while (heapSize > 0) writeSmallest();
+            if (writer != null) runs.add(writer.close());
+            writer = null;
+            initialRuns = runs.size();
+            //merging k runs into one removes k - 1 runs; the first merges remove just enough for the last one
+            while (runs.size() > buffers.length) {
+                int count = Math.min(buffers.length - 1, runs.size() - buffers.length + 1);
+                List<Run> merged = new ArrayList<>(runs.subList(0, count));
+                runs.subList(0, count).clear();
+                runs.add(merge(merged));
+                merges++;
+            }
+            return new SortScan(this, readers(runs));
+        }
+        catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of runs built from the input
+     */
+    public int getInitialRuns() {
+        return initialRuns;
+    }
+
+    /**
+     * @return the number of merges done before the last one
+     */
+    public int getMerges() {
+        return merges;
+    }
+
+    /**
+     * Releases the workspace and removes the temporary files.
+     */
+    void close() {
+        if (closed) return;
+        closed = true;
+        bufferManager.release(buffers);
+        for (Run run : runs) fileManager.delete(run.fileName);
+        if (writer != null) fileManager.delete(writer.close().fileName);
+    }
+
+    /**
+     * Merges runs into a new one, through the last page of the workspace.
+     */
+    private Run merge(List<Run> merged) {
+        List<RunReader> readers = readers(merged);
+        RunWriter output = new RunWriter(fileManager, pages[pages.length - 1], filePrefix + nextRun++);
+        MergeHeap heap = new MergeHeap(readers);
+        while (heap.next()) heap.current().copyTo(output);
+        for (Run run : merged) fileManager.delete(run.fileName);
+        return output.close();
+    }
+
+    private List<RunReader> readers(List<Run> runs) {
+        List<RunReader> readers = new ArrayList<>();
+        for (int i = 0; i < runs.size(); i++) readers.add(new RunReader(fileManager, pages[i], runs.get(i)));
+        return readers;
+    }
+
+    /**
+     * Finds room for a record after the last appended one.
+     * @return false if the pages have no room left at their end
+     */
+    private boolean allocate(int length) {
+        if (appendOffset + length <= blockSize) return true;
+        if (appendPage + 1 == heapPages) return false;
+        appendPage++;
+        appendOffset = 0;
+        return true;
+    }
+
+    /**
+     * Writes the smallest record of the heap to its run, which starts when the last record of the previous run
+     * has been written.
+     */
+    private void writeSmallest() {
+        int slot = heap[0];
+        if (writer == null || slotRun[slot] != currentRun) {
+            if (writer != null) runs.add(writer.close());
+            currentRun = slotRun[slot];
+            writer = new RunWriter(fileManager, pages[pages.length - 1], filePrefix + nextRun++);
+        }
+        Page page = pages[slotPage[slot]];
+        int offset = slotOffset[slot];
+        lastKeyLength = page.getShort(offset);
+        page.readBytes(offset + RECORD_OVERHEAD, lastKey, 0, lastKeyLength);
+        writer.write(page, offset, slotLength[slot]);
+        holeBytes += slotLength[slot];
+        pop();
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    /**
+     * Moves the records of the heap to the start of the pages, in the order of their positions, so that each record
+     * moves toward the start and never overwrites a record that has not moved yet.
+     */
+    private void compact() {
+        long[] positions = new long[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            int slot = heap[i];
+            positions[i] = ((long) slotPage[slot] * blockSize + slotOffset[slot]) << 32 | slot;
+        }
+        Arrays.sort(positions);
+        appendPage = 0;
+        appendOffset = 0;
+        holeBytes = 0;
+        byte[] scratch = keyA;
+        for (long position : positions) {
+            int slot = (int) position;
+            allocate(slotLength[slot]);
+            if (slotPage[slot] != appendPage || slotOffset[slot] != appendOffset) {
+                pages[slotPage[slot]].readBytes(slotOffset[slot], scratch, 0, slotLength[slot]);
+                pages[appendPage].writeBytes(appendOffset, scratch, 0, slotLength[slot]);
+                slotPage[slot] = appendPage;
+                slotOffset[slot] = appendOffset;
+            }
+            appendOffset += slotLength[slot];
+        }
+    }
+
+    private int newSlot() {
+        if (freeSlotCount > 0) return freeSlots[--freeSlotCount];
+        if (slotCount == slotPage.length) {
+            int size = slotCount * 2;
+            slotPage = Arrays.copyOf(slotPage, size);
+            slotOffset = Arrays.copyOf(slotOffset, size);
+            slotLength = Arrays.copyOf(slotLength, size);
+            slotRun = Arrays.copyOf(slotRun, size);
+            slotPrefix = Arrays.copyOf(slotPrefix, size);
+            freeSlots = Arrays.copyOf(freeSlots, size);
+            heap = Arrays.copyOf(heap, size);
+        }
+        return slotCount++;
+    }
+
+    private void push(int slot) {
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (compare(heap[parent], slot) <= 0) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = slot;
+    }
+
+    private void pop() {
+        int slot = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && compare(heap[child + 1], heap[child]) < 0) child++;
+            if (compare(slot, heap[child]) <= 0) break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = slot;
+    }
+
+    /**
+     * Compares two records of the heap by run, then by key.
+     */
+    private int compare(int a, int b) {
+        if (slotRun[a] != slotRun[b]) return Integer.compare(slotRun[a], slotRun[b]);
+        int comparison = Integer.compareUnsigned(slotPrefix[a], slotPrefix[b]);
+        if (comparison != 0) return comparison;
+        int lengthA = key(a, keyA), lengthB = key(b, keyB);
+        return Arrays.compareUnsigned(keyA, 0, lengthA, keyB, 0, lengthB);
+    }
+
+    private int key(int slot, byte[] key) {
+        Page page = pages[slotPage[slot]];
+        int length = page.getShort(slotOffset[slot]);
+        page.readBytes(slotOffset[slot] + RECORD_OVERHEAD, key, 0, length);
+        return length;
+    }
+
+    /**
+     * @return the first four bytes of a key as an unsigned int, completed with zeros if the key is shorter
+     */
+    private static int prefix(byte[] key, int length) {
+        ByteBuffer bytes = ByteBuffer.allocate(Integer.BYTES);
+        bytes.put(key, 0, Math.min(length, Integer.BYTES));
+        return bytes.getInt(0);
+    }
+
+    /**
+     * A k-way merge of runs: a heap of readers, ordered by their current keys.
+     */
+    static final class MergeHeap {
+        private final RunReader[] heap;
+        private int size = 0;
+        private RunReader current;
+
+        MergeHeap(List<RunReader> readers) {
+            heap = new RunReader[readers.size()];
+            for (RunReader reader : readers) if (reader.next()) push(reader);
+        }
+
+        /**
+         * Moves to the smallest record of all the runs.
+         * @return false if all the runs are read
+         */
+        boolean next() {
+            if (current != null && current.next()) push(current);
+            current = size == 0 ? null : pop();
+            return current != null;
+        }
+
+        RunReader current() {
+            return current;
+        }
+
+        private void push(RunReader reader) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (Arrays.compareUnsigned(heap[parent].getKey(), reader.getKey()) <= 0) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = reader;
+        }
+
+        private RunReader pop() {
+            RunReader top = heap[0];
+            RunReader last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && Arrays.compareUnsigned(heap[child + 1].getKey(), heap[child].getKey()) < 0) child++;
+                if (Arrays.compareUnsigned(last.getKey(), heap[child].getKey()) <= 0) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            heap[size] = null;
+            return top;
+        }
+    }
+}
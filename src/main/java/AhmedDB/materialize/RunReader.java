@@ -0,0 +1,72 @@
+package AhmedDB.materialize;
+
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.materialize.RunWriter.Run;
+
+/**
+ * Reads the records of a run written by a {@link RunWriter}, one block at a time, into a page of the workspace
+ * of an {@link ExternalSorter}. The key of the current record is copied out of the page, so that the runs of a merge
+ * can be compared; its value stays in the page until the reader moves to the next record.
+ */
+class RunReader {
+    private final FileManager fileManager;
+    private final Page page;
+    private final Run run;
+    private int block = -1;
+    private int remaining = 0;
+    private int position;
+    private byte[] key;
+    private int recordOffset;
+    private int recordLength;
+
+    RunReader(FileManager fileManager, Page page, Run run) {
+        this.fileManager = fileManager;
+        this.page = page;
+        this.run = run;
+    }
+
+    /**
+     * Moves to the next record of the run.
+     * @return false if there is no next record
+     */
+    boolean next() {
+        if (remaining == 0) {
+            if (++block >= run.blocks) return false;
+            fileManager.read(new LogicalBlock(run.fileName, block), page);
+            remaining = page.getInt(0);
+            position = RunWriter.RECORDS_START;
+        }
+        int keyLength = page.getShort(position);
+        int valueLength = page.getShort(position + Short.BYTES);
+        key = new byte[keyLength];
+        page.readBytes(position + ExternalSorter.RECORD_OVERHEAD, key, 0, keyLength);
+        recordOffset = position;
+        recordLength = ExternalSorter.RECORD_OVERHEAD + keyLength + valueLength;
+        position += recordLength;
+        remaining--;
+        return true;
+    }
+
+    byte[] getKey() {
+        return key;
+    }
+
+    byte[] getValue() {
+        byte[] value = new byte[recordLength - ExternalSorter.RECORD_OVERHEAD - key.length];
+        page.readBytes(recordOffset + ExternalSorter.RECORD_OVERHEAD + key.length, value, 0, value.length);
+        return value;
+    }
+
+    /**
+     * Copies the current record to a run being written.
+     */
+    void copyTo(RunWriter writer) {
+        writer.write(page, recordOffset, recordLength);
+    }
+
+    Run getRun() {
+        return run;
+    }
+}
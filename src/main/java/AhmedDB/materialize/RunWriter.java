@@ -0,0 +1,80 @@
+package AhmedDB.materialize;
+
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
+/**
+ * Writes a sorted run to a temporary file, one block after the other, through a page of the workspace of an
+ * {@link ExternalSorter}. The runs are not logged, and their blocks do not go through the buffer pool:
+ * a full page is written straight to the next block of the file, so the file is written sequentially.<br>
+ * A block starts with the number of its records, which follow one another. A record is the length of its key
+ * and the length of its value, as shorts, then the key and the value; a record never spans two blocks.
+ */
+class RunWriter {
+    static final int RECORDS_START = Integer.BYTES;
+
+    private final FileManager fileManager;
+    private final Page page;
+    private final String fileName;
+    private final int blockSize;
+    private final byte[] scratch;
+    private int blocks = 0;
+    private int position = RECORDS_START;
+    private int count = 0;
+    private long records = 0;
+
+    RunWriter(FileManager fileManager, Page page, String fileName) {
+        this.fileManager = fileManager;
+        this.page = page;
+        this.fileName = fileName;
+        blockSize = fileManager.blockSize();
+        scratch = new byte[blockSize];
+    }
+
+    /**
+     * Appends a record, copied from another page.
+     * @param source the page that holds the record
+     * @param offset the position of the record in the page
+     * @param length the size of the record, which must fit in a block
+     */
+    void write(Page source, int offset, int length) {
+        if (position + length > blockSize) flush();
+        source.readBytes(offset, scratch, 0, length);
+        page.writeBytes(position, scratch, 0, length);
+        position += length;
+        count++;
+        records++;
+    }
+
+    /**
+     * Writes the last block, unless it is empty.
+     * @return the run that was written
+     */
+    Run close() {
+        if (count > 0) flush();
+        return new Run(fileName, blocks, records);
+    }
+
+    private void flush() {
+        page.setInt(0, count);
+        fileManager.write(new LogicalBlock(fileName, blocks++), page);
+        position = RECORDS_START;
+        count = 0;
+    }
+
+    /**
+     * A run written to a temporary file.
+     */
+    static final class Run {
+        final String fileName;
+        final int blocks;
+        final long records;
+
+        Run(String fileName, int blocks, long records) {
+            this.fileName = fileName;
+            this.blocks = blocks;
+            this.records = records;
+        }
+    }
+}
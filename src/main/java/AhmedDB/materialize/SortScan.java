@@ -0,0 +1,38 @@
+package AhmedDB.materialize;
+
+import java.util.List;
+
+/**
+ * The last merge of an {@link ExternalSorter}, which returns the sorted records one at a time, in the order of
+ * their keys. Each run is read through a buffer of the workspace, and the scan releases the workspace and
+ * removes the runs when it is closed.
+ */
+public class SortScan {
+    private final ExternalSorter sorter;
+    private final ExternalSorter.MergeHeap heap;
+
+    SortScan(ExternalSorter sorter, List<RunReader> readers) {
+        this.sorter = sorter;
+        heap = new ExternalSorter.MergeHeap(readers);
+    }
+
+    /**
+     * Moves to the next record.
+     * @return false if all the records were returned
+     */
+    public boolean next() {
+        return heap.next();
+    }
+
+    public byte[] getKey() {
+        return heap.current().getKey();
+    }
+
+    public byte[] getValue() {
+        return heap.current().getValue();
+    }
+
+    public void close() {
+        sorter.close();
+    }
+}
@@ -0,0 +1,46 @@
+package AhmedDB.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a read or a write of consecutive blocks of a database file. It is begun before the
+ * transfer and committed after it, so its duration is the time of the I/O; when the event is not enabled, it costs
+ * a check of a flag, and the JIT usually removes its allocation.
+ */
+@Name("AhmedDB.BlockIo")
+@Label("Block I/O")
+@Category({"AhmedDB", "File"})
+@Description("A read or a write of consecutive blocks of a database file")
+public class BlockIoEvent extends Event {
+    @Label("File")
+    String fileName;
+
+    @Label("First Block")
+    int firstBlock;
+
+    @Label("Blocks")
+    int blocks;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Write")
+    boolean write;
+
+    void commit(String fileName, int firstBlock, int blocks, long bytes, boolean write) {
+        end();
+        if (!shouldCommit()) return;
+        this.fileName = fileName;
+        this.firstBlock = firstBlock;
+        this.blocks = blocks;
+        this.bytes = bytes;
+        this.write = write;
+        commit();
+    }
+}
@@ -0,0 +1,195 @@
+package AhmedDB.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of a {@link AhmedDB.buffer.BufferManager}: hits and misses of the pins, evictions, and the time spent
+ * waiting for a free buffer, which is also emitted as a {@link PinWaitEvent}, and the hits, misses and evictions of
+ * the victim cache of the pool if it has one. The counters are updated while the manager holds its monitor, except
+ * the ones of the victim cache, which compresses its pages without it, and they are all read without it. The dirty ratio and the space used in the victim cache are computed when they are asked for.
+ */
+public class BufferMetrics implements BufferMetricsMXBean {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder dirtyEvictions = new LongAdder();
+    private final Histogram pinWaits = new Histogram();
+    private final LongAdder victimHits = new LongAdder();
+    private final LongAdder victimMisses = new LongAdder();
+    private final LongAdder victimEvictions = new LongAdder();
+    private final LongAdder victimStoredBytes = new LongAdder();
+    private final LongAdder victimCompressedBytes = new LongAdder();
+    private final int bufferCount;
+    private final IntSupplier dirtyBuffers;
+    private final long victimCacheCapacity;
+    private final LongSupplier victimCacheBytes;
+
+    /**
+     * @param bufferCount the number of buffers of the pool
+     * @param dirtyBuffers counts the buffers that hold modifications not written yet
+     */
+    public BufferMetrics(int bufferCount, IntSupplier dirtyBuffers) {
+        this(bufferCount, dirtyBuffers, 0, () -> 0);
+    }
+
+    /**
+     * @param victimCacheCapacity the size of the victim cache of the pool, in bytes, or 0 if it has none
+     * @param victimCacheBytes counts the bytes of the victim cache that hold pages
+     */
+    public BufferMetrics(int bufferCount, IntSupplier dirtyBuffers, long victimCacheCapacity, LongSupplier victimCacheBytes) {
+        this.bufferCount = bufferCount;
+        this.dirtyBuffers = dirtyBuffers;
+        this.victimCacheCapacity = victimCacheCapacity;
+        this.victimCacheBytes = victimCacheBytes;
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    /**
+     * Records a pin whose block was read into a buffer.
+     * @param evicted true if the buffer held another block
+     * @param dirty true if the other block had to be written first
+     */
+    public void recordMiss(boolean evicted, boolean dirty) {
+        misses.increment();
+        if (evicted) evictions.increment();
+        if (dirty) dirtyEvictions.increment();
+    }
+
+    /**
+     * Records a pin that waited for a buffer.
+     * @param event the event begun when the wait started
+     * @param fileName the file of the block to pin
+     * @param blockNumber the number of the block
+     * @param nanos the duration of the wait
+     * @param pinned false if the wait ended without a buffer
+     */
+    public void recordPinWait(PinWaitEvent event, String fileName, int blockNumber, long nanos, boolean pinned) {
+        pinWaits.record(nanos);
+        event.commit(fileName, blockNumber, pinned);
+    }
+
+    /**
+     * Records a page that left the pool for the victim cache.
+     * @param pageBytes the size of the page
+     * @param storedBytes the size of the page in the cache
+     */
+    public void recordVictimCacheStore(int pageBytes, int storedBytes) {
+        victimStoredBytes.add(pageBytes);
+        victimCompressedBytes.add(storedBytes);
+    }
+
+    /**
+     * Records a missed block that was found in the victim cache, instead of being read from the disk.
+     */
+    public void recordVictimCacheHit() {
+        victimHits.increment();
+    }
+
+    public void recordVictimCacheMiss() {
+        victimMisses.increment();
+    }
+
+    public void recordVictimCacheEviction() {
+        victimEvictions.increment();
+    }
+
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hitCount = hits.sum(), pins = hitCount + misses.sum();
+        return pins == 0 ? 0 : (double) hitCount / pins;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getDirtyEvictions() {
+        return dirtyEvictions.sum();
+    }
+
+    @Override
+    public long getPinWaits() {
+        return pinWaits.getCount();
+    }
+
+    @Override
+    public double getPinWaitMeanMicros() {
+        return pinWaits.getMean() / 1000;
+    }
+
+    @Override
+    public long getPinWaitP99Micros() {
+        return pinWaits.getPercentile(99) / 1000;
+    }
+
+    /**
+     * @return the duration of the waits for a buffer, in nanoseconds
+     */
+    public Histogram getPinWaitTime() {
+        return pinWaits;
+    }
+
+    @Override
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    @Override
+    public double getDirtyRatio() {
+        return bufferCount == 0 ? 0 : (double) dirtyBuffers.getAsInt() / bufferCount;
+    }
+
+    @Override
+    public long getVictimCacheHits() {
+        return victimHits.sum();
+    }
+
+    @Override
+    public long getVictimCacheMisses() {
+        return victimMisses.sum();
+    }
+
+    @Override
+    public double getVictimCacheHitRatio() {
+        long hitCount = victimHits.sum(), lookups = hitCount + victimMisses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public long getVictimCacheEvictions() {
+        return victimEvictions.sum();
+    }
+
+    @Override
+    public double getVictimCacheCompressionRatio() {
+        long stored = victimCompressedBytes.sum();
+        return stored == 0 ? 0 : (double) victimStoredBytes.sum() / stored;
+    }
+
+    @Override
+    public long getVictimCacheCapacity() {
+        return victimCacheCapacity;
+    }
+
+    @Override
+    public long getVictimCacheUsedBytes() {
+        return victimCacheBytes.getAsLong();
+    }
+}
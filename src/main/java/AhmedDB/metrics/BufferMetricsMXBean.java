@@ -0,0 +1,73 @@
+package AhmedDB.metrics;
+
+/**
+ * The management interface of the metrics of a {@link AhmedDB.buffer.BufferManager}. Wait times are in microseconds.
+ */
+public interface BufferMetricsMXBean {
+    long getHits();
+
+    long getMisses();
+
+    /**
+     * @return the part of the pins that found their block in the pool, between 0 and 1
+     */
+    double getHitRatio();
+
+    /**
+     * @return the number of blocks that left the pool to make room for another block
+     */
+    long getEvictions();
+
+    /**
+     * @return the number of evicted blocks that had to be written first
+     */
+    long getDirtyEvictions();
+
+    /**
+     * @return the number of pins that waited for a buffer to be unpinned
+     */
+    long getPinWaits();
+
+    double getPinWaitMeanMicros();
+
+    long getPinWaitP99Micros();
+
+    int getBufferCount();
+
+    /**
+     * @return the part of the buffers that hold modifications not written yet, between 0 and 1
+     */
+    double getDirtyRatio();
+
+    /**
+     * @return the number of blocks missing from the pool that were found in its victim cache
+     */
+    long getVictimCacheHits();
+
+    /**
+     * @return the number of blocks missing from the pool and its victim cache, which were read from the disk
+     */
+    long getVictimCacheMisses();
+
+    /**
+     * @return the part of the lookups in the victim cache that found their block, between 0 and 1
+     */
+    double getVictimCacheHitRatio();
+
+    /**
+     * @return the number of pages dropped from the victim cache to make room for other pages
+     */
+    long getVictimCacheEvictions();
+
+    /**
+     * @return the size of the pages stored in the victim cache divided by the space they took, or 0 if none was stored
+     */
+    double getVictimCacheCompressionRatio();
+
+    /**
+     * @return the size of the victim cache, in bytes, or 0 if the pool has none
+     */
+    long getVictimCacheCapacity();
+
+    long getVictimCacheUsedBytes();
+}
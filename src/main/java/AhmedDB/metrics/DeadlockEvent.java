@@ -0,0 +1,33 @@
+package AhmedDB.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for a transaction aborted by the deadlock detector to break a deadlock.
+ */
+@Name("AhmedDB.Deadlock")
+@Label("Deadlock")
+@Category({"AhmedDB", "Transaction"})
+@Description("A transaction aborted to break a deadlock")
+public class DeadlockEvent extends Event {
+    @Label("Victim")
+    @Description("The aborted transaction")
+    int transactionNumber;
+
+    @Label("Detection Latency")
+    @Description("The time between the last wait of the deadlock and its detection")
+    @Timespan
+    long detectionLatency;
+
+    void commit(int transactionNumber, long detectionLatency) {
+        if (!shouldCommit()) return;
+        this.transactionNumber = transactionNumber;
+        this.detectionLatency = detectionLatency;
+        commit();
+    }
+}
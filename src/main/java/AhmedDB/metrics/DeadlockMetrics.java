@@ -0,0 +1,58 @@
+package AhmedDB.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a {@link AhmedDB.transaction.concurrency.DeadlockDetector}: the detection passes, the transactions
+ * aborted to break a deadlock, which are also emitted as {@link DeadlockEvent}s, and the detection latency, the time
+ * between the last wait of a cycle and its detection.
+ */
+public class DeadlockMetrics implements DeadlockMetricsMXBean {
+    private final LongAdder passes = new LongAdder();
+    private final Histogram detectionLatency = new Histogram();
+
+    public void recordPass() {
+        passes.increment();
+    }
+
+    /**
+     * @param transactionNumber the aborted transaction
+     * @param nanos the time between the forming of the deadlock and its detection
+     */
+    public void recordAbort(int transactionNumber, long nanos) {
+        detectionLatency.record(nanos);
+        new DeadlockEvent().commit(transactionNumber, nanos);
+    }
+
+    @Override
+    public long getPasses() {
+        return passes.sum();
+    }
+
+    @Override
+    public long getAborts() {
+        return detectionLatency.getCount();
+    }
+
+    @Override
+    public double getDetectionLatencyMeanMicros() {
+        return detectionLatency.getMean() / 1000;
+    }
+
+    @Override
+    public long getDetectionLatencyP99Micros() {
+        return detectionLatency.getPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getDetectionLatencyMaxMicros() {
+        return detectionLatency.getMax() / 1000;
+    }
+
+    /**
+     * @return the detection latency of the deadlocks, in nanoseconds
+     */
+    public Histogram getDetectionLatency() {
+        return detectionLatency;
+    }
+}
@@ -0,0 +1,20 @@
+package AhmedDB.metrics;
+
+/**
+ * The management interface of the metrics of a {@link AhmedDB.transaction.concurrency.DeadlockDetector}.
+ * Latencies are in microseconds.
+ */
+public interface DeadlockMetricsMXBean {
+    long getPasses();
+
+    /**
+     * @return the number of transactions aborted to break a deadlock, which is also the number of deadlocks found
+     */
+    long getAborts();
+
+    double getDetectionLatencyMeanMicros();
+
+    long getDetectionLatencyP99Micros();
+
+    long getDetectionLatencyMaxMicros();
+}
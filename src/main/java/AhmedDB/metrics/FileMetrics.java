@@ -0,0 +1,125 @@
+package AhmedDB.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * The I/O metrics of a {@link AhmedDB.file.FileManager}: the totals of all the files, and the counters of each file,
+ * which are dropped when the file is deleted. Each transfer is also emitted as a {@link BlockIoEvent} when the event
+ * is enabled in a Flight Recorder recording.
+ */
+public class FileMetrics implements FileMetricsMXBean {
+    private final IoMetrics total = new IoMetrics();
+    private final Map<String, IoMetrics> files = new ConcurrentHashMap<>();
+
+    /**
+     * Records a read of consecutive blocks.
+     * @param event the event begun before the read
+     * @param fileName the name of the file
+     * @param firstBlock the number of the first block
+     * @param blocks the number of blocks
+     * @param bytes the number of bytes
+     * @param nanos the duration of the read
+     */
+    public void recordRead(BlockIoEvent event, String fileName, int firstBlock, int blocks, long bytes, long nanos) {
+        total.recordRead(blocks, bytes, nanos);
+        of(fileName).recordRead(blocks, bytes, nanos);
+        event.commit(fileName, firstBlock, blocks, bytes, false);
+    }
+
+    /**
+     * Records a write of consecutive blocks, the same way as {@link #recordRead}.
+     */
+    public void recordWrite(BlockIoEvent event, String fileName, int firstBlock, int blocks, long bytes, long nanos) {
+        total.recordWrite(blocks, bytes, nanos);
+        of(fileName).recordWrite(blocks, bytes, nanos);
+        event.commit(fileName, firstBlock, blocks, bytes, true);
+    }
+
+    /**
+     * Drops the counters of a deleted file; the totals keep its I/O.
+     * @param fileName the name of the file
+     */
+    public void remove(String fileName) {
+        files.remove(fileName);
+    }
+
+    /**
+     * @return the totals of all the files
+     */
+    public IoMetrics getTotal() {
+        return total;
+    }
+
+    /**
+     * @param fileName the name of a file
+     * @return the counters of the file, which are zero if it was not read or written
+     */
+    public IoMetrics getFile(String fileName) {
+        IoMetrics io = files.get(fileName);
+        return io == null ? new IoMetrics() : io;
+    }
+
+    @Override
+    public long getBlocksRead() {
+        return total.getBlocksRead();
+    }
+
+    @Override
+    public long getBlocksWritten() {
+        return total.getBlocksWritten();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return total.getBytesRead();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return total.getBytesWritten();
+    }
+
+    @Override
+    public double getReadLatencyMeanMicros() {
+        return total.getReadLatency().getMean() / 1000;
+    }
+
+    @Override
+    public long getReadLatencyP99Micros() {
+        return total.getReadLatency().getPercentile(99) / 1000;
+    }
+
+    @Override
+    public double getWriteLatencyMeanMicros() {
+        return total.getWriteLatency().getMean() / 1000;
+    }
+
+    @Override
+    public long getWriteLatencyP99Micros() {
+        return total.getWriteLatency().getPercentile(99) / 1000;
+    }
+
+    @Override
+    public Map<String, Long> getBlocksReadByFile() {
+        return byFile(IoMetrics::getBlocksRead);
+    }
+
+    @Override
+    public Map<String, Long> getBlocksWrittenByFile() {
+        return byFile(IoMetrics::getBlocksWritten);
+    }
+
+    private IoMetrics of(String fileName) {
+        IoMetrics io = files.get(fileName);
+        return io != null ? io : files.computeIfAbsent(fileName, name -> new IoMetrics());
+    }
+
+    private Map<String, Long> byFile(ToLongFunction<IoMetrics> counter) {
+        Map<String, Long> counts = new TreeMap<>();
+        files.forEach((fileName, io) -> counts.put(fileName, counter.applyAsLong(io)));
+        return counts;
+    }
+}
@@ -0,0 +1,34 @@
+package AhmedDB.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of the I/O metrics of a {@link AhmedDB.file.FileManager}. Latencies are in microseconds.
+ */
+public interface FileMetricsMXBean {
+    long getBlocksRead();
+
+    long getBlocksWritten();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    double getReadLatencyMeanMicros();
+
+    long getReadLatencyP99Micros();
+
+    double getWriteLatencyMeanMicros();
+
+    long getWriteLatencyP99Micros();
+
+    /**
+     * @return the blocks read from each open file
+     */
+    Map<String, Long> getBlocksReadByFile();
+
+    /**
+     * @return the blocks written to each open file
+     */
+    Map<String, Long> getBlocksWrittenByFile();
+}
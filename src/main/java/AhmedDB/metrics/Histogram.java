@@ -0,0 +1,87 @@
+package AhmedDB.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations or sizes, which many threads record into at once without contending on a lock or a
+ * shared counter: each bucket is a {@link LongAdder}, so concurrent increments go to different cells.
+ * A value falls in the bucket of its highest set bit, so a bucket covers a power of two range and a percentile
+ * is known within a factor of two, which is enough to tell a cache hit from a disk read or a slow fsync.
+ */
+public class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * @param value a value that is not negative, such as a duration in nanoseconds
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        //the position of the highest set bit, 0 for the values 0 and 1
+        buckets[Math.max(0, BUCKETS - 1 - Long.numberOfLeadingZeros(value))].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of the recorded values
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the mean of the recorded values, or 0 if there is none
+     */
+    public double getMean() {
+        long values = count.sum();
+        return values == 0 ? 0 : (double) sum.sum() / values;
+    }
+
+    /**
+     * @return the largest recorded value
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the upper bound of the bucket that holds the percentile, so the percentile is at most that value
+     * and more than half of it. The counts are read while values may be recorded, so the result is approximate.
+     * @param percentile a percentile, between 0 and 100
+     * @return the bound below which the percentile of the recorded values fall, or 0 if there is none
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return i == BUCKETS - 1 ? Long.MAX_VALUE : Math.min((2L << i) - 1, max.get());
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,58 @@
+package AhmedDB.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The I/O counters of one file, or of all the files: the blocks and bytes read and written, and the latency of the
+ * reads and writes. A multi-block transfer counts as one read or write of several blocks.
+ */
+public class IoMetrics {
+    private final LongAdder blocksRead = new LongAdder();
+    private final LongAdder blocksWritten = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final Histogram readLatency = new Histogram();
+    private final Histogram writeLatency = new Histogram();
+
+    void recordRead(int blocks, long bytes, long nanos) {
+        blocksRead.add(blocks);
+        bytesRead.add(bytes);
+        readLatency.record(nanos);
+    }
+
+    void recordWrite(int blocks, long bytes, long nanos) {
+        blocksWritten.add(blocks);
+        bytesWritten.add(bytes);
+        writeLatency.record(nanos);
+    }
+
+    public long getBlocksRead() {
+        return blocksRead.sum();
+    }
+
+    public long getBlocksWritten() {
+        return blocksWritten.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * @return the latency of the reads, in nanoseconds
+     */
+    public Histogram getReadLatency() {
+        return readLatency;
+    }
+
+    /**
+     * @return the latency of the writes, in nanoseconds
+     */
+    public Histogram getWriteLatency() {
+        return writeLatency;
+    }
+}
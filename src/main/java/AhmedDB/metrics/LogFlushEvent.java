@@ -0,0 +1,34 @@
+package AhmedDB.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a write of the tail of the log, which a commit waits for.
+ */
+@Name("AhmedDB.LogFlush")
+@Label("Log Flush")
+@Category({"AhmedDB", "Log"})
+@Description("A write of the tail of the log to the disk")
+public class LogFlushEvent extends Event {
+    @Label("LSN")
+    @Description("The LSN of the last record written")
+    long lsn;
+
+    @Label("Bytes")
+    @Description("The bytes of log appended since the previous flush")
+    @DataAmount
+    long bytes;
+
+    void commit(long lsn, long bytes) {
+        end();
+        if (!shouldCommit()) return;
+        this.lsn = lsn;
+        this.bytes = bytes;
+        commit();
+    }
+}
@@ -0,0 +1,92 @@
+package AhmedDB.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a {@link AhmedDB.log.LogManager}: the records and bytes appended, the latency of an append,
+ * which includes the wait for the monitor of the manager, the latency of the flushes, which are also emitted as
+ * {@link LogFlushEvent}s, and the number of commits.
+ */
+public class LogMetrics implements LogMetricsMXBean {
+    private final LongAdder bytesAppended = new LongAdder();
+    private final Histogram appendLatency = new Histogram();
+    private final Histogram flushLatency = new Histogram();
+    private final LongAdder commits = new LongAdder();
+
+    /**
+     * @param bytes the size of the appended record, with its length
+     * @param nanos the duration of the append
+     */
+    public void recordAppend(int bytes, long nanos) {
+        bytesAppended.add(bytes);
+        appendLatency.record(nanos);
+    }
+
+    /**
+     * @param event the event begun before the flush
+     * @param lsn the LSN of the last record written
+     * @param bytes the bytes appended since the previous flush
+     * @param nanos the duration of the flush
+     */
+    public void recordFlush(LogFlushEvent event, long lsn, long bytes, long nanos) {
+        flushLatency.record(nanos);
+        event.commit(lsn, bytes);
+    }
+
+    public void recordCommit() {
+        commits.increment();
+    }
+
+    @Override
+    public long getAppends() {
+        return appendLatency.getCount();
+    }
+
+    @Override
+    public long getBytesAppended() {
+        return bytesAppended.sum();
+    }
+
+    @Override
+    public double getAppendLatencyMeanMicros() {
+        return appendLatency.getMean() / 1000;
+    }
+
+    @Override
+    public long getAppendLatencyP99Micros() {
+        return appendLatency.getPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getFlushes() {
+        return flushLatency.getCount();
+    }
+
+    @Override
+    public double getFlushLatencyMeanMicros() {
+        return flushLatency.getMean() / 1000;
+    }
+
+    @Override
+    public long getFlushLatencyP99Micros() {
+        return flushLatency.getPercentile(99) / 1000;
+    }
+
+    /**
+     * @return the duration of the flushes, in nanoseconds
+     */
+    public Histogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    @Override
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    @Override
+    public double getBytesPerCommit() {
+        long commitCount = commits.sum();
+        return commitCount == 0 ? 0 : (double) bytesAppended.sum() / commitCount;
+    }
+}
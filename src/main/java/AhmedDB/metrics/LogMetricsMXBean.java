@@ -0,0 +1,27 @@
+package AhmedDB.metrics;
+
+/**
+ * The management interface of the metrics of a {@link AhmedDB.log.LogManager}. Latencies are in microseconds.
+ */
+public interface LogMetricsMXBean {
+    long getAppends();
+
+    long getBytesAppended();
+
+    double getAppendLatencyMeanMicros();
+
+    long getAppendLatencyP99Micros();
+
+    long getFlushes();
+
+    double getFlushLatencyMeanMicros();
+
+    long getFlushLatencyP99Micros();
+
+    long getCommits();
+
+    /**
+     * @return the bytes of log appended per commit, over the life of the manager
+     */
+    double getBytesPerCommit();
+}
@@ -0,0 +1,75 @@
+package AhmedDB.metrics;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.concurrency.DeadlockDetector;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Publishes the metrics of the managers of a database as MXBeans of the platform MBean server, so that they can be
+ * read by JConsole, VisualVM or any JMX client, under the names <code>AhmedDB:type=Files,name=</code><i>database</i>,
+ * <code>AhmedDB:type=Buffers,name=</code><i>database</i> and <code>AhmedDB:type=Log,name=</code><i>database</i>, and
+ * <code>AhmedDB:type=Deadlocks,name=</code><i>database</i> for a database that runs a deadlock detector.
+ * The managers keep their metrics whether or not they are published.
+ */
+public class Metrics {
+    private static final String[] TYPES = {"Files", "Buffers", "Log", "Deadlocks"};
+
+    private Metrics() {}
+
+    /**
+     * Registers the MXBeans of a database.
+     * @param database the name of the database, which tells apart the databases of one JVM
+     */
+    public static void register(String database, FileManager fileManager, BufferManager bufferManager, LogManager logManager) {
+        register(database, fileManager, bufferManager, logManager, null);
+    }
+
+    /**
+     * Registers the MXBeans of a database, with the metrics of its deadlock detector.
+     * @param database the name of the database, which tells apart the databases of one JVM
+     * @param deadlockDetector the deadlock detector of the database, or null if it has none
+     */
+    public static void register(String database, FileManager fileManager, BufferManager bufferManager, LogManager logManager,
+                                DeadlockDetector deadlockDetector) {
+        Object[] beans = {fileManager.getMetrics(), bufferManager.getMetrics(), logManager.getMetrics(),
+                deadlockDetector == null ? null : deadlockDetector.getMetrics()};
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int i = 0; i < TYPES.length; i++) {
+                ObjectName name = name(TYPES[i], database);
+                if (server.isRegistered(name)) server.unregisterMBean(name);
+                if (beans[i] != null) server.registerMBean(beans[i], name);
+            }
+        }
+        catch (JMException e) {
+            throw new RuntimeException("cannot register the metrics of " + database);
+        }
+    }
+
+    /**
+     * Unregisters the MXBeans of a database, such as when it is closed.
+     * @param database the name given to {@link #register}
+     */
+    public static void unregister(String database) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (String type : TYPES) {
+                ObjectName name = name(type, database);
+                if (server.isRegistered(name)) server.unregisterMBean(name);
+            }
+        }
+        catch (JMException e) {
+            throw new RuntimeException("cannot unregister the metrics of " + database);
+        }
+    }
+
+    private static ObjectName name(String type, String database) throws JMException {
+        return new ObjectName("AhmedDB:type=" + type + ",name=" + ObjectName.quote(database));
+    }
+}
@@ -0,0 +1,35 @@
+package AhmedDB.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Flight Recorder event for a pin that waited for a buffer because every buffer of the pool was pinned.
+ */
+@Name("AhmedDB.PinWait")
+@Label("Pin Wait")
+@Category({"AhmedDB", "Buffer"})
+@Description("A pin that waited for a buffer to be unpinned")
+public class PinWaitEvent extends Event {
+    @Label("File")
+    String fileName;
+
+    @Label("Block")
+    int blockNumber;
+
+    @Label("Pinned")
+    @Description("False if the wait ended without a buffer")
+    boolean pinned;
+
+    void commit(String fileName, int blockNumber, boolean pinned) {
+        end();
+        if (!shouldCommit()) return;
+        this.fileName = fileName;
+        this.blockNumber = blockNumber;
+        this.pinned = pinned;
+        commit();
+    }
+}
@@ -0,0 +1,132 @@
+package AhmedDB.record;
+
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.transaction.Transaction;
+
+/**
+ * Scans the records of a file a block at a time, as a {@link RecordBatch} of column vectors, instead of one value
+ * at a time like {@link RecordFile}. The columns are declared before the scan starts, by the offset of their value in
+ * the records, and every record of the file must have them.<br>
+ * Each block is pinned, locked in shared mode and copied once, then unpinned: its slot directory and its values are
+ * decoded from the copy in loops over plain arrays, so the lock, the bounds checks and the buffer lookup are paid
+ * once per block rather than once per value. A transaction under snapshot isolation reads the values through
+ * the transaction instead, since some of them may come from the version store; it still gets its records in batches.<br>
+ * With a {@link FileSummary}, the scan skips the blocks whose summary shows that no record has a value in a range,
+ * without pinning or reading them; the blocks are still locked, so a block cannot receive such a record until the
+ * transaction ends.
+ */
+public class BatchScan {
+    private final Transaction transaction;
+    private final String fileName;
+    private final byte[] page;
+    private final RecordBatch batch;
+    private int nextBlock;
+    private FileSummary summary;
+    private int skipOffset;
+    private int skipLow;
+    private int skipHigh;
+    private int skippedBlocks;
+
+    /**
+     * Opens the file and moves before its first block.
+     * @param transaction the transaction that reads the records
+     * @param fileName the name of the record file
+     */
+    public BatchScan(Transaction transaction, String fileName) {
+        this.transaction = transaction;
+        this.fileName = fileName;
+        page = new byte[transaction.blockSize()];
+        batch = new RecordBatch(SlottedPage.maxSlots(transaction.blockSize()));
+    }
+
+    /**
+     * Adds an int column to the batches.
+     * @param offset the offset of the int in the records
+     * @return the number of the column in the batches
+     */
+    public int addIntColumn(int offset) {
+        return batch.addColumn(offset, false);
+    }
+
+    /**
+     * Adds a string column to the batches.
+     * @param offset the offset of the string in the records
+     * @return the number of the column in the batches
+     */
+    public int addStringColumn(int offset) {
+        return batch.addColumn(offset, true);
+    }
+
+    /**
+     * Makes the scan skip the blocks that the summary shows have no record whose value of a column is between
+     * the bounds. The records of the other blocks are returned as usual, so the filter must still be applied to them.
+     * @param summary the summary of the file
+     * @param offset the offset of an int column in the records
+     * @param low the smallest value looked for
+     * @param high the largest value looked for
+     */
+    public void skipBlocks(FileSummary summary, int offset, int low, int high) {
+        if (!summary.getFileName().equals(fileName)) throw new RuntimeException("the summary of " + summary.getFileName() + " does not describe " + fileName);
+        this.summary = summary;
+        skipOffset = offset;
+        skipLow = low;
+        skipHigh = high;
+    }
+
+    /**
+     * @return the number of blocks that the scan skipped without reading them
+     */
+    public int getSkippedBlocks() {
+        return skippedBlocks;
+    }
+
+    /**
+     * Moves before the first block of the file.
+     */
+    public void beforeFirst() {
+        nextBlock = 0;
+    }
+
+    /**
+     * Decodes the next block of the file that has records, with all its rows selected.
+     * @return false if there is no next block with records
+     */
+    public boolean next() {
+        while (nextBlock < transaction.size(fileName)) {
+            LogicalBlock logicalBlock = new LogicalBlock(fileName, nextBlock++);
+            if (summary != null) transaction.lockForRead(logicalBlock);
+            if (summary != null && !summary.mightContain(logicalBlock.getNumber(), skipOffset, skipLow, skipHigh)) {
+                skippedBlocks++;
+                continue;
+            }
+            if (transaction.isSnapshotIsolated()) {
+                SlottedPage slottedPage = new SlottedPage(transaction, logicalBlock);
+                try {
+                    batch.load(slottedPage);
+                }
+                finally {
+                    slottedPage.close();
+                }
+            }
+            else {
+                transaction.pin(logicalBlock);
+                try {
+                    transaction.readBlock(logicalBlock, page);
+                }
+                finally {
+                    transaction.unpin(logicalBlock);
+                }
+                batch.load(logicalBlock.getNumber(), page);
+            }
+            if (batch.getRowCount() > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the records of the current block, which are valid until the next call to {@link #next()}
+     */
+    public RecordBatch getBatch() {
+        return batch;
+    }
+}
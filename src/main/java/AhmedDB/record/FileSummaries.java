@@ -0,0 +1,54 @@
+package AhmedDB.record;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The summaries of the record files that have one (see {@link FileSummary}). A file has no summary unless it is opened
+ * here, when the database starts; the record files that write it are then created with this object, so that they
+ * keep its summary up to date, and the scans get the summary to skip blocks.
+ * The database engine has one {@link FileSummaries} object, shared by all the transactions.
+ */
+public class FileSummaries {
+    private final FileManager fileManager;
+    private final BufferManager bufferManager;
+    private final Map<String, FileSummary> summaries = new ConcurrentHashMap<>();
+
+    public FileSummaries(FileManager fileManager, BufferManager bufferManager) {
+        this.fileManager = fileManager;
+        this.bufferManager = bufferManager;
+    }
+
+    /**
+     * Opens the summary of a record file, which is read from its side file or built from its blocks.
+     * It must be called before any transaction modifies the file.
+     * @param fileName the name of a record file
+     * @param zoneMapOffsets the offsets of the int columns whose smallest and largest values are kept for each block
+     * @param bloomFilterOffsets the offsets of the int columns that have a Bloom filter for each block
+     * @return the summary of the file
+     */
+    public FileSummary open(String fileName, int[] zoneMapOffsets, int[] bloomFilterOffsets) {
+        FileSummary summary = summaries.computeIfAbsent(fileName, name -> new FileSummary(fileManager, bufferManager, name, zoneMapOffsets, bloomFilterOffsets));
+        if (!summary.summarizes(zoneMapOffsets, bloomFilterOffsets))
+            throw new RuntimeException("the summary of " + fileName + " is already open with other columns");
+        return summary;
+    }
+
+    /**
+     * @param fileName the name of a record file
+     * @return the summary of the file, or null if it has none
+     */
+    public FileSummary get(String fileName) {
+        return summaries.get(fileName);
+    }
+
+    /**
+     * Writes the summaries to their side files, so that they are not rebuilt when the database starts again.
+     */
+    public void flush() {
+        for (FileSummary summary : summaries.values()) summary.flush();
+    }
+}
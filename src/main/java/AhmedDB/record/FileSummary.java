@@ -0,0 +1,383 @@
+package AhmedDB.record;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
+import java.util.Arrays;
+
+/**
+ * A summary of each block of a record file, which lets a scan skip the blocks that cannot hold the records it looks for
+ * without reading them. The summary covers chosen int columns, identified by the offset of their value in the records:
+ * a column with a zone map has the smallest and largest value of each block, and a column with a Bloom filter has a
+ * filter of {@link #BLOOM_BITS} bits for each block, which tells that a value is not in the block.<br>
+ * The summary is a superset of the values of the blocks: a value is added when a record file writes it, and nothing is
+ * removed when a record is deleted or an update is rolled back, since the block may have held the value before.
+ * A string written over a summarized column makes the column of its block unknown, so that it is never skipped.
+ * A new record holds zeroes until its values are set, so a block that received a record is marked as possibly
+ * holding zeroes, apart from its zone maps, which would otherwise all start at zero.<br>
+ * The summary is kept in memory and written by {@link #flush()} to a side file named after the record file with
+ * a ".sum" suffix. The header of the side file says whether it is clean: before the summary first changes after being
+ * written, the header is marked dirty, and a dirty side file is rebuilt from the blocks when it is opened.
+ * Since the recovery undoes the updates of the transactions that were not committed, a crash never leaves a clean
+ * summary that misses a value. The object is the monitor that protects the summary.
+ */
+public class FileSummary {
+    /**
+     * The size of the Bloom filter of a column, in each block. It holds the values of a full block with about
+     * one false positive in twenty lookups when the records have three ints.
+     */
+    public static final int BLOOM_BITS = 1024;
+    private static final int BLOOM_WORDS = BLOOM_BITS / Long.SIZE;
+    private static final int BLOOM_HASHES = 3;
+    private static final int DIRTY = 0, CLEAN = 1;
+    //the header of the side file: its state, the number of blocks, and the offsets of the columns
+    private static final int STATE = 0;
+    private static final int BLOCKS = STATE + Integer.BYTES;
+    private static final int ZONE_MAP_COUNT = BLOCKS + Integer.BYTES;
+    private static final int BLOOM_FILTER_COUNT = ZONE_MAP_COUNT + Integer.BYTES;
+    private static final int COLUMNS = BLOOM_FILTER_COUNT + Integer.BYTES;
+
+    private final FileManager fileManager;
+    private final String fileName;
+    private final String summaryFileName;
+    private final int[] zoneMapOffsets;
+    private final int[] bloomFilterOffsets;
+    /**
+     * The size of the summary of a block in the side file, where the summaries are stored after the header block.
+     */
+    private final int entrySize;
+    private int[][] mins;
+    private int[][] maxs;
+    private long[][] bloomFilters;
+    /**
+     * True for the blocks that received a record since the summary was built, whose values may still be zero.
+     */
+    private boolean[] mayHoldZeroes;
+    /**
+     * The number of blocks that have a summary; the blocks beyond it hold no record that the summary saw.
+     */
+    private int blocks;
+    /**
+     * The number of blocks that the arrays can summarize.
+     */
+    private int capacity;
+    /**
+     * True when the side file is clean, so the header must be marked dirty before the next change.
+     */
+    private boolean clean;
+
+    /**
+     * Opens the summary of a record file. It is read from its side file if the file is clean and summarizes the same
+     * columns, otherwise it is built from the blocks of the record file, which are read through the buffer manager.
+     * The summary must be opened before the file is modified by any transaction, such as when the database starts,
+     * after its recovery, and all the record files that write the file must then use it (see {@link FileSummaries}).
+     * @param zoneMapOffsets the offsets of the int columns whose smallest and largest values are kept
+     * @param bloomFilterOffsets the offsets of the int columns that have Bloom filters
+     */
+    FileSummary(FileManager fileManager, BufferManager bufferManager, String fileName, int[] zoneMapOffsets, int[] bloomFilterOffsets) {
+        this.fileManager = fileManager;
+        this.fileName = fileName;
+        this.summaryFileName = fileName + ".sum";
+        this.zoneMapOffsets = zoneMapOffsets.clone();
+        this.bloomFilterOffsets = bloomFilterOffsets.clone();
+        entrySize = Integer.BYTES + zoneMapOffsets.length * 2 * Integer.BYTES + bloomFilterOffsets.length * BLOOM_WORDS * Long.BYTES;
+        int blockSize = fileManager.blockSize();
+        if (COLUMNS + (zoneMapOffsets.length + bloomFilterOffsets.length) * Integer.BYTES > blockSize || entrySize > blockSize)
+            throw new RuntimeException("too many columns are summarized for the blocks of " + fileName);
+        mins = new int[zoneMapOffsets.length][];
+        maxs = new int[zoneMapOffsets.length][];
+        bloomFilters = new long[bloomFilterOffsets.length][];
+        resize(0);
+        if (!read()) {
+            build(bufferManager);
+            writeHeader(DIRTY);
+        }
+    }
+
+    /**
+     * Tells whether a block may hold a record whose value of a column is between the bounds. It uses the zone map of
+     * the column, and when the bounds are equal, its Bloom filter. A column without a summary may hold any value.
+     * @param blockNumber a block of the record file
+     * @param offset the offset of the column in the records
+     * @param low the smallest value looked for
+     * @param high the largest value looked for
+     * @return false if no record of the block has such a value
+     */
+    public synchronized boolean mightContain(int blockNumber, int offset, int low, int high) {
+        if (low > high) return false;
+        //a block that the summary has not seen holds no record, which would have been added to the summary
+        if (blockNumber >= blocks) return !isSummarized(offset);
+        if (mayHoldZeroes[blockNumber] && low <= 0 && high >= 0) return true;
+        for (int column = 0; column < zoneMapOffsets.length; column++)
+            if (zoneMapOffsets[column] == offset && (mins[column][blockNumber] > high || maxs[column][blockNumber] < low)) return false;
+        if (low == high) {
+            for (int column = 0; column < bloomFilterOffsets.length; column++)
+                if (bloomFilterOffsets[column] == offset && !bloomContains(bloomFilters[column], blockNumber, low)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param offset the offset of a column in the records
+     * @return true if the column has a zone map or a Bloom filter
+     */
+    public boolean isSummarized(int offset) {
+        for (int zoneMapOffset : zoneMapOffsets) if (zoneMapOffset == offset) return true;
+        for (int bloomFilterOffset : bloomFilterOffsets) if (bloomFilterOffset == offset) return true;
+        return false;
+    }
+
+    /**
+     * @return the name of the record file
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Writes the summary to the side file, and marks it clean.
+     */
+    public synchronized void flush() {
+        if (clean) return;
+        Page page = new Page(new byte[fileManager.blockSize()]);
+        int perBlock = fileManager.blockSize() / Math.max(1, entrySize);
+        for (int first = 0; first < blocks; first += perBlock) {
+            int last = Math.min(blocks, first + perBlock);
+            for (int blockNumber = first; blockNumber < last; blockNumber++) {
+                int position = (blockNumber - first) * entrySize;
+                page.setInt(position, mayHoldZeroes[blockNumber] ? 1 : 0);
+                position += Integer.BYTES;
+                for (int column = 0; column < zoneMapOffsets.length; column++) {
+                    page.setInt(position, mins[column][blockNumber]);
+                    page.setInt(position + Integer.BYTES, maxs[column][blockNumber]);
+                    position += 2 * Integer.BYTES;
+                }
+                for (long[] bloomFilter : bloomFilters) {
+                    for (int word = 0; word < BLOOM_WORDS; word++)
+                        page.setLong(position + word * Long.BYTES, bloomFilter[blockNumber * BLOOM_WORDS + word]);
+                    position += BLOOM_WORDS * Long.BYTES;
+                }
+            }
+            fileManager.write(new LogicalBlock(summaryFileName, 1 + first / perBlock), page);
+        }
+        writeHeader(CLEAN);
+    }
+
+    /**
+     * Records a new record of a block, whose bytes are zero.
+     * @param blockNumber the block of the record
+     */
+    synchronized void recordInsert(int blockNumber) {
+        change(blockNumber);
+        mayHoldZeroes[blockNumber] = true;
+    }
+
+    /**
+     * Records an int written in a record of a block.
+     * @param blockNumber the block of the record
+     * @param offset the offset of the int in the record
+     * @param val the value written
+     */
+    synchronized void recordInt(int blockNumber, int offset, int val) {
+        change(blockNumber);
+        for (int column = 0; column < zoneMapOffsets.length; column++) {
+            if (zoneMapOffsets[column] == offset) addToZoneMap(column, blockNumber, val);
+            else if (overlaps(zoneMapOffsets[column], offset, Integer.BYTES)) setZoneMapUnknown(column, blockNumber);
+        }
+        for (int column = 0; column < bloomFilterOffsets.length; column++) {
+            if (bloomFilterOffsets[column] == offset) addToBloomFilter(bloomFilters[column], blockNumber, val);
+            else if (overlaps(bloomFilterOffsets[column], offset, Integer.BYTES)) setBloomFilterUnknown(bloomFilters[column], blockNumber);
+        }
+    }
+
+    /**
+     * Records bytes written in a record of a block, other than a summarized int.
+     * @param blockNumber the block of the record
+     * @param offset the offset of the bytes in the record
+     * @param length the number of bytes written
+     */
+    synchronized void recordBytes(int blockNumber, int offset, int length) {
+        change(blockNumber);
+        for (int column = 0; column < zoneMapOffsets.length; column++)
+            if (overlaps(zoneMapOffsets[column], offset, length)) setZoneMapUnknown(column, blockNumber);
+        for (int column = 0; column < bloomFilterOffsets.length; column++)
+            if (overlaps(bloomFilterOffsets[column], offset, length)) setBloomFilterUnknown(bloomFilters[column], blockNumber);
+    }
+
+    /**
+     * @return true if the summary has the same columns
+     */
+    boolean summarizes(int[] zoneMapOffsets, int[] bloomFilterOffsets) {
+        return Arrays.equals(this.zoneMapOffsets, zoneMapOffsets) && Arrays.equals(this.bloomFilterOffsets, bloomFilterOffsets);
+    }
+
+    /**
+     * Marks the side file dirty, if it is clean, and makes room for the block.
+     */
+    private void change(int blockNumber) {
+        if (clean) writeHeader(DIRTY);
+        if (blockNumber >= blocks) resize(blockNumber + 1);
+    }
+
+    /**
+     * Reads the summary from the side file.
+     * @return false if the side file does not exist, is dirty, or summarizes other columns
+     */
+    private boolean read() {
+        if (fileManager.length(summaryFileName) == 0) return false;
+        Page page = new Page(new byte[fileManager.blockSize()]);
+        fileManager.read(new LogicalBlock(summaryFileName, 0), page);
+        if (page.getInt(STATE) != CLEAN || page.getInt(ZONE_MAP_COUNT) != zoneMapOffsets.length
+                || page.getInt(BLOOM_FILTER_COUNT) != bloomFilterOffsets.length) return false;
+        int position = COLUMNS;
+        for (int offset : zoneMapOffsets) {
+            if (page.getInt(position) != offset) return false;
+            position += Integer.BYTES;
+        }
+        for (int offset : bloomFilterOffsets) {
+            if (page.getInt(position) != offset) return false;
+            position += Integer.BYTES;
+        }
+        int summarized = page.getInt(BLOCKS);
+        resize(summarized);
+        int perBlock = fileManager.blockSize() / Math.max(1, entrySize);
+        for (int first = 0; first < summarized; first += perBlock) {
+            fileManager.read(new LogicalBlock(summaryFileName, 1 + first / perBlock), page);
+            int last = Math.min(summarized, first + perBlock);
+            for (int blockNumber = first; blockNumber < last; blockNumber++) {
+                position = (blockNumber - first) * entrySize;
+                mayHoldZeroes[blockNumber] = page.getInt(position) != 0;
+                position += Integer.BYTES;
+                for (int column = 0; column < zoneMapOffsets.length; column++) {
+                    mins[column][blockNumber] = page.getInt(position);
+                    maxs[column][blockNumber] = page.getInt(position + Integer.BYTES);
+                    position += 2 * Integer.BYTES;
+                }
+                for (long[] bloomFilter : bloomFilters) {
+                    for (int word = 0; word < BLOOM_WORDS; word++)
+                        bloomFilter[blockNumber * BLOOM_WORDS + word] = page.getLong(position + word * Long.BYTES);
+                    position += BLOOM_WORDS * Long.BYTES;
+                }
+            }
+        }
+        clean = true;
+        return true;
+    }
+
+    /**
+     * Builds the summary from the records of the blocks of the file. A block is pinned only while it is copied.
+     */
+    private void build(BufferManager bufferManager) {
+        int blockSize = fileManager.blockSize();
+        byte[] bytes = new byte[blockSize];
+        int maxSlots = SlottedPage.maxSlots(blockSize);
+        int[] slots = new int[maxSlots], offsets = new int[maxSlots], sizes = new int[maxSlots];
+        int length = fileManager.length(fileName);
+        resize(length);
+        for (int blockNumber = 0; blockNumber < length; blockNumber++) {
+            Buffer buffer = bufferManager.pin(new LogicalBlock(fileName, blockNumber));
+            try {
+                buffer.getAssociatedPage().readBytes(Buffer.PAGE_HEADER_SIZE, bytes, Buffer.PAGE_HEADER_SIZE, blockSize - Buffer.PAGE_HEADER_SIZE);
+            }
+            finally {
+                bufferManager.unpin(buffer);
+            }
+            int records = SlottedPage.readDirectory(bytes, slots, offsets, sizes);
+            for (int record = 0; record < records; record++) {
+                for (int column = 0; column < zoneMapOffsets.length; column++)
+                    if (zoneMapOffsets[column] + Integer.BYTES <= sizes[record])
+                        addToZoneMap(column, blockNumber, Page.readInt(bytes, offsets[record] + zoneMapOffsets[column]));
+                for (int column = 0; column < bloomFilterOffsets.length; column++)
+                    if (bloomFilterOffsets[column] + Integer.BYTES <= sizes[record])
+                        addToBloomFilter(bloomFilters[column], blockNumber, Page.readInt(bytes, offsets[record] + bloomFilterOffsets[column]));
+            }
+        }
+    }
+
+    private void writeHeader(int state) {
+        Page page = new Page(new byte[fileManager.blockSize()]);
+        page.setInt(STATE, state);
+        page.setInt(BLOCKS, blocks);
+        page.setInt(ZONE_MAP_COUNT, zoneMapOffsets.length);
+        page.setInt(BLOOM_FILTER_COUNT, bloomFilterOffsets.length);
+        int position = COLUMNS;
+        for (int offset : zoneMapOffsets) {
+            page.setInt(position, offset);
+            position += Integer.BYTES;
+        }
+        for (int offset : bloomFilterOffsets) {
+            page.setInt(position, offset);
+            position += Integer.BYTES;
+        }
+        fileManager.write(new LogicalBlock(summaryFileName, 0), page);
+        clean = state == CLEAN;
+    }
+
+    /**
+     * Grows the arrays to summarize the specified number of blocks; a new block has an empty zone map and filter.
+     */
+    private void resize(int newBlocks) {
+        if (newBlocks > capacity || capacity == 0) {
+            int previous = capacity;
+            capacity = Math.max(64, Math.max(newBlocks, 2 * capacity));
+            for (int column = 0; column < zoneMapOffsets.length; column++) {
+                mins[column] = mins[column] == null ? new int[capacity] : Arrays.copyOf(mins[column], capacity);
+                maxs[column] = maxs[column] == null ? new int[capacity] : Arrays.copyOf(maxs[column], capacity);
+                Arrays.fill(mins[column], previous, capacity, Integer.MAX_VALUE);
+                Arrays.fill(maxs[column], previous, capacity, Integer.MIN_VALUE);
+            }
+            for (int column = 0; column < bloomFilterOffsets.length; column++)
+                bloomFilters[column] = bloomFilters[column] == null ? new long[capacity * BLOOM_WORDS] : Arrays.copyOf(bloomFilters[column], capacity * BLOOM_WORDS);
+            mayHoldZeroes = mayHoldZeroes == null ? new boolean[capacity] : Arrays.copyOf(mayHoldZeroes, capacity);
+        }
+        blocks = Math.max(blocks, newBlocks);
+    }
+
+    private void addToZoneMap(int column, int blockNumber, int val) {
+        if (val < mins[column][blockNumber]) mins[column][blockNumber] = val;
+        if (val > maxs[column][blockNumber]) maxs[column][blockNumber] = val;
+    }
+
+    private void setZoneMapUnknown(int column, int blockNumber) {
+        mins[column][blockNumber] = Integer.MIN_VALUE;
+        maxs[column][blockNumber] = Integer.MAX_VALUE;
+    }
+
+    private static void addToBloomFilter(long[] bloomFilter, int blockNumber, int val) {
+        long hash = hash(val);
+        int h1 = (int) (hash >>> 32), h2 = (int) hash | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+            bloomFilter[blockNumber * BLOOM_WORDS + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static boolean bloomContains(long[] bloomFilter, int blockNumber, int val) {
+        long hash = hash(val);
+        int h1 = (int) (hash >>> 32), h2 = (int) hash | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+            if ((bloomFilter[blockNumber * BLOOM_WORDS + (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    private static void setBloomFilterUnknown(long[] bloomFilter, int blockNumber) {
+        Arrays.fill(bloomFilter, blockNumber * BLOOM_WORDS, (blockNumber + 1) * BLOOM_WORDS, -1L);
+    }
+
+    /**
+     * Mixes the bits of a value, so that the bits used by the filter depend on all of them.
+     */
+    private static long hash(int val) {
+        long hash = val * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static boolean overlaps(int columnOffset, int offset, int length) {
+        return offset < columnOffset + Integer.BYTES && columnOffset < offset + length;
+    }
+}
@@ -0,0 +1,134 @@
+package AhmedDB.record;
+
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The free-space map, which remembers roughly how much free space each block of each record file has,
+ * so that an insert finds a block with room for its record without reading the blocks one by one.
+ * The free space of a block is rounded down to one of {@link #CATEGORIES} categories; a file keeps the set of
+ * its blocks in each category, so a block with room for a record is found by looking at the categories
+ * that are large enough, in a time that does not depend on the size of the file.<br>
+ * The map holds hints: it is kept in memory and updated by the record files after each change, and a block
+ * taken from it is checked before it is used. The blocks of a category are handed out in turn, so that concurrent
+ * inserts go to different blocks instead of all waiting for the lock of the same one.<br>
+ * The map is not stored on the disk, so the first time a file is used after the engine starts, all its blocks are
+ * read to fill its map: a full scan of the file, read directly from the disk rather than through the buffer pool,
+ * so it neither evicts pages nor sees the changes still in the buffers, which only makes the hints staler.
+ * The scan does not hold any lock: two threads that meet the file at once may both scan it, and the first map
+ * stored is kept.
+ * The database engine has one {@link FreeSpaceMap} object, shared by all the transactions.
+ */
+public class FreeSpaceMap {
+    private static final int CATEGORIES = 32;
+
+    private final FileManager fileManager;
+    private final Map<String, FileSpace> files = new ConcurrentHashMap<>();
+
+    public FreeSpaceMap(FileManager fileManager) {
+        this.fileManager = fileManager;
+    }
+
+    /**
+     * Returns a block of the file that has room for a record of the specified size, according to the map.
+     * @param fileName the name of a record file
+     * @param recordSize the size of the record, in bytes
+     * @return the number of the block, or -1 if no block of the file has room
+     */
+    public int find(String fileName, int recordSize) {
+        return fileSpace(fileName).find(recordSize);
+    }
+
+    /**
+     * Records the free space of a block, after a change of the block or of the file.
+     * @param fileName the name of a record file
+     * @param blockNumber the number of a block of the file
+     * @param freeSpace the number of bytes that a new record may use in the block (see {@link SlottedPage#freeSpace()})
+     */
+    public void update(String fileName, int blockNumber, int freeSpace) {
+        fileSpace(fileName).update(blockNumber, freeSpace);
+    }
+
+    private FileSpace fileSpace(String fileName) {
+        FileSpace fileSpace = files.get(fileName);
+        if (fileSpace != null) return fileSpace;
+        //the file is scanned outside computeIfAbsent, which would block the threads that use other files while it runs
+        fileSpace = read(fileName);
+        FileSpace stored = files.putIfAbsent(fileName, fileSpace);
+        return stored == null ? fileSpace : stored;
+    }
+
+    /**
+     * Builds the map of a file from its blocks on the disk.
+     */
+    private FileSpace read(String fileName) {
+        FileSpace fileSpace = new FileSpace(fileManager.blockSize());
+        Page page = new Page(fileManager.blockSize());
+        int blocks = fileManager.length(fileName);
+        for (int blockNumber = 0; blockNumber < blocks; blockNumber++) {
+            fileManager.read(new LogicalBlock(fileName, blockNumber), page);
+            fileSpace.update(blockNumber, SlottedPage.contiguousFreeSpace(page, fileManager.blockSize()) - SlottedPage.SLOT_SIZE);
+        }
+        return fileSpace;
+    }
+
+    /**
+     * The free space of the blocks of one file. The object is the monitor that protects it.
+     */
+    private static class FileSpace {
+        private final int categorySize;
+        /**
+         * The blocks of each category; a block of category c has at least c * categorySize free bytes.
+         */
+        private final List<Set<Integer>> blocks = new ArrayList<>(CATEGORIES);
+        private byte[] categories = new byte[64];
+
+        private FileSpace(int blockSize) {
+            categorySize = Math.max(1, blockSize / CATEGORIES);
+            for (int i = 0; i < CATEGORIES; i++) blocks.add(new LinkedHashSet<>());
+            Arrays.fill(categories, (byte) -1);
+        }
+
+        /**
+         * Returns the first block of the smallest category that has room, and moves it to the end of its category,
+         * so that the next insert is given another block of the category, if it has one.
+         */
+        private synchronized int find(int recordSize) {
+            //the smallest category whose blocks surely have room
+            int category = (recordSize + categorySize - 1) / categorySize;
+            for (; category < CATEGORIES; category++) {
+                Set<Integer> categoryBlocks = blocks.get(category);
+                Iterator<Integer> iterator = categoryBlocks.iterator();
+                if (iterator.hasNext()) {
+                    Integer blockNumber = iterator.next();
+                    iterator.remove();
+                    categoryBlocks.add(blockNumber);
+                    return blockNumber;
+                }
+            }
+            return -1;
+        }
+
+        private synchronized void update(int blockNumber, int freeSpace) {
+            if (blockNumber >= categories.length) {
+                int length = categories.length;
+                categories = Arrays.copyOf(categories, Math.max(blockNumber + 1, 2 * length));
+                Arrays.fill(categories, length, categories.length, (byte) -1);
+            }
+            int category = Math.min(CATEGORIES - 1, Math.max(0, freeSpace) / categorySize);
+            if (categories[blockNumber] >= 0) blocks.get(categories[blockNumber]).remove(blockNumber);
+            categories[blockNumber] = (byte) category;
+            blocks.get(category).add(blockNumber);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package AhmedDB.record;
+
+import AhmedDB.file.Page;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The values of one column in a block of a {@link PaxTable}, stored together in one of four encodings, which is
+ * chosen for each minipage as the one that takes the least space. The first byte of a minipage is its encoding:
+ * <ul>
+ *     <li>{@link #PLAIN}: the ints, or the strings with their length before them;</li>
+ *     <li>{@link #BIT_PACKED}: for ints, the smallest value, then the difference of each value with it,
+ *     in the number of bits of the largest difference;</li>
+ *     <li>{@link #RUN_LENGTH}: for ints, the number of runs, then each run of equal values as its value and its length;</li>
+ *     <li>{@link #DICTIONARY}: the number of distinct values and the values in ascending order,
+ *     then the index of the value of each row, bit-packed.</li>
+ * </ul>
+ * The bits are packed from the lowest bit of each byte, and the values are read back into the vectors of a
+ * {@link RecordBatch}: the strings are not copied, their positions point to the copy of the block.
+ */
+class Minipage {
+    static final byte PLAIN = 0;
+    static final byte BIT_PACKED = 1;
+    static final byte RUN_LENGTH = 2;
+    static final byte DICTIONARY = 3;
+
+    /**
+     * The values of a column of the rows that are waiting to be written to a block.
+     */
+    static class Values {
+        private final int type;
+        private int[] ints;
+        private String[] strings;
+        private int count;
+
+        Values(int type, int capacity) {
+            if (type != Types.INTEGER && type != Types.VARCHAR) throw new RuntimeException("unsupported column type " + type);
+            this.type = type;
+            if (type == Types.INTEGER) ints = new int[capacity];
+            else strings = new String[capacity];
+        }
+
+        int getType() {
+            return type;
+        }
+
+        int count() {
+            return count;
+        }
+
+        /**
+         * Adds a row whose value is 0 or the empty string.
+         */
+        void addRow() {
+            if (type == Types.INTEGER) ints[count++] = 0;
+            else strings[count++] = "";
+        }
+
+        void setInt(int val) {
+            ints[count - 1] = val;
+        }
+
+        void setString(String val) {
+            strings[count - 1] = val;
+        }
+
+        /**
+         * Removes the first rows, which were written to a block.
+         */
+        void removeFirst(int rows) {
+            if (type == Types.INTEGER) System.arraycopy(ints, rows, ints, 0, count - rows);
+            else {
+                System.arraycopy(strings, rows, strings, 0, count - rows);
+                Arrays.fill(strings, count - rows, count, null);
+            }
+            count -= rows;
+        }
+
+        /**
+         * @return the size of the smallest encoding of the first rows
+         */
+        int encodedSize(int rows) {
+            return type == Types.INTEGER ? intEncoding(ints, rows)[1] : stringEncoding(strings, rows)[1];
+        }
+
+        /**
+         * Encodes the first rows into the page.
+         * @return the size of the minipage
+         */
+        int write(int rows, byte[] page, int position) {
+            return type == Types.INTEGER ? writeInts(ints, rows, page, position) : writeStrings(strings, rows, page, position);
+        }
+    }
+
+    /**
+     * @return the best encoding of the ints and its size, in bytes
+     */
+    private static int[] intEncoding(int[] values, int rows) {
+        int best = PLAIN, size = 1 + rows * Integer.BYTES;
+        if (rows == 0) return new int[]{best, size};
+        int min = values[0], max = values[0], runs = 1;
+        for (int i = 1; i < rows; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+            if (values[i] != values[i - 1]) runs++;
+        }
+        int bitPacked = 1 + Integer.BYTES + 1 + packedSize(rows, bits((long) max - min));
+        if (bitPacked < size) {
+            best = BIT_PACKED;
+            size = bitPacked;
+        }
+        int runLength = 1 + Integer.BYTES + runs * 2 * Integer.BYTES;
+        if (runLength < size) {
+            best = RUN_LENGTH;
+            size = runLength;
+        }
+        int distinct = sortedDistinct(values, rows).length;
+        int dictionary = 1 + Integer.BYTES + distinct * Integer.BYTES + 1 + packedSize(rows, bits(distinct - 1));
+        if (dictionary < size) {
+            best = DICTIONARY;
+            size = dictionary;
+        }
+        return new int[]{best, size};
+    }
+
+    private static int writeInts(int[] values, int rows, byte[] page, int position) {
+        int[] encoding = intEncoding(values, rows);
+        Page minipage = new Page(page);
+        int start = position;
+        page[position++] = (byte) encoding[0];
+        if (encoding[0] == PLAIN) {
+            for (int i = 0; i < rows; i++, position += Integer.BYTES) minipage.setInt(position, values[i]);
+        }
+        else if (encoding[0] == BIT_PACKED) {
+            int min = values[0], max = values[0];
+            for (int i = 1; i < rows; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+            }
+            int bits = bits((long) max - min);
+            minipage.setInt(position, min);
+            page[position + Integer.BYTES] = (byte) bits;
+            position = pack(values, rows, min, bits, page, position + Integer.BYTES + 1);
+        }
+        else if (encoding[0] == RUN_LENGTH) {
+            int countPosition = position;
+            position += Integer.BYTES;
+            int runs = 0;
+            for (int i = 0; i < rows; ) {
+                int end = i + 1;
+                while (end < rows && values[end] == values[i]) end++;
+                minipage.setInt(position, values[i]);
+                minipage.setInt(position + Integer.BYTES, end - i);
+                position += 2 * Integer.BYTES;
+                runs++;
+                i = end;
+            }
+            minipage.setInt(countPosition, runs);
+        }
+        else {
+            int[] dictionary = sortedDistinct(values, rows);
+            minipage.setInt(position, dictionary.length);
+            position += Integer.BYTES;
+            for (int val : dictionary) {
+                minipage.setInt(position, val);
+                position += Integer.BYTES;
+            }
+            int[] codes = new int[rows];
+            for (int i = 0; i < rows; i++) codes[i] = Arrays.binarySearch(dictionary, values[i]);
+            int bits = bits(dictionary.length - 1);
+            page[position] = (byte) bits;
+            position = pack(codes, rows, 0, bits, page, position + 1);
+        }
+        return position - start;
+    }
+
+    /**
+     * Decodes the ints of a minipage.
+     * @param page the copy of the block, which holds the minipage
+     * @param position the position of the minipage
+     * @param rows the number of rows of the block
+     * @param values receives the values
+     */
+    static void readInts(byte[] page, int position, int rows, int[] values) {
+        byte encoding = page[position++];
+        if (encoding == PLAIN) {
+            for (int i = 0; i < rows; i++) values[i] = Page.readInt(page, position + i * Integer.BYTES);
+        }
+        else if (encoding == BIT_PACKED)
+            unpack(page, position + Integer.BYTES + 1, rows, Page.readInt(page, position), page[position + Integer.BYTES], values);
+        else if (encoding == RUN_LENGTH) {
+            int runs = Page.readInt(page, position);
+            position += Integer.BYTES;
+            int row = 0;
+            for (int run = 0; run < runs; run++, position += 2 * Integer.BYTES) {
+                int length = Page.readInt(page, position + Integer.BYTES);
+                Arrays.fill(values, row, row + length, Page.readInt(page, position));
+                row += length;
+            }
+        }
+        else if (encoding == DICTIONARY) {
+            int size = Page.readInt(page, position);
+            int dictionary = position + Integer.BYTES;
+            position = dictionary + size * Integer.BYTES;
+            unpack(page, position + 1, rows, 0, page[position], values);
+            for (int i = 0; i < rows; i++) values[i] = Page.readInt(page, dictionary + values[i] * Integer.BYTES);
+        }
+        else throw new RuntimeException("unknown encoding " + encoding + " of an int minipage");
+    }
+
+    /**
+     * @return the best encoding of the strings, {@link #PLAIN} or {@link #DICTIONARY}, and its size, in bytes
+     */
+    private static int[] stringEncoding(String[] values, int rows) {
+        int plain = 1;
+        for (int i = 0; i < rows; i++) plain += Integer.BYTES + values[i].length();
+        String[] dictionary = sortedDistinct(values, rows);
+        int size = 1 + Integer.BYTES + 1 + packedSize(rows, bits(dictionary.length - 1));
+        for (String val : dictionary) size += Integer.BYTES + val.length();
+        return size < plain ? new int[]{DICTIONARY, size} : new int[]{PLAIN, plain};
+    }
+
+    private static int writeStrings(String[] values, int rows, byte[] page, int position) {
+        int start = position;
+        if (stringEncoding(values, rows)[0] == PLAIN) {
+            page[position++] = PLAIN;
+            for (int i = 0; i < rows; i++) position = writeString(values[i], page, position);
+            return position - start;
+        }
+        page[position++] = DICTIONARY;
+        String[] dictionary = sortedDistinct(values, rows);
+        new Page(page).setInt(position, dictionary.length);
+        position += Integer.BYTES;
+        Map<String, Integer> indexes = new HashMap<>();
+        for (String val : dictionary) {
+            indexes.put(val, indexes.size());
+            position = writeString(val, page, position);
+        }
+        int[] codes = new int[rows];
+        for (int i = 0; i < rows; i++) codes[i] = indexes.get(values[i]);
+        int bits = bits(dictionary.length - 1);
+        page[position] = (byte) bits;
+        return pack(codes, rows, 0, bits, page, position + 1) - start;
+    }
+
+    /**
+     * Finds the strings of a minipage, whose bytes stay in the copy of the block.
+     * @param page the copy of the block, which holds the minipage
+     * @param position the position of the minipage
+     * @param rows the number of rows of the block
+     * @param starts receives the position of the bytes of each string in the page
+     * @param lengths receives the length of each string
+     */
+    static void readStrings(byte[] page, int position, int rows, int[] starts, int[] lengths) {
+        byte encoding = page[position++];
+        if (encoding == PLAIN) {
+            for (int i = 0; i < rows; i++) {
+                lengths[i] = Page.readInt(page, position);
+                starts[i] = position + Integer.BYTES;
+                position = starts[i] + lengths[i];
+            }
+            return;
+        }
+        if (encoding != DICTIONARY) throw new RuntimeException("unknown encoding " + encoding + " of a string minipage");
+        int size = Page.readInt(page, position);
+        position += Integer.BYTES;
+        int[] dictionaryStarts = new int[size], dictionaryLengths = new int[size];
+        for (int i = 0; i < size; i++) {
+            dictionaryLengths[i] = Page.readInt(page, position);
+            dictionaryStarts[i] = position + Integer.BYTES;
+            position = dictionaryStarts[i] + dictionaryLengths[i];
+        }
+        unpack(page, position + 1, rows, 0, page[position], starts);
+        for (int i = 0; i < rows; i++) {
+            int code = starts[i];
+            starts[i] = dictionaryStarts[code];
+            lengths[i] = dictionaryLengths[code];
+        }
+    }
+
+    private static int writeString(String val, byte[] page, int position) {
+        byte[] bytes = val.getBytes(Page.CHARSET);
+        new Page(page).setInt(position, bytes.length);
+        System.arraycopy(bytes, 0, page, position + Integer.BYTES, bytes.length);
+        return position + Integer.BYTES + bytes.length;
+    }
+
+    /**
+     * Writes the difference of each value with the base in the specified number of bits.
+     * @return the position after the packed values
+     */
+    private static int pack(int[] values, int rows, int base, int bits, byte[] page, int position) {
+        long mask = (1L << bits) - 1;
+        long pending = 0;
+        int pendingBits = 0;
+        for (int i = 0; i < rows; i++) {
+            pending |= ((long) values[i] - base & mask) << pendingBits;
+            pendingBits += bits;
+            while (pendingBits >= Byte.SIZE) {
+                page[position++] = (byte) pending;
+                pending >>>= Byte.SIZE;
+                pendingBits -= Byte.SIZE;
+            }
+        }
+        if (pendingBits > 0) page[position++] = (byte) pending;
+        return position;
+    }
+
+    private static void unpack(byte[] page, int position, int rows, int base, int bits, int[] values) {
+        long mask = (1L << bits) - 1;
+        long pending = 0;
+        int pendingBits = 0;
+        for (int i = 0; i < rows; i++) {
+            while (pendingBits < bits) {
+                pending |= (long) (page[position++] & 0xFF) << pendingBits;
+                pendingBits += Byte.SIZE;
+            }
+            values[i] = (int) (base + (pending & mask));
+            pending >>>= bits;
+            pendingBits -= bits;
+        }
+    }
+
+    /**
+     * @return the number of bits of the largest value, which is not negative
+     */
+    private static int bits(long largest) {
+        return Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, largest));
+    }
+
+    private static int packedSize(int rows, int bits) {
+        return (int) (((long) rows * bits + Byte.SIZE - 1) / Byte.SIZE);
+    }
+
+    private static int[] sortedDistinct(int[] values, int rows) {
+        int[] sorted = Arrays.copyOf(values, rows);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < rows; i++)
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) sorted[distinct++] = sorted[i];
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    private static String[] sortedDistinct(String[] values, int rows) {
+        String[] sorted = Arrays.copyOf(values, rows);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < rows; i++)
+            if (i == 0 || !sorted[i].equals(sorted[distinct - 1])) sorted[distinct++] = sorted[i];
+        return Arrays.copyOf(sorted, distinct);
+    }
+}
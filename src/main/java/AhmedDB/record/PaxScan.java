@@ -0,0 +1,80 @@
+package AhmedDB.record;
+
+import java.sql.Types;
+
+/**
+ * Scans a {@link PaxTable} a block at a time, as a {@link RecordBatch} of the columns declared before the scan starts.
+ * Of each block, the scan copies the header and the minipages of its columns only, and decodes them into the vectors
+ * of the batch, so the cost of a scan depends on the columns it reads rather than on the width of the table.
+ * The rows of a block are numbered from zero, and {@link RecordBatch#getRecordId(int)} gives the block and the row.
+ */
+public class PaxScan {
+    private final PaxTable table;
+    private final byte[] page;
+    private final RecordBatch batch;
+    private final boolean[] columns;
+    private final int[] positions;
+    private int nextBlock;
+
+    public PaxScan(PaxTable table) {
+        this.table = table;
+        page = new byte[table.blockSize()];
+        batch = new RecordBatch(table.getMaxRows());
+        columns = new boolean[table.getColumnCount()];
+        positions = new int[table.getColumnCount()];
+    }
+
+    /**
+     * Adds an int column of the table to the batches.
+     * @param column the number of the column in the table
+     * @return the number of the column in the batches
+     */
+    public int addIntColumn(int column) {
+        return addColumn(column, Types.INTEGER);
+    }
+
+    /**
+     * Adds a string column of the table to the batches.
+     * @param column the number of the column in the table
+     * @return the number of the column in the batches
+     */
+    public int addStringColumn(int column) {
+        return addColumn(column, Types.VARCHAR);
+    }
+
+    /**
+     * Moves before the first block of the table.
+     */
+    public void beforeFirst() {
+        nextBlock = 0;
+    }
+
+    /**
+     * Decodes the next block of the table that has rows, with all its rows selected.
+     * @return false if there is no next block with rows
+     */
+    public boolean next() {
+        while (nextBlock < table.getBlockCount()) {
+            int blockNumber = nextBlock++;
+            int rows = table.read(blockNumber, page, columns, positions);
+            if (rows > 0) {
+                batch.load(blockNumber, rows, page, positions);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the rows of the current block, which are valid until the next call to {@link #next()}
+     */
+    public RecordBatch getBatch() {
+        return batch;
+    }
+
+    private int addColumn(int column, int type) {
+        if (table.getColumnType(column) != type) throw new RuntimeException("column " + column + " of " + table.getFileName() + " has another type");
+        columns[column] = true;
+        return batch.addColumn(column, type == Types.VARCHAR);
+    }
+}
@@ -0,0 +1,206 @@
+package AhmedDB.record;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.SystemTransaction;
+import AhmedDB.transaction.recovery.CheckpointManager;
+
+import java.sql.Types;
+
+/**
+ * A table for analytical queries, whose blocks store their rows column by column (the PAX layout): the values of
+ * each column are grouped in a {@link Minipage} of the block, encoded in the way that takes the least space, so a
+ * scan that reads one column only copies and decodes the bytes of that column.
+ * The columns are ints ({@link Types#INTEGER}) or strings ({@link Types#VARCHAR}), identified by their number.<br>
+ * After the page header of the buffer, a block holds the number of its rows and of its columns, then for each column
+ * its type, and the position and the size of its minipage; the minipages follow. A block whose ints are all zero has
+ * no rows.<br>
+ * The table is append-only: the rows are added by a {@link PaxWriter}, which fills a block, encodes it and appends it
+ * to the file, and a written block never changes. A block is written through the buffer pool by a
+ * {@link SystemTransaction}, which logs its image, so that the blocks of a crashed load are either recovered whole
+ * or left without rows. A scan ({@link PaxScan}) only reads the blocks that were completely written when it reaches them,
+ * so the rows can be read while they are loaded, without locks.
+ */
+public class PaxTable {
+    private static final int ROW_COUNT = Buffer.PAGE_HEADER_SIZE;
+    private static final int COLUMN_COUNT = ROW_COUNT + Integer.BYTES;
+    private static final int DIRECTORY = COLUMN_COUNT + Integer.BYTES;
+    /**
+     * The size of the entry of a column in the directory of a block: its type, and the position and the size of its minipage.
+     */
+    private static final int ENTRY_SIZE = 3 * Integer.BYTES;
+
+    private final FileManager fileManager;
+    private final LogManager logManager;
+    private final BufferManager bufferManager;
+    private final CheckpointManager checkpointManager;
+    private final String fileName;
+    private final int[] columnTypes;
+    /**
+     * The number of blocks that were completely written, which the scans read.
+     */
+    private volatile int blockCount;
+
+    /**
+     * Opens the table stored in the specified file, which is created if it does not exist.
+     * @param fileName the name of the file of the table
+     * @param columnTypes the type of each column of the table
+     */
+    public PaxTable(FileManager fileManager, LogManager logManager, BufferManager bufferManager, CheckpointManager checkpointManager, String fileName, int[] columnTypes) {
+        this.fileManager = fileManager;
+        this.logManager = logManager;
+        this.bufferManager = bufferManager;
+        this.checkpointManager = checkpointManager;
+        this.fileName = fileName;
+        this.columnTypes = columnTypes.clone();
+        for (int type : columnTypes)
+            if (type != Types.INTEGER && type != Types.VARCHAR) throw new RuntimeException("unsupported column type " + type + " in " + fileName);
+        if (headerSize() > fileManager.blockSize()) throw new RuntimeException("the table " + fileName + " has too many columns");
+        blockCount = fileManager.length(fileName);
+        for (int blockNumber = 0; blockNumber < blockCount; blockNumber++)
+            if (checkColumns(blockNumber)) break;
+    }
+
+    /**
+     * @return the number of columns of the table
+     */
+    public int getColumnCount() {
+        return columnTypes.length;
+    }
+
+    /**
+     * @param column the number of a column
+     * @return the type of the column, {@link Types#INTEGER} or {@link Types#VARCHAR}
+     */
+    public int getColumnType(int column) {
+        if (column < 0 || column >= columnTypes.length) throw new RuntimeException("the table " + fileName + " has no column " + column);
+        return columnTypes[column];
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the number of blocks of the table that were completely written
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @return the largest number of rows in a block, which keeps the vectors of a scan at a fixed size
+     */
+    public int getMaxRows() {
+        return 2 * fileManager.blockSize();
+    }
+
+    int blockSize() {
+        return fileManager.blockSize();
+    }
+
+    /**
+     * @return the size of the header of a block, before its minipages
+     */
+    int headerSize() {
+        return DIRECTORY + columnTypes.length * ENTRY_SIZE;
+    }
+
+    /**
+     * Writes the header of a block that holds the specified rows, whose minipages are already in the page.
+     * @param page the contents of the new block
+     * @param rows the number of rows of the block
+     * @param positions the position of the minipage of each column
+     * @param lengths the size of the minipage of each column
+     */
+    void writeHeader(byte[] page, int rows, int[] positions, int[] lengths) {
+        Page header = new Page(page);
+        header.setInt(ROW_COUNT, rows);
+        header.setInt(COLUMN_COUNT, columnTypes.length);
+        for (int column = 0; column < columnTypes.length; column++) {
+            int entry = DIRECTORY + column * ENTRY_SIZE;
+            header.setInt(entry, columnTypes[column]);
+            header.setInt(entry + Integer.BYTES, positions[column]);
+            header.setInt(entry + 2 * Integer.BYTES, lengths[column]);
+        }
+    }
+
+    /**
+     * Appends a block to the file and writes its contents through the buffer pool, in a system transaction that logs them.
+     * The block becomes visible to the scans when it is written.
+     * @param page the contents of the block
+     * @param length the number of bytes of the block that are used, the others being zero
+     * @param forceLog true if the log must be forced, so that the block and the previous ones survive a crash
+     */
+    synchronized void appendBlock(byte[] page, int length, boolean forceLog) {
+        LogicalBlock logicalBlock = fileManager.append(fileName);
+        Buffer buffer = bufferManager.pin(logicalBlock);
+        try {
+            SystemTransaction systemTransaction = new SystemTransaction(logManager, bufferManager, checkpointManager);
+            systemTransaction.setBytes(buffer, Buffer.PAGE_HEADER_SIZE, page, Buffer.PAGE_HEADER_SIZE, length - Buffer.PAGE_HEADER_SIZE);
+            systemTransaction.commit(forceLog);
+        }
+        finally {
+            bufferManager.unpin(buffer);
+        }
+        blockCount = logicalBlock.getNumber() + 1;
+    }
+
+    /**
+     * Forces the log, so that the blocks already written survive a crash.
+     */
+    void forceLog() {
+        new SystemTransaction(logManager, bufferManager, checkpointManager).commit(true);
+    }
+
+    /**
+     * Copies the header of a block and the minipages of the specified columns.
+     * @param blockNumber a block of the table
+     * @param page receives the bytes, at their position in the block
+     * @param columns true for the columns whose minipage is copied
+     * @param positions receives the position of the minipage of each column
+     * @return the number of rows of the block
+     */
+    int read(int blockNumber, byte[] page, boolean[] columns, int[] positions) {
+        Buffer buffer = bufferManager.pin(new LogicalBlock(fileName, blockNumber));
+        try {
+            Page contents = buffer.getAssociatedPage();
+            int rows = contents.getInt(ROW_COUNT);
+            if (rows == 0) return 0;
+            for (int column = 0; column < columnTypes.length; column++) {
+                if (!columns[column]) continue;
+                int entry = DIRECTORY + column * ENTRY_SIZE;
+                positions[column] = contents.getInt(entry + Integer.BYTES);
+                contents.readBytes(positions[column], page, positions[column], contents.getInt(entry + 2 * Integer.BYTES));
+            }
+            return rows;
+        }
+        finally {
+            bufferManager.unpin(buffer);
+        }
+    }
+
+    /**
+     * Checks that the columns stored in a block are the columns of the table.
+     * @return false if the block has no rows, so it holds no columns
+     */
+    private boolean checkColumns(int blockNumber) {
+        Buffer buffer = bufferManager.pin(new LogicalBlock(fileName, blockNumber));
+        try {
+            Page contents = buffer.getAssociatedPage();
+            if (contents.getInt(ROW_COUNT) == 0) return false;
+            boolean same = contents.getInt(COLUMN_COUNT) == columnTypes.length;
+            for (int column = 0; same && column < columnTypes.length; column++)
+                same = contents.getInt(DIRECTORY + column * ENTRY_SIZE) == columnTypes[column];
+            if (!same) throw new RuntimeException("the columns of " + fileName + " are not the ones of its blocks");
+            return true;
+        }
+        finally {
+            bufferManager.unpin(buffer);
+        }
+    }
+}
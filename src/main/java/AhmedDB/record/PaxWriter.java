@@ -0,0 +1,128 @@
+package AhmedDB.record;
+
+import java.sql.Types;
+
+/**
+ * Appends rows to a {@link PaxTable}. The rows are kept in memory, column by column, until they fill a block:
+ * the writer encodes them from time to time, each time the number of rows doubles, and when the encoded rows no
+ * longer fit in a block, it searches for the largest number of rows that fits, writes them in a new block and
+ * keeps the others for the next one. So a block holds as many rows as its encodings allow.<br>
+ * The last rows are written by {@link #close()}, in a block that is not completed later: the next writer starts
+ * a new block. Several writers may append to a table at once, each to its own blocks.
+ */
+public class PaxWriter {
+    /**
+     * The number of rows at which the writer first checks the size of the encoded rows.
+     */
+    private static final int FIRST_CHECK = 64;
+
+    private final PaxTable table;
+    private final Minipage.Values[] columns;
+    private final int maxRows;
+    private int rows = 0;
+    /**
+     * The number of rows known to fit in a block.
+     */
+    private int fitting = 0;
+    private int nextCheck = FIRST_CHECK;
+    /**
+     * True when blocks were written since the log was last forced.
+     */
+    private boolean unforced = false;
+
+    public PaxWriter(PaxTable table) {
+        this.table = table;
+        maxRows = table.getMaxRows();
+        columns = new Minipage.Values[table.getColumnCount()];
+        for (int column = 0; column < columns.length; column++)
+            columns[column] = new Minipage.Values(table.getColumnType(column), maxRows);
+    }
+
+    /**
+     * Adds a row, whose values are 0 and empty strings until they are set.
+     */
+    public void insert() {
+        //the rows are checked before a new one is added, since the values of the last row may not be set yet
+        if (rows >= nextCheck) {
+            if (encodedSize(rows) <= table.blockSize()) {
+                fitting = rows;
+                nextCheck = Math.min(maxRows, 2 * rows);
+            }
+            else writeFittingRows();
+        }
+        if (rows == maxRows) writeFittingRows();
+        for (Minipage.Values values : columns) values.addRow();
+        rows++;
+    }
+
+    public void setInt(int column, int val) {
+        column(column, Types.INTEGER).setInt(val);
+    }
+
+    public void setString(int column, String val) {
+        column(column, Types.VARCHAR).setString(val);
+    }
+
+    /**
+     * Writes the rows that are still in memory, and forces the log, so that all the rows of the writer survive a crash.
+     */
+    public void close() {
+        while (rows > 0) {
+            if (encodedSize(rows) <= table.blockSize()) writeBlock(rows, true);
+            else writeFittingRows();
+        }
+        if (unforced) table.forceLog();
+        unforced = false;
+    }
+
+    /**
+     * Writes a block with as many of the first rows as fit in it, and keeps the others.
+     */
+    private void writeFittingRows() {
+        int low = Math.min(fitting, rows), high = rows + 1;
+        //low rows fit in a block, and high rows do not
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (encodedSize(middle) <= table.blockSize()) low = middle;
+            else high = middle;
+        }
+        if (low == 0) throw new RuntimeException("a row does not fit in a block of " + table.getFileName());
+        writeBlock(low, false);
+    }
+
+    /**
+     * Encodes the first rows into a new block of the table, and removes them from memory.
+     */
+    private void writeBlock(int blockRows, boolean forceLog) {
+        byte[] page = new byte[table.blockSize()];
+        int[] positions = new int[columns.length], lengths = new int[columns.length];
+        int position = table.headerSize();
+        for (int column = 0; column < columns.length; column++) {
+            positions[column] = position;
+            lengths[column] = columns[column].write(blockRows, page, position);
+            position += lengths[column];
+        }
+        table.writeHeader(page, blockRows, positions, lengths);
+        table.appendBlock(page, position, forceLog);
+        unforced = !forceLog;
+        for (Minipage.Values values : columns) values.removeFirst(blockRows);
+        rows -= blockRows;
+        fitting = 0;
+        nextCheck = Math.max(FIRST_CHECK, rows + 1);
+    }
+
+    /**
+     * @return the size of a block that holds the first rows
+     */
+    private int encodedSize(int blockRows) {
+        int size = table.headerSize();
+        for (Minipage.Values values : columns) size += values.encodedSize(blockRows);
+        return size;
+    }
+
+    private Minipage.Values column(int column, int type) {
+        if (rows == 0) throw new RuntimeException("no row was inserted into " + table.getFileName());
+        if (table.getColumnType(column) != type) throw new RuntimeException("column " + column + " of " + table.getFileName() + " has another type");
+        return columns[column];
+    }
+}
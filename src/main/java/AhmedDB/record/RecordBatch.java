@@ -0,0 +1,301 @@
+package AhmedDB.record;
+
+import AhmedDB.file.Page;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The records of one block, decoded by a {@link BatchScan} or a {@link PaxScan} into one vector per column: an int
+ * column is an int array, and a string column is an array of start positions and an array of lengths into a byte
+ * array, which is usually the copy of the block itself, so no string is created while the block is decoded.
+ * The entry of a vector at index <i>row</i> is the value of the <i>row</i>-th record of the block, in slot order.<br>
+ * The rows that are still selected are kept in a selection vector, which the filters shrink: a filter is a loop
+ * over the selected rows of a primitive array, which stores every row and advances only past the rows that match,
+ * so the loop has no branch that depends on the data and the JIT can unroll it.
+ * The vectors are reused for the next block, so they are only valid until the scan moves.
+ */
+public class RecordBatch {
+    private final int[] slots;
+    private final int[] offsets;
+    private final int[] sizes;
+    private final int[] selection;
+    private final List<Column> columns = new ArrayList<>();
+    private int blockNumber;
+    private int rows;
+    private int selected;
+
+    /**
+     * @param capacity the largest number of records of a block
+     */
+    RecordBatch(int capacity) {
+        slots = new int[capacity];
+        offsets = new int[capacity];
+        sizes = new int[capacity];
+        selection = new int[capacity];
+    }
+
+    /**
+     * @return the number of records of the block
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return the number of rows that passed the filters
+     */
+    public int getSelectedCount() {
+        return selected;
+    }
+
+    /**
+     * @return the selected rows, in increasing order, in the first {@link #getSelectedCount()} elements
+     */
+    public int[] getSelection() {
+        return selection;
+    }
+
+    /**
+     * Selects every row again, cancelling the filters applied to the block.
+     */
+    public void selectAll() {
+        for (int row = 0; row < rows; row++) selection[row] = row;
+        selected = rows;
+    }
+
+    /**
+     * @param column an int column of the scan
+     * @return the values of the column, in the first {@link #getRowCount()} elements
+     */
+    public int[] getInts(int column) {
+        return intColumn(column).values;
+    }
+
+    public int getInt(int column, int row) {
+        return intColumn(column).values[checkRow(row)];
+    }
+
+    public String getString(int column, int row) {
+        Column stringColumn = stringColumn(column);
+        checkRow(row);
+        return new String(stringColumn.data, stringColumn.starts[row], stringColumn.lengths[row], Page.CHARSET);
+    }
+
+    /**
+     * @return the id of the record of the row
+     */
+    public RecordId getRecordId(int row) {
+        return new RecordId(blockNumber, slots[checkRow(row)]);
+    }
+
+    /**
+     * Keeps the selected rows whose value of the int column is between the bounds.
+     * An equality is a range whose bounds are equal, and a one-sided comparison uses the smallest or largest int.
+     * @param column an int column of the scan
+     * @param low the smallest value to keep
+     * @param high the largest value to keep
+     */
+    public void filterInt(int column, int low, int high) {
+        int[] values = intColumn(column).values;
+        if (low > high) {
+            selected = 0;
+            return;
+        }
+        //low <= value <= high is one unsigned comparison of value - low, done on signed ints shifted by MIN_VALUE
+        int width = high - low + Integer.MIN_VALUE;
+        int matches = 0;
+        if (selected == rows) {
+            for (int row = 0; row < rows; row++) {
+                selection[matches] = row;
+                matches += values[row] - low + Integer.MIN_VALUE <= width ? 1 : 0;
+            }
+        }
+        else {
+            for (int i = 0; i < selected; i++) {
+                int row = selection[i];
+                selection[matches] = row;
+                matches += values[row] - low + Integer.MIN_VALUE <= width ? 1 : 0;
+            }
+        }
+        selected = matches;
+    }
+
+    /**
+     * Keeps the selected rows whose value of the string column equals the specified string.
+     * The bytes are compared in place, with no string created for the rows.
+     * @param column a string column of the scan
+     * @param value the value to keep
+     */
+    public void filterString(int column, String value) {
+        Column stringColumn = stringColumn(column);
+        byte[] bytes = value.getBytes(Page.CHARSET);
+        byte[] data = stringColumn.data;
+        int[] starts = stringColumn.starts, lengths = stringColumn.lengths;
+        int matches = 0;
+        for (int i = 0; i < selected; i++) {
+            int row = selection[i];
+            selection[matches] = row;
+            int start = starts[row];
+            matches += lengths[row] == bytes.length && Arrays.equals(data, start, start + bytes.length, bytes, 0, bytes.length) ? 1 : 0;
+        }
+        selected = matches;
+    }
+
+    /**
+     * @param column an int column of the scan
+     * @return the sum of the values of the selected rows
+     */
+    public long sumInts(int column) {
+        int[] values = intColumn(column).values;
+        long sum = 0;
+        if (selected == rows) {
+            for (int row = 0; row < rows; row++) sum += values[row];
+        }
+        else {
+            for (int i = 0; i < selected; i++) sum += values[selection[i]];
+        }
+        return sum;
+    }
+
+    int addColumn(int offset, boolean isString) {
+        if (offset < 0) throw new RuntimeException("the offset of a column cannot be negative: " + offset);
+        columns.add(new Column(offset, isString, slots.length));
+        return columns.size() - 1;
+    }
+
+    /**
+     * Decodes the records of a copy of the block, read under a shared lock.
+     * @param blockNumber the number of the block in the file
+     * @param page the contents of the block
+     */
+    void load(int blockNumber, byte[] page) {
+        this.blockNumber = blockNumber;
+        rows = SlottedPage.readDirectory(page, slots, offsets, sizes);
+        int minSize = Integer.MAX_VALUE;
+        for (int row = 0; row < rows; row++) minSize = Math.min(minSize, sizes[row]);
+        for (Column column : columns) {
+            if (column.offset + Integer.BYTES > minSize) checkSizes(column.offset + Integer.BYTES);
+            if (!column.isString) {
+                int[] values = column.values;
+                int offset = column.offset;
+                for (int row = 0; row < rows; row++) values[row] = Page.readInt(page, offsets[row] + offset);
+            }
+            else {
+                column.data = page;
+                for (int row = 0; row < rows; row++) {
+                    int position = offsets[row] + column.offset;
+                    int length = Page.readInt(page, position);
+                    if (length < 0 || column.offset + Integer.BYTES + length > sizes[row])
+                        throw new RuntimeException("the string at offset " + column.offset + " does not fit in the record in slot " + slots[row] + " of block " + blockNumber);
+                    column.starts[row] = position + Integer.BYTES;
+                    column.lengths[row] = length;
+                }
+            }
+        }
+        selectAll();
+    }
+
+    /**
+     * Decodes the records of the block one value at a time through the transaction, for a transaction under
+     * snapshot isolation, whose values may come from the version store. The strings are copied to an array of the column.
+     * @param slottedPage the block, which stays pinned while it is decoded
+     */
+    void load(SlottedPage slottedPage) {
+        blockNumber = slottedPage.getLogicalBlock().getNumber();
+        rows = 0;
+        for (Column column : columns) column.used = 0;
+        for (int slot = slottedPage.nextUsed(-1); slot >= 0; slot = slottedPage.nextUsed(slot)) {
+            slots[rows] = slot;
+            for (Column column : columns) {
+                if (!column.isString) column.values[rows] = slottedPage.getInt(slot, column.offset);
+                else column.append(rows, slottedPage.getString(slot, column.offset).getBytes(Page.CHARSET));
+            }
+            rows++;
+        }
+        selectAll();
+    }
+
+    /**
+     * Decodes the minipages of a block of a {@link PaxTable}, whose rows are numbered from zero like slots.
+     * The offset of a column is the number of its column in the table.
+     * @param blockNumber the number of the block in the file
+     * @param rows the number of rows of the block
+     * @param page the copy of the block, which holds the minipages of the columns of the batch
+     * @param minipages the position of the minipage of each column of the table
+     */
+    void load(int blockNumber, int rows, byte[] page, int[] minipages) {
+        this.blockNumber = blockNumber;
+        this.rows = rows;
+        for (int row = 0; row < rows; row++) slots[row] = row;
+        for (Column column : columns) {
+            if (!column.isString) Minipage.readInts(page, minipages[column.offset], rows, column.values);
+            else {
+                column.data = page;
+                Minipage.readStrings(page, minipages[column.offset], rows, column.starts, column.lengths);
+            }
+        }
+        selectAll();
+    }
+
+    private void checkSizes(int end) {
+        for (int row = 0; row < rows; row++)
+            if (end > sizes[row])
+                throw new RuntimeException("offset " + (end - Integer.BYTES) + " is outside the record of " + sizes[row] + " bytes in slot " + slots[row] + " of block " + blockNumber);
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= rows) throw new RuntimeException("row " + row + " is not in the batch of " + rows + " rows");
+        return row;
+    }
+
+    private Column intColumn(int column) {
+        Column intColumn = columns.get(column);
+        if (intColumn.isString) throw new RuntimeException("column " + column + " is not an int column");
+        return intColumn;
+    }
+
+    private Column stringColumn(int column) {
+        Column stringColumn = columns.get(column);
+        if (!stringColumn.isString) throw new RuntimeException("column " + column + " is not a string column");
+        return stringColumn;
+    }
+
+    /**
+     * The vectors of a column: the values of an int column, or the positions and lengths of the strings in the data array.
+     */
+    private static class Column {
+        private final int offset;
+        private final boolean isString;
+        private final int[] values;
+        private final int[] starts;
+        private final int[] lengths;
+        private byte[] data;
+        /**
+         * The number of bytes of the data array in use, when the strings are copied to it.
+         */
+        private int used;
+        /**
+         * The array of the copied strings, which is kept while the data array is a copy of the block.
+         */
+        private byte[] copies = new byte[0];
+
+        private Column(int offset, boolean isString, int capacity) {
+            this.offset = offset;
+            this.isString = isString;
+            values = isString ? null : new int[capacity];
+            starts = isString ? new int[capacity] : null;
+            lengths = isString ? new int[capacity] : null;
+        }
+
+        private void append(int row, byte[] bytes) {
+            if (used + bytes.length > copies.length) copies = Arrays.copyOf(copies, Math.max(2 * copies.length, used + bytes.length));
+            System.arraycopy(bytes, 0, copies, used, bytes.length);
+            data = copies;
+            starts[row] = used;
+            lengths[row] = bytes.length;
+            used += bytes.length;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package AhmedDB.record;
+
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.transaction.Transaction;
+
+/**
+ * Gives a transaction access to the records of a file, whose blocks are slotted pages (see {@link SlottedPage}).
+ * The object is a cursor: {@link #beforeFirst()} and {@link #next()} visit every record of the file,
+ * {@link #moveToRecordId(RecordId)} goes to a known record, and {@link #insert(int)} adds a record and
+ * goes to it. The values of the current record are read and written at offsets from the start of the record.<br>
+ * An insert asks the {@link FreeSpaceMap} for a block with room for the record, and appends a new block
+ * only when no block has room; the map is updated after each insert and delete.
+ * When the file has a {@link FileSummary}, the values written are added to the summary of their block.
+ */
+public class RecordFile {
+    private final Transaction transaction;
+    private final String fileName;
+    private final FreeSpaceMap freeSpaceMap;
+    private final FileSummary summary;
+    private SlottedPage slottedPage;
+    private int currentSlot;
+
+    /**
+     * Opens the file and moves before its first record.
+     * @param transaction the transaction that reads and writes the records
+     * @param fileName the name of the record file
+     * @param freeSpaceMap the free-space map shared by all the transactions
+     */
+    public RecordFile(Transaction transaction, String fileName, FreeSpaceMap freeSpaceMap) {
+        this(transaction, fileName, freeSpaceMap, null);
+    }
+
+    /**
+     * Opens a file that may have a summary, and moves before its first record.
+     * @param summaries the summaries shared by all the transactions, or null if no file has one
+     */
+    public RecordFile(Transaction transaction, String fileName, FreeSpaceMap freeSpaceMap, FileSummaries summaries) {
+        this.transaction = transaction;
+        this.fileName = fileName;
+        this.freeSpaceMap = freeSpaceMap;
+        summary = summaries == null ? null : summaries.get(fileName);
+        beforeFirst();
+    }
+
+    /**
+     * Moves before the first record of the file.
+     * The size of the file is not read until {@link #next()} is called, so a transaction that only inserts
+     * records does not lock the end of the file in shared mode, which it would have to upgrade to append a block.
+     */
+    public void beforeFirst() {
+        close();
+        currentSlot = -1;
+    }
+
+    /**
+     * Moves to the next record of the file.
+     * @return false if there is no next record
+     */
+    public boolean next() {
+        if (slottedPage == null) {
+            if (transaction.size(fileName) == 0) return false;
+            moveToBlock(0);
+        }
+        currentSlot = slottedPage.nextUsed(currentSlot);
+        while (currentSlot < 0) {
+            int nextBlock = slottedPage.getLogicalBlock().getNumber() + 1;
+            if (nextBlock >= transaction.size(fileName)) return false;
+            moveToBlock(nextBlock);
+            currentSlot = slottedPage.nextUsed(currentSlot);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a record of the specified size and moves to it. The values of the record must then be set.
+     * @param size the size of the record, in bytes
+     */
+    public void insert(int size) {
+        size = SlottedPage.align(size);
+        if (size > SlottedPage.maxRecordSize(transaction.blockSize()))
+            throw new RuntimeException("a record of " + size + " bytes does not fit in a block of " + fileName);
+        while (true) {
+            int blockNumber = freeSpaceMap.find(fileName, size);
+            if (blockNumber < 0) blockNumber = transaction.append(fileName).getNumber();
+            moveToBlock(blockNumber);
+            currentSlot = slottedPage.insert(size);
+            freeSpaceMap.update(fileName, blockNumber, slottedPage.freeSpace());
+            //the map was out of date when the block has no room, it is now corrected
+            if (currentSlot >= 0) {
+                if (summary != null) summary.recordInsert(blockNumber);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deletes the current record. The cursor stays at its slot, so {@link #next()} moves to the following record.
+     */
+    public void delete() {
+        slottedPage.delete(currentSlot);
+        freeSpaceMap.update(fileName, slottedPage.getLogicalBlock().getNumber(), slottedPage.freeSpace());
+    }
+
+    /**
+     * Moves to the specified record.
+     * @param recordId the id of a record of the file
+     */
+    public void moveToRecordId(RecordId recordId) {
+        moveToBlock(recordId.getBlockNumber());
+        currentSlot = recordId.getSlot();
+    }
+
+    /**
+     * @return the id of the current record
+     */
+    public RecordId getRecordId() {
+        return new RecordId(slottedPage.getLogicalBlock().getNumber(), currentSlot);
+    }
+
+    /**
+     * @return the size of the current record, in bytes
+     */
+    public int recordSize() {
+        return slottedPage.recordSize(currentSlot);
+    }
+
+    public int getInt(int offset) {
+        return slottedPage.getInt(currentSlot, offset);
+    }
+
+    public String getString(int offset) {
+        return slottedPage.getString(currentSlot, offset);
+    }
+
+    public void setInt(int offset, int val) {
+        slottedPage.setInt(currentSlot, offset, val);
+        if (summary != null) summary.recordInt(slottedPage.getLogicalBlock().getNumber(), offset, val);
+    }
+
+    public void setString(int offset, String val) {
+        slottedPage.setString(currentSlot, offset, val);
+        if (summary != null) summary.recordBytes(slottedPage.getLogicalBlock().getNumber(), offset, Page.maxLength(val.length()));
+    }
+
+    /**
+     * Unpins the current block.
+     */
+    public void close() {
+        if (slottedPage != null) slottedPage.close();
+        slottedPage = null;
+    }
+
+    private void moveToBlock(int blockNumber) {
+        if (slottedPage != null && slottedPage.getLogicalBlock().getNumber() == blockNumber) {
+            currentSlot = -1;
+            return;
+        }
+        close();
+        slottedPage = new SlottedPage(transaction, new LogicalBlock(fileName, blockNumber));
+        currentSlot = -1;
+    }
+}
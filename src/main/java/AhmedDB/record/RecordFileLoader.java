@@ -0,0 +1,151 @@
+package AhmedDB.record;
+
+import AhmedDB.file.Page;
+import AhmedDB.transaction.Transaction;
+
+import java.util.Arrays;
+
+/**
+ * Loads many records into a record file at the speed of the disk rather than at the speed of the log.
+ * A {@link RecordFile} logs every value it writes and goes through the buffer pool for every block; the loader
+ * instead fills whole slotted pages in memory, {@link #EXTENT_BLOCKS} at a time, and appends them to the end of
+ * the file with one sequential write (see {@link Transaction#appendBlocks(String, byte[], int)}). The only log
+ * record of such a write names the file and its range of blocks; it is forced before the write, so if the
+ * transaction rolls back or the system crashes before the commit, the blocks are emptied, and the blocks are on
+ * the disk before the commit record, so a committed load needs no redo.<br>
+ * The loader locks the whole file exclusively until the transaction ends, so the loaded records are not seen
+ * before the commit, and it cannot run under snapshot isolation. The records are only appended: the blocks that
+ * the file had before the load are not filled. The free-space map, and the summary of the file if it has one,
+ * learn about each block when it is written.
+ */
+public class RecordFileLoader {
+    /**
+     * The number of blocks that are built in memory and written at once.
+     */
+    public static final int EXTENT_BLOCKS = 256;
+
+    private final Transaction transaction;
+    private final String fileName;
+    private final FreeSpaceMap freeSpaceMap;
+    private final FileSummary summary;
+    private final int blockSize;
+    /**
+     * The blocks being built, one after the other.
+     */
+    private final byte[] extent;
+    private final Page pages;
+    /**
+     * The number in the file of the first block of the extent.
+     */
+    private int firstBlock;
+    /**
+     * The block of the extent that receives the records.
+     */
+    private int current = 0;
+    private int slot = -1;
+    /**
+     * The position in the extent of the current record, or -1 if no record was inserted since the extent was written.
+     */
+    private int recordStart = -1;
+    private int recordSize;
+
+    /**
+     * Locks the file for the load.
+     * @param transaction the transaction that loads the records
+     * @param fileName the name of the record file
+     * @param freeSpaceMap the free-space map shared by all the transactions
+     */
+    public RecordFileLoader(Transaction transaction, String fileName, FreeSpaceMap freeSpaceMap) {
+        this(transaction, fileName, freeSpaceMap, null);
+    }
+
+    /**
+     * Locks a file that may have a summary for the load.
+     * @param summaries the summaries shared by all the transactions, or null if no file has one
+     */
+    public RecordFileLoader(Transaction transaction, String fileName, FreeSpaceMap freeSpaceMap, FileSummaries summaries) {
+        this.transaction = transaction;
+        this.fileName = fileName;
+        this.freeSpaceMap = freeSpaceMap;
+        summary = summaries == null ? null : summaries.get(fileName);
+        blockSize = transaction.blockSize();
+        extent = new byte[EXTENT_BLOCKS * blockSize];
+        pages = new Page(extent);
+        firstBlock = transaction.lockForLoad(fileName);
+    }
+
+    /**
+     * Adds a record of the specified size, whose bytes are zero, and moves to it. The values of the record must then be set.
+     * @param size the size of the record, in bytes
+     */
+    public void insert(int size) {
+        size = SlottedPage.align(size);
+        if (size > SlottedPage.maxRecordSize(blockSize))
+            throw new RuntimeException("a record of " + size + " bytes does not fit in a block of " + fileName);
+        int offset = SlottedPage.append(pages, current * blockSize, blockSize, size);
+        if (offset < 0) {
+            current++;
+            if (current == EXTENT_BLOCKS) writeExtent(EXTENT_BLOCKS);
+            slot = -1;
+            offset = SlottedPage.append(pages, current * blockSize, blockSize, size);
+        }
+        slot++;
+        recordStart = current * blockSize + offset;
+        recordSize = size;
+        if (summary != null) summary.recordInsert(firstBlock + current);
+    }
+
+    /**
+     * @return the id that the current record has in the file
+     */
+    public RecordId getRecordId() {
+        checkRecord();
+        return new RecordId(firstBlock + current, slot);
+    }
+
+    public void setInt(int offset, int val) {
+        pages.setInt(position(offset, Integer.BYTES), val);
+        if (summary != null) summary.recordInt(firstBlock + current, offset, val);
+    }
+
+    public void setString(int offset, String val) {
+        pages.setString(position(offset, Page.maxLength(val.length())), val);
+        if (summary != null) summary.recordBytes(firstBlock + current, offset, Page.maxLength(val.length()));
+    }
+
+    /**
+     * Writes the blocks that are still in memory. The records become part of the file when the transaction commits.
+     */
+    public void close() {
+        if (recordStart >= 0) writeExtent(current + 1);
+    }
+
+    /**
+     * Appends the first blocks of the extent to the file, and empties the extent for the next blocks.
+     */
+    private void writeExtent(int blocks) {
+        if (transaction.appendBlocks(fileName, extent, blocks) != firstBlock)
+            throw new RuntimeException("the file " + fileName + " was extended during its load");
+        for (int i = 0; i < blocks; i++)
+            freeSpaceMap.update(fileName, firstBlock + i, SlottedPage.contiguousFreeSpace(pages, i * blockSize, blockSize) - SlottedPage.SLOT_SIZE);
+        Arrays.fill(extent, 0, blocks * blockSize, (byte) 0);
+        firstBlock += blocks;
+        current = 0;
+        slot = -1;
+        recordStart = -1;
+    }
+
+    /**
+     * @return the position in the extent of a value of the current record, after checking that it lies within the record
+     */
+    private int position(int offset, int length) {
+        checkRecord();
+        if (offset < 0 || offset + length > recordSize)
+            throw new RuntimeException("offset " + offset + " is outside the record of " + recordSize + " bytes loaded into " + fileName);
+        return recordStart + offset;
+    }
+
+    private void checkRecord() {
+        if (recordStart < 0) throw new RuntimeException("no record was inserted into " + fileName + " since the last blocks were written");
+    }
+}
@@ -0,0 +1,53 @@
+package AhmedDB.record;
+
+/**
+ * An identifier for a record within a file.
+ * A {@link RecordId} consists of the block number in the file,
+ * and the slot of the record in that block. The slot of a record never changes, even when
+ * the record is moved within its block, so the id stays valid until the record is deleted.
+ */
+public class RecordId {
+    private final int blockNumber;
+    private final int slot;
+
+    /**
+     * Creates a {@link RecordId} for the record having the
+     * specified slot in the specified block.
+     * @param blockNumber the block number where the record lives
+     * @param slot the record's slot
+     */
+    public RecordId(int blockNumber, int slot) {
+        this.blockNumber = blockNumber;
+        this.slot = slot;
+    }
+
+    /**
+     * @return the block number associated with this record id
+     */
+    public int getBlockNumber() {
+        return blockNumber;
+    }
+
+    /**
+     * @return the slot associated with this record id
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof RecordId recordId)) return false;
+        return blockNumber == recordId.blockNumber && slot == recordId.slot;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * blockNumber + slot;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + blockNumber + ", " + slot + "]";
+    }
+}
@@ -0,0 +1,320 @@
+package AhmedDB.record;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.transaction.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores variable-length records in a block, using a slotted page layout.
+ * After the page header of the buffer, the block starts with a header of three ints: the number of slots,
+ * the start of the record area, and the number of bytes of the deleted records. The slot directory follows,
+ * with the offset and the size of the record of each slot; an empty slot has offset zero.
+ * The records are stored at the end of the block: the record area grows down, toward the slot directory,
+ * which grows up. A block whose ints are all zero is an empty slotted page, so a new block needs no formatting.<br>
+ * A record is identified by its slot, which never changes. When a record does not fit in the free space between
+ * the directory and the record area, but would fit if the space of the deleted records was reclaimed,
+ * the records are compacted toward the end of the block and their slots are updated.
+ * Compaction moves values, so it only happens under two-phase locking: a transaction under snapshot
+ * isolation may read a record where its snapshot saw it, so the space of deleted records is not reused.<br>
+ * Every value, including the header and the directory, is read and written through the transaction,
+ * so it is locked and logged. The methods that modify the block lock it exclusively before reading it,
+ * so that two transactions never both hold a shared lock that they need to upgrade.
+ * Sizes are rounded up to a multiple of four bytes, so that the ints of a record are aligned wherever it is moved.
+ * The zeroes of a new record and each record moved by a compaction are written as a range of bytes
+ * (see {@link Transaction#setBytes(LogicalBlock, int, byte[], boolean)}), with one log record instead of one per int.
+ */
+public class SlottedPage {
+    private static final int SLOT_COUNT = Buffer.PAGE_HEADER_SIZE;
+    private static final int RECORDS_START = SLOT_COUNT + Integer.BYTES;
+    private static final int DELETED_BYTES = RECORDS_START + Integer.BYTES;
+    private static final int DIRECTORY = DELETED_BYTES + Integer.BYTES;
+    /**
+     * The size of a slot of the directory: the offset and the size of its record.
+     */
+    static final int SLOT_SIZE = 2 * Integer.BYTES;
+
+    private final Transaction transaction;
+    private final LogicalBlock logicalBlock;
+    private final int blockSize;
+
+    /**
+     * Pins the block, which is unpinned by {@link #close()}.
+     * @param transaction the transaction that reads and writes the records
+     * @param logicalBlock a block of a record file
+     */
+    public SlottedPage(Transaction transaction, LogicalBlock logicalBlock) {
+        this.transaction = transaction;
+        this.logicalBlock = logicalBlock;
+        blockSize = transaction.blockSize();
+        transaction.pin(logicalBlock);
+    }
+
+    /**
+     * @return the largest record that fits in an empty block
+     */
+    public static int maxRecordSize(int blockSize) {
+        return blockSize - DIRECTORY - SLOT_SIZE;
+    }
+
+    /**
+     * @return the largest number of slots that the directory of a block can have
+     */
+    static int maxSlots(int blockSize) {
+        return (blockSize - DIRECTORY) / SLOT_SIZE;
+    }
+
+    /**
+     * Reads the slot directory of a copy of a block (see {@link Transaction#readBlock(LogicalBlock, byte[])}),
+     * without going through the transaction for each value.
+     * @param page the contents of a block of a record file
+     * @param slots receives the slots of the records, in increasing order; the arrays have {@link #maxSlots(int)} elements
+     * @param offsets receives the offsets of the records in the block
+     * @param sizes receives the sizes of the records
+     * @return the number of records of the block
+     */
+    static int readDirectory(byte[] page, int[] slots, int[] offsets, int[] sizes) {
+        int slotCount = Page.readInt(page, SLOT_COUNT);
+        int records = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            int position = slotPosition(slot);
+            int offset = Page.readInt(page, position);
+            slots[records] = slot;
+            offsets[records] = offset;
+            sizes[records] = Page.readInt(page, position + Integer.BYTES);
+            //an empty slot is overwritten by the next record
+            if (offset != 0) records++;
+        }
+        return records;
+    }
+
+    /**
+     * Adds a record of the specified size, in an empty slot if there is one, else in a new slot.
+     * The bytes of the record are set to zero, so that the first update of each value logs a well-formed old value.
+     * The zeroes are logged: the free space may hold values that a compaction of the same transaction has
+     * just moved, and that its rollback moves back.
+     * @param size the size of the record, in bytes
+     * @return the slot of the new record, or -1 if the record does not fit in the block
+     */
+    public int insert(int size) {
+        transaction.lockForUpdate(logicalBlock);
+        size = align(size);
+        int slots = slotCount();
+        int slot = 0;
+        while (slot < slots && offsetOf(slot) != 0) slot++;
+        int needed = size + (slot == slots ? SLOT_SIZE : 0);
+        if (needed > contiguousFreeSpace()) {
+            if (transaction.isSnapshotIsolated() || needed > contiguousFreeSpace() + deletedBytes()) return -1;
+            compact();
+        }
+        int offset = recordsStart() - size;
+        transaction.setBytes(logicalBlock, offset, new byte[size], true);
+        transaction.setInt(logicalBlock, RECORDS_START, offset, true);
+        if (slot == slots) transaction.setInt(logicalBlock, SLOT_COUNT, slots + 1, true);
+        transaction.setInt(logicalBlock, slotPosition(slot) + Integer.BYTES, size, true);
+        transaction.setInt(logicalBlock, slotPosition(slot), offset, true);
+        return slot;
+    }
+
+    /**
+     * Deletes the record of the slot, which becomes empty and can be given to a new record.
+     * @param slot a used slot
+     */
+    public void delete(int slot) {
+        transaction.lockForUpdate(logicalBlock);
+        int size = sizeOf(checkUsed(slot));
+        transaction.setInt(logicalBlock, slotPosition(slot), 0, true);
+        transaction.setInt(logicalBlock, DELETED_BYTES, deletedBytes() + size, true);
+    }
+
+    /**
+     * @param slot a slot number
+     * @return true if the slot holds a record
+     */
+    public boolean isUsed(int slot) {
+        return slot >= 0 && slot < slotCount() && offsetOf(slot) != 0;
+    }
+
+    /**
+     * @param slot a slot number, or -1 to start from the beginning of the block
+     * @return the first used slot after the specified one, or -1 if there is none
+     */
+    public int nextUsed(int slot) {
+        int slots = slotCount();
+        for (int next = slot + 1; next < slots; next++)
+            if (offsetOf(next) != 0) return next;
+        return -1;
+    }
+
+    /**
+     * @param slot a used slot
+     * @return the size of its record, in bytes
+     */
+    public int recordSize(int slot) {
+        return sizeOf(checkUsed(slot));
+    }
+
+    /**
+     * @return the number of bytes that a new record, with its slot, may use in the block
+     */
+    public int freeSpace() {
+        int free = contiguousFreeSpace() + (transaction.isSnapshotIsolated() ? 0 : deletedBytes());
+        return Math.max(0, free - SLOT_SIZE);
+    }
+
+    public int getInt(int slot, int offset) {
+        return transaction.getInt(logicalBlock, position(slot, offset, Integer.BYTES));
+    }
+
+    public void setInt(int slot, int offset, int val) {
+        transaction.lockForUpdate(logicalBlock);
+        transaction.setInt(logicalBlock, position(slot, offset, Integer.BYTES), val, true);
+    }
+
+    public String getString(int slot, int offset) {
+        return transaction.getString(logicalBlock, position(slot, offset, Integer.BYTES));
+    }
+
+    public void setString(int slot, int offset, String val) {
+        transaction.lockForUpdate(logicalBlock);
+        transaction.setString(logicalBlock, position(slot, offset, Page.maxLength(val.length())), val, true);
+    }
+
+    public LogicalBlock getLogicalBlock() {
+        return logicalBlock;
+    }
+
+    /**
+     * Unpins the block.
+     */
+    public void close() {
+        transaction.unpin(logicalBlock);
+    }
+
+    /**
+     * Returns the contiguous free space of a page read directly from the disk, which the free-space map
+     * uses as a hint when it first meets a file.
+     * @param page the contents of a block of a record file
+     * @return the bytes between the slot directory and the record area
+     */
+    static int contiguousFreeSpace(Page page, int blockSize) {
+        return contiguousFreeSpace(page, 0, blockSize);
+    }
+
+    /**
+     * Returns the contiguous free space of a block stored at some position of a page, such as one of the
+     * blocks that a {@link RecordFileLoader} builds in memory.
+     * @param page the page that holds the block
+     * @param start the position of the block in the page
+     * @return the bytes between the slot directory and the record area
+     */
+    static int contiguousFreeSpace(Page page, int start, int blockSize) {
+        int recordsStart = page.getInt(start + RECORDS_START);
+        if (recordsStart == 0) recordsStart = blockSize;
+        return recordsStart - DIRECTORY - page.getInt(start + SLOT_COUNT) * SLOT_SIZE;
+    }
+
+    /**
+     * Adds a record in a new slot of a block built in memory, without going through a transaction.
+     * The bytes of the record are those of the page, which are expected to be zero.
+     * @param page the page that holds the block
+     * @param start the position of the block in the page
+     * @param size the size of the record, already aligned
+     * @return the offset of the record in the block, or -1 if the record does not fit in the block
+     */
+    static int append(Page page, int start, int blockSize, int size) {
+        if (size + SLOT_SIZE > contiguousFreeSpace(page, start, blockSize)) return -1;
+        int slot = page.getInt(start + SLOT_COUNT);
+        int recordsStart = page.getInt(start + RECORDS_START);
+        int offset = (recordsStart == 0 ? blockSize : recordsStart) - size;
+        page.setInt(start + RECORDS_START, offset);
+        page.setInt(start + SLOT_COUNT, slot + 1);
+        page.setInt(start + slotPosition(slot), offset);
+        page.setInt(start + slotPosition(slot) + Integer.BYTES, size);
+        return offset;
+    }
+
+    /**
+     * Moves the records toward the end of the block, in the order of their offsets, so that the space
+     * of the deleted records joins the free space.
+     */
+    private void compact() {
+        List<int[]> records = new ArrayList<>();
+        int slots = slotCount();
+        for (int slot = 0; slot < slots; slot++) {
+            int offset = offsetOf(slot);
+            if (offset != 0) records.add(new int[]{offset, sizeOf(slot), slot});
+        }
+        records.sort((a, b) -> Integer.compare(b[0], a[0]));
+        //the records are moved from a copy of the block, which compaction can take since it only runs under two-phase locking
+        byte[] page = new byte[blockSize];
+        transaction.readBlock(logicalBlock, page);
+        int end = blockSize;
+        for (int[] record : records) {
+            int offset = record[0], size = record[1], slot = record[2];
+            int target = end - size;
+            if (target != offset) {
+                transaction.setBytes(logicalBlock, target, Arrays.copyOfRange(page, offset, offset + size), true);
+                transaction.setInt(logicalBlock, slotPosition(slot), target, true);
+            }
+            end = target;
+        }
+        transaction.setInt(logicalBlock, RECORDS_START, end, true);
+        transaction.setInt(logicalBlock, DELETED_BYTES, 0, true);
+    }
+
+    /**
+     * @return the position in the block of a value of the record, after checking that it lies within the record
+     */
+    private int position(int slot, int offset, int length) {
+        int size = sizeOf(checkUsed(slot));
+        if (offset < 0 || offset + length > size)
+            throw new RuntimeException("offset " + offset + " is outside the record of " + size + " bytes in slot " + slot + " of " + logicalBlock);
+        return offsetOf(slot) + offset;
+    }
+
+    private int checkUsed(int slot) {
+        if (!isUsed(slot)) throw new RuntimeException("slot " + slot + " of " + logicalBlock + " holds no record");
+        return slot;
+    }
+
+    private int contiguousFreeSpace() {
+        return recordsStart() - DIRECTORY - slotCount() * SLOT_SIZE;
+    }
+
+    private int slotCount() {
+        return transaction.getInt(logicalBlock, SLOT_COUNT);
+    }
+
+    private int recordsStart() {
+        int recordsStart = transaction.getInt(logicalBlock, RECORDS_START);
+        return recordsStart == 0 ? blockSize : recordsStart;
+    }
+
+    private int deletedBytes() {
+        return transaction.getInt(logicalBlock, DELETED_BYTES);
+    }
+
+    private int offsetOf(int slot) {
+        return transaction.getInt(logicalBlock, slotPosition(slot));
+    }
+
+    private int sizeOf(int slot) {
+        return transaction.getInt(logicalBlock, slotPosition(slot) + Integer.BYTES);
+    }
+
+    private static int slotPosition(int slot) {
+        return DIRECTORY + slot * SLOT_SIZE;
+    }
+
+    /**
+     * @return the size rounded up to a multiple of four bytes
+     */
+    static int align(int size) {
+        return Math.max(Integer.BYTES, (size + Integer.BYTES - 1) & -Integer.BYTES);
+    }
+}
@@ -0,0 +1,146 @@
+package AhmedDB.server;
+
+import AhmedDB.record.RecordId;
+
+/**
+ * The statements of one request of a {@link DatabaseClient}, which the server runs in one transaction.
+ * A statement is added by {@link #insert}, {@link #read}, {@link #update}, {@link #delete} or {@link #scan}, and the
+ * methods that follow it give its fields or columns until the next statement:
+ * <pre>
+ * Batch batch = new Batch()
+ *         .insert("accounts.tbl", 16).setInt(0, 42).setString(4, "savings")
+ *         .scan("accounts.tbl", 100).getInt(0).getString(4);
+ * </pre>
+ * The results of the statements are read from the {@link Response} in the same order.
+ */
+public class Batch {
+    private final FrameWriter statements = new FrameWriter(256);
+    private int statementCount = 0;
+    private byte operator = 0;
+    /**
+     * The position of the count of fields or columns of the current statement, and the count.
+     */
+    private int listPosition = -1;
+    private int listCount = 0;
+
+    /**
+     * Adds a record of the specified size, whose fields follow.
+     */
+    public Batch insert(String fileName, int recordSize) {
+        begin(Protocol.INSERT, fileName);
+        statements.putShort(recordSize);
+        beginList();
+        return this;
+    }
+
+    /**
+     * Reads the columns that follow of a record.
+     */
+    public Batch read(String fileName, RecordId recordId) {
+        begin(Protocol.READ, fileName);
+        putRecordId(recordId);
+        beginList();
+        return this;
+    }
+
+    /**
+     * Sets the fields that follow of a record.
+     */
+    public Batch update(String fileName, RecordId recordId) {
+        begin(Protocol.UPDATE, fileName);
+        putRecordId(recordId);
+        beginList();
+        return this;
+    }
+
+    public Batch delete(String fileName, RecordId recordId) {
+        begin(Protocol.DELETE, fileName);
+        putRecordId(recordId);
+        return this;
+    }
+
+    /**
+     * Reads the columns that follow of the first records of a file.
+     * @param limit the largest number of records to return
+     */
+    public Batch scan(String fileName, int limit) {
+        begin(Protocol.SCAN, fileName);
+        statements.putInt(limit);
+        beginList();
+        return this;
+    }
+
+    public Batch setInt(int offset, int value) {
+        addField(offset, Protocol.INT);
+        statements.putInt(value);
+        return this;
+    }
+
+    public Batch setString(int offset, String value) {
+        addField(offset, Protocol.STRING);
+        statements.putString(value);
+        return this;
+    }
+
+    public Batch getInt(int offset) {
+        addColumn(offset, Protocol.INT);
+        return this;
+    }
+
+    public Batch getString(int offset) {
+        addColumn(offset, Protocol.STRING);
+        return this;
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    /**
+     * @return the request frame of the batch, with its length
+     */
+    byte[] toRequest(int requestId) {
+        if (statementCount == 0) throw new RuntimeException("the batch has no statement");
+        FrameWriter request = new FrameWriter(Integer.BYTES + Protocol.REQUEST_HEADER_SIZE + statements.position());
+        request.putInt(Protocol.REQUEST_HEADER_SIZE + statements.position());
+        request.putInt(requestId);
+        request.putShort(statementCount);
+        request.putBytes(statements.toByteArray());
+        return request.toByteArray();
+    }
+
+    private void begin(byte operator, String fileName) {
+        this.operator = operator;
+        statementCount++;
+        listPosition = -1;
+        statements.putByte(operator);
+        statements.putString(fileName);
+    }
+
+    private void putRecordId(RecordId recordId) {
+        statements.putInt(recordId.getBlockNumber());
+        statements.putInt(recordId.getSlot());
+    }
+
+    private void beginList() {
+        listPosition = statements.position();
+        listCount = 0;
+        statements.putShort(0);
+    }
+
+    private void addField(int offset, byte type) {
+        if (operator != Protocol.INSERT && operator != Protocol.UPDATE) throw new RuntimeException("only an insert or an update sets fields");
+        addToList(offset, type);
+    }
+
+    private void addColumn(int offset, byte type) {
+        if (operator != Protocol.READ && operator != Protocol.SCAN) throw new RuntimeException("only a read or a scan gets columns");
+        addToList(offset, type);
+    }
+
+    private void addToList(int offset, byte type) {
+        statements.setShort(listPosition, ++listCount);
+        statements.putShort(offset);
+        statements.putByte(type);
+    }
+}
@@ -0,0 +1,96 @@
+package AhmedDB.server;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * The state of a client connection of a {@link DatabaseServer}, which only the thread of the server's selector
+ * reads and changes: the bytes received and not parsed yet, the requests waiting for their turn, and the responses
+ * not sent yet.
+ */
+class Connection {
+    /**
+     * The initial size of the input buffer, which grows for a larger request and shrinks back afterwards.
+     */
+    private static final int INPUT_SIZE = 16 * 1024;
+
+    final SocketChannel channel;
+    SelectionKey key;
+    private ByteBuffer input = ByteBuffer.allocate(INPUT_SIZE);
+    /**
+     * The requests received and not started yet, in the order they were sent; a request is its frame without the length.
+     */
+    final ArrayDeque<byte[]> requests = new ArrayDeque<>();
+    /**
+     * The response frames not sent yet, and the number of their bytes.
+     */
+    final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+    long outputBytes = 0;
+    /**
+     * True while a request of the connection runs in a transaction.
+     */
+    boolean running = false;
+    /**
+     * True while the connection waits in the queue of the server for a transaction to finish.
+     */
+    boolean waiting = false;
+    /**
+     * True while the connection has responses to send at the end of the current round of the selector.
+     */
+    boolean flushPending = false;
+    /**
+     * True while the server does not read the connection, because it reached one of its limits.
+     */
+    boolean paused = false;
+    boolean closed = false;
+
+    Connection(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    ByteBuffer getInput() {
+        return input;
+    }
+
+    /**
+     * Moves the complete request frames of the input buffer to the queue of requests.
+     * @return false if a frame has an invalid length, so the client does not follow the protocol
+     */
+    boolean readRequests() {
+        input.flip();
+        int needed = 0;
+        while (input.remaining() >= Integer.BYTES) {
+            int length = input.getInt(input.position());
+            if (length < Protocol.REQUEST_HEADER_SIZE || length > Protocol.MAX_REQUEST_SIZE) return false;
+            if (input.remaining() < Integer.BYTES + length) {
+                needed = Integer.BYTES + length;
+                break;
+            }
+            input.getInt();
+            byte[] request = new byte[length];
+            input.get(request);
+            requests.add(request);
+        }
+        input.compact();
+        if (needed > input.capacity()) {
+            input.flip();
+            input = ByteBuffer.allocate(needed).put(input);
+        }
+        else if (input.position() == 0 && input.capacity() > INPUT_SIZE) input = ByteBuffer.allocate(INPUT_SIZE);
+        return true;
+    }
+
+    void addResponse(byte[] response) {
+        output.add(ByteBuffer.wrap(response));
+        outputBytes += response.length;
+    }
+
+    /**
+     * Drops the responses that were sent completely.
+     */
+    void removeSentResponses() {
+        while (!output.isEmpty() && !output.peek().hasRemaining()) outputBytes -= output.poll().limit();
+    }
+}
@@ -0,0 +1,86 @@
+package AhmedDB.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * A connection to a {@link DatabaseServer}. {@link #execute(Batch)} sends a batch and waits for its response;
+ * to pipeline, several batches are sent with {@link #send(Batch)}, which only buffers them, and their responses
+ * are then read in order with {@link #receive()}, which first sends what is buffered. A client should not send
+ * far more requests than it reads responses, since the server stops reading a connection whose responses are not
+ * read (see {@link DatabaseServer}).
+ * A client is used by one thread at a time.
+ */
+public class DatabaseClient implements AutoCloseable {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private int nextRequestId = 0;
+
+    public DatabaseClient(String host, int port) throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(host, port));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+    }
+
+    /**
+     * Buffers a request; it is sent with the following requests when {@link #receive()} is called, or sooner if the
+     * buffer fills up.
+     * @return the id of the request, which its response carries
+     */
+    public int send(Batch batch) {
+        int requestId = nextRequestId++;
+        try {
+            out.write(batch.toRequest(requestId));
+        }
+        catch (IOException e) {
+            throw new RuntimeException("cannot send request " + requestId + ": " + e.getMessage());
+        }
+        return requestId;
+    }
+
+    /**
+     * Sends the buffered requests, and waits for the response of the oldest request not answered yet.
+     */
+    public Response receive() {
+        try {
+            out.flush();
+            int length = in.readInt();
+            if (length < Protocol.RESPONSE_HEADER_SIZE) throw new RuntimeException("invalid response of " + length + " bytes");
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+            return new Response(frame);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("cannot receive a response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sends a batch and waits for its response.
+     * @throws RuntimeException if the batch failed, with the message of the server
+     */
+    public Response execute(Batch batch) {
+        send(batch);
+        Response response = receive();
+        if (!response.isOk()) throw new RuntimeException(response.getError());
+        return response;
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        }
+        catch (IOException e) {
+            throw new RuntimeException("cannot close the connection: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package AhmedDB.server;
+
+import AhmedDB.record.FreeSpaceMap;
+import AhmedDB.transaction.TransactionExecutor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves the record files of a database to {@link DatabaseClient}s over TCP, with the binary {@link Protocol}.
+ * One thread owns a selector and all the connections: it accepts them, reads and parses their requests, and
+ * writes their responses, so an idle connection costs a few buffers and no thread, and a server holds thousands of
+ * them. Each request runs as a transaction of the {@link TransactionExecutor}, on a thread of its own, and its
+ * completion is handed back to the selector thread, which sends the responses of a round in one write per
+ * connection.<br>
+ * A client may pipeline its requests: they are queued and run one after the other, so a connection sees its own
+ * requests in order, while the requests of different connections run concurrently. The server pushes back when
+ * the clients send faster than the engine runs their requests:
+ * <ul>
+ * <li>at most {@code maxTransactions} requests run at once; the other connections wait in line for a slot, in
+ * the order they became ready;</li>
+ * <li>a connection is not read while it has {@link #MAX_PIPELINED_REQUESTS} requests waiting, or while
+ * {@link #MAX_PENDING_OUTPUT} bytes of its responses are not sent yet, so TCP flow control slows the client down
+ * instead of the server buffering without limit. No request of such a connection starts before its client reads
+ * its responses.</li>
+ * </ul>
+ * A client that breaks the protocol, with a frame longer than {@link Protocol#MAX_REQUEST_SIZE} or shorter than its
+ * header, is disconnected.
+ */
+public class DatabaseServer implements AutoCloseable {
+    public static final int MAX_PIPELINED_REQUESTS = 128;
+    public static final int MAX_PENDING_OUTPUT = 1 << 20;
+    /**
+     * The default number of requests that run at once.
+     */
+    public static final int DEFAULT_MAX_TRANSACTIONS = 256;
+    /**
+     * The largest number of responses given to one write.
+     */
+    private static final int MAX_GATHERED_RESPONSES = 64;
+
+    private final TransactionExecutor executor;
+    private final RequestHandler handler;
+    private final int maxTransactions;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Thread thread;
+    private volatile boolean running = true;
+    /**
+     * The completed requests, added by the transaction threads and handled by the selector thread.
+     */
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> connections = new HashSet<>();
+    /**
+     * The connections that have a request to run and wait for a running request to finish.
+     */
+    private final Queue<Connection> ready = new ArrayDeque<>();
+    private final List<Connection> flushes = new ArrayList<>();
+    private int transactions = 0;
+    private volatile int connectionCount = 0;
+    /**
+     * The number of connections that are not read, only changed by the selector thread.
+     */
+    private volatile int pausedConnectionCount = 0;
+    private final LongAdder requestCount = new LongAdder();
+
+    /**
+     * Binds the server to the address and starts serving, with {@link #DEFAULT_MAX_TRANSACTIONS} requests at once.
+     */
+    public DatabaseServer(TransactionExecutor executor, FreeSpaceMap freeSpaceMap, InetSocketAddress address) throws IOException {
+        this(executor, freeSpaceMap, address, DEFAULT_MAX_TRANSACTIONS);
+    }
+
+    /**
+     * Binds the server to the address and starts serving.
+     * @param executor the executor that runs the requests
+     * @param freeSpaceMap the free-space map shared by all the transactions
+     * @param address the address to listen to, whose port may be 0 to choose a free port (see {@link #getPort()})
+     * @param maxTransactions the number of requests that may run at once
+     */
+    public DatabaseServer(TransactionExecutor executor, FreeSpaceMap freeSpaceMap, InetSocketAddress address, int maxTransactions) throws IOException {
+        this.executor = executor;
+        handler = new RequestHandler(freeSpaceMap);
+        this.maxTransactions = maxTransactions;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 4096);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::serve, "database-server");
+        thread.start();
+    }
+
+    /**
+     * @return the port the server listens to
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return the number of open client connections
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * @return the number of requests answered since the server started
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return the number of connections that the server does not read, because they reached
+     * {@link #MAX_PIPELINED_REQUESTS} or {@link #MAX_PENDING_OUTPUT}
+     */
+    int pausedConnectionCount() {
+        return pausedConnectionCount;
+    }
+
+    /**
+     * Stops accepting requests and closes the connections. The requests that are running complete, but their
+     * responses are not sent.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve() {
+        try {
+            while (running) {
+                selector.select();
+                for (Runnable completion = completions.poll(); completion != null; completion = completions.poll())
+                    completion.run();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) read(connection);
+                        if (!connection.closed && key.isWritable()) write(connection);
+                    }
+                }
+                //the responses completed in this round are sent together
+                for (Connection connection : flushes) {
+                    connection.flushPending = false;
+                    if (!connection.closed) write(connection);
+                }
+                flushes.clear();
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("the server stopped: " + e.getMessage());
+        }
+        finally {
+            for (Connection connection : new ArrayList<>(connections)) close(connection);
+            try {
+                serverChannel.close();
+                selector.close();
+            }
+            catch (IOException e) {
+                System.err.println("cannot close the server socket: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        for (SocketChannel channel = serverChannel.accept(); channel != null; channel = serverChannel.accept()) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            connectionCount = connections.size();
+        }
+    }
+
+    private void read(Connection connection) {
+        try {
+            if (connection.channel.read(connection.getInput()) < 0 || !connection.readRequests()) {
+                close(connection);
+                return;
+            }
+        }
+        catch (IOException e) {
+            close(connection);
+            return;
+        }
+        schedule(connection);
+        updateInterest(connection);
+    }
+
+    private void write(Connection connection) {
+        ByteBuffer[] responses = new ByteBuffer[Math.min(connection.output.size(), MAX_GATHERED_RESPONSES)];
+        Iterator<ByteBuffer> pending = connection.output.iterator();
+        for (int i = 0; i < responses.length; i++) responses[i] = pending.next();
+        try {
+            connection.channel.write(responses);
+        }
+        catch (IOException e) {
+            close(connection);
+            return;
+        }
+        connection.removeSentResponses();
+        schedule(connection);
+        updateInterest(connection);
+    }
+
+    /**
+     * Starts the next request of the connection if it has one and may run it now, or puts the connection in line.
+     */
+    private void schedule(Connection connection) {
+        if (!canStart(connection)) return;
+        if (transactions >= maxTransactions || !ready.isEmpty()) {
+            connection.waiting = true;
+            ready.add(connection);
+        }
+        else start(connection);
+    }
+
+    private boolean canStart(Connection connection) {
+        return !connection.closed && !connection.running && !connection.waiting && !connection.requests.isEmpty()
+                && connection.outputBytes < MAX_PENDING_OUTPUT;
+    }
+
+    private void start(Connection connection) {
+        byte[] request = connection.requests.poll();
+        connection.running = true;
+        transactions++;
+        try {
+            executor.submit(transaction -> handler.execute(transaction, request)).whenComplete((response, error) -> {
+                completions.add(() -> finish(connection, request, response, error));
+                selector.wakeup();
+            });
+        }
+        catch (RejectedExecutionException e) {
+            completions.add(() -> finish(connection, request, null, new RuntimeException("the database is shutting down")));
+            selector.wakeup();
+        }
+    }
+
+    private void finish(Connection connection, byte[] request, byte[] response, Throwable error) {
+        transactions--;
+        connection.running = false;
+        requestCount.increment();
+        if (!connection.closed) {
+            connection.addResponse(error == null ? response : errorResponse(request, error));
+            if (!connection.flushPending) {
+                connection.flushPending = true;
+                flushes.add(connection);
+            }
+            schedule(connection);
+        }
+        while (transactions < maxTransactions && !ready.isEmpty()) {
+            Connection next = ready.poll();
+            next.waiting = false;
+            if (canStart(next)) start(next);
+        }
+    }
+
+    /**
+     * Reads the connection while it is below its limits, and writes it while it has responses to send.
+     */
+    private void updateInterest(Connection connection) {
+        if (connection.closed) return;
+        setPaused(connection, connection.requests.size() >= MAX_PIPELINED_REQUESTS || connection.outputBytes >= MAX_PENDING_OUTPUT);
+        int interest = 0;
+        if (!connection.paused) interest |= SelectionKey.OP_READ;
+        if (!connection.output.isEmpty()) interest |= SelectionKey.OP_WRITE;
+        if (connection.key.interestOps() != interest) connection.key.interestOps(interest);
+    }
+
+    private void setPaused(Connection connection, boolean paused) {
+        if (connection.paused == paused) return;
+        connection.paused = paused;
+        pausedConnectionCount += paused ? 1 : -1;
+    }
+
+    private void close(Connection connection) {
+        setPaused(connection, false);
+        connection.closed = true;
+        connection.key.cancel();
+        connection.requests.clear();
+        connection.output.clear();
+        connections.remove(connection);
+        connectionCount = connections.size();
+        try {
+            connection.channel.close();
+        }
+        catch (IOException e) {
+            System.err.println("cannot close a client connection: " + e.getMessage());
+        }
+    }
+
+    private static byte[] errorResponse(byte[] request, Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        FrameWriter response = new FrameWriter(Protocol.RESPONSE_HEADER_SIZE + Integer.BYTES + Short.BYTES + message.length());
+        response.putInt(0);
+        response.putBytes(new byte[]{request[0], request[1], request[2], request[3]});
+        response.putByte(Protocol.ERROR);
+        response.putString(message.length() > 0xFFFF ? message.substring(0, 0xFFFF) : message);
+        response.setInt(0, response.position() - Integer.BYTES);
+        return response.toByteArray();
+    }
+}
@@ -0,0 +1,86 @@
+package AhmedDB.server;
+
+import AhmedDB.file.Page;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Builds a frame of the {@link Protocol} in a byte array that grows as needed. A count that is only known once the
+ * items are written is reserved with {@link #position()} and filled in afterwards with {@link #setShort(int, int)}.
+ */
+class FrameWriter {
+    private byte[] bytes;
+    private int size = 0;
+
+    FrameWriter(int capacity) {
+        bytes = new byte[capacity];
+    }
+
+    int position() {
+        return size;
+    }
+
+    void putByte(int value) {
+        ensure(1);
+        bytes[size++] = (byte) value;
+    }
+
+    void putShort(int value) {
+        if (value < 0 || value > 0xFFFF) throw new RuntimeException(value + " does not fit in a short of the protocol");
+        ensure(Short.BYTES);
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) value;
+    }
+
+    void putInt(int value) {
+        ensure(Integer.BYTES);
+        for (int shift = 24; shift >= 0; shift -= 8) bytes[size++] = (byte) (value >>> shift);
+    }
+
+    void putString(String value) {
+        byte[] string = value.getBytes(Page.CHARSET);
+        putShort(string.length);
+        ensure(string.length);
+        System.arraycopy(string, 0, bytes, size, string.length);
+        size += string.length;
+    }
+
+    void putBytes(byte[] value) {
+        ensure(value.length);
+        System.arraycopy(value, 0, bytes, size, value.length);
+        size += value.length;
+    }
+
+    void setShort(int position, int value) {
+        if (value < 0 || value > 0xFFFF) throw new RuntimeException(value + " does not fit in a short of the protocol");
+        bytes[position] = (byte) (value >>> 8);
+        bytes[position + 1] = (byte) value;
+    }
+
+    void setInt(int position, int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) bytes[position++] = (byte) (value >>> shift);
+    }
+
+    /**
+     * Discards the bytes written after the specified position.
+     */
+    void truncate(int position) {
+        size = position;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * @return a buffer over the written bytes, which shares the array of the writer
+     */
+    ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, size);
+    }
+
+    private void ensure(int length) {
+        if (size + length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + length));
+    }
+}
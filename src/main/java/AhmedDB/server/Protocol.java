@@ -0,0 +1,61 @@
+package AhmedDB.server;
+
+import AhmedDB.file.Page;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The binary protocol spoken between a {@link DatabaseClient} and a {@link DatabaseServer}. All the numbers are
+ * big-endian, and a string is a short length followed by its US-ASCII bytes.<br>
+ * A request is a frame: an int length (of the rest of the frame), an int request id chosen by the client, a short
+ * number of statements, and the statements. The statements of a request form a batch that runs in one transaction:
+ * either all of them take effect, or none does. A client may send many requests without waiting for their
+ * responses (pipelining); the requests of a connection run one after the other, in the order they were sent, and
+ * their responses come back in that order.<br>
+ * A response is a frame too: an int length, the id of the request, a status byte, and then either the results of
+ * the statements, in order, or an error message.<br>
+ * A statement starts with its operator byte and the name of a record file:
+ * <ul>
+ * <li>{@link #INSERT}: a short record size and a list of fields; the result is the record id, an int block and an int slot.</li>
+ * <li>{@link #READ}: an int block, an int slot and a list of columns; the result is the values of the columns.</li>
+ * <li>{@link #UPDATE}: an int block, an int slot and a list of fields; there is no result.</li>
+ * <li>{@link #DELETE}: an int block and an int slot; there is no result.</li>
+ * <li>{@link #SCAN}: an int limit and a list of columns; the result is an int number of rows, and for each row its
+ * block, its slot and the values of the columns.</li>
+ * </ul>
+ * A list of fields is a short count followed by, for each field, a short offset in the record and a value; a list
+ * of columns is a short count followed by, for each column, a short offset and a type byte. A value is a type byte,
+ * {@link #INT} or {@link #STRING}, followed by an int or a string.
+ */
+public class Protocol {
+    public static final byte INSERT = 1;
+    public static final byte READ = 2;
+    public static final byte UPDATE = 3;
+    public static final byte DELETE = 4;
+    public static final byte SCAN = 5;
+
+    public static final byte INT = 1;
+    public static final byte STRING = 2;
+
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+
+    /**
+     * The size of the header of a frame after its length: the request id, and the statement count or the status.
+     */
+    static final int REQUEST_HEADER_SIZE = Integer.BYTES + Short.BYTES;
+    static final int RESPONSE_HEADER_SIZE = Integer.BYTES + 1;
+    /**
+     * The largest frame that a server accepts, after its length.
+     */
+    public static final int MAX_REQUEST_SIZE = 1 << 20;
+
+    private Protocol() {}
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, Page.CHARSET);
+    }
+}
@@ -0,0 +1,144 @@
+package AhmedDB.server;
+
+import AhmedDB.record.FreeSpaceMap;
+import AhmedDB.record.RecordFile;
+import AhmedDB.record.RecordId;
+import AhmedDB.transaction.Transaction;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the statements of a request in a transaction and builds the response frame of their results
+ * (see {@link Protocol}). A malformed statement, or one that the engine refuses, throws a {@link RuntimeException},
+ * so the transaction is rolled back and the client receives the message of the exception.
+ */
+class RequestHandler {
+    /**
+     * The files that clients may name: record files of the database directory. Temporary files, whose names start
+     * with "temp", are removed at startup, and the other files of the directory belong to the engine.
+     */
+    private static final Pattern FILE_NAME = Pattern.compile("(?!temp)[A-Za-z0-9_\\-]+\\.tbl");
+
+    private final FreeSpaceMap freeSpaceMap;
+
+    RequestHandler(FreeSpaceMap freeSpaceMap) {
+        this.freeSpaceMap = freeSpaceMap;
+    }
+
+    /**
+     * @param transaction the transaction of this attempt of the request
+     * @param request the frame of the request, after its length
+     * @return the response frame, with its length
+     */
+    byte[] execute(Transaction transaction, byte[] request) {
+        ByteBuffer buffer = ByteBuffer.wrap(request);
+        FrameWriter response = new FrameWriter(64);
+        response.putInt(0);
+        response.putInt(buffer.getInt());
+        response.putByte(Protocol.OK);
+        Map<String, RecordFile> files = new HashMap<>();
+        try {
+            int statements = buffer.getShort() & 0xFFFF;
+            for (int i = 0; i < statements; i++) execute(transaction, buffer, files, response);
+            if (buffer.hasRemaining()) throw new RuntimeException("the request has " + buffer.remaining() + " bytes after its statements");
+        }
+        catch (BufferUnderflowException e) {
+            throw new RuntimeException("the request ends in the middle of a statement");
+        }
+        finally {
+            for (RecordFile recordFile : files.values()) recordFile.close();
+        }
+        response.setInt(0, response.position() - Integer.BYTES);
+        return response.toByteArray();
+    }
+
+    private void execute(Transaction transaction, ByteBuffer buffer, Map<String, RecordFile> files, FrameWriter response) {
+        byte operator = buffer.get();
+        String fileName = Protocol.readString(buffer);
+        if (!FILE_NAME.matcher(fileName).matches()) throw new RuntimeException("'" + fileName + "' is not the name of a record file");
+        RecordFile recordFile = files.computeIfAbsent(fileName, name -> new RecordFile(transaction, name, freeSpaceMap));
+        if (operator == Protocol.INSERT) {
+            recordFile.insert(buffer.getShort() & 0xFFFF);
+            setFields(recordFile, buffer);
+            RecordId recordId = recordFile.getRecordId();
+            response.putInt(recordId.getBlockNumber());
+            response.putInt(recordId.getSlot());
+        }
+        else if (operator == Protocol.READ) {
+            moveToRecord(transaction, recordFile, fileName, buffer);
+            getColumns(recordFile, buffer, response);
+        }
+        else if (operator == Protocol.UPDATE) {
+            moveToRecord(transaction, recordFile, fileName, buffer);
+            setFields(recordFile, buffer);
+        }
+        else if (operator == Protocol.DELETE) {
+            moveToRecord(transaction, recordFile, fileName, buffer);
+            recordFile.delete();
+        }
+        else if (operator == Protocol.SCAN) {
+            int limit = buffer.getInt();
+            int columns = buffer.position();
+            int countPosition = response.position();
+            response.putInt(0);
+            int rows = 0;
+            recordFile.beforeFirst();
+            while (rows < limit && recordFile.next()) {
+                RecordId recordId = recordFile.getRecordId();
+                response.putInt(recordId.getBlockNumber());
+                response.putInt(recordId.getSlot());
+                buffer.position(columns);
+                getColumns(recordFile, buffer, response);
+                rows++;
+            }
+            //the columns are skipped when the file has no row
+            buffer.position(columns);
+            skipColumns(buffer);
+            response.setInt(countPosition, rows);
+        }
+        else throw new RuntimeException("unknown statement operator " + operator);
+    }
+
+    /**
+     * Moves to the record of the statement, after checking that its block belongs to the file.
+     */
+    private void moveToRecord(Transaction transaction, RecordFile recordFile, String fileName, ByteBuffer buffer) {
+        int blockNumber = buffer.getInt(), slot = buffer.getInt();
+        if (blockNumber < 0 || blockNumber >= transaction.size(fileName) || slot < 0)
+            throw new RuntimeException(new RecordId(blockNumber, slot) + " is not a record of " + fileName);
+        recordFile.moveToRecordId(new RecordId(blockNumber, slot));
+    }
+
+    private void setFields(RecordFile recordFile, ByteBuffer buffer) {
+        int fields = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < fields; i++) {
+            int offset = buffer.getShort() & 0xFFFF;
+            byte type = buffer.get();
+            if (type == Protocol.INT) recordFile.setInt(offset, buffer.getInt());
+            else if (type == Protocol.STRING) recordFile.setString(offset, Protocol.readString(buffer));
+            else throw new RuntimeException("unknown value type " + type);
+        }
+    }
+
+    private void getColumns(RecordFile recordFile, ByteBuffer buffer, FrameWriter response) {
+        int columns = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < columns; i++) {
+            int offset = buffer.getShort() & 0xFFFF;
+            byte type = buffer.get();
+            response.putByte(type);
+            if (type == Protocol.INT) response.putInt(recordFile.getInt(offset));
+            else if (type == Protocol.STRING) response.putString(recordFile.getString(offset));
+            else throw new RuntimeException("unknown value type " + type);
+        }
+    }
+
+    private void skipColumns(ByteBuffer buffer) {
+        int columns = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() < columns * (Short.BYTES + 1)) throw new BufferUnderflowException();
+        buffer.position(buffer.position() + columns * (Short.BYTES + 1));
+    }
+}
@@ -0,0 +1,91 @@
+package AhmedDB.server;
+
+import AhmedDB.record.RecordId;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The response of the server to a {@link Batch}. When the batch succeeded, the results of its statements are read
+ * in order: the record id of an insert, the values of the columns of a read, and for a scan the number of rows
+ * followed, for each row, by its record id and its values. Updates and deletes have no result.
+ */
+public class Response {
+    private final int requestId;
+    private final boolean ok;
+    private final String error;
+    private final ByteBuffer results;
+
+    /**
+     * @param frame the response frame, without its length
+     */
+    Response(byte[] frame) {
+        results = ByteBuffer.wrap(frame);
+        requestId = results.getInt();
+        ok = results.get() == Protocol.OK;
+        error = ok ? null : Protocol.readString(results);
+    }
+
+    /**
+     * @return the id that {@link DatabaseClient#send(Batch)} returned for the request
+     */
+    public int getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return true if every statement of the batch ran and the transaction committed
+     */
+    public boolean isOk() {
+        return ok;
+    }
+
+    /**
+     * @return the reason the batch was rolled back, or null if it succeeded
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return the record id of an insert, or of the next row of a scan
+     */
+    public RecordId nextRecordId() {
+        checkOk();
+        return new RecordId(results.getInt(), results.getInt());
+    }
+
+    public int nextInt() {
+        checkType(Protocol.INT);
+        return results.getInt();
+    }
+
+    public String nextString() {
+        checkType(Protocol.STRING);
+        return Protocol.readString(results);
+    }
+
+    /**
+     * @return the number of rows of a scan
+     */
+    public int nextRowCount() {
+        checkOk();
+        return results.getInt();
+    }
+
+    /**
+     * @return true if results remain to be read
+     */
+    public boolean hasNext() {
+        return ok && results.hasRemaining();
+    }
+
+    private void checkType(byte type) {
+        checkOk();
+        byte next = results.get();
+        if (next != type) throw new RuntimeException("the next result is not of type " + type + " but " + next);
+    }
+
+    private void checkOk() {
+        if (!ok) throw new RuntimeException("request " + requestId + " failed: " + error);
+    }
+}
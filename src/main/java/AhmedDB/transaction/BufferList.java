@@ -0,0 +1,75 @@
+package AhmedDB.transaction;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.LogicalBlock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manages the transaction's currently pinned buffers.
+ * A block may be pinned several times by the same transaction, so the list keeps one entry
+ * per pin, and the buffer of each block.
+ */
+class BufferList {
+    private final Map<LogicalBlock, Buffer> buffers = new HashMap<>();
+    private final List<LogicalBlock> pins = new ArrayList<>();
+    private final BufferManager bufferManager;
+    private final int txNum;
+
+    /**
+     * @param bufferManager the buffer manager
+     * @param txNum the id of the transaction, the pins are made on its behalf
+     */
+    BufferList(BufferManager bufferManager, int txNum) {
+        this.bufferManager = bufferManager;
+        this.txNum = txNum;
+    }
+
+    /**
+     * Returns the buffer pinned to the specified block.
+     * The method returns null if the transaction has not pinned the block.
+     * @param logicalBlock a reference to the disk block
+     * @return the buffer pinned to that block
+     */
+    Buffer getBuffer(LogicalBlock logicalBlock) {
+        return buffers.get(logicalBlock);
+    }
+
+    /**
+     * Pin the block and keep track of the buffer internally.
+     * @param logicalBlock a reference to the disk block
+     */
+    void pin(LogicalBlock logicalBlock) {
+        Buffer buffer = bufferManager.pin(logicalBlock, txNum);
+        buffers.put(logicalBlock, buffer);
+        pins.add(logicalBlock);
+    }
+
+    /**
+     * Unpin the specified block.
+     * @param logicalBlock a reference to the disk block
+     */
+    void unpin(LogicalBlock logicalBlock) {
+        Buffer buffer = buffers.get(logicalBlock);
+        bufferManager.unpin(buffer, txNum);
+        pins.remove(logicalBlock);
+        if (!pins.contains(logicalBlock))
+            buffers.remove(logicalBlock);
+    }
+
+    /**
+     * Unpin any buffers still pinned by this transaction.
+     */
+    void unpinAll() {
+        for (LogicalBlock logicalBlock : pins) {
+            Buffer buffer = buffers.get(logicalBlock);
+            bufferManager.unpin(buffer, txNum);
+        }
+        buffers.clear();
+        pins.clear();
+    }
+}
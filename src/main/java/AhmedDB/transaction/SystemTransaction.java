@@ -0,0 +1,113 @@
+package AhmedDB.transaction;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.log.SetBytesRecord;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import AhmedDB.transaction.recovery.IndexChange;
+import AhmedDB.transaction.recovery.IndexLogger;
+import AhmedDB.transaction.recovery.RecoveryManager;
+
+import java.util.Arrays;
+
+/**
+ * A short transaction run by the engine itself to change a structure of the database atomically,
+ * such as the split of an index node, on behalf of the transaction that triggered the change.
+ * Its updates are logged with their old and new bytes, like the updates of a {@link Transaction}, so recovery
+ * redoes them, and rolls the system transaction back if the system crashed before it committed.<br>
+ * Unlike a {@link Transaction}, it takes no lock: the caller latches the pages it changes until the system
+ * transaction ends, so no other thread sees or changes them halfway. Its changes stay when the transaction that
+ * triggered it rolls back, which is why it is only used for changes that are correct whatever that transaction does,
+ * such as a split, which moves entries without adding or removing any; the entries themselves are changed under the
+ * transaction (see {@link Transaction#changeIndex(IndexChange)}).
+ * Its commit does not force the log (see {@link RecoveryManager#commit(boolean)}).
+ */
+public class SystemTransaction implements IndexLogger {
+    private final int txNum;
+    private final RecoveryManager recoveryManager;
+    /**
+     * The largest range of bytes that one log record holds; a larger range is logged in several records.
+     */
+    private final int maxLength;
+
+    /**
+     * Starts a system transaction, which writes its start record.
+     */
+    public SystemTransaction(LogManager logManager, BufferManager bufferManager, CheckpointManager checkpointManager) {
+        txNum = Transaction.nextTxNumber();
+        recoveryManager = new RecoveryManager(null, txNum, logManager, bufferManager, checkpointManager);
+        maxLength = SetBytesRecord.maxLength(logManager);
+    }
+
+    /**
+     * Logs the update of a range of bytes of a pinned buffer, then writes the bytes into its page.
+     * @param buffer a buffer latched by the caller
+     * @param offset the position of the first byte in the page
+     * @param bytes the new bytes of the range
+     */
+    public void setBytes(Buffer buffer, int offset, byte[] bytes) {
+        setBytes(buffer, offset, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Logs the update of a range of bytes of a pinned buffer, taken from a part of an array,
+     * then writes the bytes into its page.
+     * @param buffer a buffer latched by the caller
+     * @param offset the position of the first byte in the page
+     * @param bytes the array that holds the new bytes
+     * @param start the position of the first new byte in the array
+     * @param length the number of bytes
+     */
+    public void setBytes(Buffer buffer, int offset, byte[] bytes, int start, int length) {
+        for (int done = 0; done < length; done += maxLength) {
+            int chunk = Math.min(maxLength, length - done);
+            byte[] newBytes = start + done == 0 && chunk == bytes.length ? bytes : Arrays.copyOfRange(bytes, start + done, start + done + chunk);
+            long lsn = recoveryManager.setBytes(buffer, offset + done, newBytes);
+            buffer.getAssociatedPage().writeBytes(offset + done, newBytes, 0, chunk);
+            buffer.setModified(txNum, lsn);
+        }
+    }
+
+    /**
+     * Logs the ranges of a change of an index block one by one, with their old bytes, then writes them,
+     * for a change of the structure of the index, such as the insert of a separator into an inner node.
+     * @param change the change of a block latched by the caller
+     */
+    @Override
+    public void changeIndex(IndexChange change) {
+        int[] offsets = change.getWrittenOffsets();
+        byte[][] bytes = change.getWrittenBytes();
+        for (int i = 0; i < offsets.length; i++) setBytes(change.getBuffer(), offsets[i], bytes[i]);
+    }
+
+    /**
+     * Writes the commit record, without forcing the log.
+     */
+    public void commit() {
+        commit(false);
+    }
+
+    /**
+     * Writes the commit record, and forces the log up to it if requested, for a system transaction whose changes
+     * must be durable before its caller returns, since no later transaction commits them.
+     * @param forceLog true if the log must be forced up to the commit record
+     */
+    public void commit(boolean forceLog) {
+        recoveryManager.commit(forceLog);
+    }
+
+    /**
+     * Undoes the updates of the system transaction, which its caller still latches.
+     */
+    public void rollback() {
+        recoveryManager.rollback();
+    }
+
+    /**
+     * @return the id of the system transaction, taken from the same sequence as the ids of the transactions
+     */
+    public int getTxNum() {
+        return txNum;
+    }
+}
@@ -0,0 +1,389 @@
+package AhmedDB.transaction;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.log.LogManager;
+import AhmedDB.log.SetBytesRecord;
+import AhmedDB.transaction.concurrency.ConcurrencyManager;
+import AhmedDB.transaction.concurrency.LockMode;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.concurrency.Snapshot;
+import AhmedDB.transaction.concurrency.VersionStore;
+import AhmedDB.transaction.concurrency.WriteConflictException;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import AhmedDB.transaction.recovery.IndexChange;
+import AhmedDB.transaction.recovery.IndexLogger;
+import AhmedDB.transaction.recovery.RecoveryManager;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides transaction management for clients,
+ * ensuring that all transactions are serializable, recoverable,
+ * and in general satisfy the ACID properties.
+ * Each transaction has a {@link RecoveryManager}, which logs its updates and undoes them on rollback,
+ * and a {@link ConcurrencyManager}, which locks the blocks it reads and writes until it ends.<br>
+ * A transaction created with a {@link VersionStore} runs under snapshot isolation instead: it reads the
+ * values committed when it started, without any lock, and it only locks the blocks it writes, so its reads
+ * never wait for writers and never block them. Either all the transactions of the database use the
+ * version store, or none does, because readers find the older versions of a value only if its writers recorded them.<br>
+ * The values of a block are stored after the page header of the buffer
+ * (see {@link Buffer#PAGE_HEADER_SIZE}), so offsets must not be smaller than that size.<br>
+ * The entries that a transaction inserts into an index, or deletes from it, are logged under the transaction
+ * too (see {@link #changeIndex(IndexChange)}), so they are undone when it rolls back.
+ */
+public class Transaction implements IndexLogger {
+    private static final AtomicInteger nextTxNum = new AtomicInteger(0);
+    /**
+     * A block number that does not exist, whose lock stands for the end of a file:
+     * reading the size of a file locks it in shared mode, appending a block locks it in exclusive mode.
+     */
+    private static final int END_OF_FILE = -1;
+
+    private final RecoveryManager recoveryManager;
+    private final ConcurrencyManager concurrencyManager;
+    private final BufferManager bufferManager;
+    private final FileManager fileManager;
+    private final int txNum;
+    private final BufferList myBuffers;
+    private final VersionStore versionStore;
+    /**
+     * The snapshot read by the transaction, or null if it does not run under snapshot isolation.
+     */
+    private final Snapshot snapshot;
+    /**
+     * The largest range of bytes that one log record holds; a larger range is logged in several records.
+     */
+    private final int maxBytesLength;
+
+    /**
+     * Creates a new transaction and its associated
+     * recovery and concurrency managers.
+     * This constructor depends on the file, log, and buffer managers,
+     * and on the lock table and checkpoint manager that are shared by all the transactions.
+     */
+    public Transaction(FileManager fileManager, LogManager logManager, BufferManager bufferManager, LockTable lockTable, CheckpointManager checkpointManager) {
+        this(fileManager, logManager, bufferManager, lockTable, null, checkpointManager);
+    }
+
+    /**
+     * Creates a new transaction that runs under snapshot isolation, if the version store is not null.
+     * Its snapshot is taken when it is created.
+     * @param versionStore the version store shared by all the transactions, or null to use locking only
+     */
+    public Transaction(FileManager fileManager, LogManager logManager, BufferManager bufferManager, LockTable lockTable, VersionStore versionStore, CheckpointManager checkpointManager) {
+        this.fileManager = fileManager;
+        this.bufferManager = bufferManager;
+        this.versionStore = versionStore;
+        txNum = nextTxNumber();
+        recoveryManager = new RecoveryManager(this, txNum, logManager, bufferManager, checkpointManager);
+        concurrencyManager = new ConcurrencyManager(lockTable, txNum);
+        myBuffers = new BufferList(bufferManager, txNum);
+        snapshot = versionStore == null ? null : versionStore.begin();
+        maxBytesLength = SetBytesRecord.maxLength(logManager);
+    }
+
+    /**
+     * Commits the current transaction.
+     * Writes the commit record to the log, releases all locks, and unpins any pinned buffers.
+     */
+    public void commit() {
+        recoveryManager.commit();
+        if (snapshot != null) versionStore.commit(snapshot);
+        concurrencyManager.release();
+        myBuffers.unpinAll();
+    }
+
+    /**
+     * Rolls back the current transaction.
+     * Undoes any modified values, writes a rollback record to the log,
+     * releases all locks, and unpins any pinned buffers.
+     */
+    public void rollback() {
+        recoveryManager.rollback();
+        if (snapshot != null) versionStore.abort(snapshot);
+        concurrencyManager.release();
+        myBuffers.unpinAll();
+    }
+
+    /**
+     * Brings the database back to a consistent state after a crash.
+     * It is called during system startup, before user transactions begin.
+     * The locks taken while undoing the unfinished transactions are released afterwards.
+     */
+    public void recover() {
+        recoveryManager.recover();
+        concurrencyManager.release();
+    }
+
+    /**
+     * Pins the specified block.
+     * The transaction manages the buffer for the client.
+     * @param logicalBlock a reference to the disk block
+     */
+    public void pin(LogicalBlock logicalBlock) {
+        myBuffers.pin(logicalBlock);
+    }
+
+    /**
+     * Unpins the specified block.
+     * The transaction looks up the buffer pinned to this block, and unpins it.
+     * @param logicalBlock a reference to the disk block
+     */
+    public void unpin(LogicalBlock logicalBlock) {
+        myBuffers.unpin(logicalBlock);
+    }
+
+    /**
+     * Returns the integer value stored at the specified offset of the specified block.
+     * The method first obtains a shared lock on the block, then it calls the buffer to retrieve the value.
+     * Under snapshot isolation, no lock is taken and the value is the one seen by the snapshot.
+     * @param logicalBlock a reference to a disk block, which must be pinned
+     * @param offset the byte offset within that block
+     * @return the integer stored at that offset
+     */
+    public int getInt(LogicalBlock logicalBlock, int offset) {
+        Buffer buffer = myBuffers.getBuffer(logicalBlock);
+        if (snapshot == null) {
+            concurrencyManager.sLock(logicalBlock);
+            return buffer.getAssociatedPage().getInt(offset);
+        }
+        Object version = versionStore.read(snapshot, logicalBlock, offset);
+        if (version != null) return (Integer) version;
+        int val = buffer.getAssociatedPage().getInt(offset);
+        version = versionStore.read(snapshot, logicalBlock, offset);
+        return version == null ? val : (Integer) version;
+    }
+
+    /**
+     * Returns the string value stored at the specified offset of the specified block,
+     * the same way as {@link #getInt(LogicalBlock, int)}.
+     * @param logicalBlock a reference to a disk block, which must be pinned
+     * @param offset the byte offset within that block
+     * @return the string stored at that offset
+     */
+    public String getString(LogicalBlock logicalBlock, int offset) {
+        Buffer buffer = myBuffers.getBuffer(logicalBlock);
+        if (snapshot == null) {
+            concurrencyManager.sLock(logicalBlock);
+            return buffer.getAssociatedPage().getString(offset);
+        }
+        Object version = versionStore.read(snapshot, logicalBlock, offset);
+        if (version != null) return (String) version;
+        String val = buffer.getAssociatedPage().getString(offset);
+        version = versionStore.read(snapshot, logicalBlock, offset);
+        return version == null ? val : (String) version;
+    }
+
+    /**
+     * Copies the values of the specified block into an array, so that a scan can decode all its records at once.
+     * The method first obtains a shared lock on the block, so the copy stays equal to the page until the transaction ends.
+     * It cannot be used under snapshot isolation, where a value may have to be read from the version store.
+     * @param logicalBlock a reference to a disk block, which must be pinned
+     * @param bytes an array of the size of a block, which receives the values after the page header
+     */
+    public void readBlock(LogicalBlock logicalBlock, byte[] bytes) {
+        if (snapshot != null) throw new RuntimeException("a block cannot be copied under snapshot isolation");
+        Buffer buffer = myBuffers.getBuffer(logicalBlock);
+        concurrencyManager.sLock(logicalBlock);
+        buffer.getAssociatedPage().readBytes(Buffer.PAGE_HEADER_SIZE, bytes, Buffer.PAGE_HEADER_SIZE, bytes.length - Buffer.PAGE_HEADER_SIZE);
+    }
+
+    /**
+     * Stores an integer at the specified offset of the specified block.
+     * The method first obtains an exclusive lock on the block.
+     * It then writes an update record to the log, if requested, and stores the value in the page.
+     * Finally, it marks the buffer as modified by the transaction, with the LSN of the log record.
+     * Under snapshot isolation, the value of the page is kept in the version store before it is replaced.
+     * @param logicalBlock a reference to the disk block, which must be pinned
+     * @param offset a byte offset within that block
+     * @param val the value to be stored
+     * @param okToLog true if the update must be logged; it is false when the value is not part of the
+     *                database yet, such as the initial values of a new block
+     * @throws WriteConflictException if the transaction runs under snapshot isolation and the value was
+     * changed by a transaction that committed after its snapshot was taken
+     */
+    public void setInt(LogicalBlock logicalBlock, int offset, int val, boolean okToLog) {
+        concurrencyManager.xLock(logicalBlock);
+        Buffer buffer = myBuffers.getBuffer(logicalBlock);
+        if (snapshot != null)
+            versionStore.recordUpdate(snapshot, logicalBlock, offset, buffer.getAssociatedPage().getInt(offset), val);
+        long lsn = -1;
+        if (okToLog)
+            lsn = recoveryManager.setInt(buffer, offset, val);
+        buffer.getAssociatedPage().setInt(offset, val);
+        buffer.setModified(txNum, lsn);
+    }
+
+    /**
+     * Stores a string at the specified offset of the specified block, the same way as
+     * {@link #setInt(LogicalBlock, int, int, boolean)}.
+     * @param logicalBlock a reference to the disk block, which must be pinned
+     * @param offset a byte offset within that block
+     * @param val the value to be stored
+     * @param okToLog true if the update must be logged
+     */
+    public void setString(LogicalBlock logicalBlock, int offset, String val, boolean okToLog) {
+        concurrencyManager.xLock(logicalBlock);
+        Buffer buffer = myBuffers.getBuffer(logicalBlock);
+        if (snapshot != null)
+            versionStore.recordUpdate(snapshot, logicalBlock, offset, buffer.getAssociatedPage().getString(offset), val);
+        long lsn = -1;
+        if (okToLog)
+            lsn = recoveryManager.setString(buffer, offset, val);
+        buffer.getAssociatedPage().setString(offset, val);
+        buffer.setModified(txNum, lsn);
+    }
+
+    /**
+     * Stores a range of bytes at the specified offset of the specified block, the same way as
+     * {@link #setInt(LogicalBlock, int, int, boolean)}, with one log record that holds the old and the new bytes
+     * of the range, or several if the range does not fit in one log record.
+     * It is meant for a range that spans many values, such as a record that a slotted page moves.<br>
+     * The version store only keeps versions of ints and strings, so under snapshot isolation the range must hold
+     * no value that another snapshot reads, such as the free space of a slotted page.
+     * @param logicalBlock a reference to the disk block, which must be pinned
+     * @param offset a byte offset within that block
+     * @param val the bytes to be stored
+     * @param okToLog true if the update must be logged
+     */
+    public void setBytes(LogicalBlock logicalBlock, int offset, byte[] val, boolean okToLog) {
+        concurrencyManager.xLock(logicalBlock);
+        Buffer buffer = myBuffers.getBuffer(logicalBlock);
+        for (int done = 0; done < val.length; done += maxBytesLength) {
+            int length = Math.min(maxBytesLength, val.length - done);
+            byte[] bytes = done == 0 && length == val.length ? val : Arrays.copyOfRange(val, done, done + length);
+            long lsn = -1;
+            if (okToLog)
+                lsn = recoveryManager.setBytes(buffer, offset + done, bytes);
+            buffer.getAssociatedPage().writeBytes(offset + done, bytes, 0, length);
+            buffer.setModified(txNum, lsn);
+        }
+    }
+
+    /**
+     * Logs the insert or the delete of an index entry under the transaction, then writes it into the block.
+     * The index latches the block instead of locking it, since the block also holds the entries of other
+     * transactions; the change is undone logically, by the index, if the transaction rolls back.
+     * @param change the change of a block latched by the index
+     */
+    @Override
+    public void changeIndex(IndexChange change) {
+        change.apply(txNum, recoveryManager.changeIndex(change));
+    }
+
+    /**
+     * Obtains an exclusive lock on the block before the transaction reads it.
+     * A transaction that reads a value and then updates it would otherwise take a shared lock and upgrade it,
+     * and two transactions doing so on the same block at once deadlock.
+     * @param logicalBlock a reference to the disk block
+     */
+    public void lockForUpdate(LogicalBlock logicalBlock) {
+        concurrencyManager.xLock(logicalBlock);
+    }
+
+    /**
+     * Obtains a shared lock on the block without reading it, for a scan that skips the block because a summary
+     * shows that it holds no record the scan looks for: the block cannot change until the transaction ends, and
+     * a writer that holds it is waited for, so its values are in the summary when it is checked.
+     * Under snapshot isolation, no lock is taken.
+     * @param logicalBlock a reference to the disk block
+     */
+    public void lockForRead(LogicalBlock logicalBlock) {
+        if (snapshot == null) concurrencyManager.sLock(logicalBlock);
+    }
+
+    /**
+     * Returns the number of blocks in the specified file.
+     * This method first obtains a shared lock on the "end of the file",
+     * before asking the file manager to return the file size.
+     * Under snapshot isolation, no lock is taken, so the size includes the blocks appended by active
+     * transactions; the values of these blocks have their initial value in the snapshot.
+     * @param fileName the name of the file
+     * @return the number of blocks in the file
+     */
+    public int size(String fileName) {
+        if (snapshot == null) concurrencyManager.sLock(new LogicalBlock(fileName, END_OF_FILE));
+        return fileManager.length(fileName);
+    }
+
+    /**
+     * Appends a new block to the end of the specified file
+     * and returns a reference to it.
+     * This method first obtains an exclusive lock on the "end of the file", before performing the append.
+     * @param fileName the name of the file
+     * @return a reference to the newly-created disk block
+     */
+    public LogicalBlock append(String fileName) {
+        concurrencyManager.xLock(new LogicalBlock(fileName, END_OF_FILE));
+        return fileManager.append(fileName);
+    }
+
+    /**
+     * Locks the whole file exclusively, for a bulk load, so that no other transaction reads or writes any of its
+     * blocks, or appends to it, until this one ends; the blocks that the load appends are then only seen after
+     * its commit. It cannot be used under snapshot isolation, whose readers take no lock.
+     * @param fileName the name of the file
+     * @return the number of blocks in the file
+     */
+    public int lockForLoad(String fileName) {
+        if (snapshot != null) throw new RuntimeException("a file cannot be bulk loaded under snapshot isolation");
+        concurrencyManager.lockFile(fileName, LockMode.X);
+        return fileManager.length(fileName);
+    }
+
+    /**
+     * Appends blocks to the end of the specified file, writing their contents directly to the disk with a single
+     * write instead of logging their values and going through the buffer pool.
+     * The method first locks the file (see {@link #lockForLoad(String)}), then it logs the range of the blocks,
+     * and forces the log, so that the blocks are emptied if the transaction does not commit. Data files are
+     * written synchronously, so the blocks are on the disk before the commit record, and recovery has nothing
+     * to redo for them.
+     * @param fileName the name of the file
+     * @param pages the contents of the blocks, one after the other; the page header of each block is cleared
+     * @param numBlocks the number of blocks to append
+     * @return the number of the first appended block
+     */
+    public int appendBlocks(String fileName, byte[] pages, int numBlocks) {
+        int firstBlock = lockForLoad(fileName);
+        int blockSize = fileManager.blockSize();
+        for (int i = 0; i < numBlocks; i++)
+            Arrays.fill(pages, i * blockSize, i * blockSize + Buffer.PAGE_HEADER_SIZE, (byte) 0);
+        recoveryManager.bulkLoad(fileName, firstBlock, numBlocks);
+        fileManager.write(new LogicalBlock(fileName, firstBlock), numBlocks, new Page(pages));
+        return firstBlock;
+    }
+
+    public int blockSize() {
+        return fileManager.blockSize();
+    }
+
+    /**
+     * @return the number of unpinned buffers
+     */
+    public int availableBuffs() {
+        return bufferManager.available();
+    }
+
+    /**
+     * @return true if the transaction runs under snapshot isolation
+     */
+    public boolean isSnapshotIsolated() {
+        return snapshot != null;
+    }
+
+    /**
+     * @return the id of the transaction
+     */
+    public int getTxNum() {
+        return txNum;
+    }
+
+    static int nextTxNumber() {
+        return nextTxNum.incrementAndGet();
+    }
+}
@@ -0,0 +1,162 @@
+package AhmedDB.transaction;
+
+import AhmedDB.buffer.BufferAbortException;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.concurrency.LockAbortException;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.concurrency.VersionStore;
+import AhmedDB.transaction.concurrency.WriteConflictException;
+import AhmedDB.transaction.recovery.CheckpointManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The embedded entry point for running transactions. A unit of work is a function of a {@link Transaction}:
+ * the executor creates the transaction, runs the function, and commits; if the function fails, the transaction
+ * is rolled back. A transaction aborted by the engine (a lock or buffer wait that failed, or a write conflict
+ * under snapshot isolation) is rolled back and run again, up to a maximum number of attempts.<br>
+ * Each submitted transaction runs on its own thread. Virtual threads are used when the Java runtime provides
+ * them, so that tens of thousands of clients can wait for locks, buffers and log writes at the same time;
+ * otherwise a platform thread is used (see {@link #newThreadPerTaskExecutor(String)}).
+ */
+public class TransactionExecutor implements AutoCloseable {
+    /**
+     * The default number of times a transaction is run before the abort is passed to the client.
+     */
+    public static final int DEFAULT_ATTEMPTS = 10;
+
+    private final FileManager fileManager;
+    private final LogManager logManager;
+    private final BufferManager bufferManager;
+    private final LockTable lockTable;
+    private final VersionStore versionStore;
+    private final CheckpointManager checkpointManager;
+    private final ExecutorService threads = newThreadPerTaskExecutor("transaction");
+    private final int maxAttempts;
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    /**
+     * Creates an executor whose transactions use two-phase locking.
+     */
+    public TransactionExecutor(FileManager fileManager, LogManager logManager, BufferManager bufferManager, LockTable lockTable, CheckpointManager checkpointManager) {
+        this(fileManager, logManager, bufferManager, lockTable, null, checkpointManager, DEFAULT_ATTEMPTS);
+    }
+
+    /**
+     * @param versionStore the version store, so that transactions run under snapshot isolation, or null
+     * @param maxAttempts the number of times a transaction is run before the abort is passed to the client
+     */
+    public TransactionExecutor(FileManager fileManager, LogManager logManager, BufferManager bufferManager, LockTable lockTable, VersionStore versionStore, CheckpointManager checkpointManager, int maxAttempts) {
+        this.fileManager = fileManager;
+        this.logManager = logManager;
+        this.bufferManager = bufferManager;
+        this.lockTable = lockTable;
+        this.versionStore = versionStore;
+        this.checkpointManager = checkpointManager;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Runs the unit of work in a transaction on a thread of its own.
+     * @param work the unit of work, it may be run several times
+     * @return the future result of the work, completed once the transaction has committed
+     */
+    public <T> CompletableFuture<T> submit(Function<Transaction, T> work) {
+        return CompletableFuture.supplyAsync(() -> run(work), threads);
+    }
+
+    /**
+     * Runs the unit of work in a transaction on the calling thread.
+     * @param work the unit of work, it may be run several times
+     * @return the result of the work
+     * @throws RuntimeException the exception of the work, or the abort of its last attempt
+     */
+    public <T> T run(Function<Transaction, T> work) {
+        for (int attempt = 1; ; attempt++) {
+            Transaction transaction = new Transaction(fileManager, logManager, bufferManager, lockTable, versionStore, checkpointManager);
+            try {
+                T result = work.apply(transaction);
+                transaction.commit();
+                commits.increment();
+                return result;
+            }
+            catch (LockAbortException | BufferAbortException | WriteConflictException e) {
+                transaction.rollback();
+                if (attempt >= maxAttempts) throw e;
+                retries.increment();
+            }
+            catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return the number of committed transactions
+     */
+    public long getCommitCount() {
+        return commits.sum();
+    }
+
+    /**
+     * @return the number of times a transaction was aborted by the engine and run again
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * Stops accepting transactions; the running ones complete.
+     */
+    @Override
+    public void close() {
+        threads.shutdown();
+    }
+
+    /**
+     * Returns an executor that runs each task on a new thread: a virtual thread if the Java runtime
+     * supports them (Java 21, or an earlier release with preview features enabled), else a daemon platform thread
+     * from a pool that grows with the number of running tasks.
+     * The virtual thread API is looked up by reflection, so the engine still compiles and runs on Java 17.
+     * @param name the prefix of the names of the platform threads
+     * @return the executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String name) {
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        if (virtualThreads != null) return virtualThreads;
+        LongAdder created = new LongAdder();
+        return Executors.newCachedThreadPool(runnable -> {
+            created.increment();
+            Thread thread = new Thread(runnable, name + "-" + created.sum());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return true if the threads of {@link #newThreadPerTaskExecutor(String)} are virtual threads
+     */
+    public static boolean hasVirtualThreads() {
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        if (virtualThreads == null) return false;
+        virtualThreads.shutdown();
+        return true;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
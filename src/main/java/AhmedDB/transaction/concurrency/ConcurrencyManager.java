@@ -0,0 +1,87 @@
+package AhmedDB.transaction.concurrency;
+
+import AhmedDB.file.LogicalBlock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Each transaction has its own ConcurrencyManager object, which asks the shared {@link LockTable}
+ * for the locks of the transaction and remembers them, following strict two-phase locking:
+ * locks are only acquired while the transaction runs, and all of them are released when it commits
+ * or rolls back.<br>
+ * Locking is multi-granularity. A block is locked after its file, which plays the role of a table,
+ * has been locked in the matching intention mode: {@link #sLock(LogicalBlock)} takes IS on the file and
+ * S on the block, {@link #xLock(LogicalBlock)} takes IX on the file and X on the block. A whole file
+ * can be locked with {@link #lockFile(String, LockMode)}, for example in S mode for a scan, without
+ * locking its blocks one by one. Asking for a mode on an item that is already locked upgrades the lock
+ * to the mode that grants both, and nothing is asked from the lock table if the held lock already covers it.
+ */
+public class ConcurrencyManager {
+    private final LockTable lockTable;
+    private final int txNum;
+    /**
+     * The locks held by the transaction, mapped to their mode. Only the transaction uses it,
+     * so it needs no synchronization.
+     */
+    private final Map<Object, LockMode> locks = new HashMap<>();
+
+    /**
+     * @param lockTable the lock table shared by all the transactions
+     * @param txNum the id of the transaction
+     */
+    public ConcurrencyManager(LockTable lockTable, int txNum) {
+        this.lockTable = lockTable;
+        this.txNum = txNum;
+    }
+
+    /**
+     * Obtains a shared lock on the block, after an intention shared lock on its file.
+     * @param logicalBlock a reference to the disk block
+     */
+    public void sLock(LogicalBlock logicalBlock) {
+        lock(logicalBlock.getFileName(), LockMode.IS);
+        lock(logicalBlock, LockMode.S);
+    }
+
+    /**
+     * Obtains an exclusive lock on the block, after an intention exclusive lock on its file.
+     * @param logicalBlock a reference to the disk block
+     */
+    public void xLock(LogicalBlock logicalBlock) {
+        lock(logicalBlock.getFileName(), LockMode.IX);
+        lock(logicalBlock, LockMode.X);
+    }
+
+    /**
+     * Locks a whole file in the specified mode.
+     * @param fileName the name of the file
+     * @param mode the mode of the lock
+     */
+    public void lockFile(String fileName, LockMode mode) {
+        lock(fileName, mode);
+    }
+
+    /**
+     * Locks a data item in the specified mode, or upgrades the lock that the transaction holds on it.
+     * The caller is responsible for locking the ancestors of the item in the matching intention modes.
+     * @param item the data item
+     * @param mode the mode of the lock
+     */
+    public void lock(Object item, LockMode mode) {
+        LockMode held = locks.get(item);
+        if (held != null && held.covers(mode)) return;
+        LockMode target = held == null ? mode : held.supremum(mode);
+        lockTable.lock(txNum, item, target);
+        locks.put(item, target);
+    }
+
+    /**
+     * Releases all the locks of the transaction.
+     */
+    public void release() {
+        for (Object item : locks.keySet())
+            lockTable.unlock(txNum, item);
+        locks.clear();
+    }
+}
@@ -0,0 +1,130 @@
+package AhmedDB.transaction.concurrency;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.metrics.DeadlockMetrics;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The deadlock detector, which finds the transactions that wait for each other forever and aborts one
+ * transaction of each cycle, instead of letting every wait fail after a fixed time period.<br>
+ * Each pass builds a {@link WaitForGraph} from the lock waits of the {@link LockTable} and the buffer waits of
+ * the {@link BufferManager}, read while both are locked so that the graph describes one point in time.
+ * The youngest transaction of each cycle is chosen as the victim, since it has done the least work:
+ * its wait fails at once with a {@link LockAbortException} or a {@link AhmedDB.buffer.BufferAbortException},
+ * and its client rolls it back, which releases its locks and its buffers.<br>
+ * While the background thread runs (see {@link #start(long)}), the lock table and the buffer manager wait
+ * without a time limit. The detector counts its passes and the transactions it aborted, one per deadlock found,
+ * and measures the detection latency: the time between the last wait of a cycle and its detection. These metrics
+ * are kept in a {@link DeadlockMetrics}, which {@link AhmedDB.metrics.Metrics} can publish through JMX.
+ * The database engine has one {@link DeadlockDetector} object.
+ */
+public class DeadlockDetector {
+    private final LockTable lockTable;
+    private final BufferManager bufferManager;
+    private final DeadlockMetrics metrics = new DeadlockMetrics();
+    private ScheduledExecutorService detector;
+    private long lockWaitTime;
+    private long bufferWaitTime;
+
+    /**
+     * @param lockTable the lock table shared by all the transactions
+     * @param bufferManager the buffer manager
+     */
+    public DeadlockDetector(LockTable lockTable, BufferManager bufferManager) {
+        this.lockTable = lockTable;
+        this.bufferManager = bufferManager;
+    }
+
+    /**
+     * Starts a background thread that calls {@link #detect()} periodically, and removes the time limit
+     * of the lock and buffer waits.
+     * @param periodMillis the time between two passes, in milliseconds
+     */
+    public synchronized void start(long periodMillis) {
+        if (detector != null) return;
+        lockWaitTime = lockTable.getMaxWaitTime();
+        bufferWaitTime = bufferManager.getMaxWaitTime();
+        lockTable.setMaxWaitTime(0);
+        bufferManager.setMaxWaitTime(0);
+        detector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "deadlock-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        detector.scheduleWithFixedDelay(this::detect, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background thread started by {@link #start(long)}, and restores the time limit of the waits.
+     */
+    public synchronized void stop() {
+        if (detector == null) return;
+        detector.shutdownNow();
+        detector = null;
+        lockTable.setMaxWaitTime(lockWaitTime);
+        bufferManager.setMaxWaitTime(bufferWaitTime);
+    }
+
+    /**
+     * Looks for deadlocks once, and aborts a victim in each one.
+     * @return the number of aborted transactions
+     */
+    public int detect() {
+        metrics.recordPass();
+        if (lockTable.waitingCount() == 0 && bufferManager.waitState().getWaiting().isEmpty()) return 0;
+        WaitForGraph graph = new WaitForGraph();
+        lockTable.addWaits(graph, () -> {
+            BufferManager.WaitState buffers = bufferManager.waitState();
+            for (Map.Entry<Integer, Long> waiting : buffers.getWaiting().entrySet())
+                graph.addBufferWait(waiting.getKey(), waiting.getValue(), buffers.getPinningTransactions(), buffers.hasUntrackedPins());
+        });
+        if (graph.isEmpty()) return 0;
+        int aborted = 0;
+        for (Map.Entry<Integer, Long> victim : graph.victims(System.nanoTime()).entrySet()) {
+            //the victims are deadlocked, so they are still waiting where the graph found them
+            if (!lockTable.abortWaiter(victim.getKey()) && !bufferManager.abortWaiter(victim.getKey())) continue;
+            metrics.recordAbort(victim.getKey(), victim.getValue());
+            aborted++;
+        }
+        return aborted;
+    }
+
+    /**
+     * @return the number of detection passes
+     */
+    public long getPassCount() {
+        return metrics.getPasses();
+    }
+
+    /**
+     * @return the number of transactions aborted to break a deadlock, which is also the number of deadlocks found
+     */
+    public long getAbortCount() {
+        return metrics.getAborts();
+    }
+
+    /**
+     * @return the mean time between the forming of a deadlock and its detection, in nanoseconds
+     */
+    public long getMeanDetectionLatency() {
+        return (long) metrics.getDetectionLatency().getMean();
+    }
+
+    /**
+     * @return the longest time between the forming of a deadlock and its detection, in nanoseconds
+     */
+    public long getMaxDetectionLatency() {
+        return metrics.getDetectionLatency().getMax();
+    }
+
+    /**
+     * @return the metrics of the detector, which {@link AhmedDB.metrics.Metrics} can publish through JMX
+     */
+    public DeadlockMetrics getMetrics() {
+        return metrics;
+    }
+}
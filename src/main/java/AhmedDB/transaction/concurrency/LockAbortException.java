@@ -0,0 +1,7 @@
+package AhmedDB.transaction.concurrency;
+
+/**
+ * A runtime exception indicating that the transaction
+ * needs to abort because a lock could not be obtained.
+ */
+public class LockAbortException extends RuntimeException {}
@@ -0,0 +1,75 @@
+package AhmedDB.transaction.concurrency;
+
+/**
+ * The modes in which a transaction can lock a data item, for multi-granularity locking.
+ * Data items form a hierarchy (a file, which is a table, holds blocks, which hold records); a transaction
+ * locks an item in {@link #S} or {@link #X} mode, after locking each ancestor of the item in an intention
+ * mode: {@link #IS} before reading a descendant, {@link #IX} before writing one.
+ * {@link #SIX} is held by a transaction that reads a whole item and writes some of its descendants.
+ */
+public enum LockMode {
+    /**
+     * Intention shared: some descendants will be locked in shared mode.
+     */
+    IS,
+    /**
+     * Intention exclusive: some descendants will be locked in exclusive mode.
+     */
+    IX,
+    /**
+     * Shared: the item (with all its descendants) is read.
+     */
+    S,
+    /**
+     * Shared and intention exclusive: the item is read, and some descendants will be locked in exclusive mode.
+     */
+    SIX,
+    /**
+     * Exclusive: the item (with all its descendants) is written.
+     */
+    X;
+
+    private static final boolean[][] COMPATIBLE = {
+            //           IS     IX     S      SIX    X
+            /* IS  */ {true,  true,  true,  true,  false},
+            /* IX  */ {true,  true,  false, false, false},
+            /* S   */ {true,  false, true,  false, false},
+            /* SIX */ {true,  false, false, false, false},
+            /* X   */ {false, false, false, false, false},
+    };
+
+    private static final LockMode[][] SUPREMUM = {
+            //           IS   IX   S    SIX  X
+            /* IS  */ {IS,  IX,  S,   SIX, X},
+            /* IX  */ {IX,  IX,  SIX, SIX, X},
+            /* S   */ {S,   SIX, S,   SIX, X},
+            /* SIX */ {SIX, SIX, SIX, SIX, X},
+            /* X   */ {X,   X,   X,   X,   X},
+    };
+
+    /**
+     * @param other a mode held by another transaction on the same item
+     * @return true if both modes can be held on the same item at the same time
+     */
+    public boolean isCompatibleWith(LockMode other) {
+        return COMPATIBLE[ordinal()][other.ordinal()];
+    }
+
+    /**
+     * Returns the weakest mode that grants everything that this mode and the other one grant;
+     * it is the mode a lock is upgraded to when a transaction asks for another mode on an item it has locked.
+     * @param other another mode
+     * @return the combined mode
+     */
+    public LockMode supremum(LockMode other) {
+        return SUPREMUM[ordinal()][other.ordinal()];
+    }
+
+    /**
+     * @param other another mode
+     * @return true if holding this mode grants everything that the other mode grants
+     */
+    public boolean covers(LockMode other) {
+        return supremum(other) == this;
+    }
+}
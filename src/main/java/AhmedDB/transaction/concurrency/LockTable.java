@@ -0,0 +1,279 @@
+package AhmedDB.transaction.concurrency;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The lock table, which grants and releases the locks of all the transactions.
+ * Each database system has one {@link LockTable} object, shared by the concurrency managers of
+ * all the transactions. A lock is held on a data item, which may be any object with value-based
+ * equality: the name of a file for a table lock, a {@link AhmedDB.file.LogicalBlock LogicalBlock}
+ * for a block lock, or a record identifier for a record lock.<br>
+ * The table is split into stripes, and an item always belongs to the stripe chosen by its hash code.
+ * Each stripe has its own monitor and its own map of items, so transactions that lock items of
+ * different stripes never wait on the same monitor, and a released lock only wakes up the
+ * transactions waiting in its stripe.<br>
+ * A transaction that asks for a lock that conflicts with a lock held by another transaction waits;
+ * if the lock is not granted within a fixed time period, a {@link LockAbortException} is thrown,
+ * which also breaks deadlocks. When a {@link DeadlockDetector} runs, waits have no time limit,
+ * and a waiting transaction is aborted only when the detector chooses it as the victim of a deadlock.
+ */
+public class LockTable {
+    /**
+     * The default time limit of a lock wait, in milliseconds.
+     */
+    public static final long MAX_TIME = 10000; // 10 seconds
+    /**
+     * The number of stripes when the caller does not choose it.
+     */
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private volatile long maxWaitTime = MAX_TIME;
+
+    /**
+     * Creates a lock table with {@link #DEFAULT_STRIPES} stripes.
+     */
+    public LockTable() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes the number of stripes, it is rounded up to a power of two
+     */
+    public LockTable(int stripes) {
+        int count = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) this.stripes[i] = new Stripe();
+        mask = count - 1;
+    }
+
+    /**
+     * Grants the specified transaction a lock on the item in the specified mode, waiting while another
+     * transaction holds a conflicting lock. If the transaction already holds a lock on the item,
+     * the lock is replaced by the new mode, which must cover the held one (see {@link LockMode#supremum(LockMode)}).
+     * @param txNum the id of the transaction
+     * @param item the locked data item
+     * @param mode the mode of the lock
+     * @throws LockAbortException if the lock cannot be granted within a fixed time period
+     */
+    public void lock(int txNum, Object item, LockMode mode) {
+        Stripe stripe = stripeOf(item);
+        synchronized (stripe) {
+            LockEntry entry = stripe.entryOf(item);
+            if (entry.hasConflict(txNum, mode)) waitFor(stripe, entry, txNum, mode);
+            entry.holders.put(txNum, mode);
+        }
+    }
+
+    /**
+     * Waits until the lock can be granted, while the monitor of the stripe is held.
+     * @throws LockAbortException if the wait takes too long, or the transaction is chosen as a deadlock victim
+     */
+    private void waitFor(Stripe stripe, LockEntry entry, int txNum, LockMode mode) {
+        long timestamp = System.currentTimeMillis();
+        Waiter waiter = new Waiter(mode);
+        entry.waiting.put(txNum, waiter);
+        waitingCount.incrementAndGet();
+        boolean interrupted = false;
+        try {
+            while (entry.hasConflict(txNum, mode) && !waiter.victim && !waitingTooLong(timestamp))
+                stripe.wait(maxWaitTime);
+        }
+        catch (InterruptedException e) {
+            interrupted = true;
+        }
+        finally {
+            entry.waiting.remove(txNum);
+            waitingCount.decrementAndGet();
+        }
+        if (interrupted || waiter.victim || entry.hasConflict(txNum, mode)) {
+            stripe.removeIfUnused(entry.item, entry);
+            throw new LockAbortException();
+        }
+    }
+
+    /**
+     * Releases the lock held by the specified transaction on the item, and wakes up the
+     * transactions that wait for a lock of the same stripe.
+     * @param txNum the id of the transaction
+     * @param item the locked data item
+     */
+    public void unlock(int txNum, Object item) {
+        Stripe stripe = stripeOf(item);
+        synchronized (stripe) {
+            LockEntry entry = stripe.locks.get(item);
+            if (entry == null || entry.holders.remove(txNum) == null) return;
+            stripe.removeIfUnused(item, entry);
+            if (!entry.waiting.isEmpty()) stripe.notifyAll();
+        }
+    }
+
+    /**
+     * @param txNum the id of a transaction
+     * @param item a data item
+     * @return the mode in which the transaction holds a lock on the item, or null if it holds none
+     */
+    public LockMode lockMode(int txNum, Object item) {
+        Stripe stripe = stripeOf(item);
+        synchronized (stripe) {
+            LockEntry entry = stripe.locks.get(item);
+            return entry == null ? null : entry.holders.get(txNum);
+        }
+    }
+
+    /**
+     * Sets the time limit of the lock waits.
+     * @param millis the time after which a waiting transaction is aborted, in milliseconds, or 0 to wait without limit
+     */
+    public void setMaxWaitTime(long millis) {
+        maxWaitTime = millis;
+    }
+
+    /**
+     * @return the time limit of the lock waits, in milliseconds, or 0 if waits have no limit
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * @return the number of transactions waiting for a lock
+     */
+    int waitingCount() {
+        return waitingCount.get();
+    }
+
+    /**
+     * Adds the lock waits to the wait-for graph: each waiting transaction waits for the transactions that
+     * hold a conflicting lock on the item. Every stripe is locked while the waits are read, so the graph
+     * describes one state of the table; the action is run before the stripes are released, so that it can
+     * add the waits of other resources to the same state.
+     * @param graph the wait-for graph
+     * @param action run while the table cannot change
+     */
+    void addWaits(WaitForGraph graph, Runnable action) {
+        addWaits(graph, action, 0);
+    }
+
+    private void addWaits(WaitForGraph graph, Runnable action, int stripe) {
+        if (stripe == stripes.length) {
+            for (Stripe s : stripes)
+                for (LockEntry entry : s.locks.values())
+                    for (Map.Entry<Integer, Waiter> waiting : entry.waiting.entrySet())
+                        graph.addLockWait(waiting.getKey(), waiting.getValue().since, entry.conflictingHolders(waiting.getKey(), waiting.getValue().mode));
+            action.run();
+            return;
+        }
+        synchronized (stripes[stripe]) {
+            addWaits(graph, action, stripe + 1);
+        }
+    }
+
+    /**
+     * Aborts the lock wait of the specified transaction, which throws a {@link LockAbortException}.
+     * @param txNum the id of a transaction
+     * @return true if the transaction was waiting for a lock
+     */
+    boolean abortWaiter(int txNum) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (LockEntry entry : stripe.locks.values()) {
+                    Waiter waiter = entry.waiting.get(txNum);
+                    if (waiter == null) continue;
+                    waiter.victim = true;
+                    stripe.notifyAll();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Stripe stripeOf(Object item) {
+        int h = item.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    private boolean waitingTooLong(long startTime) {
+        return maxWaitTime > 0 && System.currentTimeMillis() - startTime > maxWaitTime;
+    }
+
+    /**
+     * A part of the lock table: the items whose hash code falls in the stripe, with their locks.
+     * The stripe object is the monitor that protects them.
+     */
+    private static class Stripe {
+        private final Map<Object, LockEntry> locks = new HashMap<>();
+
+        private LockEntry entryOf(Object item) {
+            return locks.computeIfAbsent(item, LockEntry::new);
+        }
+
+        private void removeIfUnused(Object item, LockEntry entry) {
+            if (entry.holders.isEmpty() && entry.waiting.isEmpty()) locks.remove(item);
+        }
+    }
+
+    /**
+     * The locks granted on one data item.
+     */
+    private static class LockEntry {
+        private final Object item;
+        /**
+         * The transactions that hold a lock on the item, mapped to the mode of their lock.
+         */
+        private final Map<Integer, LockMode> holders = new HashMap<>(4);
+        /**
+         * The transactions that wait for a lock on the item.
+         */
+        private final Map<Integer, Waiter> waiting = new HashMap<>(4);
+
+        private LockEntry(Object item) {
+            this.item = item;
+        }
+
+        /**
+         * @return true if another transaction holds a lock that is not compatible with the mode
+         */
+        private boolean hasConflict(int txNum, LockMode mode) {
+            for (Map.Entry<Integer, LockMode> holder : holders.entrySet())
+                if (holder.getKey() != txNum && !mode.isCompatibleWith(holder.getValue())) return true;
+            return false;
+        }
+
+        /**
+         * @return the other transactions that hold a lock that is not compatible with the mode
+         */
+        private Set<Integer> conflictingHolders(int txNum, LockMode mode) {
+            Set<Integer> conflicting = new HashSet<>();
+            for (Map.Entry<Integer, LockMode> holder : holders.entrySet())
+                if (holder.getKey() != txNum && !mode.isCompatibleWith(holder.getValue())) conflicting.add(holder.getKey());
+            return conflicting;
+        }
+    }
+
+    /**
+     * A transaction waiting for a lock on an item.
+     */
+    private static class Waiter {
+        private final LockMode mode;
+        /**
+         * When the wait started, in nanoseconds (see {@link System#nanoTime()}).
+         */
+        private final long since = System.nanoTime();
+        /**
+         * Set when the deadlock detector chooses the transaction as a victim.
+         */
+        private boolean victim = false;
+
+        private Waiter(LockMode mode) {
+            this.mode = mode;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package AhmedDB.transaction.concurrency;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The view of the database that a transaction running under snapshot isolation reads: the values
+ * committed before the transaction started, plus its own updates. A snapshot is created by
+ * {@link VersionStore#begin()} and ended by {@link VersionStore#commit(Snapshot)} or
+ * {@link VersionStore#abort(Snapshot)}.<br>
+ * The snapshot is also the identity of the transaction in the version store: each version it creates
+ * refers to it, so its versions become visible to later snapshots all at once, when its commit timestamp is set.
+ */
+public class Snapshot {
+    /**
+     * The commit timestamp of a transaction that has not committed, it is greater than any start timestamp.
+     */
+    static final long UNCOMMITTED = Long.MAX_VALUE;
+
+    private final long startTimestamp;
+    private volatile long commitTimestamp = UNCOMMITTED;
+    /**
+     * The values updated by the transaction, only the transaction uses it.
+     */
+    final List<VersionStore.VersionKey> updatedValues = new ArrayList<>();
+
+    Snapshot(long startTimestamp) {
+        this.startTimestamp = startTimestamp;
+    }
+
+    /**
+     * @return the timestamp of the last commit that the snapshot sees
+     */
+    public long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    /**
+     * @return the timestamp at which the transaction committed, or {@link Long#MAX_VALUE} if it has not committed
+     */
+    public long getCommitTimestamp() {
+        return commitTimestamp;
+    }
+
+    void setCommitTimestamp(long commitTimestamp) {
+        this.commitTimestamp = commitTimestamp;
+    }
+
+    /**
+     * @param writer the transaction that created a version
+     * @return true if the version is visible in this snapshot: it was created by the transaction itself,
+     * or by a transaction that committed before the snapshot was taken
+     */
+    boolean sees(Snapshot writer) {
+        return writer == this || writer.commitTimestamp <= startTimestamp;
+    }
+}
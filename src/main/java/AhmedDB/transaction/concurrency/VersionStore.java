@@ -0,0 +1,259 @@
+package AhmedDB.transaction.concurrency;
+
+import AhmedDB.file.LogicalBlock;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The version store, which keeps the older versions of the values updated in the buffer pool so that
+ * transactions can run under snapshot isolation: a reader sees the values committed when it started,
+ * without locking anything, so readers never wait for writers and writers never wait for readers.<br>
+ * The pages always hold the newest value of each value, committed or not. When a transaction updates a
+ * value for the first time, the store keeps the value of the page as the oldest version of a version chain,
+ * and each update adds a newer version that belongs to its transaction. A version becomes visible to the
+ * snapshots taken after its transaction commits (see {@link Snapshot}). A value that has no chain has not
+ * been updated since the oldest active snapshot was taken, so its page holds the value that every snapshot sees.<br>
+ * Writers still lock the blocks they update in exclusive mode, so a value has at most one uncommitted version.
+ * A transaction that updates a value whose newest version was committed after its snapshot was taken would
+ * lose that update, so it has to abort (first committer wins).<br>
+ * Versions that no active snapshot can see are removed by {@link #collectGarbage()}, which can be run
+ * periodically by a background thread (see {@link #startGarbageCollector(long)}).
+ * The database engine has one {@link VersionStore} object, shared by all the transactions.
+ */
+public class VersionStore {
+    /**
+     * The writer of the versions kept from the pages, which were committed before any active snapshot.
+     */
+    private static final Snapshot COMMITTED = new Snapshot(0);
+
+    static {
+        COMMITTED.setCommitTimestamp(0);
+    }
+
+    private final Map<VersionKey, VersionChain> chains = new ConcurrentHashMap<>();
+    /**
+     * The start timestamps of the active snapshots, mapped to the number of snapshots that share them.
+     * It is protected by the monitor of the store, together with the clock.
+     */
+    private final TreeMap<Long, Integer> activeSnapshots = new TreeMap<>();
+    private long clock = 0;
+    private ScheduledExecutorService garbageCollector;
+
+    /**
+     * Takes a snapshot of the committed values for a new transaction.
+     * @return the snapshot of the transaction
+     */
+    public synchronized Snapshot begin() {
+        activeSnapshots.merge(clock, 1, Integer::sum);
+        return new Snapshot(clock);
+    }
+
+    /**
+     * Commits the versions of the transaction: they become visible to the snapshots taken from now on.
+     * It must be called once the commit of the transaction is durable, and before its locks are released.
+     * @param snapshot the snapshot of the transaction
+     */
+    public synchronized void commit(Snapshot snapshot) {
+        //the clock moves and the versions become visible at once, under the same monitor as begin
+        if (!snapshot.updatedValues.isEmpty()) snapshot.setCommitTimestamp(++clock);
+        end(snapshot);
+    }
+
+    /**
+     * Removes the versions of the transaction. It must be called after its updates have been undone
+     * in the pages, and before its locks are released.
+     * @param snapshot the snapshot of the transaction
+     */
+    public void abort(Snapshot snapshot) {
+        for (VersionKey key : snapshot.updatedValues) {
+            VersionChain chain = chains.get(key);
+            if (chain == null) continue;
+            synchronized (chain) {
+                if (chain.head.writer == snapshot) chain.head = chain.head.older;
+            }
+        }
+        synchronized (this) {
+            end(snapshot);
+        }
+    }
+
+    /**
+     * Records an update of the transaction. It must be called while the transaction holds an exclusive lock
+     * on the block, and before the page is modified.
+     * @param snapshot the snapshot of the transaction
+     * @param logicalBlock the block of the value
+     * @param offset the offset of the value in the block
+     * @param oldValue the value in the page, before the update
+     * @param newValue the value written by the update
+     * @throws WriteConflictException if the value was changed by a transaction that committed after the snapshot was taken
+     */
+    public void recordUpdate(Snapshot snapshot, LogicalBlock logicalBlock, int offset, Object oldValue, Object newValue) {
+        VersionKey key = new VersionKey(logicalBlock, offset);
+        while (true) {
+            VersionChain chain = chains.computeIfAbsent(key, k -> new VersionChain(new Version(oldValue, COMMITTED, null)));
+            synchronized (chain) {
+                if (chain.removed) continue; //removed by the garbage collector, so create a new one
+                Version head = chain.head;
+                if (head.writer == snapshot) {
+                    head.value = newValue;
+                    return;
+                }
+                if (!snapshot.sees(head.writer)) throw new WriteConflictException();
+                chain.head = new Version(newValue, snapshot, head);
+                snapshot.updatedValues.add(key);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the version of a value that the snapshot sees. If the value has no versions, it returns null
+     * and the caller reads the value from the page. Because the page could be updated while it is read,
+     * the caller has to call the method again after reading the page: if it still returns null,
+     * no transaction updated the value in between, and the value read from the page is the right one.
+     * @param snapshot the snapshot of the reading transaction
+     * @param logicalBlock the block of the value
+     * @param offset the offset of the value in the block
+     * @return the visible version of the value, or null if the page holds it
+     */
+    public Object read(Snapshot snapshot, LogicalBlock logicalBlock, int offset) {
+        VersionChain chain = chains.get(new VersionKey(logicalBlock, offset));
+        if (chain == null) return null;
+        synchronized (chain) {
+            if (chain.removed) return null;
+            for (Version version = chain.head; version != null; version = version.older)
+                if (snapshot.sees(version.writer)) return version.value;
+        }
+        //the garbage collector keeps the versions seen by the active snapshots, so it is not reached
+        throw new IllegalStateException("no visible version of the value at offset " + offset + " of " + logicalBlock);
+    }
+
+    /**
+     * Removes the versions that no active snapshot can see. In each chain, every version older than
+     * the newest version visible to the oldest active snapshot is removed, and a chain is removed entirely
+     * when its newest version is visible to every active snapshot, since the page holds that version.
+     * @return the number of removed versions
+     */
+    public int collectGarbage() {
+        long oldest = oldestActiveSnapshot();
+        int removed = 0;
+        for (Map.Entry<VersionKey, VersionChain> entry : chains.entrySet()) {
+            VersionChain chain = entry.getValue();
+            synchronized (chain) {
+                Version visible = chain.head;
+                while (visible != null && visible.writer.getCommitTimestamp() > oldest) visible = visible.older;
+                if (visible == null) continue;
+                for (Version version = visible.older; version != null; version = version.older) removed++;
+                visible.older = null;
+                if (visible == chain.head) {
+                    chain.removed = true;
+                    chains.remove(entry.getKey(), chain);
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Starts a background thread that calls {@link #collectGarbage()} periodically.
+     * @param periodMillis the time between two collections, in milliseconds
+     */
+    public synchronized void startGarbageCollector(long periodMillis) {
+        if (garbageCollector != null) return;
+        garbageCollector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "version-store-gc");
+            thread.setDaemon(true);
+            return thread;
+        });
+        garbageCollector.scheduleWithFixedDelay(this::collectGarbage, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background thread started by {@link #startGarbageCollector(long)}.
+     */
+    public synchronized void stopGarbageCollector() {
+        if (garbageCollector == null) return;
+        garbageCollector.shutdownNow();
+        garbageCollector = null;
+    }
+
+    /**
+     * @return the start timestamp of the oldest active snapshot, or the current timestamp if there is none
+     */
+    public synchronized long oldestActiveSnapshot() {
+        return activeSnapshots.isEmpty() ? clock : activeSnapshots.firstKey();
+    }
+
+    /**
+     * @return the number of values that have versions
+     */
+    public int size() {
+        return chains.size();
+    }
+
+    private void end(Snapshot snapshot) {
+        long start = snapshot.getStartTimestamp();
+        if (activeSnapshots.merge(start, -1, Integer::sum) == 0) activeSnapshots.remove(start);
+    }
+
+    /**
+     * Identifies a value by its block and its offset in the block.
+     */
+    static class VersionKey {
+        private final LogicalBlock logicalBlock;
+        private final int offset;
+
+        VersionKey(LogicalBlock logicalBlock, int offset) {
+            this.logicalBlock = logicalBlock;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof VersionKey key)) return false;
+            return offset == key.offset && logicalBlock.equals(key.logicalBlock);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * logicalBlock.hashCode() + offset;
+        }
+    }
+
+    /**
+     * The versions of one value, from the newest to the oldest. The chain object is the monitor that protects them.
+     */
+    private static class VersionChain {
+        private Version head;
+        /**
+         * Set when the garbage collector removes the chain from the store, so that a writer
+         * that found it just before does not add a version to it.
+         */
+        private boolean removed = false;
+
+        private VersionChain(Version head) {
+            this.head = head;
+        }
+    }
+
+    private static class Version {
+        /**
+         * An Integer or a String.
+         */
+        private Object value;
+        private final Snapshot writer;
+        private Version older;
+
+        private Version(Object value, Snapshot writer, Version older) {
+            this.value = value;
+            this.writer = writer;
+            this.older = older;
+        }
+    }
+}
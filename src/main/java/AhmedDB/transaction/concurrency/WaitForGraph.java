@@ -0,0 +1,147 @@
+package AhmedDB.transaction.concurrency;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The waits of the transactions at one point in time, built by the {@link DeadlockDetector}.
+ * A transaction waiting for a lock waits for all the transactions that hold a conflicting lock: it goes on
+ * only when every one of them has released its lock. A transaction waiting for a buffer waits for any of the
+ * transactions that pin a buffer: it goes on as soon as one of them unpins. A waiting transaction is
+ * deadlocked when it can never go on, because the transactions it waits for are deadlocked too.
+ */
+class WaitForGraph {
+    private final Map<Integer, Wait> waits = new HashMap<>();
+
+    /**
+     * @param txNum the waiting transaction
+     * @param since when the wait started, in nanoseconds
+     * @param holders the transactions that hold a conflicting lock
+     */
+    void addLockWait(int txNum, long since, Set<Integer> holders) {
+        waits.put(txNum, new Wait(since, holders, true, false));
+    }
+
+    /**
+     * @param txNum the waiting transaction
+     * @param since when the wait started, in nanoseconds
+     * @param pinners the transactions that pin a buffer
+     * @param untrackedPins true if some buffers are pinned without a transaction
+     */
+    void addBufferWait(int txNum, long since, Set<Integer> pinners, boolean untrackedPins) {
+        Set<Integer> others = new HashSet<>(pinners);
+        others.remove(txNum);
+        waits.put(txNum, new Wait(since, others, false, untrackedPins));
+    }
+
+    boolean isEmpty() {
+        return waits.isEmpty();
+    }
+
+    /**
+     * Chooses the transactions to abort so that no transaction is deadlocked any more. For each cycle of
+     * deadlocked transactions, the youngest transaction of the cycle (the one with the highest id) is chosen,
+     * then the transactions that were deadlocked only because of it are released, until none is left.
+     * @param now the current time, in nanoseconds
+     * @return the victims, each one with the time since its deadlock appeared, in nanoseconds
+     */
+    Map<Integer, Long> victims(long now) {
+        Map<Integer, Long> victims = new HashMap<>();
+        Set<Integer> deadlocked = deadlocked(new HashSet<>(waits.keySet()));
+        while (!deadlocked.isEmpty()) {
+            List<Integer> cycle = cycleFrom(deadlocked.iterator().next(), deadlocked);
+            int victim = cycle.get(0);
+            long formed = Long.MIN_VALUE;
+            for (int txNum : cycle) {
+                victim = Math.max(victim, txNum);
+                formed = Math.max(formed, waits.get(txNum).since);
+            }
+            victims.put(victim, now - formed);
+            //the victim aborts and releases what it holds, so it no longer blocks the others
+            deadlocked.remove(victim);
+            deadlocked = deadlocked(deadlocked);
+        }
+        return victims;
+    }
+
+    /**
+     * Removes from the blocked transactions the ones that can go on, until none can.
+     * A transaction that does not wait, or is not in the set, can go on.
+     * @param blocked the transactions that may be deadlocked
+     * @return the deadlocked transactions
+     */
+    private Set<Integer> deadlocked(Set<Integer> blocked) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Iterator<Integer> iterator = blocked.iterator(); iterator.hasNext();) {
+                if (canGoOn(waits.get(iterator.next()), blocked)) {
+                    iterator.remove();
+                    changed = true;
+                }
+            }
+        }
+        return blocked;
+    }
+
+    private static boolean canGoOn(Wait wait, Set<Integer> blocked) {
+        if (wait.waitsForAll) {
+            for (int txNum : wait.waitsFor)
+                if (blocked.contains(txNum)) return false;
+            return true;
+        }
+        if (wait.untrackedPins) return true;
+        for (int txNum : wait.waitsFor)
+            if (!blocked.contains(txNum)) return true;
+        return false;
+    }
+
+    /**
+     * Follows the waits from a deadlocked transaction until a transaction is met twice.
+     * Every deadlocked transaction waits for another deadlocked transaction, except a transaction that waits
+     * for a buffer while it pins all of them, which forms a cycle on its own.
+     * @return the transactions of the cycle
+     */
+    private List<Integer> cycleFrom(int start, Set<Integer> deadlocked) {
+        List<Integer> path = new ArrayList<>();
+        Map<Integer, Integer> positions = new HashMap<>();
+        Integer txNum = start;
+        while (txNum != null && !positions.containsKey(txNum)) {
+            positions.put(txNum, path.size());
+            path.add(txNum);
+            Integer next = null;
+            for (int other : waits.get(txNum).waitsFor) {
+                if (deadlocked.contains(other)) {
+                    next = other;
+                    break;
+                }
+            }
+            txNum = next;
+        }
+        if (txNum == null) return path.subList(path.size() - 1, path.size());
+        return path.subList(positions.get(txNum), path.size());
+    }
+
+    private static class Wait {
+        private final long since;
+        private final Set<Integer> waitsFor;
+        /**
+         * True if the transaction needs all the transactions it waits for to go on,
+         * false if one of them is enough.
+         */
+        private final boolean waitsForAll;
+        private final boolean untrackedPins;
+
+        private Wait(long since, Set<Integer> waitsFor, boolean waitsForAll, boolean untrackedPins) {
+            this.since = since;
+            this.waitsFor = waitsFor;
+            this.waitsForAll = waitsForAll;
+            this.untrackedPins = untrackedPins;
+        }
+    }
+}
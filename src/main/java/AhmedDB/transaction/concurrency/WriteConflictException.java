@@ -0,0 +1,8 @@
+package AhmedDB.transaction.concurrency;
+
+/**
+ * A runtime exception indicating that the transaction
+ * needs to abort because it updates a value that another transaction
+ * has changed since the snapshot of the transaction was taken.
+ */
+public class WriteConflictException extends RuntimeException {}
@@ -0,0 +1,162 @@
+package AhmedDB.transaction.recovery;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.log.FuzzyCheckPointRecord;
+import AhmedDB.log.LogManager;
+import AhmedDB.log.StartRecord;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the table of the active transactions and writes non-quiescent (fuzzy) checkpoints
+ * from it, without stopping the running transactions.
+ * Each database system has one {@link CheckpointManager} object, shared by the recovery managers of
+ * all the transactions: a recovery manager registers its transaction when it writes the start record,
+ * and removes it once its commit or rollback record is written.
+ * A fuzzy checkpoint holds the active transactions and the LSN of their start records,
+ * so recovery only has to read the log back to the oldest of those LSNs instead of the whole log.
+ * It also holds the dirty page table of the {@link BufferManager}, which tells recovery where to start
+ * redoing the updates whose pages may not have reached the disk.
+ * Checkpoints can be taken by calling {@link #checkpoint()}, or periodically by a background thread
+ * started with {@link #startPeriodicCheckpoints(long)}.<br>
+ * It also keeps the open indexes whose entries are changed under the transactions, by the name of their file,
+ * so that the recovery managers find the index that undoes a change (see {@link UndoableIndex}).
+ */
+public class CheckpointManager {
+    private final LogManager logManager;
+    private final BufferManager bufferManager;
+    /**
+     * The active transactions, mapped to the LSN of their start records.
+     */
+    private final Map<Integer, Long> activeTransactions = new ConcurrentHashMap<>();
+    private final Map<String, UndoableIndex> indexes = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param logManager the log manager
+     * @param bufferManager the buffer manager, whose dirty pages are saved by the checkpoints
+     */
+    public CheckpointManager(LogManager logManager, BufferManager bufferManager) {
+        this.logManager = logManager;
+        this.bufferManager = bufferManager;
+    }
+
+    /**
+     * Writes the start record of a transaction and registers it as active.
+     * Both steps happen under the lock that {@link #checkpoint()} takes, so a checkpoint never misses
+     * a transaction whose start record comes before it.
+     * @param transactionNumber the id of the new transaction
+     * @return the LSN of the start record
+     */
+    public synchronized long transactionStarted(int transactionNumber) {
+        long lsn = StartRecord.writeToLog(logManager, transactionNumber);
+        activeTransactions.put(transactionNumber, lsn);
+        return lsn;
+    }
+
+    /**
+     * Removes a transaction from the active ones, once its commit or rollback record has been written.
+     * @param transactionNumber the id of the finished transaction
+     */
+    public void transactionFinished(int transactionNumber) {
+        activeTransactions.remove(transactionNumber);
+    }
+
+    /**
+     * Registers an open index, so that the changes of its entries can be undone.
+     * @param fileName the name of the file whose blocks hold the entries of the index
+     */
+    public void registerIndex(String fileName, UndoableIndex index) {
+        indexes.put(fileName, index);
+    }
+
+    /**
+     * @return the index whose entries are in the specified file, or null if it is not open
+     */
+    public UndoableIndex getIndex(String fileName) {
+        return indexes.get(fileName);
+    }
+
+    /**
+     * @return the open indexes
+     */
+    public Collection<UndoableIndex> getIndexes() {
+        return indexes.values();
+    }
+
+    /**
+     * Writes a fuzzy checkpoint that holds the currently active transactions and the dirty pages,
+     * and flushes the log up to its end record. The checkpoint takes as many records as its tables need
+     * (see {@link FuzzyCheckPointRecord#writeToLog}). Transactions keep running during the checkpoint;
+     * only the start of new transactions waits for the record to be appended.
+     * The dirty pages are read after the active transactions: a transaction that finishes in between has
+     * marked its pages before, and one that is still running is covered by its start record.
+     * @return the LSN of the end record of the checkpoint
+     */
+    public long checkpoint() {
+        long lsn;
+        synchronized (this) {
+            int count = activeTransactions.size();
+            int[] transactionNumbers = new int[count];
+            long[] startLSNs = new long[count];
+            //no transaction can start meanwhile, but some may finish, so fewer entries may be found
+            int i = 0;
+            for (Map.Entry<Integer, Long> entry : activeTransactions.entrySet()) {
+                transactionNumbers[i] = entry.getKey();
+                startLSNs[i] = entry.getValue();
+                i++;
+            }
+            Map<LogicalBlock, Long> dirtyPages = bufferManager.dirtyPages();
+            LogicalBlock[] dirtyBlocks = new LogicalBlock[dirtyPages.size()];
+            long[] recoveryLSNs = new long[dirtyPages.size()];
+            int j = 0;
+            for (Map.Entry<LogicalBlock, Long> entry : dirtyPages.entrySet()) {
+                dirtyBlocks[j] = entry.getKey();
+                recoveryLSNs[j] = entry.getValue();
+                j++;
+            }
+            lsn = FuzzyCheckPointRecord.writeToLog(logManager, Arrays.copyOf(transactionNumbers, i), Arrays.copyOf(startLSNs, i), dirtyBlocks, recoveryLSNs);
+        }
+        logManager.flush(lsn);
+        return lsn;
+    }
+
+    /**
+     * Starts a daemon thread that takes a fuzzy checkpoint at a fixed period. A checkpoint that fails is reported
+     * on the standard error, and the next one is still taken.
+     * @param periodMillis the time between two checkpoints, in milliseconds
+     */
+    public synchronized void startPeriodicCheckpoints(long periodMillis) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fuzzy-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> {
+            //an exception thrown by the task would cancel all the later checkpoints, so a failure is only reported
+            try {
+                checkpoint();
+            }
+            catch (RuntimeException e) {
+                System.err.println("cannot take a fuzzy checkpoint: " + e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic checkpoints, if they were started.
+     */
+    public synchronized void stopPeriodicCheckpoints() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        scheduler = null;
+    }
+}
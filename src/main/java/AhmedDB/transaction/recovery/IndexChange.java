@@ -0,0 +1,144 @@
+package AhmedDB.transaction.recovery;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.file.Page;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The change of one entry of an index block: the insert or the delete of a key with its record id, and the ranges
+ * of bytes of the block that it writes. The index collects the ranges first, then hands the change to an
+ * {@link IndexLogger}, which logs it and writes the ranges into the page, so the change of the block is logged
+ * as one record, which recovery redoes whole or not at all (see {@link AhmedDB.log.IndexRecord}).<br>
+ * A range is either new bytes written at an offset, or bytes of the block moved to another offset.
+ * Both are read from the block as it was before the change, and the moves are applied first.
+ */
+public class IndexChange {
+    private final Buffer buffer;
+    private final boolean insert;
+    private final byte[] key;
+    private final int ridBlock;
+    private final int ridSlot;
+    /**
+     * The moves, as triples of the target offset, the source offset and the length.
+     */
+    private final List<Integer> moves = new ArrayList<>();
+    private final List<Integer> offsets = new ArrayList<>();
+    private final List<byte[]> ranges = new ArrayList<>();
+
+    /**
+     * @param buffer the pinned buffer of the changed block, which the caller latches
+     * @param insert true if the entry is inserted, false if it is deleted
+     * @param key the full key of the entry
+     * @param ridBlock the block of the record id of the entry
+     * @param ridSlot the slot of the record id of the entry
+     */
+    public IndexChange(Buffer buffer, boolean insert, byte[] key, int ridBlock, int ridSlot) {
+        this.buffer = buffer;
+        this.insert = insert;
+        this.key = key;
+        this.ridBlock = ridBlock;
+        this.ridSlot = ridSlot;
+    }
+
+    /**
+     * Adds a move of bytes within the block.
+     * @param from the offset of the moved bytes
+     * @param to the offset where they are moved
+     * @param length the number of moved bytes
+     */
+    public void moveBytes(int from, int to, int length) {
+        if (length == 0) return;
+        moves.add(to);
+        moves.add(from);
+        moves.add(length);
+    }
+
+    /**
+     * Adds a range of new bytes.
+     * @param offset the position of the first byte in the block
+     * @param bytes the new bytes
+     */
+    public void setBytes(int offset, byte[] bytes) {
+        offsets.add(offset);
+        ranges.add(bytes);
+    }
+
+    public Buffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return true if the entry is inserted, false if it is deleted
+     */
+    public boolean isInsert() {
+        return insert;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public int getRidBlock() {
+        return ridBlock;
+    }
+
+    public int getRidSlot() {
+        return ridSlot;
+    }
+
+    /**
+     * @return the moves, as triples of the target offset, the source offset and the length
+     */
+    int[] getMoves() {
+        return moves.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    int[] getOffsets() {
+        return offsets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    byte[][] getRanges() {
+        return ranges.toArray(new byte[0][]);
+    }
+
+    /**
+     * Turns the change into ranges of new bytes only, by reading the moved bytes from the block, for a logger
+     * that logs each range with its old bytes (see {@link AhmedDB.transaction.SystemTransaction}).
+     * @return the offsets of the ranges, the moves first; the bytes are returned by {@link #getWrittenBytes()}
+     */
+    public int[] getWrittenOffsets() {
+        int[] written = new int[moves.size() / 3 + offsets.size()];
+        for (int i = 0; i < moves.size(); i += 3) written[i / 3] = moves.get(i);
+        for (int i = 0; i < offsets.size(); i++) written[moves.size() / 3 + i] = offsets.get(i);
+        return written;
+    }
+
+    /**
+     * @return the new bytes of the ranges returned by {@link #getWrittenOffsets()}
+     */
+    public byte[][] getWrittenBytes() {
+        byte[][] written = new byte[moves.size() / 3 + offsets.size()][];
+        Page page = buffer.getAssociatedPage();
+        for (int i = 0; i < moves.size(); i += 3) {
+            written[i / 3] = new byte[moves.get(i + 2)];
+            page.readBytes(moves.get(i + 1), written[i / 3], 0, moves.get(i + 2));
+        }
+        for (int i = 0; i < offsets.size(); i++) written[moves.size() / 3 + i] = ranges.get(i);
+        return written;
+    }
+
+    /**
+     * Writes the ranges into the page of the block, and marks the buffer as modified by the logged change.
+     * @param txnum the transaction that logged the change
+     * @param lsn the LSN of its log record
+     */
+    public void apply(int txnum, long lsn) {
+        int[] writtenOffsets = getWrittenOffsets();
+        byte[][] writtenBytes = getWrittenBytes();
+        Page page = buffer.getAssociatedPage();
+        for (int i = 0; i < writtenOffsets.length; i++) page.writeBytes(writtenOffsets[i], writtenBytes[i], 0, writtenBytes[i].length);
+        buffer.setModified(txnum, lsn);
+    }
+}
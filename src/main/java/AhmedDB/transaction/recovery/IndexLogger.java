@@ -0,0 +1,16 @@
+package AhmedDB.transaction.recovery;
+
+/**
+ * Logs the changes of the entries of an index and writes them into their blocks. The change of an entry asked by
+ * a transaction is logged under that transaction ({@link AhmedDB.transaction.Transaction}), with a logical undo;
+ * a change of the structure of the index is logged under a {@link AhmedDB.transaction.SystemTransaction}, whose
+ * records are undone physically; and the undo of a change is logged as a compensation record by the
+ * {@link RecoveryManager} that rolls the transaction back.
+ */
+public interface IndexLogger {
+    /**
+     * Logs the change, then writes its ranges into the page of its block and marks the buffer as modified.
+     * @param change the change of a block latched by the caller
+     */
+    void changeIndex(IndexChange change);
+}
@@ -0,0 +1,149 @@
+package AhmedDB.transaction.recovery;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to long values, stored in two primitive arrays with open addressing
+ * (linear probing), so that recovery can look up a transaction or a block for every log record
+ * without boxing its key and value, nor allocating an entry object.
+ * The table doubles when it is three quarters full; a removed key is filled by shifting
+ * the following keys of its probe sequence back, so lookups never meet deleted markers.
+ * Keys must not be {@link Long#MIN_VALUE}, which marks the empty slots.
+ */
+class LongLongHashMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size = 0;
+
+    /**
+     * @param expectedSize the number of keys that the map is expected to hold, so the table
+     *                     is created large enough to hold them without growing
+     */
+    LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 4 / 3) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return the value of the key, or the specified default value if the key is not in the map
+     */
+    long get(long key, long defaultValue) {
+        int slot = slotOf(key);
+        return keys[slot] == EMPTY ? defaultValue : values[slot];
+    }
+
+    boolean containsKey(long key) {
+        return keys[slotOf(key)] != EMPTY;
+    }
+
+    /**
+     * Maps the key to the value, replacing its previous value if there is one.
+     */
+    void put(long key, long value) {
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        if (size > mask - (mask >> 2)) grow();
+    }
+
+    /**
+     * Maps the key to the value, unless the key is already in the map.
+     */
+    void putIfAbsent(long key, long value) {
+        if (!containsKey(key)) put(key, value);
+    }
+
+    /**
+     * Removes the key from the map, if it is there.
+     */
+    void remove(long key) {
+        int slot = slotOf(key);
+        if (keys[slot] == EMPTY) return;
+        size--;
+        //move back the keys that follow in the probe sequence and could not take the freed slot
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = hash(keys[next]) & mask;
+            //the key at next may move to free only if its home slot is not between free and next
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a copy of the keys of the map, in no particular order
+     */
+    long[] keys() {
+        long[] result = new long[size];
+        int i = 0;
+        for (long key : keys)
+            if (key != EMPTY) result[i++] = key;
+        return result;
+    }
+
+    /**
+     * @return the smallest value of the map, or the specified default value if the map is empty
+     */
+    long minValue(long defaultValue) {
+        long min = Long.MAX_VALUE;
+        for (int slot = 0; slot < keys.length; slot++)
+            if (keys[slot] != EMPTY) min = Math.min(min, values[slot]);
+        return size == 0 ? defaultValue : min;
+    }
+
+    /**
+     * @return the slot that holds the key, or the empty slot where it would be added
+     */
+    private int slotOf(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = slotOf(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Spreads the bits of the key, since transaction numbers and block ids are mostly sequential.
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,124 @@
+package AhmedDB.transaction.recovery;
+
+import AhmedDB.file.Page;
+import AhmedDB.log.LogManager;
+import AhmedDB.log.LogRecordReader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Runs the redo pass of recovery on several threads. The recovering thread reads the log forward and
+ * hands each update record to a worker chosen by the block that the record modified, so all the updates
+ * of a block are redone by the same worker in log order, while different blocks are redone in parallel.
+ * A record is copied into its own page before it is handed over, because the reader of the log is a view
+ * that moves to the next record. Each worker has a bounded queue, so the reading thread waits when
+ * it gets too far ahead of a worker.
+ */
+class ParallelRedo {
+    /**
+     * The number of records that may wait in the queue of one worker.
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final RedoTask END = new RedoTask(-1, null);
+
+    private final LogManager logManager;
+    private final Consumer<LogRecordReader> redo;
+    private final List<BlockingQueue<RedoTask>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile RuntimeException failure;
+
+    /**
+     * Starts the worker threads.
+     * @param logManager the log manager that wrote the records
+     * @param workerCount the number of worker threads
+     * @param redo redoes the update record it is given, it is called by the worker threads
+     */
+    ParallelRedo(LogManager logManager, int workerCount, Consumer<LogRecordReader> redo) {
+        this.logManager = logManager;
+        this.redo = redo;
+        for (int i = 0; i < workerCount; i++) {
+            BlockingQueue<RedoTask> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            Thread worker = new Thread(() -> work(queue), "recovery-redo-" + i);
+            worker.setDaemon(true);
+            queues.add(queue);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Hands a copy of the update record to the worker of its block.
+     * @param logRecord the update record, it can be moved to another record once the method returns
+     * @param blockId the id of the block modified by the record
+     */
+    void dispatch(LogRecordReader logRecord, long blockId) {
+        if (failure != null) throw failure;
+        byte[] bytes = logRecord.toBytes();
+        Page page = new Page(new byte[Integer.BYTES + bytes.length]);
+        page.setBytes(0, bytes);
+        put(queues.get(Math.floorMod(Long.hashCode(blockId), queues.size())), new RedoTask(logRecord.getLSN(), page));
+    }
+
+    /**
+     * Waits until every dispatched record is redone, and stops the workers.
+     * @throws RuntimeException if a worker failed to redo a record
+     */
+    void finish() {
+        for (BlockingQueue<RedoTask> queue : queues) put(queue, END);
+        try {
+            for (Thread worker : workers) worker.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while recovering");
+        }
+        if (failure != null) throw failure;
+    }
+
+    private void work(BlockingQueue<RedoTask> queue) {
+        LogRecordReader reader = new LogRecordReader(logManager);
+        try {
+            while (true) {
+                RedoTask task = queue.take();
+                if (task == END) return;
+                if (failure != null) continue; // keep taking records so the reading thread is never blocked
+                try {
+                    redo.accept(reader.wrap(task.page, 0, task.lsn));
+                }
+                catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            failure = new RuntimeException("interrupted while recovering");
+        }
+    }
+
+    private void put(BlockingQueue<RedoTask> queue, RedoTask task) {
+        try {
+            queue.put(task);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted while recovering");
+        }
+    }
+
+    /**
+     * An update record copied out of the log, with its LSN.
+     */
+    private static class RedoTask {
+        final long lsn;
+        final Page page;
+
+        RedoTask(long lsn, Page page) {
+            this.lsn = lsn;
+            this.page = page;
+        }
+    }
+}
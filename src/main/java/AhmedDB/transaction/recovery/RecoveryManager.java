@@ -2,12 +2,15 @@ package AhmedDB.transaction.recovery;
 
 import AhmedDB.buffer.Buffer;
 import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
 import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
 import AhmedDB.log.*;
+import AhmedDB.transaction.Transaction;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Each transaction has its own RecoveryManager object, whose methods write the
@@ -16,80 +19,484 @@ import java.util.Iterator;
  * corresponding log records; and the setInt and setString methods extract the
  * old value from the specified buffer and write an update record to the log. The
  * rollback and recover methods perform the rollback (or recovery) algorithms.
- * A RecoveryManager object uses undo-only recovery with value-granularity data
- * items. Its code can be divided into two areas of concern: code to implement log
+ * A RecoveryManager object uses ARIES-style redo/undo recovery with value-granularity data
+ * items, under a steal/no-force buffer policy: a modified page may be written before its transaction
+ * commits, and a commit only forces the log, not the modified pages. An update record holds both the
+ * old and the new value, and the undo of an update is logged as a compensation record, so recovery can
+ * repeat history and then undo the unfinished transactions without undoing anything twice.
+ * A bulk load is the exception: its blocks are written directly to the disk, and only their range is logged
+ * (see {@link #bulkLoad(String, int, int)}), so its undo empties the blocks instead of restoring values.
+ * The change of an index entry is the other exception: it is redone physically, but undone logically by its index
+ * (see {@link #changeIndex(IndexChange)}).
+ * The transaction is registered as active in the shared {@link CheckpointManager}
+ * until it finishes, so that fuzzy checkpoints can be taken while it runs. Its code can be divided into two areas of concern: code to implement log
  * records, and code to implement the rollback and recovery algorithms.
  */
 public class RecoveryManager {
+   /**
+    * The number of updates whose old values are kept in memory for a fast rollback.
+    */
+   public static final int UNDO_BUFFER_CAPACITY = 1024;
+
    private LogManager logManager;
    private BufferManager bufferManager;
+   private CheckpointManager checkpointManager;
    private Transaction transaction;
    private int transactionNumber;
+   /**
+    * The LSN of the most recent log record written by the transaction. Every record of the
+    * transaction stores the LSN of the one before it, which chains the records of the transaction
+    * backwards up to its start record.
+    */
+   private long lastLSN;
+   /**
+    * The LSN of the start record of the transaction, which is still the last LSN while the transaction has written nothing.
+    */
+   private final long startLSN;
+   /**
+    * The old values of the recent updates of the transaction, so that a rollback
+    * does not have to read them back from the log.
+    */
+   private final UndoBuffer undoBuffer = new UndoBuffer(UNDO_BUFFER_CAPACITY);
 
-   public RecoveryManager(Transaction transaction, int transactionNumber, LogManager logManager, BufferManager bufferManager){
+   public RecoveryManager(Transaction transaction, int transactionNumber, LogManager logManager, BufferManager bufferManager, CheckpointManager checkpointManager){
        this.transaction = transaction;
        this.transactionNumber = transactionNumber;
        this.logManager = logManager;
        this.bufferManager = bufferManager;
+       this.checkpointManager = checkpointManager;
+       lastLSN = checkpointManager.transactionStarted(transactionNumber);
+       startLSN = lastLSN;
    }
 
+   /**
+    * Writes the commit record and forces the log up to it. The modified pages stay in the buffer pool;
+    * their updates are redone from the log if the system crashes before they are written.
+    */
    public void commit(){
-       bufferManager.flushAll(transactionNumber);
-       int lsn = CommitRecord.writeToLog(logManager, transactionNumber);
-       logManager.flush(lsn);
+       commit(true);
+   }
+
+   /**
+    * Writes the commit record, and forces the log up to it if requested.
+    * A system transaction, which changes a structure of the database on behalf of the other transactions
+    * (see {@link AhmedDB.transaction.SystemTransaction}), does not force the log: the log is written in order,
+    * so a transaction that depends on its changes forces its commit record when it commits itself.
+    * A read-only transaction does not force the log either: it has nothing to make durable, and the values
+    * it read were forced by the commits of the transactions that wrote them, before they released their locks.
+    * @param forceLog true if the log must be forced up to the commit record
+    */
+   public void commit(boolean forceLog){
+       boolean readOnly = lastLSN == startLSN;
+       lastLSN = CommitRecord.writeToLog(logManager, transactionNumber, lastLSN);
+       if (forceLog && !readOnly) logManager.flush(lastLSN);
+       logManager.getMetrics().recordCommit();
+       checkpointManager.transactionFinished(transactionNumber);
+       undoBuffer.clear();
    }
 
+   /**
+    * The updates are undone from the in-memory undo buffer when it holds all of them, which needs
+    * neither a log flush nor a log read; otherwise they are undone from the log.
+    * Each undo is logged as a compensation record, so neither the modified pages nor the log
+    * have to be forced: after a crash, recovery redoes the compensation records it finds and
+    * finishes the rollback if the rollback record is missing.
+    */
    public void rollback(){
-       doRollback();
-       bufferManager.flushAll(transactionNumber);
-       int lsn = RollBackRecord.writeToLog(logManager, transactionNumber);
-       logManager.flush(lsn);
+       if (undoBuffer.isOverflowed()) doRollback();
+       else rollbackFromUndoBuffer();
+       lastLSN = RollBackRecord.writeToLog(logManager, transactionNumber, lastLSN);
+       checkpointManager.transactionFinished(transactionNumber);
    }
 
+   /**
+    * Recovers with one redo worker per available processor (see {@link #recover(int)}).
+    */
    public void recover(){
-       doRecover();
-       bufferManager.flushAll(transactionNumber);
-       int lsn = CheckPointRecord.writeToLog(logManager);
+       recover(Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * Brings the database back to a consistent state after a crash (see {@link #doRecover(int)}), writes
+    * every modified page, then writes a quiescent checkpoint record. Recovery runs before any other
+    * transaction starts, so the recovering transaction is the only active one, and it is no longer
+    * active afterwards.
+    * @param redoWorkers the number of threads that redo the updates, partitioned by block;
+    *                    with 1, the updates are redone by the calling thread
+    */
+   public void recover(int redoWorkers){
+       doRecover(redoWorkers);
+       bufferManager.flushAll();
+       long lsn = CheckPointRecord.writeToLog(logManager);
        logManager.flush(lsn);
+       checkpointManager.transactionFinished(transactionNumber);
    }
 
-   public int setInt(Buffer buffer, int offset, int newVal){
-       //int oldVal = buffer.getAssociatedPage().getInt(offset);
+   public long setInt(Buffer buffer, int offset, int newVal){
+       int oldVal = buffer.getAssociatedPage().getInt(offset);
        LogicalBlock logicalBlock = buffer.getAssociatedLogicalBlock();
-       return  SetIntRecord.writeToLog(logManager,transactionNumber, logicalBlock, offset, newVal);
+       long prevLSN = lastLSN;
+       lastLSN = SetIntRecord.writeToLog(logManager,transactionNumber, prevLSN, logicalBlock, offset, oldVal, newVal);
+       undoBuffer.addInt(logicalBlock, offset, oldVal, prevLSN);
+       return lastLSN;
    }
 
-    public int setString(Buffer buffer, int offset, String newVal){
-       // String oldVal = buffer.getAssociatedPage().getString(offset);
+    public long setString(Buffer buffer, int offset, String newVal){
+        String oldVal = buffer.getAssociatedPage().getString(offset);
         LogicalBlock logicalBlock = buffer.getAssociatedLogicalBlock();
-        return  SetStringRecord.writeToLog(logManager,transactionNumber, logicalBlock, offset, newVal);
+        long prevLSN = lastLSN;
+        lastLSN = SetStringRecord.writeToLog(logManager,transactionNumber, prevLSN, logicalBlock, offset, oldVal, newVal);
+        undoBuffer.addString(logicalBlock, offset, oldVal, prevLSN);
+        return lastLSN;
     }
 
+   /**
+    * Logs the update of a range of bytes of the buffer, whose old bytes are read from the page.
+    * @param buffer the modified buffer
+    * @param offset the position of the first modified byte
+    * @param newVal the bytes written by the update
+    * @return the LSN of the update record
+    */
+   public long setBytes(Buffer buffer, int offset, byte[] newVal){
+       byte[] oldVal = new byte[newVal.length];
+       buffer.getAssociatedPage().readBytes(offset, oldVal, 0, oldVal.length);
+       LogicalBlock logicalBlock = buffer.getAssociatedLogicalBlock();
+       long prevLSN = lastLSN;
+       lastLSN = SetBytesRecord.writeToLog(logManager, transactionNumber, prevLSN, logicalBlock, offset, oldVal, newVal);
+       undoBuffer.addBytes(logicalBlock, offset, oldVal, prevLSN);
+       return lastLSN;
+   }
+
+   /**
+    * Logs the blocks that a bulk load is about to write directly to the disk, at the end of a file, and forces
+    * the log up to the record, so that the blocks are emptied if the transaction does not commit, even when the
+    * system crashes while they are written. The rollback of the transaction then reads the log.
+    * @param fileName the name of the loaded file
+    * @param firstBlock the number of the first block
+    * @param blockCount the number of blocks
+    * @return the LSN of the BULK_LOAD record
+    */
+   public long bulkLoad(String fileName, int firstBlock, int blockCount){
+       lastLSN = BulkLoadRecord.writeToLog(logManager, transactionNumber, lastLSN, fileName, firstBlock, blockCount);
+       logManager.flush(lastLSN);
+       undoBuffer.overflow();
+       return lastLSN;
+   }
+
+   /**
+    * Logs the insert or the delete of an index entry, which the caller then writes into the block.
+    * The change is undone by the index (see {@link UndoableIndex}), so the rollback of the transaction reads the log.
+    * @param change the change of a block latched by the caller
+    * @return the LSN of the INDEX_INSERT or INDEX_DELETE record
+    */
+   public long changeIndex(IndexChange change){
+       lastLSN = IndexRecord.writeToLog(logManager, transactionNumber, lastLSN, change.isInsert(), change.getBuffer().getAssociatedLogicalBlock(),
+               change.getMoves(), change.getOffsets(), change.getRanges(), change.getKey(), change.getRidBlock(), change.getRidSlot());
+       undoBuffer.overflow();
+       return lastLSN;
+   }
+
+   /**
+    * Only the records of this transaction are visited: the iteration starts at its most recent record
+    * and jumps to the previous one through the LSN stored in each record, until the start record.
+    * Each record is read through a {@link LogRecordReader} view, which decodes it in place
+    * from the log page instead of allocating a byte array and a record object for it.
+    */
    private void doRollback(){
-       Iterator<byte[]> iterator = logManager.iterator();
+       Iterator<LogRecordReader> iterator = logManager.transactionIterator(lastLSN);
        while (iterator.hasNext()){
-           byte[] bytes = iterator.next();
-           LogRecord logRecord = LogRecord.createLogRecord(bytes); // return a specific logRecord
-           if (logRecord != null && logRecord.getTransactionNumber() == transactionNumber){
-               if (logRecord.getRecordOperatorNumber() == LogOperator.START.value) return;
-               ((Undoable)logRecord).undo(transactionNumber);
+           LogRecordReader logRecord = iterator.next(); // a view of the record, valid until the next call
+           if (logRecord.getRecordOperatorNumber() == LogOperator.START.value) return;
+           if (logRecord.isUpdate() && !logRecord.isCompensation()) lastLSN = undo(logRecord, transactionNumber, lastLSN);
+           else if (logRecord.getRecordOperatorNumber() == LogOperator.BULK_LOAD.value) undoBulkLoad(logRecord, transactionNumber);
+       }
+   }
+
+   /**
+    * Undoes the updates held by the undo buffer, from the most recent one to the oldest one.
+    */
+   private void rollbackFromUndoBuffer(){
+       for (int i = undoBuffer.size() - 1; i >= 0; i--){
+           LogicalBlock logicalBlock = undoBuffer.getLogicalBlock(i);
+           Buffer buffer = bufferManager.pin(logicalBlock);
+           Page page = buffer.getAssociatedPage();
+           int offset = undoBuffer.getOffset(i);
+           if (undoBuffer.isBytes(i)){
+               byte[] current = new byte[undoBuffer.getBytesValue(i).length];
+               page.readBytes(offset, current, 0, current.length);
+               lastLSN = SetBytesRecord.writeCompensationToLog(logManager, transactionNumber, lastLSN, undoBuffer.getUndoNextLSN(i),
+                       logicalBlock, offset, current, undoBuffer.getBytesValue(i));
            }
+           else if (undoBuffer.isString(i))
+               lastLSN = SetStringRecord.writeCompensationToLog(logManager, transactionNumber, lastLSN, undoBuffer.getUndoNextLSN(i),
+                       logicalBlock, offset, page.getString(offset), undoBuffer.getStringValue(i));
+           else
+               lastLSN = SetIntRecord.writeCompensationToLog(logManager, transactionNumber, lastLSN, undoBuffer.getUndoNextLSN(i),
+                       logicalBlock, offset, page.getInt(offset), undoBuffer.getIntValue(i));
+           undoBuffer.undo(i, page);
+           buffer.setModified(transactionNumber, lastLSN);
+           bufferManager.unpin(buffer);
        }
+       undoBuffer.clear();
    }
 
-   private void  doRecover(){
-       Collection<Integer> finishedTransactions = new ArrayList<>();
-       Iterator<byte[]> iterator = logManager.iterator();
+   /**
+    * Recovers in three passes over the log.
+    * <ol>
+    *     <li>Analysis: the most recent complete checkpoint gives the transactions and the dirty pages of that time;
+    *     the log is read back to its end record, which leads to its begin record and its chunks.
+    *     The log is read forward from the oldest start record of those transactions (or from the checkpoint
+    *     if there were none) to its end, to find the transactions that did not finish (the losers) with
+    *     their most recent records, and the pages that may be dirty with the first LSN that modified them.</li>
+    *     <li>Redo: the log is read forward from the smallest of those LSNs, and the updates of every
+    *     transaction, including compensation records, are applied again to the pages that do not
+    *     reflect them yet, which is the case when the page LSN is smaller than the LSN of the record.
+    *     With several workers, the calling thread only reads the log and hands the records to a
+    *     {@link ParallelRedo}, which keeps the updates of each block in log order.</li>
+    *     <li>Undo: each loser is rolled back by following its chain of records, writing a compensation
+    *     record for each undone update and a rollback record at the end. Under strict locking no two
+    *     losers updated the same value, so the losers are undone one after the other. The losers that changed
+    *     index entries are undone last: their undo goes through the indexes, whose structure changes that did not
+    *     finish, run by system transactions, are rolled back before, and which then reload their state.</li>
+    * </ol>
+    * @param redoWorkers the number of threads of the redo pass
+    */
+   private void  doRecover(int redoWorkers){
+       FuzzyCheckPointRecord checkpoint = null;
+       long analysisLSN = 0;
+       Iterator<LogRecordReader> iterator = logManager.recordIterator();
        while (iterator.hasNext()){
-           byte[] bytes = iterator.next();
-           LogRecord logRecord = LogRecord.createLogRecord(bytes);
-           assert logRecord != null;
-           if (logRecord.getRecordOperatorNumber() == LogOperator.CHECKPOINT.value) return;
-           if (logRecord.getRecordOperatorNumber() == LogOperator.COMMIT.value || logRecord.getRecordOperatorNumber() == LogOperator.ROLLBACK.value){
-               finishedTransactions.add(logRecord.getTransactionNumber());
+           LogRecordReader logRecord = iterator.next();
+           int operator = logRecord.getRecordOperatorNumber();
+           if (operator == LogOperator.CHECKPOINT.value){
+               analysisLSN = logRecord.getLSN();
+               break;
+           }
+           //the begin record and the chunks of a checkpoint that has no end record were interrupted by the crash
+           if (operator == LogOperator.CHECKPOINT_END.value){
+               long endLSN = logRecord.getLSN();
+               analysisLSN = ((CheckPointEndRecord) logRecord.toLogRecord()).getBeginLSN();
+               checkpoint = readCheckpoint(analysisLSN, endLSN);
+               break;
+           }
+       }
+
+       //the tables are sized from the checkpoint, which tells how many transactions and pages were in use
+       int expectedTransactions = checkpoint == null ? 16 : checkpoint.getActiveTransactions().length + 16;
+       int expectedPages = (checkpoint == null ? 0 : checkpoint.getDirtyBlocks().length) + bufferManager.available();
+       //the dirty pages, by block id, mapped to the first LSN that may have to be redone
+       LongLongHashMap dirtyPages = new LongLongHashMap(expectedPages);
+       if (checkpoint != null){
+           for (long startLSN : checkpoint.getStartLSNs()) analysisLSN = Math.min(analysisLSN, startLSN);
+           LogicalBlock[] dirtyBlocks = checkpoint.getDirtyBlocks();
+           for (int i = 0; i < dirtyBlocks.length; i++) dirtyPages.put(logManager.blockId(dirtyBlocks[i]), checkpoint.getRecoveryLSNs()[i]);
+       }
+
+       //analysis: the unfinished transactions mapped to their most recent record, and the dirty pages
+       LongLongHashMap losers = new LongLongHashMap(expectedTransactions);
+       LongLongHashMap indexLosers = new LongLongHashMap(expectedTransactions);
+       iterator = logManager.recordIterator(analysisLSN);
+       while (iterator.hasNext()){
+           LogRecordReader logRecord = iterator.next();
+           //the start record of the recovering transaction ends the log of the crashed run; transaction
+           //numbers start over at each run, so its number may also be the number of a loser
+           if (logRecord.getLSN() >= lastLSN) break;
+           if (logRecord.isCheckpoint()) continue;
+           int operator = logRecord.getRecordOperatorNumber();
+           if (operator == LogOperator.COMMIT.value || operator == LogOperator.ROLLBACK.value){
+               losers.remove(logRecord.getTransactionNumber());
+               indexLosers.remove(logRecord.getTransactionNumber());
+               continue;
+           }
+           losers.put(logRecord.getTransactionNumber(), logRecord.getLSN());
+           if (logRecord.isIndexChange()) indexLosers.put(logRecord.getTransactionNumber(), 1);
+           if (logRecord.isUpdate()) dirtyPages.putIfAbsent(logRecord.getBlockId(), logRecord.getLSN());
+       }
+
+       //redo: repeat the history of every transaction from the oldest dirty page on
+       if (!dirtyPages.isEmpty()){
+           //each worker pins one buffer at a time, so there are never more workers than buffers
+           int workers = Math.min(redoWorkers, bufferManager.available());
+           ParallelRedo parallelRedo = workers > 1
+                   ? new ParallelRedo(logManager, workers, this::redo)
+                   : null;
+           iterator = logManager.recordIterator(dirtyPages.minValue(0));
+           while (iterator.hasNext()){
+               LogRecordReader logRecord = iterator.next();
+               if (!logRecord.isUpdate() || !logRecord.hasNewValue()) continue;
+               long blockId = logRecord.getBlockId();
+               if (logRecord.getLSN() < dirtyPages.get(blockId, Long.MAX_VALUE)) continue;
+               if (parallelRedo == null) redo(logRecord);
+               else parallelRedo.dispatch(logRecord, blockId);
            }
-           else if (!finishedTransactions.contains(logRecord.getTransactionNumber())) ((Undoable)logRecord).undo(transactionNumber);
+           if (parallelRedo != null) parallelRedo.finish();
+       }
+
+       //undo: roll back the losers, those that changed index entries once the indexes are consistent again
+       for (long loser : losers.keys())
+           if (!indexLosers.containsKey(loser)) undoLoser((int) loser, losers.get(loser, -1));
+       for (UndoableIndex index : checkpointManager.getIndexes()) index.reload();
+       for (long loser : indexLosers.keys()) undoLoser((int) loser, losers.get(loser, -1));
+   }
+
+   /**
+    * Rolls back a loser by following its chain of records, and writes its rollback record.
+    * @param loserNumber the id of the loser
+    * @param loserLastLSN its most recent record
+    */
+   private void undoLoser(int loserNumber, long loserLastLSN){
+       Iterator<LogRecordReader> iterator = logManager.transactionIterator(loserLastLSN);
+       while (iterator.hasNext()){
+           LogRecordReader logRecord = iterator.next();
+           if (logRecord.isUpdate() && !logRecord.isCompensation()) loserLastLSN = undo(logRecord, loserNumber, loserLastLSN);
+           else if (logRecord.getRecordOperatorNumber() == LogOperator.BULK_LOAD.value) undoBulkLoad(logRecord, loserNumber);
+       }
+       RollBackRecord.writeToLog(logManager, loserNumber, loserLastLSN);
+   }
+
+   /**
+    * Reads the chunks of a fuzzy checkpoint forward from its begin record, and merges them.
+    * @param beginLSN the LSN of the begin record of the checkpoint
+    * @param endLSN the LSN of its end record
+    * @return the tables of the checkpoint
+    */
+   private FuzzyCheckPointRecord readCheckpoint(long beginLSN, long endLSN){
+       List<FuzzyCheckPointRecord> chunks = new ArrayList<>();
+       Iterator<LogRecordReader> iterator = logManager.recordIterator(beginLSN);
+       while (iterator.hasNext()){
+           LogRecordReader logRecord = iterator.next();
+           if (logRecord.getLSN() >= endLSN) break;
+           if (logRecord.getRecordOperatorNumber() == LogOperator.FUZZY_CHECKPOINT.value)
+               chunks.add((FuzzyCheckPointRecord) logRecord.toLogRecord());
+       }
+       return FuzzyCheckPointRecord.merge(chunks);
+   }
+
+   /**
+    * Writes the new value of an update record into its block again, unless the page already reflects it.
+    * @param logRecord the update record to be redone
+    */
+   private void redo(LogRecordReader logRecord){
+       Buffer buffer = bufferManager.pin(logRecord.getLogicalBlock());
+       if (buffer.getPageLSN() < logRecord.getLSN()){
+           logRecord.redo(buffer.getAssociatedPage());
+           buffer.setModified(logRecord.getTransactionNumber(), logRecord.getLSN());
+       }
+       bufferManager.unpin(buffer);
+   }
+
+   /**
+    * Writes the value saved in an update record back into its block, after logging a compensation
+    * record that restores the value and points at the record that precedes the undone one.
+    * @param logRecord the update record to be undone
+    * @param txnum the transaction that wrote the record
+    * @param prevLSN the most recent record of that transaction
+    * @return the LSN of the compensation record
+    */
+   private long undo(LogRecordReader logRecord, int txnum, long prevLSN){
+       if (logRecord.isIndexChange()) return undoIndexChange(logRecord, txnum, prevLSN);
+       Buffer buffer = bufferManager.pin(logRecord.getLogicalBlock());
+       LogicalBlock logicalBlock = buffer.getAssociatedLogicalBlock();
+       Page page = buffer.getAssociatedPage();
+       int offset = logRecord.getOffset();
+       long lsn;
+       if (logRecord.getRecordOperatorNumber() == LogOperator.SETBYTES.value){
+           byte[] restored = logRecord.getOldBytesValue();
+           byte[] current = new byte[restored.length];
+           page.readBytes(offset, current, 0, current.length);
+           lsn = SetBytesRecord.writeCompensationToLog(logManager, txnum, prevLSN, logRecord.getPrevLSN(),
+                   logicalBlock, offset, current, restored);
+       }
+       else if (logRecord.getRecordOperatorNumber() == LogOperator.SETINT.value)
+           lsn = SetIntRecord.writeCompensationToLog(logManager, txnum, prevLSN, logRecord.getPrevLSN(),
+                   logicalBlock, offset, page.getInt(offset), logRecord.getOldIntValue());
+       else
+           lsn = SetStringRecord.writeCompensationToLog(logManager, txnum, prevLSN, logRecord.getPrevLSN(),
+                   logicalBlock, offset, page.getString(offset), logRecord.getOldStringValue());
+       logRecord.undo(page);
+       buffer.setModified(txnum, lsn);
+       bufferManager.unpin(buffer);
+       return lsn;
+   }
+
+   /**
+    * Asks the index of an INDEX_INSERT or INDEX_DELETE record to delete the inserted entry, or to insert the deleted
+    * one again, and to log that change as a compensation record of the transaction. If the index finds nothing to
+    * change, a compensation record without any range is written, so the undo still goes on at the record that
+    * precedes the undone one.
+    * @param logRecord the record to be undone
+    * @param txnum the transaction that wrote the record
+    * @param prevLSN the most recent record of that transaction
+    * @return the LSN of the compensation record
+    */
+   private long undoIndexChange(LogRecordReader logRecord, int txnum, long prevLSN){
+       String fileName = logRecord.getFileName();
+       UndoableIndex index = checkpointManager.getIndex(fileName);
+       if (index == null) throw new RuntimeException("the index " + fileName + " must be open to undo the changes of its entries");
+       boolean insert = logRecord.getRecordOperatorNumber() == LogOperator.INDEX_INSERT.value;
+       LogicalBlock logicalBlock = logRecord.getLogicalBlock();
+       byte[] key = logRecord.getKey();
+       int ridBlock = logRecord.getRidBlock(), ridSlot = logRecord.getRidSlot();
+       Compensation compensation = new Compensation(txnum, prevLSN, logRecord.getPrevLSN());
+       if (insert) index.undoInsert(key, ridBlock, ridSlot, compensation);
+       else index.undoDelete(key, ridBlock, ridSlot, compensation);
+       if (compensation.lsn < 0)
+           compensation.lsn = IndexRecord.writeCompensationToLog(logManager, txnum, prevLSN, logRecord.getPrevLSN(), !insert, logicalBlock,
+                   new int[0], new int[0], new byte[0][], key, ridBlock, ridSlot);
+       return compensation.lsn;
+   }
+
+   /**
+    * Logs the undo of the change of an index entry as a compensation record of a transaction, which points at the
+    * record that precedes the undone one.
+    */
+   private class Compensation implements IndexLogger {
+       private final int txnum;
+       private final long undoNextLSN;
+       private long prevLSN;
+       /**
+        * The LSN of the compensation record, or -1 until it is written.
+        */
+       private long lsn = -1;
+
+       private Compensation(int txnum, long prevLSN, long undoNextLSN){
+           this.txnum = txnum;
+           this.prevLSN = prevLSN;
+           this.undoNextLSN = undoNextLSN;
+       }
+
+       @Override
+       public void changeIndex(IndexChange change){
+           lsn = IndexRecord.writeCompensationToLog(logManager, txnum, prevLSN, undoNextLSN, change.isInsert(), change.getBuffer().getAssociatedLogicalBlock(),
+                   change.getMoves(), change.getOffsets(), change.getRanges(), change.getKey(), change.getRidBlock(), change.getRidSlot());
+           prevLSN = lsn;
+           change.apply(txnum, lsn);
+       }
+   }
+
+   /**
+    * Empties the blocks of a bulk load through the buffer pool, and writes them before the undo goes on, so the
+    * rollback record never reaches the disk before them. The blocks that the load did not reach are left alone.
+    * The file is measured through the file manager, since there is no transaction to ask for a system transaction
+    * or during recovery.
+    * No compensation record is needed, since emptying a block twice leaves it empty. The page LSN is kept,
+    * so the updates and compensation records of the transaction that the page reflects are not redone.
+    * @param logRecord the BULK_LOAD record
+    * @param txnum the transaction that wrote the record
+    */
+   private void undoBulkLoad(LogRecordReader logRecord, int txnum){
+       String fileName = logRecord.getFileName();
+       FileManager fileManager = bufferManager.getFileManager();
+       int end = Math.min(logRecord.getBlockNumber() + logRecord.getBlockCount(), fileManager.length(fileName));
+       byte[] zeroes = new byte[fileManager.blockSize() - Buffer.PAGE_HEADER_SIZE];
+       for (int blockNumber = logRecord.getBlockNumber(); blockNumber < end; blockNumber++){
+           Buffer buffer = bufferManager.pin(new LogicalBlock(fileName, blockNumber));
+           Page page = buffer.getAssociatedPage();
+           page.writeBytes(Buffer.PAGE_HEADER_SIZE, zeroes, 0, zeroes.length);
+           buffer.setModified(txnum, -1);
+           bufferManager.unpin(buffer);
        }
+       bufferManager.flushAll(txnum);
    }
 
 
@@ -0,0 +1,203 @@
+package AhmedDB.transaction.recovery;
+
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+
+/**
+ * A bounded in-memory copy of the undo information of one transaction: for each update, the
+ * modified block, the offset and the old value, which is the same information as the update log record,
+ * and the LSN of the record written by the transaction before that update, where a rollback continues
+ * once the update is undone.
+ * It lets a transaction be rolled back without reading the log. The values are kept in parallel arrays
+ * that are allocated once, so recording an update allocates nothing.
+ * If the transaction makes more updates than the buffer can hold, the buffer is marked as overflowed
+ * and its contents are dropped; the rollback must then be done from the log.
+ */
+class UndoBuffer {
+    private final LogicalBlock[] blocks;
+    private final int[] offsets;
+    private final int[] intValues;
+    /**
+     * The old string value of an update, or null if the update stored an int.
+     */
+    private final String[] stringValues;
+    /**
+     * The old bytes of an update of a range of bytes, or null if the update stored an int or a string.
+     */
+    private final byte[][] bytesValues;
+    private final long[] undoNextLSNs;
+    private int size = 0;
+    private boolean overflowed = false;
+
+    /**
+     * @param capacity the maximum number of updates held by the buffer
+     */
+    UndoBuffer(int capacity) {
+        blocks = new LogicalBlock[capacity];
+        offsets = new int[capacity];
+        intValues = new int[capacity];
+        stringValues = new String[capacity];
+        bytesValues = new byte[capacity][];
+        undoNextLSNs = new long[capacity];
+    }
+
+    /**
+     * Saves the old int value of an update.
+     */
+    void addInt(LogicalBlock block, int offset, int oldValue, long undoNextLSN) {
+        if (!reserve()) return;
+        undoNextLSNs[size] = undoNextLSN;
+        blocks[size] = block;
+        offsets[size] = offset;
+        intValues[size] = oldValue;
+        stringValues[size] = null;
+        bytesValues[size] = null;
+        size++;
+    }
+
+    /**
+     * Saves the old string value of an update.
+     */
+    void addString(LogicalBlock block, int offset, String oldValue, long undoNextLSN) {
+        if (!reserve()) return;
+        undoNextLSNs[size] = undoNextLSN;
+        blocks[size] = block;
+        offsets[size] = offset;
+        stringValues[size] = oldValue;
+        bytesValues[size] = null;
+        size++;
+    }
+
+    /**
+     * Saves the old bytes of an update of a range of bytes.
+     */
+    void addBytes(LogicalBlock block, int offset, byte[] oldValue, long undoNextLSN) {
+        if (!reserve()) return;
+        undoNextLSNs[size] = undoNextLSN;
+        blocks[size] = block;
+        offsets[size] = offset;
+        stringValues[size] = null;
+        bytesValues[size] = oldValue;
+        size++;
+    }
+
+    /**
+     * @return true if there is room for another update; once the buffer is full, it overflows and is emptied
+     */
+    private boolean reserve() {
+        if (overflowed) return false;
+        if (size < blocks.length) return true;
+        overflowed = true;
+        clear();
+        return false;
+    }
+
+    /**
+     * Marks the buffer as overflowed, for a change that it cannot hold, such as a bulk load.
+     */
+    void overflow() {
+        overflowed = true;
+        clear();
+    }
+
+    /**
+     * @return true if some updates of the transaction were not kept, so the log must be used to undo them
+     */
+    boolean isOverflowed() {
+        return overflowed;
+    }
+
+    /**
+     * @return the number of updates held by the buffer
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param index the position of an update, 0 being the oldest one
+     * @return the block modified by the update
+     */
+    LogicalBlock getLogicalBlock(int index) {
+        return blocks[index];
+    }
+
+    /**
+     * @param index the position of an update, 0 being the oldest one
+     * @return the offset of the update within its block
+     */
+    int getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * @param index the position of an update, 0 being the oldest one
+     * @return true if the update stored a string, false if it stored an int
+     */
+    boolean isString(int index) {
+        return stringValues[index] != null;
+    }
+
+    /**
+     * @param index the position of an update, 0 being the oldest one
+     * @return true if the update stored a range of bytes
+     */
+    boolean isBytes(int index) {
+        return bytesValues[index] != null;
+    }
+
+    /**
+     * @param index the position of an update of a range of bytes
+     * @return the old bytes of the range
+     */
+    byte[] getBytesValue(int index) {
+        return bytesValues[index];
+    }
+
+    /**
+     * @param index the position of an int update
+     * @return the old value of the update
+     */
+    int getIntValue(int index) {
+        return intValues[index];
+    }
+
+    /**
+     * @param index the position of a string update
+     * @return the old value of the update
+     */
+    String getStringValue(int index) {
+        return stringValues[index];
+    }
+
+    /**
+     * @param index the position of an update, 0 being the oldest one
+     * @return the LSN of the record written by the transaction before the update
+     */
+    long getUndoNextLSN(int index) {
+        return undoNextLSNs[index];
+    }
+
+    /**
+     * Writes the old value of an update back into the page of its block.
+     * @param index the position of an update, 0 being the oldest one
+     * @param page the page of the block modified by the update
+     */
+    void undo(int index, Page page) {
+        if (bytesValues[index] != null) page.writeBytes(offsets[index], bytesValues[index], 0, bytesValues[index].length);
+        else if (stringValues[index] == null) page.setInt(offsets[index], intValues[index]);
+        else page.setString(offsets[index], stringValues[index]);
+    }
+
+    /**
+     * Drops all the saved updates, so that the referenced blocks, strings and bytes can be garbage collected.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            blocks[i] = null;
+            stringValues[i] = null;
+            bytesValues[i] = null;
+        }
+        size = 0;
+    }
+}
@@ -0,0 +1,29 @@
+package AhmedDB.transaction.recovery;
+
+/**
+ * An index whose entries are inserted and deleted under the transactions that asked for it, so that a transaction
+ * that rolls back, or that did not finish before a crash, leaves no entry behind. The change of an entry cannot be
+ * undone by restoring the bytes of its block, since another transaction may have split the block since, so the
+ * {@link RecoveryManager} asks the index to undo it: an inserted entry is deleted, and a deleted one is inserted again,
+ * wherever they are by then. The index registers in the {@link CheckpointManager}, where the recovery managers find it
+ * by the name of its file, so it must be opened before a rollback or a recovery needs it.
+ */
+public interface UndoableIndex {
+    /**
+     * Deletes an entry that a transaction inserted.
+     * @param logger logs the delete as a compensation record of the transaction
+     */
+    void undoInsert(byte[] key, int ridBlock, int ridSlot, IndexLogger logger);
+
+    /**
+     * Inserts again an entry that a transaction deleted.
+     * @param logger logs the insert as a compensation record of the transaction
+     */
+    void undoDelete(byte[] key, int ridBlock, int ridSlot, IndexLogger logger);
+
+    /**
+     * Reads again what the index keeps in memory of its file. Recovery calls it once it has redone the log and
+     * rolled back the structure changes that did not finish, before it undoes the changes of entries.
+     */
+    void reload();
+}
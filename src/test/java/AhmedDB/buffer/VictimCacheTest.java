@@ -0,0 +1,117 @@
+package AhmedDB.buffer;
+
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.log.LogManager;
+import AhmedDB.metrics.BufferMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VictimCacheTest {
+    private static final int BLOCK_SIZE = 1024;
+    private static final int BLOCKS = 64;
+    private static final String TABLE = "victim-cache-test.tbl";
+
+    @TempDir
+    File directory;
+    private FileManager fileManager;
+    private LogManager logManager;
+
+    @BeforeEach
+    void writeBlocks() throws IOException {
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        logManager = new LogManager(fileManager, "victim-cache-test.log");
+        Page page = new Page(BLOCK_SIZE);
+        for (int block = 0; block < BLOCKS; block++) {
+            for (int offset = Buffer.PAGE_HEADER_SIZE; offset + Integer.BYTES <= BLOCK_SIZE; offset += 16)
+                page.setInt(offset, block);
+            fileManager.write(new LogicalBlock(TABLE, block), page);
+        }
+    }
+
+    @Test
+    void onlyPagesPinnedMoreThanOnceAreCached() {
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, 2, 64 * BLOCK_SIZE);
+        BufferMetrics metrics = bufferManager.getMetrics();
+        //pinned once: the block leaves the pool without going to the cache
+        pinAndUnpin(bufferManager, 0);
+        pinAndUnpin(bufferManager, 1);
+        pinAndUnpin(bufferManager, 2);
+        assertEquals(0, bufferManager.victimCacheUsedBytes());
+
+        //pinned twice: the block is cached when it leaves the pool, and taken back from there
+        pinAndUnpin(bufferManager, 3);
+        pinAndUnpin(bufferManager, 3);
+        pinAndUnpin(bufferManager, 4);
+        pinAndUnpin(bufferManager, 5);
+        assertTrue(bufferManager.victimCacheUsedBytes() > 0);
+        long read = fileManager.blocksRead();
+        assertEquals(3, pinAndUnpin(bufferManager, 3));
+        assertEquals(read, fileManager.blocksRead());
+        assertEquals(1, metrics.getVictimCacheHits());
+        assertEquals(0, bufferManager.victimCacheUsedBytes());
+    }
+
+    @Test
+    void modifiedPagesAreNotCached() {
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, 1, 64 * BLOCK_SIZE);
+        Buffer buffer = bufferManager.pin(new LogicalBlock(TABLE, 0));
+        bufferManager.unpin(buffer);
+        buffer = bufferManager.pin(new LogicalBlock(TABLE, 0));
+        buffer.getAssociatedPage().setInt(Buffer.PAGE_HEADER_SIZE, 100);
+        buffer.setModified(1, -1);
+        bufferManager.unpin(buffer);
+        pinAndUnpin(bufferManager, 1);
+        assertEquals(0, bufferManager.victimCacheUsedBytes());
+        assertEquals(100, pinAndUnpin(bufferManager, 0));
+    }
+
+    @Test
+    void concurrentPinsReadTheValuesOfTheirBlocks() throws InterruptedException {
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, 8, 32 * BLOCK_SIZE);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 20_000; i++) {
+                        //the first blocks are pinned much more often, so they move between the pool and the cache
+                        double x = random.nextDouble();
+                        int block = (int) (BLOCKS * x * x);
+                        Buffer buffer = bufferManager.pin(new LogicalBlock(TABLE, block));
+                        int value = buffer.getAssociatedPage().getInt(Buffer.PAGE_HEADER_SIZE + 16 * random.nextInt(10));
+                        bufferManager.unpin(buffer);
+                        if (value != block) throw new AssertionError("block " + block + " holds " + value);
+                    }
+                }
+                catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+        if (failure.get() != null) fail(failure.get());
+        assertTrue(bufferManager.getMetrics().getVictimCacheHits() > 0);
+    }
+
+    private static int pinAndUnpin(BufferManager bufferManager, int block) {
+        Buffer buffer = bufferManager.pin(new LogicalBlock(TABLE, block));
+        int value = buffer.getAssociatedPage().getInt(Buffer.PAGE_HEADER_SIZE);
+        bufferManager.unpin(buffer);
+        return value;
+    }
+}
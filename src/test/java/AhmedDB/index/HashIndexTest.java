@@ -0,0 +1,130 @@
+package AhmedDB.index;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.record.RecordId;
+import AhmedDB.transaction.Transaction;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import AhmedDB.transaction.recovery.RecoveryManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The entries that a transaction inserts or deletes are undone with it, by its rollback or by recovery, even after
+ * other transactions split the buckets that held them.
+ */
+class HashIndexTest {
+    private static final int BLOCK_SIZE = 400;
+    private static final int BUFFERS = 20;
+    private static final String INDEX = "hash-test.idx";
+    private static final String LOG = "hash-test.log";
+    private static final int RECOVERING_TRANSACTION = 1_000_000;
+    /**
+     * The keys committed before the test, from this one on; the loser deletes half of them.
+     */
+    private static final int COMMITTED = 1000;
+    private static final int KEYS = 200;
+
+    @TempDir
+    File directory;
+
+    private FileManager fileManager;
+    private LogManager logManager;
+    private BufferManager bufferManager;
+    private CheckpointManager checkpointManager;
+    private LockTable lockTable;
+    private HashIndex index;
+
+    @Test
+    void rollbackUndoesTheChangesOfEntriesButKeepsTheSplits() throws IOException {
+        open();
+        Transaction setup = newTransaction();
+        for (int key = COMMITTED; key < COMMITTED + KEYS; key++) index.insert(setup, BTreeIndex.intKey(key), recordId(key));
+        setup.commit();
+        int committedBuckets = index.getBucketCount();
+
+        Transaction loser = runLoserAndWinner();
+        int buckets = index.getBucketCount();
+        loser.rollback();
+
+        assertTrue(buckets > committedBuckets, "no bucket split");
+        assertEquals(buckets, index.getBucketCount());
+        assertEntries();
+    }
+
+    @Test
+    void recoveryUndoesTheChangesOfEntriesOfUnfinishedTransactions() throws IOException {
+        open();
+        Transaction setup = newTransaction();
+        for (int key = COMMITTED; key < COMMITTED + KEYS; key++) index.insert(setup, BTreeIndex.intKey(key), recordId(key));
+        setup.commit();
+        runLoserAndWinner();
+
+        //the crash: the loser never ends, and only the pages that the small pool replaced are on the disk
+        open();
+        new RecoveryManager(null, RECOVERING_TRANSACTION, logManager, bufferManager, checkpointManager).recover(1);
+        assertEntries();
+
+        //the recovered changes stay after another restart
+        bufferManager.flushAll();
+        open();
+        new RecoveryManager(null, RECOVERING_TRANSACTION + 1, logManager, bufferManager, checkpointManager).recover(1);
+        assertEntries();
+    }
+
+    /**
+     * Lets a loser insert the even keys and delete half of the committed ones, while a winner inserts the odd keys,
+     * which splits the buckets of the loser, and commits.
+     * @return the loser, still active
+     */
+    private Transaction runLoserAndWinner() {
+        Transaction loser = newTransaction();
+        Transaction winner = newTransaction();
+        for (int key = 0; key < KEYS; key++) {
+            if (key % 2 == 0) index.insert(loser, BTreeIndex.intKey(key), recordId(key));
+            else index.insert(winner, BTreeIndex.intKey(key), recordId(key));
+        }
+        for (int key = COMMITTED; key < COMMITTED + KEYS; key += 2)
+            assertTrue(index.delete(loser, BTreeIndex.intKey(key), recordId(key)));
+        winner.commit();
+        return loser;
+    }
+
+    private void assertEntries() {
+        for (int key = 0; key < KEYS; key++) {
+            List<RecordId> found = index.search(BTreeIndex.intKey(key));
+            if (key % 2 == 0) assertTrue(found.isEmpty(), "key " + key + " of the loser is still in the index");
+            else assertEquals(List.of(recordId(key)), found, "key " + key);
+        }
+        for (int key = COMMITTED; key < COMMITTED + KEYS; key++)
+            assertEquals(List.of(recordId(key)), index.search(BTreeIndex.intKey(key)), "key " + key);
+    }
+
+    /**
+     * Opens the database on the files of the directory, as a restart after a crash does.
+     */
+    private void open() throws IOException {
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        logManager = new LogManager(fileManager, LOG);
+        bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+        checkpointManager = new CheckpointManager(logManager, bufferManager);
+        lockTable = new LockTable();
+        index = new HashIndex(fileManager, logManager, bufferManager, checkpointManager, INDEX);
+    }
+
+    private Transaction newTransaction() {
+        return new Transaction(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+    }
+
+    private static RecordId recordId(int key) {
+        return new RecordId(key / 10, key % 10);
+    }
+}
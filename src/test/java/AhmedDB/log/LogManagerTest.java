@@ -0,0 +1,57 @@
+package AhmedDB.log;
+
+import AhmedDB.file.FileManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogManagerTest {
+    private static final int BLOCK_SIZE = 400;
+    private static final String LOG = "log-manager-test.log";
+
+    @TempDir
+    File directory;
+
+    @Test
+    void aRecordAlreadyOnTheDiskIsNotWrittenAgain() throws IOException {
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, LOG);
+        long lsn = logManager.append(new byte[]{1, 2, 3});
+        logManager.flush(lsn);
+        long written = logWrites(fileManager);
+        logManager.flush(lsn);
+        assertEquals(written, logWrites(fileManager));
+    }
+
+    @Test
+    void concurrentFlushesShareOneWrite() throws Exception {
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, LOG);
+        int committers = 8;
+        long[] lsns = new long[committers];
+        for (int i = 0; i < committers; i++) lsns[i] = logManager.append(new byte[]{(byte) i});
+        long written = logWrites(fileManager);
+
+        Thread[] threads = new Thread[committers];
+        //the committers all wait for the lock of the log, as they would while another commit writes it
+        synchronized (logManager) {
+            for (int i = 0; i < committers; i++) {
+                long lsn = lsns[i];
+                threads[i] = new Thread(() -> logManager.flush(lsn));
+                threads[i].start();
+            }
+            for (Thread thread : threads)
+                while (thread.getState() != Thread.State.BLOCKED) Thread.sleep(1);
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(written + 1, logWrites(fileManager));
+    }
+
+    private static long logWrites(FileManager fileManager) {
+        return fileManager.getMetrics().getFile(LOG).getBlocksWritten();
+    }
+}
@@ -0,0 +1,118 @@
+package AhmedDB.materialize;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sorts of many times more records than the workspace holds, which are merged in several passes.
+ */
+class ExternalSorterTest {
+    private static final int BLOCK_SIZE = 400;
+    private static final int BUFFERS = 8;
+    private static final int WORKSPACE = 4;
+    private static final int RECORDS = 20_000;
+    /**
+     * The records that the heap pages of the workspace hold at once: a record is a key and a value of four bytes,
+     * and its lengths.
+     */
+    private static final int HEAP_RECORDS = (WORKSPACE - 1) * (BLOCK_SIZE / (ExternalSorter.RECORD_OVERHEAD + 2 * Integer.BYTES));
+
+    @TempDir
+    File directory;
+    private FileManager fileManager;
+    private BufferManager bufferManager;
+
+    @BeforeEach
+    void createManagers() throws IOException {
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, "sort-test.log");
+        bufferManager = new BufferManager(fileManager, logManager, BUFFERS);
+    }
+
+    @Test
+    void randomInputMakesRunsTwiceAsLargeAsTheWorkspace() {
+        Random random = new Random(42);
+        int[] keys = new int[RECORDS];
+        for (int i = 0; i < RECORDS; i++) keys[i] = random.nextInt(Integer.MAX_VALUE);
+        ExternalSorter sorter = sort(keys);
+        //sorting the heap each time it is full would make a run per heap
+        int heapRuns = (RECORDS + HEAP_RECORDS - 1) / HEAP_RECORDS;
+        assertTrue(sorter.getInitialRuns() > heapRuns * 35 / 100 && sorter.getInitialRuns() < heapRuns * 65 / 100,
+                sorter.getInitialRuns() + " runs instead of about " + heapRuns / 2);
+        assertTrue(sorter.getMerges() > 0);
+    }
+
+    @Test
+    void sortedInputMakesASingleRun() {
+        int[] keys = new int[RECORDS];
+        for (int i = 0; i < RECORDS; i++) keys[i] = i;
+        ExternalSorter sorter = sort(keys);
+        assertEquals(1, sorter.getInitialRuns());
+        assertEquals(0, sorter.getMerges());
+    }
+
+    @Test
+    void reverseInputIsSorted() {
+        int[] keys = new int[RECORDS];
+        for (int i = 0; i < RECORDS; i++) keys[i] = RECORDS - i;
+        ExternalSorter sorter = sort(keys);
+        assertTrue(sorter.getMerges() > 0);
+    }
+
+    /**
+     * Sorts the keys, each one with its position as value, checks that each record comes out once and in order,
+     * then that the workspace is released and the temporary files are removed when the scan is closed.
+     * @return the sorter, for its counts of runs and merges
+     */
+    private ExternalSorter sort(int[] keys) {
+        ExternalSorter sorter = new ExternalSorter(fileManager, bufferManager, WORKSPACE);
+        assertEquals(BUFFERS - WORKSPACE, bufferManager.available());
+        for (int i = 0; i < keys.length; i++) sorter.add(bytes(keys[i]), bytes(i));
+        SortScan scan = sorter.sort();
+        assertTrue(temporaryFiles().length > 0);
+
+        int[] sortedKeys = keys.clone();
+        Arrays.sort(sortedKeys);
+        BitSet returned = new BitSet(keys.length);
+        int count = 0;
+        while (scan.next()) {
+            int key = ByteBuffer.wrap(scan.getKey()).getInt();
+            int position = ByteBuffer.wrap(scan.getValue()).getInt();
+            assertEquals(sortedKeys[count], key);
+            assertEquals(keys[position], key);
+            assertFalse(returned.get(position));
+            returned.set(position);
+            count++;
+        }
+        assertEquals(keys.length, count);
+        scan.close();
+
+        assertEquals(BUFFERS, bufferManager.available());
+        assertEquals(0, temporaryFiles().length);
+        return sorter;
+    }
+
+    private File[] temporaryFiles() {
+        return directory.listFiles((dir, name) -> name.startsWith("temp-sort-"));
+    }
+
+    /**
+     * @return the int as four big-endian bytes, which compare as unsigned bytes in the order of the non-negative ints
+     */
+    private static byte[] bytes(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+    }
+}
@@ -0,0 +1,177 @@
+package AhmedDB.server;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.log.LogManager;
+import AhmedDB.record.FreeSpaceMap;
+import AhmedDB.record.RecordFile;
+import AhmedDB.record.RecordId;
+import AhmedDB.transaction.Transaction;
+import AhmedDB.transaction.TransactionExecutor;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pipelined requests of a client through a server on a local port: their order, their atomicity,
+ * and the limits at which the server stops reading a connection.
+ */
+class DatabaseServerTest {
+    private static final int BLOCK_SIZE = 4096;
+    private static final String TABLE = "accounts.tbl";
+    private static final String LOG = "server-test.log";
+    /**
+     * The rows of the table, so that a scan of all of them gives a response of about 100 KB.
+     */
+    private static final int ROWS = 8000;
+
+    @TempDir
+    File directory;
+    private FileManager fileManager;
+    private LogManager logManager;
+    private BufferManager bufferManager;
+    private CheckpointManager checkpointManager;
+    private LockTable lockTable;
+    private FreeSpaceMap freeSpaceMap;
+    private TransactionExecutor executor;
+    private DatabaseServer server;
+    private DatabaseClient client;
+    private RecordId first;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        logManager = new LogManager(fileManager, LOG);
+        bufferManager = new BufferManager(fileManager, logManager, 64);
+        checkpointManager = new CheckpointManager(logManager, bufferManager);
+        lockTable = new LockTable();
+        //the requests wait for the locks of the tests as long as needed
+        lockTable.setMaxWaitTime(0);
+        freeSpaceMap = new FreeSpaceMap(fileManager);
+        Transaction transaction = new Transaction(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+        RecordFile recordFile = new RecordFile(transaction, TABLE, freeSpaceMap);
+        for (int i = 0; i < ROWS; i++) {
+            recordFile.insert(Integer.BYTES);
+            recordFile.setInt(0, i);
+            if (i == 0) first = recordFile.getRecordId();
+        }
+        recordFile.close();
+        transaction.commit();
+        executor = new TransactionExecutor(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+        server = new DatabaseServer(executor, freeSpaceMap, new InetSocketAddress("localhost", 0));
+        client = new DatabaseClient("localhost", server.getPort());
+    }
+
+    @AfterEach
+    void stopServer() {
+        client.close();
+        server.close();
+        executor.close();
+    }
+
+    @Test
+    void pipelinedResponsesComeBackInTheOrderOfTheRequests() {
+        int requests = 500;
+        int[] ids = new int[requests];
+        for (int i = 0; i < requests; i++)
+            ids[i] = client.send(new Batch().update(TABLE, first).setInt(0, -i).read(TABLE, first).getInt(0));
+        for (int i = 0; i < requests; i++) {
+            Response response = client.receive();
+            assertEquals(ids[i], response.getRequestId());
+            //each request ran after the previous ones, so it reads its own update
+            assertEquals(-i, response.nextInt());
+        }
+        assertEquals(requests, server.getRequestCount());
+    }
+
+    @Test
+    void aFailingStatementRollsBackItsWholeBatch() {
+        client.send(new Batch()
+                .update(TABLE, first).setInt(0, 42)
+                .insert(TABLE, Integer.BYTES).setInt(0, 43)
+                .read(TABLE, new RecordId(1000, 0)).getInt(0));
+        int next = client.send(new Batch().read(TABLE, first).getInt(0).scan(TABLE, 2 * ROWS));
+
+        Response failed = client.receive();
+        assertFalse(failed.isOk());
+        assertTrue(failed.getError().contains("is not a record of " + TABLE), failed.getError());
+        //the connection goes on with the next request, which sees neither the update nor the insert
+        Response response = client.receive();
+        assertEquals(next, response.getRequestId());
+        assertTrue(response.isOk());
+        assertEquals(0, response.nextInt());
+        assertEquals(ROWS, response.nextRowCount());
+    }
+
+    @Test
+    void aConnectionIsNotReadWhileItHasTooManyRequestsWaiting() throws Exception {
+        //a transaction of the test holds the block of the first record, so the requests that read it wait
+        Transaction blocker = new Transaction(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+        blocker.lockForUpdate(new LogicalBlock(TABLE, first.getBlockNumber()));
+        int requests = 3 * DatabaseServer.MAX_PIPELINED_REQUESTS;
+        for (int i = 0; i < requests; i++) client.send(new Batch().read(TABLE, first).getInt(0));
+        CompletableFuture<Integer> received = CompletableFuture.supplyAsync(() -> receive(requests));
+
+        waitUntil(() -> server.pausedConnectionCount() == 1);
+        assertEquals(0, server.getRequestCount());
+        assertFalse(received.isDone());
+
+        //once the lock is released, the requests run, and the rest of the requests is read
+        blocker.commit();
+        assertEquals(requests, received.get());
+        assertEquals(requests, server.getRequestCount());
+        waitUntil(() -> server.pausedConnectionCount() == 0);
+    }
+
+    @Test
+    void aConnectionIsNotReadWhileItsClientDoesNotReadItsResponses() {
+        //each response holds all the rows, so the responses of the requests are many times the pending output limit
+        int requests = 100;
+        for (int i = 0; i < requests; i++) client.send(new Batch().scan(TABLE, ROWS).getInt(0));
+        assertEquals(ROWS, client.receive().nextRowCount());
+
+        waitUntil(() -> server.pausedConnectionCount() == 1);
+        long answered = server.getRequestCount();
+        assertTrue(answered < requests, answered + " requests answered");
+
+        //the requests run again once the client reads the responses
+        assertEquals(requests - 1, receive(requests - 1));
+        assertEquals(requests, server.getRequestCount());
+        waitUntil(() -> server.pausedConnectionCount() == 0);
+    }
+
+    /**
+     * Receives responses, and checks that each one is successful and follows the previous one.
+     * @return the number of responses
+     */
+    private int receive(int responses) {
+        int previous = -1;
+        for (int i = 0; i < responses; i++) {
+            Response response = client.receive();
+            assertTrue(response.isOk(), response.getError());
+            if (previous >= 0) assertEquals(previous + 1, response.getRequestId());
+            previous = response.getRequestId();
+        }
+        return responses;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("the server did not reach the expected state");
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package AhmedDB.transaction;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.concurrency.LockTable;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionTest {
+    private static final int BLOCK_SIZE = 400;
+    private static final String TABLE = "transaction-test.tbl";
+    private static final String LOG = "transaction-test.log";
+    private static final int OFFSET = Buffer.PAGE_HEADER_SIZE;
+
+    @TempDir
+    File directory;
+    private FileManager fileManager;
+    private LogManager logManager;
+    private BufferManager bufferManager;
+    private CheckpointManager checkpointManager;
+    private LockTable lockTable;
+    private LogicalBlock block;
+
+    @BeforeEach
+    void createTable() throws IOException {
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        logManager = new LogManager(fileManager, LOG);
+        bufferManager = new BufferManager(fileManager, logManager, 8);
+        checkpointManager = new CheckpointManager(logManager, bufferManager);
+        lockTable = new LockTable();
+        Transaction creator = newTransaction();
+        block = creator.append(TABLE);
+        creator.pin(block);
+        creator.setInt(block, OFFSET, 42, true);
+        creator.commit();
+    }
+
+    @Test
+    void aReadOnlyCommitDoesNotForceTheLog() {
+        long written = logWrites();
+        Transaction reader = newTransaction();
+        reader.pin(block);
+        assertEquals(42, reader.getInt(block, OFFSET));
+        reader.commit();
+        assertEquals(written, logWrites());
+    }
+
+    @Test
+    void anUpdatingCommitForcesTheLog() {
+        long written = logWrites();
+        Transaction writer = newTransaction();
+        writer.pin(block);
+        writer.setInt(block, OFFSET, 43, true);
+        writer.commit();
+        assertEquals(written + 1, logWrites());
+    }
+
+    private Transaction newTransaction() {
+        return new Transaction(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+    }
+
+    private long logWrites() {
+        return fileManager.getMetrics().getFile(LOG).getBlocksWritten();
+    }
+}
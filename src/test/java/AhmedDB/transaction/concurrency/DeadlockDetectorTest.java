@@ -0,0 +1,83 @@
+package AhmedDB.transaction.concurrency;
+
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.log.LogManager;
+import AhmedDB.metrics.Metrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlockDetectorTest {
+    private static final String DATABASE = "deadlock-detector-test";
+
+    @TempDir
+    File directory;
+
+    @Test
+    void theAbortOfAVictimIsPublishedThroughJmx() throws Exception {
+        FileManager fileManager = new FileManager(directory, 400);
+        LogManager logManager = new LogManager(fileManager, "deadlock-test.log");
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, 4);
+        LockTable lockTable = new LockTable();
+        lockTable.setMaxWaitTime(0);
+        DeadlockDetector detector = new DeadlockDetector(lockTable, bufferManager);
+        Metrics.register(DATABASE, fileManager, bufferManager, logManager, detector);
+        try {
+            //each transaction locks one item, then waits for the item of the other one
+            CountDownLatch locked = new CountDownLatch(2);
+            AtomicInteger aborted = new AtomicInteger();
+            Thread first = lockBoth(lockTable, 1, "a", "b", locked, aborted);
+            Thread second = lockBoth(lockTable, 2, "b", "a", locked, aborted);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (lockTable.waitingCount() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(1);
+            assertEquals(1, detector.detect());
+            //the survivor gets its lock once the victim releases its own
+            first.join(5000);
+            second.join(5000);
+            assertEquals(1, aborted.get());
+
+            assertEquals(1, detector.getAbortCount());
+            assertTrue(detector.getMaxDetectionLatency() > 0);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("AhmedDB:type=Deadlocks,name=" + ObjectName.quote(DATABASE));
+            assertEquals(1L, server.getAttribute(name, "Aborts"));
+            assertEquals(1L, server.getAttribute(name, "Passes"));
+            assertTrue((Long) server.getAttribute(name, "DetectionLatencyMaxMicros") >= 0);
+        }
+        finally {
+            Metrics.unregister(DATABASE);
+        }
+    }
+
+    private static Thread lockBoth(LockTable lockTable, int txNum, String held, String wanted, CountDownLatch locked, AtomicInteger aborted) {
+        Thread thread = new Thread(() -> {
+            lockTable.lock(txNum, held, LockMode.X);
+            locked.countDown();
+            try {
+                locked.await();
+                lockTable.lock(txNum, wanted, LockMode.X);
+            }
+            catch (LockAbortException e) {
+                aborted.incrementAndGet();
+            }
+            catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            finally {
+                lockTable.unlock(txNum, wanted);
+                lockTable.unlock(txNum, held);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,139 @@
+package AhmedDB.transaction.concurrency;
+
+import AhmedDB.file.LogicalBlock;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The conflicts between the lock modes, the upgrades of held locks, and the aborts of waits that take too long.
+ */
+class LockTableTest {
+    /**
+     * The time limit of the waits that are expected to fail, in milliseconds.
+     */
+    private static final long SHORT_WAIT = 50;
+    private static final LockMode[] MODES = {LockMode.IS, LockMode.IX, LockMode.S, LockMode.SIX, LockMode.X};
+    /**
+     * The expected compatibility of a held mode (the row) with an asked mode (the column), in the order of {@link #MODES}.
+     */
+    private static final boolean[][] COMPATIBLE = {
+            //           IS     IX     S      SIX    X
+            /* IS  */ {true,  true,  true,  true,  false},
+            /* IX  */ {true,  true,  false, false, false},
+            /* S   */ {true,  false, true,  false, false},
+            /* SIX */ {true,  false, false, false, false},
+            /* X   */ {false, false, false, false, false},
+    };
+
+    @Test
+    void aModeIsGrantedOnlyIfItIsCompatibleWithTheHeldOnes() {
+        LockTable lockTable = new LockTable();
+        lockTable.setMaxWaitTime(SHORT_WAIT);
+        for (int held = 0; held < MODES.length; held++) {
+            for (int asked = 0; asked < MODES.length; asked++) {
+                String item = "item-" + held + "-" + asked;
+                lockTable.lock(1, item, MODES[held]);
+                boolean granted = true;
+                try {
+                    lockTable.lock(2, item, MODES[asked]);
+                }
+                catch (LockAbortException e) {
+                    granted = false;
+                }
+                assertEquals(COMPATIBLE[held][asked], granted, MODES[asked] + " asked while " + MODES[held] + " is held");
+                assertEquals(granted ? MODES[asked] : null, lockTable.lockMode(2, item));
+                lockTable.unlock(1, item);
+                lockTable.unlock(2, item);
+            }
+        }
+    }
+
+    @Test
+    void aBlockLockTakesTheIntentionLockOfItsFile() {
+        LockTable lockTable = new LockTable();
+        lockTable.setMaxWaitTime(SHORT_WAIT);
+        ConcurrencyManager writer = new ConcurrencyManager(lockTable, 1);
+        ConcurrencyManager reader = new ConcurrencyManager(lockTable, 2);
+        writer.xLock(new LogicalBlock("table", 0));
+        assertEquals(LockMode.IX, lockTable.lockMode(1, "table"));
+
+        //another block of the file can be read, but not the whole file
+        reader.sLock(new LogicalBlock("table", 1));
+        assertThrows(LockAbortException.class, () -> reader.lockFile("table", LockMode.S));
+        writer.release();
+        reader.lockFile("table", LockMode.S);
+        assertEquals(LockMode.S, lockTable.lockMode(2, "table"));
+        reader.release();
+    }
+
+    @Test
+    void anUpgradeFromSharedWaitsForTheOtherSharedHolder() throws InterruptedException {
+        LockTable lockTable = new LockTable();
+        lockTable.setMaxWaitTime(0);
+        ConcurrencyManager upgrader = new ConcurrencyManager(lockTable, 1);
+        ConcurrencyManager reader = new ConcurrencyManager(lockTable, 2);
+        upgrader.lock("item", LockMode.S);
+        reader.lock("item", LockMode.S);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                upgrader.lock("item", LockMode.X);
+            }
+            catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        thread.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lockTable.waitingCount() < 1 && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        assertEquals(1, lockTable.waitingCount());
+        assertEquals(LockMode.S, lockTable.lockMode(1, "item"));
+
+        reader.release();
+        thread.join(5000);
+        assertNull(failure.get());
+        assertEquals(LockMode.X, lockTable.lockMode(1, "item"));
+        upgrader.release();
+        assertNull(lockTable.lockMode(1, "item"));
+    }
+
+    @Test
+    void anUpgradeDoesNotWaitForTheLockOfItsOwnTransaction() {
+        LockTable lockTable = new LockTable();
+        lockTable.setMaxWaitTime(SHORT_WAIT);
+        ConcurrencyManager manager = new ConcurrencyManager(lockTable, 1);
+        manager.lock("item", LockMode.IS);
+        manager.lock("item", LockMode.IX);
+        assertEquals(LockMode.IX, lockTable.lockMode(1, "item"));
+        //S and IX combine into SIX, which conflicts with IX, but the IX is held by the same transaction
+        manager.lock("item", LockMode.S);
+        assertEquals(LockMode.SIX, lockTable.lockMode(1, "item"));
+        manager.lock("item", LockMode.X);
+        assertEquals(LockMode.X, lockTable.lockMode(1, "item"));
+        //a weaker mode is covered by the held one, and does not downgrade it
+        manager.lock("item", LockMode.S);
+        assertEquals(LockMode.X, lockTable.lockMode(1, "item"));
+        manager.release();
+    }
+
+    @Test
+    void aWaitLongerThanTheTimeLimitIsAborted() {
+        LockTable lockTable = new LockTable();
+        lockTable.setMaxWaitTime(SHORT_WAIT);
+        lockTable.lock(1, "item", LockMode.X);
+        long start = System.currentTimeMillis();
+        assertThrows(LockAbortException.class, () -> lockTable.lock(2, "item", LockMode.S));
+        assertTrue(System.currentTimeMillis() - start >= SHORT_WAIT);
+        assertEquals(0, lockTable.waitingCount());
+        assertNull(lockTable.lockMode(2, "item"));
+
+        //the aborted wait leaves nothing behind
+        lockTable.unlock(1, "item");
+        lockTable.lock(3, "item", LockMode.X);
+        assertEquals(LockMode.X, lockTable.lockMode(3, "item"));
+    }
+}
@@ -0,0 +1,187 @@
+package AhmedDB.transaction.concurrency;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.Transaction;
+import AhmedDB.transaction.recovery.CheckpointManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The visibility of the versions to the snapshots of the transactions, through the reads and the updates of
+ * {@link Transaction}, which read the version store, then the page, then the version store again.
+ */
+class VersionStoreTest {
+    private static final int BLOCK_SIZE = 400;
+    private static final String TABLE = "version-test.tbl";
+    private static final String LOG = "version-test.log";
+    private static final int OFFSET = Buffer.PAGE_HEADER_SIZE;
+    private static final int STRING_OFFSET = OFFSET + Integer.BYTES;
+
+    @TempDir
+    File directory;
+    private FileManager fileManager;
+    private LogManager logManager;
+    private BufferManager bufferManager;
+    private CheckpointManager checkpointManager;
+    private LockTable lockTable;
+    private VersionStore versionStore;
+    private LogicalBlock block;
+
+    @BeforeEach
+    void createTable() throws IOException {
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        logManager = new LogManager(fileManager, LOG);
+        bufferManager = new BufferManager(fileManager, logManager, 8);
+        checkpointManager = new CheckpointManager(logManager, bufferManager);
+        lockTable = new LockTable();
+        lockTable.setMaxWaitTime(100);
+        versionStore = new VersionStore();
+        Transaction creator = newTransaction();
+        block = creator.append(TABLE);
+        creator.pin(block);
+        creator.setInt(block, OFFSET, 1, true);
+        creator.setString(block, STRING_OFFSET, "one", true);
+        creator.commit();
+        //no snapshot is active, so the versions of the creator are all removed
+        versionStore.collectGarbage();
+        assertEquals(0, versionStore.size());
+    }
+
+    @Test
+    void aSnapshotKeepsSeeingTheOldValueAfterALaterCommit() {
+        Transaction reader = newTransaction();
+        assertEquals(1, getInt(reader));
+        assertEquals("one", getString(reader));
+
+        Transaction writer = newTransaction();
+        writer.pin(block);
+        writer.setInt(block, OFFSET, 2, true);
+        writer.setString(block, STRING_OFFSET, "two", true);
+        //the page holds the new values, but the reader does not see them, before and after the commit
+        assertEquals(1, getInt(reader));
+        writer.commit();
+        assertEquals(1, getInt(reader));
+        assertEquals("one", getString(reader));
+
+        Transaction laterReader = newTransaction();
+        assertEquals(2, getInt(laterReader));
+        assertEquals("two", getString(laterReader));
+        reader.commit();
+        laterReader.commit();
+    }
+
+    @Test
+    void aWriterWhoseSnapshotMissedACommittedUpdateGetsAWriteConflict() {
+        Transaction first = newTransaction();
+        Transaction second = newTransaction();
+        first.pin(block);
+        first.setInt(block, OFFSET, 2, true);
+        first.commit();
+
+        second.pin(block);
+        assertThrows(WriteConflictException.class, () -> second.setInt(block, OFFSET, 3, true));
+        second.rollback();
+
+        //a transaction that started after the commit updates the value
+        Transaction third = newTransaction();
+        third.pin(block);
+        third.setInt(block, OFFSET, 3, true);
+        third.commit();
+        Transaction reader = newTransaction();
+        assertEquals(3, getInt(reader));
+        reader.commit();
+    }
+
+    @Test
+    void anAbortRemovesOnlyTheVersionsOfItsTransaction() {
+        Transaction committed = newTransaction();
+        committed.pin(block);
+        committed.setInt(block, OFFSET, 2, true);
+        committed.commit();
+
+        Transaction reader = newTransaction();
+        Transaction aborted = newTransaction();
+        aborted.pin(block);
+        aborted.setInt(block, OFFSET, 3, true);
+        aborted.setInt(block, OFFSET, 4, true);
+        assertEquals(4, getInt(aborted));
+        assertEquals(2, getInt(reader));
+        aborted.rollback();
+
+        //the committed version is the newest again, for the snapshots taken before and after the abort
+        assertEquals(2, getInt(reader));
+        Transaction laterReader = newTransaction();
+        assertEquals(2, getInt(laterReader));
+        //and the next writer does not conflict with the aborted version
+        Transaction writer = newTransaction();
+        writer.pin(block);
+        writer.setInt(block, OFFSET, 5, true);
+        writer.commit();
+        reader.commit();
+        laterReader.commit();
+    }
+
+    @Test
+    void theGarbageCollectorKeepsTheVersionsThatTheOldestSnapshotSees() {
+        Transaction oldReader = newTransaction();
+        commitInt(2);
+        Transaction reader = newTransaction();
+        commitInt(3);
+        Transaction newReader = newTransaction();
+
+        //the oldest snapshot sees the value that was in the page before the updates, so nothing is removed
+        assertEquals(0, versionStore.collectGarbage());
+        assertEquals(1, getInt(oldReader));
+        assertEquals(2, getInt(reader));
+        assertEquals(3, getInt(newReader));
+
+        //once the old reader ends, the value it saw is seen by no one
+        oldReader.commit();
+        assertEquals(1, versionStore.collectGarbage());
+        assertEquals(1, versionStore.size());
+        assertEquals(2, getInt(reader));
+        assertEquals(3, getInt(newReader));
+
+        //once every snapshot sees the newest version, which is in the page, the chain is removed
+        reader.commit();
+        assertEquals(2, versionStore.collectGarbage());
+        assertEquals(0, versionStore.size());
+        assertEquals(3, getInt(newReader));
+        newReader.commit();
+    }
+
+    private void commitInt(int value) {
+        Transaction writer = newTransaction();
+        writer.pin(block);
+        writer.setInt(block, OFFSET, value, true);
+        writer.commit();
+    }
+
+    private Transaction newTransaction() {
+        return new Transaction(fileManager, logManager, bufferManager, lockTable, versionStore, checkpointManager);
+    }
+
+    private int getInt(Transaction transaction) {
+        transaction.pin(block);
+        int value = transaction.getInt(block, OFFSET);
+        transaction.unpin(block);
+        return value;
+    }
+
+    private String getString(Transaction transaction) {
+        transaction.pin(block);
+        String value = transaction.getString(block, STRING_OFFSET);
+        transaction.unpin(block);
+        return value;
+    }
+}
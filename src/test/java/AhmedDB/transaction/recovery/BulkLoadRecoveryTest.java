@@ -0,0 +1,73 @@
+package AhmedDB.transaction.recovery;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.Transaction;
+import AhmedDB.transaction.concurrency.LockTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A crash in the middle of a bulk load: the blocks of the load are on the disk, but its transaction did not commit,
+ * so recovery, which has no transaction of its own, has to empty them.
+ */
+class BulkLoadRecoveryTest {
+    private static final int BLOCK_SIZE = 400;
+    private static final String TABLE = "loaded.tbl";
+    private static final String LOG = "bulk-load-test.log";
+    private static final int RECOVERING_TRANSACTION = 1_000_000;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void recoveryEmptiesTheBlocksOfAnUnfinishedBulkLoad() throws IOException {
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, LOG);
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, 8);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        LockTable lockTable = new LockTable();
+
+        Transaction first = new Transaction(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+        LogicalBlock committedBlock = first.append(TABLE);
+        first.pin(committedBlock);
+        first.setInt(committedBlock, Buffer.PAGE_HEADER_SIZE, 1234, true);
+        first.commit();
+        bufferManager.flushAll();
+
+        Transaction loader = new Transaction(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+        int blocks = 3;
+        byte[] pages = new byte[blocks * BLOCK_SIZE];
+        Arrays.fill(pages, (byte) 7);
+        int firstBlock = loader.appendBlocks(TABLE, pages, blocks);
+        assertEquals(1, firstBlock);
+        //the system crashes before the loader commits
+
+        FileManager restartedFileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager restartedLogManager = new LogManager(restartedFileManager, LOG);
+        BufferManager restartedBufferManager = new BufferManager(restartedFileManager, restartedLogManager, 8);
+        CheckpointManager restartedCheckpointManager = new CheckpointManager(restartedLogManager, restartedBufferManager);
+        new RecoveryManager(null, RECOVERING_TRANSACTION, restartedLogManager, restartedBufferManager, restartedCheckpointManager).recover(1);
+
+        Page page = new Page(BLOCK_SIZE);
+        restartedFileManager.read(committedBlock, page);
+        assertEquals(1234, page.getInt(Buffer.PAGE_HEADER_SIZE));
+        byte[] zeroes = new byte[BLOCK_SIZE - Buffer.PAGE_HEADER_SIZE];
+        byte[] values = new byte[zeroes.length];
+        for (int block = firstBlock; block < firstBlock + blocks; block++) {
+            restartedFileManager.read(new LogicalBlock(TABLE, block), page);
+            page.readBytes(Buffer.PAGE_HEADER_SIZE, values, 0, values.length);
+            assertArrayEquals(zeroes, values, "block " + block + " of the unfinished load");
+        }
+    }
+}
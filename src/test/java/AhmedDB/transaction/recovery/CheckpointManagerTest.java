@@ -0,0 +1,125 @@
+package AhmedDB.transaction.recovery;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.log.CheckPointBeginRecord;
+import AhmedDB.log.LogManager;
+import AhmedDB.log.LogOperator;
+import AhmedDB.log.LogRecordReader;
+import AhmedDB.transaction.Transaction;
+import AhmedDB.transaction.concurrency.LockTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Fuzzy checkpoints whose dirty page table does not fit in one block of the log.
+ */
+class CheckpointManagerTest {
+    private static final int BLOCK_SIZE = 400;
+    private static final int BLOCKS = 150;
+    private static final String TABLE = "checkpoint.tbl";
+    private static final String LOG = "checkpoint-test.log";
+    private static final int RECOVERING_TRANSACTION = 1_000_000;
+    private static final int OFFSET = Buffer.PAGE_HEADER_SIZE;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void checkpointWithMoreDirtyPagesThanFitInOneLogBlock() throws IOException {
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, LOG);
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, BLOCKS + 20);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        LockTable lockTable = new LockTable();
+        createTable(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+
+        //the blocks stay pinned until the checkpoint, so that none of them is written before it
+        Transaction winner = new Transaction(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+        for (int block = 0; block < BLOCKS; block += 2) setInt(winner, block, block + 1);
+        Transaction loser = new Transaction(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+        for (int block = 1; block < BLOCKS; block += 2) setInt(loser, block, -1);
+        assertEquals(BLOCKS, bufferManager.dirtyPages().size());
+
+        long endLSN = checkpointManager.checkpoint();
+        int chunks = 0;
+        Iterator<LogRecordReader> iterator = logManager.recordIterator();
+        while (iterator.hasNext()) {
+            LogRecordReader logRecord = iterator.next();
+            if (logRecord.getRecordOperatorNumber() == LogOperator.FUZZY_CHECKPOINT.value) chunks++;
+            assertTrue(logRecord.getLSN() <= endLSN);
+        }
+        assertTrue(chunks > 1, "the checkpoint took " + chunks + " chunk");
+        winner.commit();
+        //a checkpoint interrupted by the crash, which recovery has to ignore
+        logManager.flush(CheckPointBeginRecord.writeToLog(logManager));
+
+        recover();
+        FileManager restartedFileManager = new FileManager(directory, BLOCK_SIZE);
+        Page page = new Page(BLOCK_SIZE);
+        for (int block = 0; block < BLOCKS; block++) {
+            restartedFileManager.read(new LogicalBlock(TABLE, block), page);
+            assertEquals(block % 2 == 0 ? block + 1 : 0, page.getInt(OFFSET), "block " + block);
+        }
+    }
+
+    @Test
+    void periodicCheckpointsGoOnAfterAFailure() throws Exception {
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, LOG);
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, 4);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager) {
+            private int calls;
+
+            @Override
+            public long checkpoint() {
+                if (calls++ == 0) throw new RuntimeException("the first checkpoint fails");
+                return super.checkpoint();
+            }
+        };
+        checkpointManager.startPeriodicCheckpoints(10);
+        long deadline = System.currentTimeMillis() + 5000;
+        boolean written = false;
+        while (!written && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            Iterator<LogRecordReader> iterator = logManager.recordIterator();
+            while (iterator.hasNext())
+                if (iterator.next().getRecordOperatorNumber() == LogOperator.CHECKPOINT_END.value) written = true;
+        }
+        checkpointManager.stopPeriodicCheckpoints();
+        assertTrue(written, "no checkpoint was taken after the first one failed");
+    }
+
+    private static void createTable(FileManager fileManager, LogManager logManager, BufferManager bufferManager,
+                                    LockTable lockTable, CheckpointManager checkpointManager) {
+        Transaction creator = new Transaction(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+        for (int block = 0; block < BLOCKS; block++) creator.append(TABLE);
+        creator.commit();
+    }
+
+    private static void setInt(Transaction transaction, int block, int value) {
+        LogicalBlock logicalBlock = new LogicalBlock(TABLE, block);
+        transaction.pin(logicalBlock);
+        transaction.setInt(logicalBlock, OFFSET, value, true);
+    }
+
+    /**
+     * Restarts the database on the files left by the crash, and recovers it.
+     */
+    private void recover() throws IOException {
+        FileManager fileManager = new FileManager(directory, BLOCK_SIZE);
+        LogManager logManager = new LogManager(fileManager, LOG);
+        BufferManager bufferManager = new BufferManager(fileManager, logManager, BLOCKS + 20);
+        CheckpointManager checkpointManager = new CheckpointManager(logManager, bufferManager);
+        new RecoveryManager(null, RECOVERING_TRANSACTION, logManager, bufferManager, checkpointManager).recover(1);
+    }
+}
@@ -0,0 +1,156 @@
+package AhmedDB.transaction.recovery;
+
+import AhmedDB.buffer.Buffer;
+import AhmedDB.buffer.BufferManager;
+import AhmedDB.file.FileManager;
+import AhmedDB.file.LogicalBlock;
+import AhmedDB.file.Page;
+import AhmedDB.log.LogManager;
+import AhmedDB.transaction.Transaction;
+import AhmedDB.transaction.concurrency.LockTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A crash before a commit leaves none of the changes of the transaction, and a crash after it leaves all of them,
+ * whichever pages the buffer manager wrote before the crash.
+ */
+class RecoveryManagerTest {
+    private static final int BLOCK_SIZE = 400;
+    private static final int BLOCKS = 20;
+    private static final String TABLE = "recovery-test.tbl";
+    private static final String LOG = "recovery-test.log";
+    private static final int RECOVERING_TRANSACTION = 1_000_000;
+    private static final int INT_OFFSET = Buffer.PAGE_HEADER_SIZE;
+    private static final int STRING_OFFSET = INT_OFFSET + Integer.BYTES;
+
+    @TempDir
+    File directory;
+
+    private FileManager fileManager;
+    private LogManager logManager;
+    private BufferManager bufferManager;
+    private CheckpointManager checkpointManager;
+    private LockTable lockTable;
+
+    @Test
+    void aCrashBeforeTheCommitUndoesTheChangesWrittenToDisk() throws IOException {
+        //a pool smaller than the table, so most of the uncommitted pages are written before the crash
+        open(4);
+        createTable();
+        Transaction loser = newTransaction();
+        for (int block = 0; block < BLOCKS; block++) update(loser, block, -block, "loser " + block);
+        Page page = new Page(BLOCK_SIZE);
+        int written = 0;
+        for (int block = 1; block < BLOCKS; block++) {
+            new FileManager(directory, BLOCK_SIZE).read(new LogicalBlock(TABLE, block), page);
+            if (page.getInt(INT_OFFSET) == -block) written++;
+        }
+        assertTrue(written > 0, "no uncommitted page was written before the crash");
+
+        recover(1);
+        assertValues(false);
+    }
+
+    @Test
+    void aCrashAfterTheCommitRedoesTheChangesThatOnlyReachedTheLog() throws IOException {
+        //a pool larger than the table, so none of the committed pages is written before the crash
+        open(BLOCKS + 10);
+        createTable();
+        Transaction winner = newTransaction();
+        for (int block = 0; block < BLOCKS; block++) update(winner, block, -block, "winner " + block);
+        winner.commit();
+
+        recover(1);
+        assertValues(true);
+    }
+
+    @Test
+    void aCrashBetweenTwoCommitsKeepsOnlyTheCommittedChanges() throws IOException {
+        open(8);
+        createTable();
+        Transaction winner = newTransaction();
+        Transaction loser = newTransaction();
+        for (int block = 0; block < BLOCKS; block++) {
+            if (block % 2 == 0) update(winner, block, -block, "winner " + block);
+            else update(loser, block, -block, "loser " + block);
+        }
+        winner.commit();
+
+        recover(4);
+        Page page = new Page(BLOCK_SIZE);
+        for (int block = 0; block < BLOCKS; block++) {
+            fileManager.read(new LogicalBlock(TABLE, block), page);
+            if (block % 2 == 0) assertValue(page, block, -block, "winner " + block);
+            else assertValue(page, block, block, "block " + block);
+        }
+    }
+
+    /**
+     * Commits a table whose blocks hold their number and a string.
+     */
+    private void createTable() {
+        Transaction creator = newTransaction();
+        for (int block = 0; block < BLOCKS; block++) {
+            LogicalBlock logicalBlock = creator.append(TABLE);
+            creator.pin(logicalBlock);
+            creator.setInt(logicalBlock, INT_OFFSET, block, true);
+            creator.setString(logicalBlock, STRING_OFFSET, "block " + block, true);
+            creator.unpin(logicalBlock);
+        }
+        creator.commit();
+    }
+
+    private static void update(Transaction transaction, int block, int value, String string) {
+        LogicalBlock logicalBlock = new LogicalBlock(TABLE, block);
+        transaction.pin(logicalBlock);
+        transaction.setInt(logicalBlock, INT_OFFSET, value, true);
+        transaction.setString(logicalBlock, STRING_OFFSET, string, true);
+        transaction.unpin(logicalBlock);
+    }
+
+    /**
+     * Checks the values on the disk, which recovery wrote.
+     * @param committed true if the blocks must hold the values of the winner, false if they must hold the original ones
+     */
+    private void assertValues(boolean committed) {
+        Page page = new Page(BLOCK_SIZE);
+        for (int block = 0; block < BLOCKS; block++) {
+            fileManager.read(new LogicalBlock(TABLE, block), page);
+            if (committed) assertValue(page, block, -block, "winner " + block);
+            else assertValue(page, block, block, "block " + block);
+        }
+    }
+
+    private static void assertValue(Page page, int block, int value, String string) {
+        assertEquals(value, page.getInt(INT_OFFSET), "int of block " + block);
+        assertEquals(string, page.getString(STRING_OFFSET), "string of block " + block);
+    }
+
+    /**
+     * Restarts the database on the files left by the crash, in which the active transactions never end and only
+     * the pages that the buffer manager replaced are on the disk, and recovers it.
+     */
+    private void recover(int redoWorkers) throws IOException {
+        open(BLOCKS + 10);
+        new RecoveryManager(null, RECOVERING_TRANSACTION, logManager, bufferManager, checkpointManager).recover(redoWorkers);
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+    }
+
+    private void open(int buffers) throws IOException {
+        fileManager = new FileManager(directory, BLOCK_SIZE);
+        logManager = new LogManager(fileManager, LOG);
+        bufferManager = new BufferManager(fileManager, logManager, buffers);
+        checkpointManager = new CheckpointManager(logManager, bufferManager);
+        lockTable = new LockTable();
+    }
+
+    private Transaction newTransaction() {
+        return new Transaction(fileManager, logManager, bufferManager, lockTable, checkpointManager);
+    }
+}